@@ -0,0 +1,34 @@
+//
+//  Nextpeer libGDX plugin
+//  http://www.nextpeer.com
+//
+//  Created by Nextpeer development team.
+//  Copyright (c) 2014 Innobell, Ltd. All rights reserved.
+//
+
+package com.nextpeer.libgdx.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the plugin benchmarks with the GC profiler, so the allocation rate per operation ({@code gc.alloc.rate.norm})
+ * is reported next to the timings. An allocation in a hot path shows up as a non-zero value.
+ * Usage: {@code java com.nextpeer.libgdx.benchmarks.BenchmarkMain [benchmark name regex]}
+ */
+public final class BenchmarkMain {
+
+	private BenchmarkMain() {}
+
+	public static void main(String[] args) throws RunnerException {
+		final Options options = new OptionsBuilder()
+				.include((args.length > 0) ? args[0] : BenchmarkMain.class.getPackage().getName() + ".*Benchmark")
+				.addProfiler(GCProfiler.class)
+				.build();
+
+		new Runner(options).run();
+	}
+}
@@ -0,0 +1,73 @@
+//
+//  Nextpeer libGDX plugin
+//  http://www.nextpeer.com
+//
+//  Created by Nextpeer development team.
+//  Copyright (c) 2014 Innobell, Ltd. All rights reserved.
+//
+
+package com.nextpeer.libgdx.benchmarks;
+
+import com.nextpeer.libgdx.Tournaments;
+
+/**
+ * Stub Tournaments for the benchmarks, always in a tournament. The pushed buffers are only counted, so the measurements
+ * show the cost of the plugin layers and not of a platform SDK. The protected fire helpers are exposed to drive the receive path.
+ */
+public final class BenchmarkTournaments extends Tournaments {
+
+	public long pushedMessages;
+	public long pushedBytes;
+	public byte[] lastPushed;
+
+	@Override
+	public boolean isSupported() {
+		return true;
+	}
+
+	@Override
+	public void launch() {}
+
+	@Override
+	public void reportScoreForCurrentTournament(int score) {}
+
+	@Override
+	public void reportControlledTournamentOverWithScore(int score) {}
+
+	@Override
+	public void reportForfeitForCurrentTournament() {}
+
+	@Override
+	public boolean isCurrentlyInTournament() {
+		return true;
+	}
+
+	@Override
+	public void unreliablePushDataToOtherPlayers(byte[] data) {
+		pushedMessages++;
+		pushedBytes += data.length;
+		lastPushed = data;
+	}
+
+	@Override
+	public void pushDataToOtherPlayers(byte[] data) {
+		pushedMessages++;
+		pushedBytes += data.length;
+		lastPushed = data;
+	}
+
+	@Override
+	public void registerToSynchronizedEvent(String eventName, int timeoutInMilliseconds) {}
+
+	public void start(long tournamentRandomSeed) {
+		fireTournamentStart(tournamentRandomSeed);
+	}
+
+	public void receive(String playerId, byte[] customMessage) {
+		fireReceiveTournamentCustomMessage(playerId, playerId, null, customMessage, false);
+	}
+
+	public void receiveUnreliable(String playerId, byte[] customMessage) {
+		fireReceiveUnreliableTournamentCustomMessage(playerId, playerId, null, customMessage, false);
+	}
+}
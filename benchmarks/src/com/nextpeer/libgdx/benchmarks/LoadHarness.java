@@ -0,0 +1,252 @@
+//
+//  Nextpeer libGDX plugin
+//  http://www.nextpeer.com
+//
+//  Created by Nextpeer development team.
+//  Copyright (c) 2014 Innobell, Ltd. All rights reserved.
+//
+
+package com.nextpeer.libgdx.benchmarks;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.nextpeer.libgdx.LatencyHistogram;
+import com.nextpeer.libgdx.NextpeerSession;
+import com.nextpeer.libgdx.NextpeerTournamentCustomMessage;
+import com.nextpeer.libgdx.SimulatedNetwork;
+import com.nextpeer.libgdx.SimulatedTournaments;
+import com.nextpeer.libgdx.TournamentsCallback;
+
+/**
+ * Headless load test running many independent tournaments in the same process, one task per tournament.
+ * Each tournament is a {@link SimulatedNetwork} with its players, every player has its own {@link NextpeerSession} and callback.
+ * Each frame the players push unreliable state messages through their session and a reliable message every few frames,
+ * then the network delivers them and the frame sleeps until the next one.
+ * <p>The tasks run on virtual threads when the JVM has them (Java 21+), on platform threads otherwise.
+ * The report gives the delivered message throughput, the dispatch latency (from the push to the receiving callback, in process)
+ * and the heap used per tournament.</p>
+ * Usage: {@code java com.nextpeer.libgdx.benchmarks.LoadHarness [tournaments] [players] [seconds] [messages per player per frame] [message size]}
+ */
+public final class LoadHarness {
+
+	private static final int FRAME_MILLIS = 16;
+	private static final int RELIABLE_EVERY_FRAMES = 10;
+
+	private final int _tournaments;
+	private final int _players;
+	private final int _seconds;
+	private final int _messagesPerFrame;
+	private final int _messageSize;
+
+	private final LatencyHistogram _latency = new LatencyHistogram();
+	private final AtomicLong _delivered = new AtomicLong();
+	private final AtomicLong _deliveredBytes = new AtomicLong();
+	private final AtomicLong _frames = new AtomicLong();
+	private final AtomicLong _lateFrames = new AtomicLong();
+	private volatile long _peakHeapBytes;
+
+	private LoadHarness(int tournaments, int players, int seconds, int messagesPerFrame, int messageSize) {
+		_tournaments = tournaments;
+		_players = players;
+		_seconds = seconds;
+		_messagesPerFrame = messagesPerFrame;
+		_messageSize = Math.max(8, messageSize);
+	}
+
+	public static void main(String[] args) throws Exception {
+		final int tournaments = (args.length > 0) ? Integer.parseInt(args[0]) : 200;
+		final int players = (args.length > 1) ? Integer.parseInt(args[1]) : 4;
+		final int seconds = (args.length > 2) ? Integer.parseInt(args[2]) : 10;
+		final int messagesPerFrame = (args.length > 3) ? Integer.parseInt(args[3]) : 2;
+		final int messageSize = (args.length > 4) ? Integer.parseInt(args[4]) : 64;
+
+		new LoadHarness(tournaments, players, seconds, messagesPerFrame, messageSize).run();
+	}
+
+	/**
+	 * One simulated tournament: the network, the players and their sessions
+	 */
+	private final class Tournament implements Runnable {
+		final SimulatedNetwork network;
+		final NextpeerSession[] sessions;
+		final SimulatedTournaments[] peers;
+		final byte[] unreliable = new byte[_messageSize];
+		final byte[] reliable = new byte[_messageSize * 4];
+		volatile long deadlineNanos;
+		final CountDownLatch done;
+
+		Tournament(int index, CountDownLatch done) {
+			this.done = done;
+			network = new SimulatedNetwork(true, index);
+			network.setLatency(0);
+			network.setReliableLatency(0);
+
+			sessions = new NextpeerSession[_players];
+			peers = new SimulatedTournaments[_players];
+			for (int i = 0; i < _players; i++) {
+				peers[i] = network.addPeer("t" + index + "p" + i, "Player " + i, false);
+				peers[i].setTournamentsCallback(new Callback());
+				sessions[i] = new NextpeerSession(peers[i]);
+				sessions[i].setTournamentStateRefreshInterval(0);
+			}
+		}
+
+		@Override
+		public void run() {
+			try {
+				network.startTournament(System.nanoTime());
+
+				long frame = 0;
+				long nextFrameNanos = System.nanoTime();
+				while (System.nanoTime() < deadlineNanos) {
+					for (int i = 0; i < _players; i++) {
+						for (int m = 0; m < _messagesPerFrame; m++) {
+							putLong(unreliable, System.nanoTime());
+							sessions[i].unreliablePushDataToOtherPlayers(unreliable);
+						}
+						if (frame % RELIABLE_EVERY_FRAMES == i % RELIABLE_EVERY_FRAMES) {
+							putLong(reliable, System.nanoTime());
+							peers[i].pushDataToOtherPlayers(reliable);
+						}
+					}
+					network.advance(FRAME_MILLIS);
+					frame++;
+					_frames.incrementAndGet();
+
+					nextFrameNanos += FRAME_MILLIS * 1000000L;
+					final long sleepNanos = nextFrameNanos - System.nanoTime();
+					if (sleepNanos > 0) {
+						Thread.sleep(sleepNanos / 1000000L, (int)(sleepNanos % 1000000L));
+					}
+					else {
+						_lateFrames.incrementAndGet();
+						nextFrameNanos = System.nanoTime();
+					}
+				}
+
+				network.endTournament();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			finally {
+				done.countDown();
+			}
+		}
+	}
+
+	/**
+	 * Player callback, measures the dispatch latency from the push time carried by the message
+	 */
+	private final class Callback extends TournamentsCallback {
+		@Override
+		public void onTournamentStart(long tournamentRandomSeed) {}
+
+		@Override
+		public void onTournamentEnd() {}
+
+		@Override
+		public void onReceiveTournamentCustomMessage(NextpeerTournamentCustomMessage message) {
+			received(message.customMessage);
+		}
+
+		@Override
+		public void onReceiveUnreliableTournamentCustomMessage(NextpeerTournamentCustomMessage message) {
+			received(message.customMessage);
+		}
+
+		private void received(byte[] data) {
+			_latency.record(System.nanoTime() - getLong(data));
+			_delivered.incrementAndGet();
+			_deliveredBytes.addAndGet(data.length);
+		}
+	}
+
+	private void run() throws Exception {
+		final Runtime runtime = Runtime.getRuntime();
+		final long baseHeap = usedHeapAfterGc(runtime);
+
+		final CountDownLatch done = new CountDownLatch(_tournaments);
+		final List<Tournament> tournaments = new ArrayList<Tournament>(_tournaments);
+		for (int i = 0; i < _tournaments; i++) {
+			tournaments.add(new Tournament(i, done));
+		}
+		final long setupHeap = usedHeapAfterGc(runtime);
+
+		final boolean[] virtual = new boolean[1];
+		final ExecutorService executor = newExecutor(virtual);
+		System.out.println("tournaments=" + _tournaments + " players=" + _players + " seconds=" + _seconds + " messagesPerFrame="
+				+ _messagesPerFrame + " messageSize=" + _messageSize + " threads=" + (virtual[0] ? "virtual" : "platform"));
+
+		_peakHeapBytes = runtime.totalMemory() - runtime.freeMemory();
+		final long start = System.nanoTime();
+		final long deadline = start + _seconds * 1000000000L;
+		for (Tournament tournament : tournaments) {
+			tournament.deadlineNanos = deadline;
+			executor.execute(tournament);
+		}
+
+		while (!done.await(100, TimeUnit.MILLISECONDS)) {
+			final long used = runtime.totalMemory() - runtime.freeMemory();
+			if (used > _peakHeapBytes) {
+				_peakHeapBytes = used;
+			}
+		}
+		final long elapsedNanos = System.nanoTime() - start;
+		executor.shutdown();
+
+		final double seconds = elapsedNanos / 1e9;
+		System.out.println(String.format("throughput: %.0f messages/s, %.2f MB/s, %.0f frames/s (%d late frames)",
+				_delivered.get() / seconds, _deliveredBytes.get() / seconds / (1024 * 1024), _frames.get() / seconds, _lateFrames.get()));
+		System.out.println(String.format("dispatch latency: p50 %.1f us, p99 %.1f us, p99.9 %.1f us, max %.1f us (%d messages)",
+				_latency.getPercentile(50) / 1e3, _latency.getPercentile(99) / 1e3, _latency.getPercentile(99.9) / 1e3,
+				_latency.getMax() / 1e3, _latency.getCount()));
+		System.out.println(String.format("heap per tournament: %.1f KB after setup, %.1f KB peak while running",
+				(setupHeap - baseHeap) / 1024.0 / _tournaments, (_peakHeapBytes - baseHeap) / 1024.0 / _tournaments));
+
+	}
+
+	/**
+	 * Executor with a virtual thread per task when available, found by reflection so the harness still builds and runs on Java 8
+	 */
+	private static ExecutorService newExecutor(boolean[] virtual) {
+		try {
+			final Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			virtual[0] = true;
+			return (ExecutorService)method.invoke(null);
+		}
+		catch (Exception e) {
+			virtual[0] = false;
+			return Executors.newCachedThreadPool();
+		}
+	}
+
+	private static long usedHeapAfterGc(Runtime runtime) throws InterruptedException {
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+			Thread.sleep(50);
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	private static void putLong(byte[] data, long value) {
+		for (int i = 0; i < 8; i++) {
+			data[i] = (byte)(value >>> (56 - i * 8));
+		}
+	}
+
+	private static long getLong(byte[] data) {
+		long value = 0;
+		for (int i = 0; i < 8; i++) {
+			value = (value << 8) | (data[i] & 0xFF);
+		}
+		return value;
+	}
+}
@@ -0,0 +1,133 @@
+//
+//  Nextpeer libGDX plugin
+//  http://www.nextpeer.com
+//
+//  Created by Nextpeer development team.
+//  Copyright (c) 2014 Innobell, Ltd. All rights reserved.
+//
+
+package com.nextpeer.libgdx.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.nextpeer.libgdx.NextpeerTournamentCustomMessage;
+import com.nextpeer.libgdx.PooledTournamentCustomMessage;
+import com.nextpeer.libgdx.TournamentCustomMessagePool;
+import com.nextpeer.libgdx.TournamentsCallback;
+import com.nextpeer.libgdx.TournamentsCallbackDispatcher;
+
+/**
+ * Allocation and dispatch rate of the received custom messages: immutable messages, pooled messages,
+ * and the hand-off to the render thread through the TournamentsCallbackDispatcher.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MessageDispatchBenchmark {
+
+	/**
+	 * Messages delivered per drain, a busy frame
+	 */
+	private static final int MESSAGES_PER_FRAME = 16;
+
+	/**
+	 * Game callback reading the first byte of every message, so the dispatch can't be optimized away
+	 */
+	static final class CountingCallback extends TournamentsCallback {
+		long received;
+
+		@Override
+		public void onTournamentStart(long tournamentRandomSeed) {}
+
+		@Override
+		public void onTournamentEnd() {}
+
+		@Override
+		public void onReceiveTournamentCustomMessage(NextpeerTournamentCustomMessage message) {
+			received += message.customMessage[0] + 1;
+		}
+
+		@Override
+		public void onReceiveUnreliableTournamentCustomMessage(NextpeerTournamentCustomMessage message) {
+			received += message.customMessage[0] + 1;
+		}
+
+		@Override
+		public void onReceivePooledUnreliableTournamentCustomMessage(PooledTournamentCustomMessage message) {
+			received += message.get(0) + 1;
+		}
+
+		@Override
+		public void onReceiveSynchronizedEvent(String name) {}
+	}
+
+	@Param({"16", "64", "128", "512"})
+	public int size;
+
+	private final CountingCallback _callback = new CountingCallback();
+	private BenchmarkTournaments _immutable;
+	private BenchmarkTournaments _pooled;
+	private BenchmarkTournaments _dispatched;
+	private TournamentsCallbackDispatcher _dispatcher;
+	private byte[] _data;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		_data = new byte[size];
+
+		_immutable = new BenchmarkTournaments();
+		_immutable.setTournamentsCallback(_callback);
+
+		_pooled = new BenchmarkTournaments();
+		_pooled.setTournamentsCallback(_callback);
+		_pooled.setMessagePool(new TournamentCustomMessagePool());
+
+		_dispatcher = new TournamentsCallbackDispatcher(_callback);
+		_dispatched = new BenchmarkTournaments();
+		_dispatched.setTournamentsCallback(_dispatcher);
+		_dispatched.setMessagePool(new TournamentCustomMessagePool());
+	}
+
+	@Benchmark
+	public NextpeerTournamentCustomMessage allocateMessage() {
+		return new NextpeerTournamentCustomMessage("player", "name", null, _data, false);
+	}
+
+	@Benchmark
+	public long dispatchImmutable() {
+		_immutable.receiveUnreliable("player", _data);
+		return _callback.received;
+	}
+
+	@Benchmark
+	public long dispatchPooled() {
+		_pooled.receiveUnreliable("player", _data);
+		return _callback.received;
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public long dispatchThroughDispatcher() {
+		for (int i = 0; i < MESSAGES_PER_FRAME; i++) {
+			_dispatched.receiveUnreliable("player", _data);
+		}
+		_dispatcher.drain();
+		return _callback.received;
+	}
+}
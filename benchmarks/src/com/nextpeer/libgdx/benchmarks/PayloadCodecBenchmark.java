@@ -0,0 +1,153 @@
+//
+//  Nextpeer libGDX plugin
+//  http://www.nextpeer.com
+//
+//  Created by Nextpeer development team.
+//  Copyright (c) 2014 Innobell, Ltd. All rights reserved.
+//
+
+package com.nextpeer.libgdx.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.nextpeer.libgdx.MessageCodec;
+import com.nextpeer.libgdx.MessageHandler;
+import com.nextpeer.libgdx.MessageRegistry;
+import com.nextpeer.libgdx.NextpeerTournamentCustomMessage;
+import com.nextpeer.libgdx.TournamentCustomMessagePool;
+import com.nextpeer.libgdx.UnreliableMessageBatchReceiver;
+import com.nextpeer.libgdx.UnreliableMessageBatcher;
+
+/**
+ * Encode and decode throughput of the payload layers at the typical message sizes:
+ * the typed MessageRegistry codec and the unreliable batch packing and splitting.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PayloadCodecBenchmark {
+
+	private static final int MESSAGES_PER_PACKET = 8;
+
+	/**
+	 * A tick number followed by an opaque payload
+	 */
+	static final class Payload {
+		int tick;
+		final byte[] data = new byte[MessageRegistry.DEFAULT_MAX_MESSAGE_SIZE];
+		int length;
+	}
+
+	static final class PayloadCodec implements MessageCodec<Payload> {
+		@Override
+		public Payload newMessage() {
+			return new Payload();
+		}
+
+		@Override
+		public void write(Payload message, ByteBuffer buffer) {
+			buffer.putInt(message.tick);
+			buffer.putShort((short)message.length);
+			buffer.put(message.data, 0, message.length);
+		}
+
+		@Override
+		public void read(ByteBuffer buffer, Payload message) {
+			message.tick = buffer.getInt();
+			message.length = buffer.getShort() & 0xFFFF;
+			buffer.get(message.data, 0, message.length);
+		}
+	}
+
+	@Param({"16", "64", "128", "512"})
+	public int size;
+
+	private long _received;
+	private final MessageDispatchBenchmark.CountingCallback _callback = new MessageDispatchBenchmark.CountingCallback();
+	private MessageRegistry _registry;
+	private MessageRegistry.MessageType<Payload> _type;
+	private final Payload _payload = new Payload();
+	private NextpeerTournamentCustomMessage _encoded;
+
+	private BenchmarkTournaments _sender;
+	private UnreliableMessageBatcher _batcher;
+	private BenchmarkTournaments _receiver;
+	private byte[] _packet;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		_sender = new BenchmarkTournaments();
+		_registry = new MessageRegistry(_sender, _callback);
+		_type = _registry.register(1, new PayloadCodec(), new MessageHandler<Payload>() {
+			@Override
+			public void onMessage(Payload message, String playerId, boolean reliable) {
+				_received += message.tick + message.length;
+			}
+		});
+
+		// The payload size includes the tick and length fields
+		_payload.length = Math.max(0, size - 7);
+		for (int i = 0; i < _payload.length; i++) {
+			_payload.data[i] = (byte)i;
+		}
+
+		_registry.send(_type, _payload, false);
+		_encoded = new NextpeerTournamentCustomMessage("player", "name", null, _sender.lastPushed, false);
+
+		_batcher = new UnreliableMessageBatcher(_sender, UnreliableMessageBatcher.MAX_MESSAGE_SIZE);
+		final byte[] message = new byte[size];
+		for (int i = 0; i < MESSAGES_PER_PACKET; i++) {
+			_batcher.append(message);
+		}
+		_batcher.flush();
+		_packet = _sender.lastPushed;
+
+		_receiver = new BenchmarkTournaments();
+		_receiver.setTournamentsCallback(new UnreliableMessageBatchReceiver(_callback));
+		_receiver.setMessagePool(new TournamentCustomMessagePool());
+	}
+
+	@Benchmark
+	public int encode() {
+		_payload.tick++;
+		return _registry.encode(_type, _payload).remaining();
+	}
+
+	@Benchmark
+	public long decode() {
+		_registry.onReceiveUnreliableTournamentCustomMessage(_encoded);
+		return _received;
+	}
+
+	@Benchmark
+	public long batchPack() {
+		for (int i = 0; i < MESSAGES_PER_PACKET; i++) {
+			_batcher.append(_payload.data, 0, size);
+		}
+		_batcher.flush();
+		return _sender.pushedBytes;
+	}
+
+	@Benchmark
+	public long batchSplitPooled() {
+		_receiver.receiveUnreliable("player", _packet);
+		return _callback.received;
+	}
+}
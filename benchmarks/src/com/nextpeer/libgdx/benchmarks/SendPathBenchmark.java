@@ -0,0 +1,88 @@
+//
+//  Nextpeer libGDX plugin
+//  http://www.nextpeer.com
+//
+//  Created by Nextpeer development team.
+//  Copyright (c) 2014 Innobell, Ltd. All rights reserved.
+//
+
+package com.nextpeer.libgdx.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.nextpeer.libgdx.NextpeerPlugin;
+import com.nextpeer.libgdx.UnreliableMessageBatcher;
+
+/**
+ * Cost of a send through the NextpeerPlugin static facade compared to a direct call on the Tournaments instance.
+ * NextpeerPlugin is a singleton, each benchmark runs in its own fork so the plugin is loaded with a fresh stub.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SendPathBenchmark {
+
+	@Param({"16", "64", "128", "512"})
+	public int size;
+
+	private BenchmarkTournaments _tournaments;
+	private UnreliableMessageBatcher _batcher;
+	private byte[] _data;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		_tournaments = new BenchmarkTournaments();
+		NextpeerPlugin.load(_tournaments);
+		_batcher = new UnreliableMessageBatcher(_tournaments);
+		_data = new byte[size];
+	}
+
+	@Benchmark
+	public long directUnreliablePush() {
+		_tournaments.unreliablePushDataToOtherPlayers(_data);
+		return _tournaments.pushedMessages;
+	}
+
+	@Benchmark
+	public long pluginUnreliablePush() {
+		NextpeerPlugin.unreliablePushDataToOtherPlayers(_data);
+		return _tournaments.pushedMessages;
+	}
+
+	@Benchmark
+	public long directPush() {
+		_tournaments.pushDataToOtherPlayers(_data);
+		return _tournaments.pushedMessages;
+	}
+
+	@Benchmark
+	public boolean pluginIsCurrentlyInTournament() {
+		return NextpeerPlugin.isCurrentlyInTournament();
+	}
+
+	@Benchmark
+	public long batchedUnreliablePush() {
+		// One packet of 8 messages per flush, like a frame sending a few entity updates
+		for (int i = 0; i < 8; i++) {
+			_batcher.append(_data);
+		}
+		_batcher.flush();
+		return _tournaments.pushedMessages;
+	}
+}
@@ -0,0 +1,145 @@
+//
+//  Nextpeer libGDX plugin
+//  http://www.nextpeer.com
+//
+//  Created by Nextpeer development team.
+//  Copyright (c) 2014 Innobell, Ltd. All rights reserved.
+//
+
+package com.nextpeer.libgdx.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import com.nextpeer.libgdx.EntitySnapshot;
+import com.nextpeer.libgdx.SnapshotDecoder;
+import com.nextpeer.libgdx.SnapshotEncoder;
+import com.nextpeer.libgdx.SnapshotSchema;
+
+/**
+ * Delta snapshot encode and decode cost per tick, with a quarter of the entities moving a little every tick.
+ * The encode benchmarks also report the encoded size as secondary results: the average keyframe and delta size and
+ * the average bytes per tick over the keyframe intervals.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SnapshotCodecBenchmark {
+
+	@Param({"16", "64", "256"})
+	public int entities;
+
+	private final SnapshotSchema _schema = new SnapshotSchema(12, 6, 16, 16, 8);
+	private EntitySnapshot _snapshot;
+	private EntitySnapshot _decoded;
+	private SnapshotEncoder _encoder;
+	private SnapshotDecoder _decoder;
+	private int _tick;
+
+	/**
+	 * Encoded sizes of the iteration, reported next to the timings. JMH sums the event counters of the measurement iterations
+	 * and threads, so each average is divided by their number to report the average itself.
+	 */
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	@State(Scope.Thread)
+	public static class EncodedSize {
+		private long _keyframes;
+		private long _keyframeBytes;
+		private long _deltas;
+		private long _deltaBytes;
+		private int _samples = 1;
+
+		@Setup(Level.Iteration)
+		public void clear(BenchmarkParams params) {
+			_samples = Math.max(1, params.getMeasurement().getCount() * params.getThreads());
+			_keyframes = 0;
+			_keyframeBytes = 0;
+			_deltas = 0;
+			_deltaBytes = 0;
+		}
+
+		void record(int length, boolean keyframe) {
+			if (keyframe) {
+				_keyframes++;
+				_keyframeBytes += length;
+			}
+			else {
+				_deltas++;
+				_deltaBytes += length;
+			}
+		}
+
+		public double keyframeBytes() {
+			return (_keyframes == 0) ? 0 : (double)_keyframeBytes / _keyframes / _samples;
+		}
+
+		public double deltaBytes() {
+			return (_deltas == 0) ? 0 : (double)_deltaBytes / _deltas / _samples;
+		}
+
+		public double bytesPerTick() {
+			final long ticks = _keyframes + _deltas;
+			return (ticks == 0) ? 0 : (double)(_keyframeBytes + _deltaBytes) / ticks / _samples;
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		_snapshot = new EntitySnapshot(_schema, entities);
+		_decoded = new EntitySnapshot(_schema, entities);
+		for (int i = 0; i < entities; i++) {
+			final int index = _snapshot.add(i);
+			_snapshot.set(index, 0, i * 100);
+			_snapshot.set(index, 1, i * 50);
+			_snapshot.set(index, 2, i & 0xFF);
+		}
+
+		_encoder = new SnapshotEncoder(_schema, entities);
+		_decoder = new SnapshotDecoder(_schema, entities);
+	}
+
+	private void move() {
+		_tick++;
+		for (int i = _tick & 3; i < entities; i += 4) {
+			_snapshot.set(i, 0, (_snapshot.get(i, 0) + 3) & 0xFFFF);
+			_snapshot.set(i, 1, (_snapshot.get(i, 1) - 2) & 0xFFFF);
+		}
+	}
+
+	private int encodeTick(EncodedSize size) {
+		final long keyframes = _encoder.getKeyframesEncoded();
+		final int length = _encoder.encode(_snapshot);
+		size.record(length, _encoder.getKeyframesEncoded() != keyframes);
+		return length;
+	}
+
+	@Benchmark
+	public int encode(EncodedSize size) {
+		move();
+		return encodeTick(size);
+	}
+
+	@Benchmark
+	public int encodeAndDecode(EncodedSize size) {
+		move();
+		final int length = encodeTick(size);
+		return _decoder.decode(_encoder.getBuffer(), 0, length, _decoded);
+	}
+}
@@ -0,0 +1,711 @@
+//
+//  Nextpeer libGDX plugin
+//  http://www.nextpeer.com
+//
+//  Created by Nextpeer development team.
+//  Copyright (c) 2014 Innobell, Ltd. All rights reserved.
+//
+
+package com.nextpeer.libgdx;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Lightweight reliable channel layered on the unreliable push, for small and important events (pickups, kills)
+ * which should not wait for the reliable channel latency.
+ * <p>Every message gets a sequence number. Each packet carries, for every known player, the latest sequence received from that
+ * player and a bitfield of the 32 sequences before it. Messages which are not acknowledged by all the players within the
+ * RTT based timeout are sent again. Delivery can be ordered, otherwise messages are delivered as soon as they arrive.</p>
+ * <p>A player is only known once a packet was received from it, so the channel is given the number of other players: until that many
+ * players are known, the messages are kept and sent again whatever the known players acknowledged, and they don't expire.
+ * Lower it with {@link #setPlayerCount(int)} when a player leaves before sending anything, or the window fills up.</p>
+ * <p>The channel is also a callback layer: wrap the game callback with it, unreliable messages which don't belong to the channel
+ * are forwarded to the wrapped callback as is.</p>
+ * <p><strong>Note:</strong> {@link #send(byte[])}, {@link #update()} and the receive path must run on the same thread, put a
+ * {@link TournamentsCallbackDispatcher} in front of the channel and call {@link #update()} once per frame from {@code render()}.</p>
+ */
+public class AcknowledgedChannel extends TournamentsCallbackWrapper {
+
+	/**
+	 * Receives the messages of the channel
+	 */
+	public interface Listener {
+		/**
+		 * Called once for every message sent on the channel by another player
+		 * @param data The array holding the message, only valid during the call
+		 * @param offset The offset of the message in {@code data}
+		 * @param length The length of the message
+		 * @param playerId The identifier of the player who sent the message
+		 */
+		void onChannelMessage(byte[] data, int offset, int length, String playerId);
+	}
+
+	/**
+	 * First byte of every channel packet
+	 */
+	public static final byte CHANNEL_HEADER = (byte)0xA5;
+
+	/**
+	 * Maximal number of messages waiting for acknowledgement
+	 */
+	public static final int WINDOW_SIZE = 32;
+
+	/**
+	 * Maximal number of players tracked by the channel
+	 */
+	public static final int MAX_PEERS = 32;
+
+	/**
+	 * Number of retransmissions after which a message is given up
+	 */
+	public static final int DEFAULT_MAX_RETRANSMITS = 10;
+
+	private static final int TYPE_DATA = 1;
+	private static final int TYPE_ACK = 2;
+	private static final int ACK_BITS = 32;
+	private static final int HEADER_SIZE = 1 + 1 + 4;
+	private static final int ACK_ENTRY_SIZE = 4 + 2 + 4;
+
+	private static final long INITIAL_RTO_MILLIS = 250;
+	private static final long MIN_RTO_MILLIS = 30;
+	private static final long MAX_RTO_MILLIS = 3000;
+
+	/**
+	 * Message waiting for acknowledgement
+	 */
+	private static final class Outgoing {
+		boolean used;
+		int sequence;
+		byte[] data = new byte[64];
+		int length;
+		long firstSendMillis;
+		long lastSendMillis;
+		int retransmits;
+		// Retransmissions counted for the give up, only once all the players are known
+		int expiryRetransmits;
+		int ackedPeers;
+	}
+
+	/**
+	 * Channel state kept for another player
+	 */
+	private static final class Peer {
+		int endpointId;
+		String playerId;
+
+		boolean hasReceived;
+		int latestReceived;
+		int receivedBits;
+		// Sequences restart from 0 on every tournament, so the ordered delivery starts there too
+		int nextDelivery = 0;
+		boolean ackPending;
+		final byte[][] reorderData = new byte[ACK_BITS][];
+		final int[] reorderLength = new int[ACK_BITS];
+		final boolean[] reorderUsed = new boolean[ACK_BITS];
+
+		boolean hasRtt;
+		float smoothedRtt;
+		float rttVariance;
+		long rto = INITIAL_RTO_MILLIS;
+	}
+
+	private final Tournaments _tournaments;
+	private final Listener _listener;
+	private final boolean _ordered;
+	private final int _endpointId;
+
+	private final Outgoing[] _window = new Outgoing[WINDOW_SIZE];
+	private final Peer[] _peers = new Peer[MAX_PEERS];
+	private int _peerCount;
+	private int _playerCount;
+	private int _nextSequence;
+	private int _maxRetransmits = DEFAULT_MAX_RETRANSMITS;
+	private byte[] _packet = new byte[256];
+
+	private long _messagesSent;
+	private long _messagesDelivered;
+	private long _retransmits;
+	private long _duplicates;
+	private long _expired;
+	private long _acksSent;
+
+	/**
+	 * Constructor for the AcknowledgedChannel class
+	 * @param tournaments The Tournaments instance used to send the packets
+	 * @param callback The callback receiving the unreliable messages which don't belong to the channel
+	 * @param listener The listener receiving the channel messages
+	 * @param ordered true to deliver the messages of each player in the order they were sent, false to deliver them as they arrive
+	 * @param playerCount The number of other players in the tournament, see {@link #setPlayerCount(int)}
+	 * @throws IllegalArgumentException if {@code tournaments} or {@code listener} is null.
+	 * @throws IllegalArgumentException if {@code playerCount} is out of range.
+	 */
+	public AcknowledgedChannel(Tournaments tournaments, TournamentsCallback callback, Listener listener, boolean ordered, int playerCount) {
+		super(callback);
+
+		if (tournaments == null) {
+			throw new IllegalArgumentException("tournaments cannot be null");
+		}
+		if (listener == null) {
+			throw new IllegalArgumentException("listener cannot be null");
+		}
+
+		_tournaments = tournaments;
+		_listener = listener;
+		_ordered = ordered;
+		setPlayerCount(playerCount);
+
+		int endpointId;
+		final Random random = new Random();
+		do {
+			endpointId = random.nextInt();
+		} while (endpointId == 0);
+		_endpointId = endpointId;
+
+		for (int i = 0; i < WINDOW_SIZE; i++) {
+			_window[i] = new Outgoing();
+		}
+	}
+
+	/**
+	 * Set the number of retransmissions after which a message is given up (for example when a player left).
+	 * Only the retransmissions made once all the players are known count.
+	 * @param maxRetransmits The maximal number of retransmissions
+	 * @throws IllegalArgumentException if {@code maxRetransmits} is negative.
+	 */
+	public void setMaxRetransmits(int maxRetransmits) {
+		if (maxRetransmits < 0) {
+			throw new IllegalArgumentException("maxRetransmits cannot be negative: " + maxRetransmits);
+		}
+
+		_maxRetransmits = maxRetransmits;
+	}
+
+	/**
+	 * Set the number of other players in the tournament. The messages are freed or given up only once that many players
+	 * sent a packet to the channel, so a player who missed the first copies still gets them.
+	 * @param playerCount The number of other players, between 0 and {@link #MAX_PEERS}
+	 * @throws IllegalArgumentException if {@code playerCount} is out of range.
+	 */
+	public void setPlayerCount(int playerCount) {
+		if (playerCount < 0 || playerCount > MAX_PEERS) {
+			throw new IllegalArgumentException("playerCount must be between 0 and " + MAX_PEERS + ": " + playerCount);
+		}
+
+		_playerCount = playerCount;
+	}
+
+	/**
+	 * Are all the other players known, see {@link #setPlayerCount(int)}
+	 * @return true if a packet was received from all the other players, false if some are still unknown
+	 */
+	public boolean hasAllPlayers() {
+		return _peerCount >= _playerCount;
+	}
+
+	/**
+	 * Send a message to the other players
+	 * @param data The message, it is copied
+	 * @return true if the message was sent, false if the window is full (too many messages waiting for acknowledgement)
+	 * @throws IllegalArgumentException if {@code data} is empty.
+	 */
+	public boolean send(byte[] data) {
+		if (data == null || data.length == 0) {
+			throw new IllegalArgumentException("data cannot be empty");
+		}
+
+		final int sequence = _nextSequence;
+		final Outgoing outgoing = _window[sequence & (WINDOW_SIZE - 1)];
+		if (outgoing.used) return false;
+
+		_nextSequence = (sequence + 1) & 0xFFFF;
+
+		if (outgoing.data.length < data.length) {
+			outgoing.data = new byte[Math.max(data.length, outgoing.data.length * 2)];
+		}
+		System.arraycopy(data, 0, outgoing.data, 0, data.length);
+		outgoing.used = true;
+		outgoing.sequence = sequence;
+		outgoing.length = data.length;
+		outgoing.retransmits = 0;
+		outgoing.expiryRetransmits = 0;
+		outgoing.ackedPeers = 0;
+		outgoing.firstSendMillis = outgoing.lastSendMillis = currentTimeMillis();
+
+		sendData(outgoing);
+		_messagesSent++;
+		return true;
+	}
+
+	/**
+	 * Send again the messages whose timeout expired and acknowledge the received messages if no data packet did it.
+	 * Should be called once per frame.
+	 */
+	public void update() {
+		final long now = currentTimeMillis();
+		final boolean allPlayers = hasAllPlayers();
+
+		for (Outgoing outgoing : _window) {
+			if (!outgoing.used) continue;
+
+			if (isAckedByAll(outgoing)) {
+				outgoing.used = false;
+				continue;
+			}
+
+			final long timeout = Math.min(MAX_RTO_MILLIS, retransmitTimeout(outgoing) << Math.min(outgoing.retransmits, 4));
+			if (now - outgoing.lastSendMillis < timeout) continue;
+
+			if (allPlayers) {
+				if (outgoing.expiryRetransmits >= _maxRetransmits) {
+					outgoing.used = false;
+					_expired++;
+					continue;
+				}
+				outgoing.expiryRetransmits++;
+			}
+
+			outgoing.retransmits++;
+			outgoing.lastSendMillis = now;
+			sendData(outgoing);
+			_retransmits++;
+		}
+
+		for (int i = 0; i < _peerCount; i++) {
+			if (_peers[i].ackPending) {
+				sendAck();
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Reset the channel on a new tournament
+	 */
+	@Override
+	public void onTournamentStart(long tournamentRandomSeed) {
+		reset();
+		super.onTournamentStart(tournamentRandomSeed);
+	}
+
+	@Override
+	public void onReceiveUnreliableTournamentCustomMessage(NextpeerTournamentCustomMessage message) {
+		if (!receive(message.customMessage, 0, message.customMessage.length, message.playerId)) {
+			super.onReceiveUnreliableTournamentCustomMessage(message);
+		}
+	}
+
+	@Override
+	public void onReceivePooledUnreliableTournamentCustomMessage(PooledTournamentCustomMessage message) {
+		if (!receive(message.getData(), message.getOffset(), message.getLength(), message.getPlayerId())) {
+			super.onReceivePooledUnreliableTournamentCustomMessage(message);
+		}
+	}
+
+	/**
+	 * Forget all the players and the pending messages
+	 */
+	public void reset() {
+		for (Outgoing outgoing : _window) {
+			outgoing.used = false;
+		}
+		Arrays.fill(_peers, null);
+		_peerCount = 0;
+		_nextSequence = 0;
+	}
+
+	/**
+	 * Gets the number of messages waiting for acknowledgement
+	 * @return The number of pending messages
+	 */
+	public int getPendingCount() {
+		int count = 0;
+		for (Outgoing outgoing : _window) {
+			if (outgoing.used) count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Gets the smoothed round trip time to a player
+	 * @param playerId The player identifier
+	 * @return The round trip time in milliseconds, -1 if there is no measurement yet
+	 */
+	public float getRoundTripTime(String playerId) {
+		for (int i = 0; i < _peerCount; i++) {
+			final Peer peer = _peers[i];
+			if (peer.hasRtt && peer.playerId != null && peer.playerId.equals(playerId)) {
+				return peer.smoothedRtt;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Gets the average smoothed round trip time over all the players
+	 * @return The round trip time in milliseconds, -1 if there is no measurement yet
+	 */
+	public float getAverageRoundTripTime() {
+		float total = 0;
+		int count = 0;
+		for (int i = 0; i < _peerCount; i++) {
+			if (_peers[i].hasRtt) {
+				total += _peers[i].smoothedRtt;
+				count++;
+			}
+		}
+		return (count == 0) ? -1 : total / count;
+	}
+
+	/**
+	 * Gets the number of messages sent (retransmissions not included)
+	 * @return The number of messages sent
+	 */
+	public long getMessagesSent() {
+		return _messagesSent;
+	}
+
+	/**
+	 * Gets the number of messages delivered to the listener
+	 * @return The number of messages delivered
+	 */
+	public long getMessagesDelivered() {
+		return _messagesDelivered;
+	}
+
+	/**
+	 * Gets the number of retransmissions
+	 * @return The number of retransmissions
+	 */
+	public long getRetransmits() {
+		return _retransmits;
+	}
+
+	/**
+	 * Gets the number of received messages which were already received before
+	 * @return The number of duplicates
+	 */
+	public long getDuplicates() {
+		return _duplicates;
+	}
+
+	/**
+	 * Gets the number of messages given up after {@link #setMaxRetransmits(int)} retransmissions
+	 * @return The number of expired messages
+	 */
+	public long getExpired() {
+		return _expired;
+	}
+
+	/**
+	 * Gets the number of acknowledgement only packets sent
+	 * @return The number of ack packets
+	 */
+	public long getAcksSent() {
+		return _acksSent;
+	}
+
+	/**
+	 * Handle a received unreliable message
+	 * @return true if the message belongs to the channel, false if it should be forwarded
+	 */
+	private boolean receive(byte[] data, int offset, int length, String playerId) {
+		if (length < HEADER_SIZE + 1 || data[offset] != CHANNEL_HEADER) return false;
+
+		final int type = data[offset + 1];
+		if (type != TYPE_DATA && type != TYPE_ACK) return false;
+
+		final int endpointId = readInt(data, offset + 2);
+		int position = offset + HEADER_SIZE;
+		final int end = offset + length;
+
+		int sequence = -1;
+		if (type == TYPE_DATA) {
+			if (position + 2 > end) return true;
+			sequence = readShort(data, position);
+			position += 2;
+		}
+
+		if (position + 1 > end) return true;
+		final int ackCount = data[position++] & 0xFF;
+		if (position + ackCount * ACK_ENTRY_SIZE > end) return true;
+
+		final Peer peer = findPeer(endpointId, playerId, true);
+		if (peer == null) return true;
+
+		final int peerBit = peerBit(peer);
+		for (int i = 0; i < ackCount; i++) {
+			if (readInt(data, position) == _endpointId) {
+				onAcks(peer, peerBit, readShort(data, position + 4), readInt(data, position + 6));
+			}
+			position += ACK_ENTRY_SIZE;
+		}
+
+		if (type == TYPE_DATA && position < end) {
+			onData(peer, sequence, data, position, end - position);
+		}
+
+		return true;
+	}
+
+	private void onAcks(Peer peer, int peerBit, int latest, int bits) {
+		final long now = currentTimeMillis();
+
+		for (Outgoing outgoing : _window) {
+			if (!outgoing.used || (outgoing.ackedPeers & peerBit) != 0) continue;
+
+			final int distance = (latest - outgoing.sequence) & 0xFFFF;
+			final boolean acked = (distance == 0) || (distance <= ACK_BITS && ((bits >>> (distance - 1)) & 1) != 0);
+			if (!acked) continue;
+
+			outgoing.ackedPeers |= peerBit;
+
+			// Karn's algorithm: only the messages which were not retransmitted give a valid sample
+			if (outgoing.retransmits == 0) {
+				onRttSample(peer, now - outgoing.firstSendMillis);
+			}
+
+			if (isAckedByAll(outgoing)) {
+				outgoing.used = false;
+			}
+		}
+	}
+
+	private void onRttSample(Peer peer, long sample) {
+		if (!peer.hasRtt) {
+			peer.smoothedRtt = sample;
+			peer.rttVariance = sample / 2f;
+			peer.hasRtt = true;
+		}
+		else {
+			peer.rttVariance = 0.75f * peer.rttVariance + 0.25f * Math.abs(peer.smoothedRtt - sample);
+			peer.smoothedRtt = 0.875f * peer.smoothedRtt + 0.125f * sample;
+		}
+
+		final long rto = (long)(peer.smoothedRtt + Math.max(1f, 4 * peer.rttVariance));
+		peer.rto = Math.max(MIN_RTO_MILLIS, Math.min(MAX_RTO_MILLIS, rto));
+	}
+
+	private void onData(Peer peer, int sequence, byte[] data, int offset, int length) {
+		peer.ackPending = true;
+
+		if (!peer.hasReceived) {
+			peer.hasReceived = true;
+			peer.latestReceived = sequence;
+			peer.receivedBits = 0;
+		}
+		else {
+			final int distance = (sequence - peer.latestReceived) & 0xFFFF;
+			if (distance == 0) {
+				_duplicates++;
+				return;
+			}
+
+			if (distance < 0x8000) {
+				// Newer than the latest received sequence, the previous latest becomes bit (distance - 1)
+				if (distance > ACK_BITS) {
+					peer.receivedBits = 0;
+				}
+				else {
+					final int shifted = (distance == ACK_BITS) ? 0 : peer.receivedBits << distance;
+					peer.receivedBits = shifted | (1 << (distance - 1));
+				}
+				peer.latestReceived = sequence;
+			}
+			else {
+				final int age = (peer.latestReceived - sequence) & 0xFFFF;
+				if (age > ACK_BITS || ((peer.receivedBits >>> (age - 1)) & 1) != 0) {
+					_duplicates++;
+					return;
+				}
+				peer.receivedBits |= 1 << (age - 1);
+			}
+		}
+
+		if (!_ordered) {
+			deliver(peer, data, offset, length);
+			return;
+		}
+
+		final int ahead = (sequence - peer.nextDelivery) & 0xFFFF;
+		if (ahead >= 0x8000) {
+			_duplicates++;
+			return;
+		}
+		if (ahead >= ACK_BITS) {
+			// Too far ahead to be buffered, skip the missing messages rather than stalling the channel
+			skipTo(peer, sequence);
+		}
+
+		if (sequence != peer.nextDelivery) {
+			final int slot = sequence & (ACK_BITS - 1);
+			if (peer.reorderData[slot] == null || peer.reorderData[slot].length < length) {
+				peer.reorderData[slot] = new byte[Math.max(length, 64)];
+			}
+			System.arraycopy(data, offset, peer.reorderData[slot], 0, length);
+			peer.reorderLength[slot] = length;
+			peer.reorderUsed[slot] = true;
+			return;
+		}
+
+		deliver(peer, data, offset, length);
+		peer.nextDelivery = (peer.nextDelivery + 1) & 0xFFFF;
+		deliverBuffered(peer);
+	}
+
+	private void deliverBuffered(Peer peer) {
+		while (true) {
+			final int slot = peer.nextDelivery & (ACK_BITS - 1);
+			if (!peer.reorderUsed[slot]) return;
+
+			peer.reorderUsed[slot] = false;
+			peer.nextDelivery = (peer.nextDelivery + 1) & 0xFFFF;
+			deliver(peer, peer.reorderData[slot], 0, peer.reorderLength[slot]);
+		}
+	}
+
+	private void skipTo(Peer peer, int sequence) {
+		while (((sequence - peer.nextDelivery) & 0xFFFF) >= ACK_BITS) {
+			final int slot = peer.nextDelivery & (ACK_BITS - 1);
+			if (peer.reorderUsed[slot]) {
+				peer.reorderUsed[slot] = false;
+				deliver(peer, peer.reorderData[slot], 0, peer.reorderLength[slot]);
+			}
+			peer.nextDelivery = (peer.nextDelivery + 1) & 0xFFFF;
+		}
+	}
+
+	private void deliver(Peer peer, byte[] data, int offset, int length) {
+		_messagesDelivered++;
+		_listener.onChannelMessage(data, offset, length, peer.playerId);
+	}
+
+	private void sendData(Outgoing outgoing) {
+		int position = writeHeader(TYPE_DATA, 2 + outgoing.length);
+		position = writeShort(_packet, position, outgoing.sequence);
+		position = writeAcks(position);
+		System.arraycopy(outgoing.data, 0, _packet, position, outgoing.length);
+		position += outgoing.length;
+
+		_tournaments.unreliablePushDataToOtherPlayers(Arrays.copyOf(_packet, position));
+	}
+
+	private void sendAck() {
+		int position = writeHeader(TYPE_ACK, 0);
+		position = writeAcks(position);
+
+		_tournaments.unreliablePushDataToOtherPlayers(Arrays.copyOf(_packet, position));
+		_acksSent++;
+	}
+
+	private int writeHeader(int type, int extra) {
+		final int size = HEADER_SIZE + 1 + _peerCount * ACK_ENTRY_SIZE + extra;
+		if (_packet.length < size) {
+			_packet = new byte[Math.max(size, _packet.length * 2)];
+		}
+
+		_packet[0] = CHANNEL_HEADER;
+		_packet[1] = (byte)type;
+		return writeInt(_packet, 2, _endpointId);
+	}
+
+	private int writeAcks(int position) {
+		int count = 0;
+		final int countPosition = position++;
+
+		for (int i = 0; i < _peerCount; i++) {
+			final Peer peer = _peers[i];
+			if (!peer.hasReceived) continue;
+
+			position = writeInt(_packet, position, peer.endpointId);
+			position = writeShort(_packet, position, peer.latestReceived);
+			position = writeInt(_packet, position, peer.receivedBits);
+			peer.ackPending = false;
+			count++;
+		}
+
+		_packet[countPosition] = (byte)count;
+		return position;
+	}
+
+	private Peer findPeer(int endpointId, String playerId, boolean create) {
+		for (int i = 0; i < _peerCount; i++) {
+			if (_peers[i].endpointId == endpointId) {
+				return _peers[i];
+			}
+		}
+
+		if (!create || _peerCount == MAX_PEERS) return null;
+
+		final Peer peer = new Peer();
+		peer.endpointId = endpointId;
+		peer.playerId = playerId;
+		_peers[_peerCount++] = peer;
+		return peer;
+	}
+
+	private int peerBit(Peer peer) {
+		for (int i = 0; i < _peerCount; i++) {
+			if (_peers[i] == peer) {
+				return 1 << i;
+			}
+		}
+		return 0;
+	}
+
+	private int allPeersMask() {
+		return (_peerCount == 32) ? -1 : (1 << _peerCount) - 1;
+	}
+
+	/**
+	 * Can the message be freed: all the players are known and acknowledged it
+	 */
+	private boolean isAckedByAll(Outgoing outgoing) {
+		final int allPeers = allPeersMask();
+		return allPeers != 0 && hasAllPlayers() && (outgoing.ackedPeers & allPeers) == allPeers;
+	}
+
+	/**
+	 * Timeout of a message: the largest RTO of the players which did not acknowledge it yet, the unknown players use the initial RTO
+	 */
+	private long retransmitTimeout(Outgoing outgoing) {
+		long timeout = (_peerCount == 0 || !hasAllPlayers()) ? INITIAL_RTO_MILLIS : MIN_RTO_MILLIS;
+		for (int i = 0; i < _peerCount; i++) {
+			if ((outgoing.ackedPeers & (1 << i)) == 0) {
+				timeout = Math.max(timeout, _peers[i].rto);
+			}
+		}
+		return timeout;
+	}
+
+	/**
+	 * Gets the channel clock, overridden by the tests to follow a simulated clock
+	 * @return The time in milliseconds
+	 */
+	long currentTimeMillis() {
+		return System.nanoTime() / 1000000L;
+	}
+
+	private static int readInt(byte[] data, int position) {
+		return ((data[position] & 0xFF) << 24) | ((data[position + 1] & 0xFF) << 16)
+				| ((data[position + 2] & 0xFF) << 8) | (data[position + 3] & 0xFF);
+	}
+
+	private static int readShort(byte[] data, int position) {
+		return ((data[position] & 0xFF) << 8) | (data[position + 1] & 0xFF);
+	}
+
+	private static int writeInt(byte[] data, int position, int value) {
+		data[position] = (byte)(value >>> 24);
+		data[position + 1] = (byte)(value >>> 16);
+		data[position + 2] = (byte)(value >>> 8);
+		data[position + 3] = (byte)value;
+		return position + 4;
+	}
+
+	private static int writeShort(byte[] data, int position, int value) {
+		data[position] = (byte)(value >>> 8);
+		data[position + 1] = (byte)value;
+		return position + 2;
+	}
+}
@@ -0,0 +1,79 @@
+//
+//  Nextpeer libGDX plugin
+//  http://www.nextpeer.com
+//
+//  Created by Nextpeer development team.
+//  Copyright (c) 2014 Innobell, Ltd. All rights reserved.
+//
+
+package com.nextpeer.libgdx;
+
+/**
+ * Reads the values written by {@link BitWriter}. The reader can be reset over a new array, it never copies the data.
+ */
+public final class BitReader {
+
+	private byte[] _buffer;
+	private int _bitPosition;
+	private int _bitLimit;
+
+	/**
+	 * Start reading a new buffer
+	 * @param buffer The array holding the data
+	 * @param offset The offset of the data in {@code buffer}
+	 * @param length The length of the data in bytes
+	 */
+	public void reset(byte[] buffer, int offset, int length) {
+		if (offset < 0 || length < 0 || offset + length > buffer.length) {
+			throw new IndexOutOfBoundsException("offset: " + offset + ", length: " + length + ", size: " + buffer.length);
+		}
+
+		_buffer = buffer;
+		_bitPosition = offset << 3;
+		_bitLimit = (offset + length) << 3;
+	}
+
+	/**
+	 * Read an unsigned value
+	 * @param bits The number of bits to read, between 0 and 32
+	 * @return The value
+	 * @throws IndexOutOfBoundsException if there are not enough bits left.
+	 */
+	public int read(int bits) {
+		if (bits < 0 || bits > 32) {
+			throw new IllegalArgumentException("bits must be between 0 and 32: " + bits);
+		}
+		if (_bitPosition + bits > _bitLimit) {
+			throw new IndexOutOfBoundsException("not enough bits left: " + (_bitLimit - _bitPosition) + " < " + bits);
+		}
+
+		int value = 0;
+		while (bits > 0) {
+			final int bitOffset = _bitPosition & 7;
+			final int chunk = Math.min(8 - bitOffset, bits);
+			final int chunkValue = (_buffer[_bitPosition >>> 3] >>> (8 - bitOffset - chunk)) & ((1 << chunk) - 1);
+
+			value = (value << chunk) | chunkValue;
+			_bitPosition += chunk;
+			bits -= chunk;
+		}
+
+		return value;
+	}
+
+	/**
+	 * Read a single bit
+	 * @return The bit value
+	 */
+	public boolean readBoolean() {
+		return read(1) != 0;
+	}
+
+	/**
+	 * Gets the number of bits left to read
+	 * @return The number of bits left
+	 */
+	public int getRemainingBits() {
+		return _bitLimit - _bitPosition;
+	}
+}
@@ -0,0 +1,108 @@
+//
+//  Nextpeer libGDX plugin
+//  http://www.nextpeer.com
+//
+//  Created by Nextpeer development team.
+//  Copyright (c) 2014 Innobell, Ltd. All rights reserved.
+//
+
+package com.nextpeer.libgdx;
+
+import java.util.Arrays;
+
+/**
+ * Writes values of arbitrary bit width into a reusable, growing byte array (most significant bit first).
+ */
+public final class BitWriter {
+
+	private byte[] _buffer;
+	private int _bitPosition;
+
+	/**
+	 * Constructor for the BitWriter class
+	 * @param initialCapacity The initial size of the buffer in bytes
+	 */
+	public BitWriter(int initialCapacity) {
+		_buffer = new byte[Math.max(1, initialCapacity)];
+	}
+
+	/**
+	 * Start writing from the beginning of the buffer again
+	 */
+	public void reset() {
+		Arrays.fill(_buffer, 0, getByteLength(), (byte)0);
+		_bitPosition = 0;
+	}
+
+	/**
+	 * Write the low bits of a value
+	 * @param value The value to write
+	 * @param bits The number of bits to write, between 0 and 32
+	 */
+	public void write(int value, int bits) {
+		if (bits < 0 || bits > 32) {
+			throw new IllegalArgumentException("bits must be between 0 and 32: " + bits);
+		}
+
+		ensureCapacity(_bitPosition + bits);
+
+		while (bits > 0) {
+			final int byteIndex = _bitPosition >>> 3;
+			final int bitOffset = _bitPosition & 7;
+			final int chunk = Math.min(8 - bitOffset, bits);
+			final int shift = bits - chunk;
+			final int chunkValue = (value >>> shift) & ((1 << chunk) - 1);
+
+			_buffer[byteIndex] |= (byte)(chunkValue << (8 - bitOffset - chunk));
+			_bitPosition += chunk;
+			bits -= chunk;
+		}
+	}
+
+	/**
+	 * Write a single bit
+	 * @param value The bit value
+	 */
+	public void writeBoolean(boolean value) {
+		write(value ? 1 : 0, 1);
+	}
+
+	/**
+	 * Gets the number of bits written
+	 * @return The number of bits written
+	 */
+	public int getBitLength() {
+		return _bitPosition;
+	}
+
+	/**
+	 * Gets the number of bytes used by the written bits
+	 * @return The number of bytes written, rounded up
+	 */
+	public int getByteLength() {
+		return (_bitPosition + 7) >>> 3;
+	}
+
+	/**
+	 * Gets the backing buffer, valid up to {@link #getByteLength()}
+	 * @return The backing buffer
+	 */
+	public byte[] getBuffer() {
+		return _buffer;
+	}
+
+	/**
+	 * Copy the written bytes into a new array, as expected by the push methods
+	 * @return A new array holding the written bytes
+	 */
+	public byte[] toByteArray() {
+		return Arrays.copyOf(_buffer, getByteLength());
+	}
+
+	private void ensureCapacity(int bits) {
+		final int bytes = (bits + 7) >>> 3;
+		if (bytes <= _buffer.length) return;
+
+		_buffer = Arrays.copyOf(_buffer, Math.max(bytes, _buffer.length * 2));
+	}
+}
@@ -0,0 +1,524 @@
+//
+//  Nextpeer libGDX plugin
+//  http://www.nextpeer.com
+//
+//  Created by Nextpeer development team.
+//  Copyright (c) 2014 Innobell, Ltd. All rights reserved.
+//
+
+package com.nextpeer.libgdx;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.zip.Adler32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Tournaments layer compressing the repetitive reliable messages (event descriptors, replay segments, inventory dumps) with deflate,
+ * optionally primed with a dictionary shared by all the players.
+ * <p>Only the messages of at least {@link #setThreshold(int) threshold} bytes are compressed, and they are sent as is when the compressed
+ * message would not be smaller. After {@link #INCOMPRESSIBLE_STREAK} incompressible messages in a row, only one message out of
+ * {@link #INCOMPRESSIBLE_PROBE_INTERVAL} is tried until one shrinks again, so an incompressible stream costs little CPU.</p>
+ * <p>Compressed layout: one {@link #COMPRESSED_HEADER} byte, the uncompressed length (varint) then the zlib stream.
+ * Uncompressed messages starting with one of the two header bytes are prefixed with {@link #RAW_HEADER}, the others are sent unchanged.
+ * The deflater, the inflater and the work buffers are reused. All the players should use the layer with the same dictionary,
+ * a message compressed with another dictionary is dropped. The unreliable channel is not compressed.</p>
+ * <p>When stacked with {@link FragmentingTournaments}, wrap the fragmenting layer with this one so the messages are compressed before being split.</p>
+ * <p><strong>Note:</strong> The messages should be pushed from the game (render) thread.</p>
+ */
+public class CompressingTournaments extends TournamentsWrapper {
+
+	/**
+	 * First byte of a compressed message
+	 */
+	public static final byte COMPRESSED_HEADER = (byte)0xD1;
+
+	/**
+	 * First byte of an uncompressed message which would otherwise start with a header byte
+	 */
+	public static final byte RAW_HEADER = (byte)0xD0;
+
+	/**
+	 * Default size from which the messages are compressed
+	 */
+	public static final int DEFAULT_THRESHOLD = 128;
+
+	/**
+	 * Default limit of the uncompressed length of a received message
+	 */
+	public static final int DEFAULT_MAX_MESSAGE_SIZE = 1024 * 1024;
+
+	/**
+	 * Largest useful dictionary, the deflate window size
+	 */
+	public static final int MAX_DICTIONARY_SIZE = 32 * 1024;
+
+	/**
+	 * Number of incompressible messages in a row after which the compression is only probed
+	 */
+	public static final int INCOMPRESSIBLE_STREAK = 8;
+
+	/**
+	 * Once probing, one message out of this number is tried
+	 */
+	public static final int INCOMPRESSIBLE_PROBE_INTERVAL = 16;
+
+	private final byte[] _dictionary;
+	private final int _dictionaryId;
+	private final int _maxMessageSize;
+	private int _threshold = DEFAULT_THRESHOLD;
+
+	// Send side, game thread only
+	private final Deflater _deflater;
+	private byte[] _deflateBuffer = new byte[256];
+	private int _incompressibleStreak;
+
+	// Receive side, guarded by _inflater
+	private final Inflater _inflater = new Inflater();
+	private byte[] _inflateBuffer = new byte[256];
+
+	private long _messagesCompressed;
+	private long _messagesSkipped;
+	private long _uncompressedBytes;
+	private long _compressedBytes;
+	private long _compressNanos;
+	private volatile long _messagesDecompressed;
+	private volatile long _decompressFailures;
+	private volatile long _decompressNanos;
+
+	/**
+	 * Constructor for the CompressingTournaments class
+	 * @param tournaments The Tournaments instance to wrap
+	 * @param dictionary The dictionary shared by all the players, see {@link #trainDictionary(byte[][], int)}, null for none
+	 * @param level The deflate level, from {@link Deflater#BEST_SPEED} to {@link Deflater#BEST_COMPRESSION}
+	 * @param maxMessageSize The limit of the uncompressed length of a received message, larger messages are dropped
+	 * @throws IllegalArgumentException if {@code level} is invalid, {@code dictionary} is empty or {@code maxMessageSize} is zero or negative.
+	 */
+	public CompressingTournaments(Tournaments tournaments, byte[] dictionary, int level, int maxMessageSize) {
+		super(tournaments);
+
+		if (level != Deflater.DEFAULT_COMPRESSION && (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION)) {
+			throw new IllegalArgumentException("invalid level: " + level);
+		}
+		if (dictionary != null && dictionary.length == 0) {
+			throw new IllegalArgumentException("dictionary cannot be empty");
+		}
+		if (maxMessageSize <= 0) {
+			throw new IllegalArgumentException("maxMessageSize must be positive: " + maxMessageSize);
+		}
+
+		_deflater = new Deflater(level);
+		_maxMessageSize = maxMessageSize;
+		if (dictionary != null) {
+			_dictionary = dictionary.clone();
+			final Adler32 adler = new Adler32();
+			adler.update(_dictionary, 0, _dictionary.length);
+			_dictionaryId = (int)adler.getValue();
+		}
+		else {
+			_dictionary = null;
+			_dictionaryId = 0;
+		}
+	}
+
+	/**
+	 * Constructor for the CompressingTournaments class with the default level and message size limit
+	 * @param tournaments The Tournaments instance to wrap
+	 * @param dictionary The dictionary shared by all the players, null for none
+	 */
+	public CompressingTournaments(Tournaments tournaments, byte[] dictionary) {
+		this(tournaments, dictionary, Deflater.DEFAULT_COMPRESSION, DEFAULT_MAX_MESSAGE_SIZE);
+	}
+
+	/**
+	 * Constructor for the CompressingTournaments class without dictionary
+	 * @param tournaments The Tournaments instance to wrap
+	 */
+	public CompressingTournaments(Tournaments tournaments) {
+		this(tournaments, null);
+	}
+
+	/**
+	 * Build a dictionary from typical game messages. Identical samples are kept once, the most frequent ones last since deflate
+	 * reaches the end of the dictionary with the shortest distances, and the dictionary is cut from the start to {@code maxSize}.
+	 * <p>Build it offline from recorded messages and ship it with the game, all the players need the same bytes.</p>
+	 * @param samples The sample messages
+	 * @param maxSize The dictionary size limit, at most {@link #MAX_DICTIONARY_SIZE}
+	 * @return The dictionary
+	 * @throws IllegalArgumentException if {@code samples} is empty or {@code maxSize} is zero or negative.
+	 */
+	public static byte[] trainDictionary(byte[][] samples, int maxSize) {
+		if (samples == null || samples.length == 0) {
+			throw new IllegalArgumentException("samples cannot be empty");
+		}
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+		}
+
+		final HashMap<SampleKey, SampleKey> counts = new HashMap<SampleKey, SampleKey>();
+		final ArrayList<SampleKey> unique = new ArrayList<SampleKey>();
+		for (byte[] sample : samples) {
+			if (sample == null || sample.length == 0) continue;
+
+			final SampleKey key = new SampleKey(sample);
+			final SampleKey existing = counts.get(key);
+			if (existing != null) {
+				existing.count++;
+			}
+			else {
+				counts.put(key, key);
+				unique.add(key);
+			}
+		}
+
+		// Stable sort, least frequent first
+		Collections.sort(unique);
+
+		final int limit = Math.min(maxSize, MAX_DICTIONARY_SIZE);
+		final byte[] dictionary = new byte[limit];
+		int start = limit;
+		for (int i = unique.size() - 1; i >= 0 && start > 0; i--) {
+			final byte[] sample = unique.get(i).data;
+			final int length = Math.min(sample.length, start);
+			start -= length;
+			System.arraycopy(sample, sample.length - length, dictionary, start, length);
+		}
+		return (start == 0) ? dictionary : Arrays.copyOfRange(dictionary, start, limit);
+	}
+
+	/**
+	 * Set the size from which the messages are compressed
+	 * @param threshold The size in bytes
+	 * @throws IllegalArgumentException if {@code threshold} is negative.
+	 */
+	public void setThreshold(int threshold) {
+		if (threshold < 0) {
+			throw new IllegalArgumentException("threshold cannot be negative: " + threshold);
+		}
+
+		_threshold = threshold;
+	}
+
+	/**
+	 * Send a message, compressed if it is large enough and shrinks
+	 */
+	@Override
+	public void pushDataToOtherPlayers(byte[] data) {
+		if (data == null || data.length == 0) {
+			super.pushDataToOtherPlayers(data);
+			return;
+		}
+
+		_uncompressedBytes += data.length;
+
+		final byte[] compressed = (data.length >= _threshold && shouldTry()) ? compress(data) : null;
+		if (compressed != null) {
+			_compressedBytes += compressed.length;
+			super.pushDataToOtherPlayers(compressed);
+			return;
+		}
+
+		_messagesSkipped++;
+		if (data[0] == COMPRESSED_HEADER || data[0] == RAW_HEADER) {
+			final byte[] escaped = new byte[data.length + 1];
+			escaped[0] = RAW_HEADER;
+			System.arraycopy(data, 0, escaped, 1, data.length);
+			_compressedBytes += escaped.length;
+			super.pushDataToOtherPlayers(escaped);
+		}
+		else {
+			_compressedBytes += data.length;
+			super.pushDataToOtherPlayers(data);
+		}
+	}
+
+	/**
+	 * Gets the number of sent messages which were compressed
+	 * @return The number of compressed messages
+	 */
+	public long getMessagesCompressed() {
+		return _messagesCompressed;
+	}
+
+	/**
+	 * Gets the number of sent messages which were not compressed (too small, incompressible or not tried)
+	 * @return The number of uncompressed messages
+	 */
+	public long getMessagesSkipped() {
+		return _messagesSkipped;
+	}
+
+	/**
+	 * Gets the size of the sent messages before compression
+	 * @return The number of bytes pushed by the game
+	 */
+	public long getUncompressedBytes() {
+		return _uncompressedBytes;
+	}
+
+	/**
+	 * Gets the size of the sent messages after compression, headers included
+	 * @return The number of bytes pushed to the wrapped instance
+	 */
+	public long getCompressedBytes() {
+		return _compressedBytes;
+	}
+
+	/**
+	 * Gets the compression ratio of the sent messages
+	 * @return The sent size divided by the size pushed by the game, 1 when nothing was sent
+	 */
+	public float getCompressionRatio() {
+		return (_uncompressedBytes == 0) ? 1f : (float)_compressedBytes / _uncompressedBytes;
+	}
+
+	/**
+	 * Gets the time spent compressing, including the attempts on incompressible messages
+	 * @return The time in nanoseconds
+	 */
+	public long getCompressNanos() {
+		return _compressNanos;
+	}
+
+	/**
+	 * Gets the number of received messages which were decompressed
+	 * @return The number of decompressed messages
+	 */
+	public long getMessagesDecompressed() {
+		return _messagesDecompressed;
+	}
+
+	/**
+	 * Gets the number of received compressed messages which were dropped (corrupted, other dictionary or too large)
+	 * @return The number of dropped messages
+	 */
+	public long getDecompressFailures() {
+		return _decompressFailures;
+	}
+
+	/**
+	 * Gets the time spent decompressing
+	 * @return The time in nanoseconds
+	 */
+	public long getDecompressNanos() {
+		return _decompressNanos;
+	}
+
+	/**
+	 * Release the native memory of the deflater and the inflater, the instance cannot be used afterwards
+	 */
+	public void dispose() {
+		_deflater.end();
+		synchronized (_inflater) {
+			_inflater.end();
+		}
+	}
+
+	@Override
+	protected void onWrappedReceiveTournamentCustomMessage(NextpeerTournamentCustomMessage message) {
+		final byte[] data = message.customMessage;
+		if (data == null || data.length == 0 || (data[0] != COMPRESSED_HEADER && data[0] != RAW_HEADER)) {
+			super.onWrappedReceiveTournamentCustomMessage(message);
+			return;
+		}
+
+		final byte[] decoded;
+		if (data[0] == RAW_HEADER) {
+			decoded = Arrays.copyOfRange(data, 1, data.length);
+		}
+		else {
+			synchronized (_inflater) {
+				final int length = decompress(data, 0, data.length);
+				if (length < 0) return;
+				decoded = Arrays.copyOf(_inflateBuffer, length);
+			}
+		}
+
+		super.onWrappedReceiveTournamentCustomMessage(new NextpeerTournamentCustomMessage(message.playerId, message.playerName,
+				message.playerImageUrl, decoded, message.playerIsBot, message.playerHandle));
+	}
+
+	@Override
+	protected void onWrappedReceivePooledTournamentCustomMessage(PooledTournamentCustomMessage message) {
+		final byte[] data = message.getData();
+		final int offset = message.getOffset();
+		if (message.getLength() == 0 || (data[offset] != COMPRESSED_HEADER && data[offset] != RAW_HEADER)) {
+			super.onWrappedReceivePooledTournamentCustomMessage(message);
+			return;
+		}
+
+		final PooledTournamentCustomMessage decoded;
+		if (data[offset] == RAW_HEADER) {
+			decoded = message.getPool().obtainView(message, 1, message.getLength() - 1);
+		}
+		else {
+			synchronized (_inflater) {
+				final int length = decompress(data, offset, message.getLength());
+				if (length < 0) return;
+				decoded = message.getPool().obtain(message.getPlayerId(), message.getPlayerName(), message.getPlayerImageUrl(),
+						_inflateBuffer, 0, length, message.isPlayerBot(), message.getPlayerHandle());
+			}
+		}
+
+		try {
+			super.onWrappedReceivePooledTournamentCustomMessage(decoded);
+		}
+		finally {
+			decoded.release();
+		}
+	}
+
+	private boolean shouldTry() {
+		if (_incompressibleStreak < INCOMPRESSIBLE_STREAK) return true;
+
+		_incompressibleStreak++;
+		return (_incompressibleStreak - INCOMPRESSIBLE_STREAK) % INCOMPRESSIBLE_PROBE_INTERVAL == 0;
+	}
+
+	/**
+	 * Compress a message
+	 * @return The compressed message, null if it would not be smaller
+	 */
+	private byte[] compress(byte[] data) {
+		final long start = System.nanoTime();
+
+		if (_deflateBuffer.length < data.length) {
+			_deflateBuffer = new byte[Math.max(data.length, _deflateBuffer.length * 2)];
+		}
+
+		final byte[] buffer = _deflateBuffer;
+		buffer[0] = COMPRESSED_HEADER;
+		int position = writeVarint(buffer, 1, data.length);
+		final int limit = data.length - 1;
+
+		final Deflater deflater = _deflater;
+		deflater.reset();
+		if (_dictionary != null) {
+			deflater.setDictionary(_dictionary);
+		}
+		deflater.setInput(data);
+		deflater.finish();
+		while (!deflater.finished() && position < limit) {
+			position += deflater.deflate(buffer, position, limit - position);
+		}
+
+		final boolean shrunk = deflater.finished() && position < data.length;
+		_compressNanos += System.nanoTime() - start;
+
+		if (!shrunk) {
+			if (_incompressibleStreak < INCOMPRESSIBLE_STREAK) {
+				_incompressibleStreak++;
+			}
+			return null;
+		}
+
+		_incompressibleStreak = 0;
+		_messagesCompressed++;
+		return Arrays.copyOf(buffer, position);
+	}
+
+	/**
+	 * Decompress a message to the inflate buffer, must be called with the _inflater lock held
+	 * @return The uncompressed length, -1 if the message was dropped
+	 */
+	private int decompress(byte[] data, int offset, int length) {
+		final long start = System.nanoTime();
+		final int end = offset + length;
+
+		// Uncompressed length
+		int position = offset + 1;
+		int total = 0;
+		int shift = 0;
+		while (true) {
+			if (position == end || shift > 28) {
+				_decompressFailures++;
+				return -1;
+			}
+			final int b = data[position++];
+			total |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) break;
+			shift += 7;
+		}
+		if (total < 0 || total > _maxMessageSize) {
+			_decompressFailures++;
+			return -1;
+		}
+
+		// One spare byte so the end of the stream is read and a longer stream is detected
+		if (_inflateBuffer.length <= total) {
+			_inflateBuffer = new byte[Math.max(total + 1, _inflateBuffer.length * 2)];
+		}
+
+		final Inflater inflater = _inflater;
+		inflater.reset();
+		inflater.setInput(data, position, end - position);
+		int written = 0;
+		try {
+			while (!inflater.finished()) {
+				final int n = inflater.inflate(_inflateBuffer, written, total + 1 - written);
+				written += n;
+				if (n > 0 && written <= total) continue;
+
+				if (n == 0 && inflater.needsDictionary() && _dictionary != null && inflater.getAdler() == _dictionaryId) {
+					inflater.setDictionary(_dictionary);
+					continue;
+				}
+				break;
+			}
+		}
+		catch (DataFormatException e) {
+			written = -1;
+		}
+
+		_decompressNanos += System.nanoTime() - start;
+		if (!inflater.finished() || written != total) {
+			_decompressFailures++;
+			return -1;
+		}
+
+		_messagesDecompressed++;
+		return total;
+	}
+
+	private static int writeVarint(byte[] buffer, int position, int value) {
+		while ((value & ~0x7F) != 0) {
+			buffer[position++] = (byte)((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		buffer[position++] = (byte)value;
+		return position;
+	}
+
+	/**
+	 * Sample of the dictionary training, compared by content
+	 */
+	private static final class SampleKey implements Comparable<SampleKey> {
+		final byte[] data;
+		final int hash;
+		int count = 1;
+
+		SampleKey(byte[] data) {
+			this.data = data;
+			this.hash = Arrays.hashCode(data);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return (other instanceof SampleKey) && Arrays.equals(data, ((SampleKey)other).data);
+		}
+
+		@Override
+		public int compareTo(SampleKey other) {
+			return (count < other.count) ? -1 : ((count == other.count) ? 0 : 1);
+		}
+	}
+}
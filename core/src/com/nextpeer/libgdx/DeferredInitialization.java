@@ -0,0 +1,304 @@
+//
+//  Nextpeer libGDX plugin
+//  http://www.nextpeer.com
+//
+//  Created by Nextpeer development team.
+//  Copyright (c) 2014 Innobell, Ltd. All rights reserved.
+//
+
+package com.nextpeer.libgdx;
+
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs the platform SDK setup on a background executor so it does not add to the game start time, and queues the calls made before
+ * it is done. Used by the platform implementations, see {@link Tournaments#isReady()} and {@link Tournaments#getInitialization()}.
+ * <p>The calls given to {@link #runWhenReady(Runnable)} before the setup is done are replayed in order once it is, on the replay executor
+ * (for example the UI thread), and the instance becomes ready only once they all ran so a later call can't overtake them.
+ * If the setup fails the queued calls are dropped and the instance never becomes ready.</p>
+ * <p>The setup and the time to ready are measured, to track the startup time.</p>
+ */
+public final class DeferredInitialization {
+
+	/**
+	 * {@link #start(Executor, Runnable, Executor)} was not called
+	 */
+	public static final int STATE_NOT_STARTED = 0;
+
+	/**
+	 * The setup is queued or running, or the queued calls are being replayed
+	 */
+	public static final int STATE_INITIALIZING = 1;
+
+	/**
+	 * The setup is done and the queued calls ran
+	 */
+	public static final int STATE_READY = 2;
+
+	/**
+	 * The setup threw an exception
+	 */
+	public static final int STATE_FAILED = 3;
+
+	/**
+	 * Runs the given tasks on the calling thread, for a synchronous setup
+	 */
+	public static final Executor DIRECT_EXECUTOR = new Executor() {
+		@Override
+		public void execute(Runnable command) {
+			command.run();
+		}
+	};
+
+	private final Object _lock = new Object();
+
+	// Guarded by _lock
+	private int _state = STATE_NOT_STARTED;
+	private ArrayList<Runnable> _pendingCalls = new ArrayList<Runnable>();
+	private Executor _replayExecutor;
+	private Throwable _failure;
+	private int _queuedCallCount;
+	private int _droppedCallCount;
+
+	// Set once the queued calls ran, read without locking on the send path
+	private volatile boolean _ready;
+
+	private volatile long _startNanos;
+	private volatile long _setupStartNanos;
+	private volatile long _setupEndNanos;
+	private volatile long _readyNanos;
+
+	/**
+	 * Start the setup. A setup failure is not thrown, even an {@link Error}, it is kept for {@link #getFailure()}.
+	 * @param executor The executor running the setup, {@link #DIRECT_EXECUTOR} to run it now
+	 * @param setup The platform SDK setup
+	 * @param replayExecutor The executor replaying the queued calls, null to replay them on the setup thread
+	 * @throws IllegalArgumentException if {@code executor} or {@code setup} is null.
+	 * @throws IllegalStateException if the setup was already started.
+	 */
+	public void start(Executor executor, final Runnable setup, Executor replayExecutor) {
+		if (executor == null) {
+			throw new IllegalArgumentException("executor cannot be null");
+		}
+		if (setup == null) {
+			throw new IllegalArgumentException("setup cannot be null");
+		}
+
+		synchronized (_lock) {
+			if (_state != STATE_NOT_STARTED) {
+				throw new IllegalStateException("initialization already started");
+			}
+			_state = STATE_INITIALIZING;
+			_replayExecutor = replayExecutor;
+		}
+
+		_startNanos = System.nanoTime();
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				runSetup(setup);
+			}
+		});
+	}
+
+	/**
+	 * Run a call now if the setup is done, or queue it until it is
+	 * @param call The call to the platform SDK
+	 * @return true if the call ran now, false if it was queued or dropped because the setup failed
+	 */
+	public boolean runWhenReady(Runnable call) {
+		if (_ready) {
+			call.run();
+			return true;
+		}
+
+		synchronized (_lock) {
+			if (_state == STATE_FAILED) {
+				_droppedCallCount++;
+				return false;
+			}
+			if (_state != STATE_READY) {
+				_pendingCalls.add(call);
+				_queuedCallCount++;
+				return false;
+			}
+		}
+
+		call.run();
+		return true;
+	}
+
+	/**
+	 * Is the setup done and are the queued calls replayed. Does not lock, can be called for every message.
+	 * @return true if the platform SDK can be used, false otherwise
+	 */
+	public boolean isReady() {
+		return _ready;
+	}
+
+	/**
+	 * Gets the initialization state
+	 * @return One of the {@code STATE_...} values
+	 */
+	public int getState() {
+		synchronized (_lock) {
+			return _state;
+		}
+	}
+
+	/**
+	 * Gets the exception thrown by the setup. With {@link #DIRECT_EXECUTOR} it is known when {@code start()} returns,
+	 * with another executor it may be set at any time until the setup is over.
+	 * @return The exception, null if the setup did not fail (yet)
+	 */
+	public Throwable getFailure() {
+		synchronized (_lock) {
+			return _failure;
+		}
+	}
+
+	/**
+	 * Wait until the initialization is over, for tests or a loading screen which can't continue without the platform SDK
+	 * @param timeoutInMilliseconds The longest time to wait in milliseconds
+	 * @return true if the instance is ready, false if the setup failed or is still running
+	 * @throws InterruptedException if the thread was interrupted while waiting.
+	 */
+	public boolean awaitReady(long timeoutInMilliseconds) throws InterruptedException {
+		final long deadline = System.nanoTime() + Math.max(0, timeoutInMilliseconds) * 1000000L;
+		synchronized (_lock) {
+			while (_state == STATE_INITIALIZING || _state == STATE_NOT_STARTED) {
+				final long remaining = deadline - System.nanoTime();
+				if (remaining <= 0) break;
+				_lock.wait(Math.max(1, remaining / 1000000L));
+			}
+			return _state == STATE_READY;
+		}
+	}
+
+	/**
+	 * Gets the time spent in the setup
+	 * @return The time in milliseconds, -1 if the setup did not complete
+	 */
+	public long getSetupTimeMillis() {
+		final long end = _setupEndNanos;
+		return (end == 0) ? -1 : (end - _setupStartNanos) / 1000000L;
+	}
+
+	/**
+	 * Gets the time the setup waited for the executor
+	 * @return The time in milliseconds, -1 if the setup did not start
+	 */
+	public long getSetupDelayMillis() {
+		final long setupStart = _setupStartNanos;
+		return (setupStart == 0) ? -1 : (setupStart - _startNanos) / 1000000L;
+	}
+
+	/**
+	 * Gets the time between {@link #start(Executor, Runnable, Executor)} and the end of the replay of the queued calls
+	 * @return The time in milliseconds, -1 if the instance is not ready
+	 */
+	public long getTimeToReadyMillis() {
+		final long ready = _readyNanos;
+		return (ready == 0) ? -1 : (ready - _startNanos) / 1000000L;
+	}
+
+	/**
+	 * Gets the number of calls which were queued because the setup was not done
+	 * @return The number of queued calls
+	 */
+	public int getQueuedCallCount() {
+		synchronized (_lock) {
+			return _queuedCallCount;
+		}
+	}
+
+	/**
+	 * Gets the number of calls dropped because the setup failed
+	 * @return The number of dropped calls
+	 */
+	public int getDroppedCallCount() {
+		synchronized (_lock) {
+			return _droppedCallCount;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "DeferredInitialization [state=" + getState() + ", setup=" + getSetupTimeMillis() + "ms, setupDelay=" + getSetupDelayMillis()
+				+ "ms, timeToReady=" + getTimeToReadyMillis() + "ms, queuedCalls=" + getQueuedCallCount() + "]";
+	}
+
+	private void runSetup(Runnable setup) {
+		_setupStartNanos = System.nanoTime();
+		try {
+			setup.run();
+		}
+		catch (Throwable t) {
+			synchronized (_lock) {
+				_failure = t;
+				_state = STATE_FAILED;
+				_droppedCallCount += _pendingCalls.size();
+				_pendingCalls = null;
+				_lock.notifyAll();
+			}
+			return;
+		}
+		_setupEndNanos = System.nanoTime();
+
+		final Executor replayExecutor;
+		synchronized (_lock) {
+			replayExecutor = _replayExecutor;
+			_replayExecutor = null;
+		}
+
+		final Runnable replay = new Runnable() {
+			@Override
+			public void run() {
+				replayPendingCalls();
+			}
+		};
+		if (replayExecutor != null) {
+			replayExecutor.execute(replay);
+		}
+		else {
+			replay.run();
+		}
+	}
+
+	/**
+	 * Run the queued calls in order, including the ones queued during the replay, then become ready.
+	 * A call throwing does not stop the replay, the first exception is thrown once the instance is ready.
+	 */
+	private void replayPendingCalls() {
+		RuntimeException firstException = null;
+		while (true) {
+			final ArrayList<Runnable> calls;
+			synchronized (_lock) {
+				if (_pendingCalls.isEmpty()) {
+					_pendingCalls = null;
+					_state = STATE_READY;
+					_readyNanos = System.nanoTime();
+					_ready = true;
+					_lock.notifyAll();
+					break;
+				}
+				calls = _pendingCalls;
+				_pendingCalls = new ArrayList<Runnable>();
+			}
+
+			for (Runnable call : calls) {
+				try {
+					call.run();
+				}
+				catch (RuntimeException e) {
+					if (firstException == null) {
+						firstException = e;
+					}
+				}
+			}
+		}
+
+		if (firstException != null) throw firstException;
+	}
+}
@@ -0,0 +1,164 @@
+//
+//  Nextpeer libGDX plugin
+//  http://www.nextpeer.com
+//
+//  Created by Nextpeer development team.
+//  Copyright (c) 2014 Innobell, Ltd. All rights reserved.
+//
+
+package com.nextpeer.libgdx;
+
+import java.util.Arrays;
+
+/**
+ * The state of a set of entities at a given tick, stored in primitive arrays so it can be reused every tick.
+ * Each entity has an id and the (quantized, see {@link SnapshotQuantizer}) fields described by the {@link SnapshotSchema}.
+ * <p><strong>Note:</strong> Entities must be added in ascending id order.</p>
+ */
+public final class EntitySnapshot {
+
+	public final SnapshotSchema schema;
+
+	private final int _fieldCount;
+	private final int[] _ids;
+	private final int[] _values;
+	private int _size;
+
+	/**
+	 * Constructor for the EntitySnapshot class
+	 * @param schema The entity layout
+	 * @param capacity The maximal number of entities, up to 65535
+	 * @throws IllegalArgumentException if {@code capacity} is out of range.
+	 */
+	public EntitySnapshot(SnapshotSchema schema, int capacity) {
+		if (capacity <= 0 || capacity > 0xFFFF) {
+			throw new IllegalArgumentException("capacity must be between 1 and 65535: " + capacity);
+		}
+
+		this.schema = schema;
+		_fieldCount = schema.getFieldCount();
+		_ids = new int[capacity];
+		_values = new int[capacity * _fieldCount];
+	}
+
+	/**
+	 * Remove all the entities
+	 */
+	public void clear() {
+		_size = 0;
+	}
+
+	/**
+	 * Add an entity, its fields are set to 0
+	 * @param id The entity id, must be greater than the id of the last added entity
+	 * @return The index of the entity
+	 * @throws IllegalArgumentException if {@code id} is not in ascending order.
+	 * @throws IllegalStateException if the snapshot is full.
+	 */
+	public int add(int id) {
+		if (_size == _ids.length) {
+			throw new IllegalStateException("snapshot is full: " + _size);
+		}
+		if (_size > 0 && compareIds(id, _ids[_size - 1]) <= 0) {
+			throw new IllegalArgumentException("entities must be added in ascending id order: " + id);
+		}
+
+		final int index = _size++;
+		_ids[index] = id;
+		Arrays.fill(_values, index * _fieldCount, (index + 1) * _fieldCount, 0);
+		return index;
+	}
+
+	/**
+	 * Set a field of an entity
+	 * @param index The entity index
+	 * @param field The field index
+	 * @param value The quantized field value, only the low bits declared by the schema are sent
+	 */
+	public void set(int index, int field, int value) {
+		_values[index * _fieldCount + field] = value;
+	}
+
+	/**
+	 * Gets a field of an entity
+	 * @param index The entity index
+	 * @param field The field index
+	 * @return The quantized field value
+	 */
+	public int get(int index, int field) {
+		return _values[index * _fieldCount + field];
+	}
+
+	/**
+	 * Gets the id of an entity
+	 * @param index The entity index
+	 * @return The entity id
+	 */
+	public int getId(int index) {
+		return _ids[index];
+	}
+
+	/**
+	 * Gets the number of entities
+	 * @return The number of entities
+	 */
+	public int size() {
+		return _size;
+	}
+
+	/**
+	 * Gets the maximal number of entities
+	 * @return The capacity
+	 */
+	public int capacity() {
+		return _ids.length;
+	}
+
+	/**
+	 * Find an entity by id
+	 * @param id The entity id
+	 * @return The index of the entity, a negative value if there is no such entity
+	 */
+	public int indexOf(int id) {
+		int low = 0;
+		int high = _size - 1;
+		while (low <= high) {
+			final int middle = (low + high) >>> 1;
+			final int compare = compareIds(_ids[middle], id);
+			if (compare < 0) {
+				low = middle + 1;
+			}
+			else if (compare > 0) {
+				high = middle - 1;
+			}
+			else {
+				return middle;
+			}
+		}
+		return -(low + 1);
+	}
+
+	/**
+	 * Replace the content of this snapshot with a copy of another one
+	 * @param other The snapshot to copy, must use the same schema
+	 */
+	public void copyFrom(EntitySnapshot other) {
+		if (other.schema != schema) {
+			throw new IllegalArgumentException("snapshots must share the same schema");
+		}
+		if (other._size > _ids.length) {
+			throw new IllegalStateException("snapshot is too small: " + _ids.length + " < " + other._size);
+		}
+
+		System.arraycopy(other._ids, 0, _ids, 0, other._size);
+		System.arraycopy(other._values, 0, _values, 0, other._size * _fieldCount);
+		_size = other._size;
+	}
+
+	/**
+	 * Ids are compared as unsigned values, so any 32 bit id works with the ascending order rule
+	 */
+	private static int compareIds(int a, int b) {
+		return (a + Integer.MIN_VALUE < b + Integer.MIN_VALUE) ? -1 : ((a == b) ? 0 : 1);
+	}
+}
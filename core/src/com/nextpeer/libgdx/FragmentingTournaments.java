@@ -0,0 +1,502 @@
+//
+//  Nextpeer libGDX plugin
+//  http://www.nextpeer.com
+//
+//  Created by Nextpeer development team.
+//  Copyright (c) 2014 Innobell, Ltd. All rights reserved.
+//
+
+package com.nextpeer.libgdx;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+
+/**
+ * Tournaments layer splitting the large reliable messages (level blobs, replay chunks) into fragments which are sent a few per tick,
+ * so the small messages are not stuck behind them, and reassembling them on the other players.
+ * <p>Messages up to the fragment size are sent right away. Larger messages go to a bounded outbound queue: {@link #offerDataToOtherPlayers(byte[])}
+ * returns false when it is full, {@link #pushDataToOtherPlayers(byte[])} throws an {@link IllegalStateException}, both count it in
+ * {@link #getMessagesRejected()}. Check {@link #isBackpressured(int)} or use the offer method to react to a full queue.
+ * {@link #update()} sends the next fragments.</p>
+ * <p><strong>Ordering:</strong> the small messages overtake the queued large ones, so the reliable ordering is only kept among the small messages
+ * and among the large messages, not across sizes. A game which needs a small message after a large one should wait for the queue to drain
+ * ({@link #getQueuedMessages()}).</p>
+ * <p>Fragment layout: one {@link #FRAGMENT_HEADER} byte, the message id (16 bit), the fragment offset and the message length (32 bit each),
+ * then the fragment data. The reassembly memory is capped, the oldest incomplete message is dropped to make room, and incomplete messages
+ * are dropped after a timeout. All the players should use the layer. The unreliable channel is not fragmented.</p>
+ * <p><strong>Note:</strong> The messages should be pushed and {@link #update()} called from the game (render) thread.</p>
+ */
+public class FragmentingTournaments extends TournamentsWrapper {
+
+	/**
+	 * First byte of every fragment
+	 */
+	public static final byte FRAGMENT_HEADER = (byte)0xF7;
+
+	/**
+	 * Size of the fragment header
+	 */
+	public static final int HEADER_SIZE = 1 + 2 + 4 + 4;
+
+	/**
+	 * Default size of the data in a fragment
+	 */
+	public static final int DEFAULT_FRAGMENT_SIZE = 1024;
+
+	/**
+	 * Default number of fragments sent per tick
+	 */
+	public static final int DEFAULT_FRAGMENTS_PER_TICK = 4;
+
+	/**
+	 * Default size limit of the outbound queue
+	 */
+	public static final int DEFAULT_MAX_QUEUED_BYTES = 256 * 1024;
+
+	/**
+	 * Default memory limit of the incomplete received messages
+	 */
+	public static final int DEFAULT_MAX_REASSEMBLY_BYTES = 1024 * 1024;
+
+	/**
+	 * Default time after which an incomplete received message is dropped
+	 */
+	public static final long DEFAULT_REASSEMBLY_TIMEOUT_MILLIS = 10000;
+
+	/**
+	 * Message being reassembled
+	 */
+	private static final class Partial {
+		String playerId;
+		int messageId;
+		byte[] data;
+		int received;
+		long lastFragmentNanos;
+	}
+
+	private final int _fragmentSize;
+	private final int _maxQueuedBytes;
+	private final int _maxReassemblyBytes;
+	private int _fragmentsPerTick = DEFAULT_FRAGMENTS_PER_TICK;
+	private long _reassemblyTimeoutNanos = DEFAULT_REASSEMBLY_TIMEOUT_MILLIS * 1000000L;
+
+	// Outbound, game thread only
+	private final ArrayDeque<byte[]> _outbound = new ArrayDeque<byte[]>();
+	private int _queuedBytes;
+	private int _sendOffset;
+	private int _sendMessageId;
+	private int _nextMessageId;
+
+	// Inbound, guarded by _partials
+	private final ArrayList<Partial> _partials = new ArrayList<Partial>();
+	private int _reassemblyBytes;
+
+	private long _fragmentsSent;
+	private long _messagesFragmented;
+	private long _messagesRejected;
+	private volatile long _messagesReassembled;
+	private volatile long _reassemblyDropped;
+
+	/**
+	 * Constructor for the FragmentingTournaments class
+	 * @param tournaments The Tournaments instance to wrap
+	 * @param fragmentSize The size of the data in a fragment
+	 * @param maxQueuedBytes The size limit of the outbound queue
+	 * @param maxReassemblyBytes The memory limit of the incomplete received messages
+	 * @throws IllegalArgumentException if one of the sizes is zero or negative.
+	 */
+	public FragmentingTournaments(Tournaments tournaments, int fragmentSize, int maxQueuedBytes, int maxReassemblyBytes) {
+		super(tournaments);
+
+		if (fragmentSize <= 0) {
+			throw new IllegalArgumentException("fragmentSize must be positive: " + fragmentSize);
+		}
+		if (maxQueuedBytes <= 0) {
+			throw new IllegalArgumentException("maxQueuedBytes must be positive: " + maxQueuedBytes);
+		}
+		if (maxReassemblyBytes <= 0) {
+			throw new IllegalArgumentException("maxReassemblyBytes must be positive: " + maxReassemblyBytes);
+		}
+
+		_fragmentSize = fragmentSize;
+		_maxQueuedBytes = maxQueuedBytes;
+		_maxReassemblyBytes = maxReassemblyBytes;
+	}
+
+	/**
+	 * Constructor for the FragmentingTournaments class with the default sizes
+	 * @param tournaments The Tournaments instance to wrap
+	 */
+	public FragmentingTournaments(Tournaments tournaments) {
+		this(tournaments, DEFAULT_FRAGMENT_SIZE, DEFAULT_MAX_QUEUED_BYTES, DEFAULT_MAX_REASSEMBLY_BYTES);
+	}
+
+	/**
+	 * Set the number of fragments sent by each {@link #update()}
+	 * @param fragmentsPerTick The number of fragments per tick
+	 * @throws IllegalArgumentException if {@code fragmentsPerTick} is zero or negative.
+	 */
+	public void setFragmentsPerTick(int fragmentsPerTick) {
+		if (fragmentsPerTick <= 0) {
+			throw new IllegalArgumentException("fragmentsPerTick must be positive: " + fragmentsPerTick);
+		}
+
+		_fragmentsPerTick = fragmentsPerTick;
+	}
+
+	/**
+	 * Set the time after which an incomplete received message is dropped
+	 * @param timeoutInMilliseconds The timeout in milliseconds
+	 */
+	public void setReassemblyTimeout(long timeoutInMilliseconds) {
+		_reassemblyTimeoutNanos = Math.max(0, timeoutInMilliseconds) * 1000000L;
+	}
+
+	/**
+	 * Send a message, large messages are queued and sent in fragments
+	 * @param data The byte array to send to the other connected players, it should not be modified until it is sent
+	 * @return true if the message was sent or queued, false if the outbound queue is full
+	 * @throws IllegalArgumentException if {@code data} is empty.
+	 */
+	public boolean offerDataToOtherPlayers(byte[] data) {
+		if (data == null || data.length == 0) {
+			throw new IllegalArgumentException("data cannot be empty");
+		}
+
+		if (data.length <= _fragmentSize) {
+			if (data[0] == FRAGMENT_HEADER) {
+				// Would be taken for a fragment, sent as a single fragment message
+				super.pushDataToOtherPlayers(fragment(data, nextMessageId(), 0));
+				_fragmentsSent++;
+			}
+			else {
+				super.pushDataToOtherPlayers(data);
+			}
+			return true;
+		}
+
+		if (_queuedBytes + data.length > _maxQueuedBytes) {
+			_messagesRejected++;
+			return false;
+		}
+
+		_outbound.add(data);
+		_queuedBytes += data.length;
+		_messagesFragmented++;
+		return true;
+	}
+
+	/**
+	 * Send a message, large messages are queued and sent in fragments
+	 * @throws IllegalArgumentException if {@code data} is empty.
+	 * @throws IllegalStateException if the outbound queue is full, see {@link #offerDataToOtherPlayers(byte[])} and {@link #isBackpressured(int)}.
+	 */
+	@Override
+	public void pushDataToOtherPlayers(byte[] data) {
+		if (!offerDataToOtherPlayers(data)) {
+			throw new IllegalStateException("outbound queue is full, use offerDataToOtherPlayers or isBackpressured: " + data.length);
+		}
+	}
+
+	/**
+	 * Send the next fragments and drop the timed out incomplete messages. Should be called once per tick.
+	 * @return The number of fragments sent
+	 */
+	public int update() {
+		int sent = 0;
+		while (sent < _fragmentsPerTick && !_outbound.isEmpty()) {
+			final byte[] data = _outbound.peek();
+			if (_sendOffset == 0) {
+				_sendMessageId = nextMessageId();
+			}
+
+			super.pushDataToOtherPlayers(fragment(data, _sendMessageId, _sendOffset));
+			_sendOffset += Math.min(_fragmentSize, data.length - _sendOffset);
+			_fragmentsSent++;
+			sent++;
+
+			if (_sendOffset == data.length) {
+				_outbound.poll();
+				_queuedBytes -= data.length;
+				_sendOffset = 0;
+			}
+		}
+
+		dropExpired(System.nanoTime());
+		return sent;
+	}
+
+	/**
+	 * Does the outbound queue is full enough to reject a message of the given size
+	 * @param length The message size
+	 * @return true if a message of that size would be rejected, false otherwise
+	 */
+	public boolean isBackpressured(int length) {
+		return length > _fragmentSize && _queuedBytes + length > _maxQueuedBytes;
+	}
+
+	/**
+	 * Gets the size of the messages waiting in the outbound queue
+	 * @return The number of queued bytes
+	 */
+	public int getQueuedBytes() {
+		return _queuedBytes;
+	}
+
+	/**
+	 * Gets the number of messages waiting in the outbound queue
+	 * @return The number of queued messages
+	 */
+	public int getQueuedMessages() {
+		return _outbound.size();
+	}
+
+	/**
+	 * Gets the memory used by the incomplete received messages
+	 * @return The number of bytes
+	 */
+	public int getReassemblyBytes() {
+		synchronized (_partials) {
+			return _reassemblyBytes;
+		}
+	}
+
+	/**
+	 * Gets the number of fragments sent
+	 * @return The number of fragments sent
+	 */
+	public long getFragmentsSent() {
+		return _fragmentsSent;
+	}
+
+	/**
+	 * Gets the number of messages which were queued to be sent in fragments
+	 * @return The number of fragmented messages
+	 */
+	public long getMessagesFragmented() {
+		return _messagesFragmented;
+	}
+
+	/**
+	 * Gets the number of messages rejected because the outbound queue was full
+	 * @return The number of rejected messages
+	 */
+	public long getMessagesRejected() {
+		return _messagesRejected;
+	}
+
+	/**
+	 * Gets the number of messages reassembled from fragments
+	 * @return The number of reassembled messages
+	 */
+	public long getMessagesReassembled() {
+		return _messagesReassembled;
+	}
+
+	/**
+	 * Gets the number of incomplete messages dropped on timeout or to respect the memory limit
+	 * @return The number of dropped messages
+	 */
+	public long getReassemblyDropped() {
+		return _reassemblyDropped;
+	}
+
+	/**
+	 * Drop the incomplete received messages on a new tournament
+	 */
+	@Override
+	protected void onWrappedTournamentStart(long tournamentRandomSeed) {
+		clearReassembly();
+		super.onWrappedTournamentStart(tournamentRandomSeed);
+	}
+
+	/**
+	 * Drop the incomplete messages at the end of the tournament
+	 */
+	@Override
+	protected void onWrappedTournamentEnd() {
+		clearReassembly();
+		super.onWrappedTournamentEnd();
+	}
+
+	/**
+	 * Drop the messages waiting in the outbound queue (for example when the tournament is over)
+	 */
+	public void clearOutbound() {
+		_outbound.clear();
+		_queuedBytes = 0;
+		_sendOffset = 0;
+	}
+
+	@Override
+	protected void onWrappedReceiveTournamentCustomMessage(NextpeerTournamentCustomMessage message) {
+		final byte[] data = message.customMessage;
+		if (data.length < HEADER_SIZE || data[0] != FRAGMENT_HEADER) {
+			super.onWrappedReceiveTournamentCustomMessage(message);
+			return;
+		}
+
+		final byte[] complete = receive(message.playerId, data, 0, data.length);
+		if (complete != null) {
+			super.onWrappedReceiveTournamentCustomMessage(new NextpeerTournamentCustomMessage(message.playerId, message.playerName,
+					message.playerImageUrl, complete, message.playerIsBot, message.playerHandle));
+		}
+	}
+
+	@Override
+	protected void onWrappedReceivePooledTournamentCustomMessage(PooledTournamentCustomMessage message) {
+		final byte[] data = message.getData();
+		final int offset = message.getOffset();
+		if (message.getLength() < HEADER_SIZE || data[offset] != FRAGMENT_HEADER) {
+			super.onWrappedReceivePooledTournamentCustomMessage(message);
+			return;
+		}
+
+		final byte[] complete = receive(message.getPlayerId(), data, offset, message.getLength());
+		if (complete == null) return;
+
+		final PooledTournamentCustomMessage reassembled = message.getPool().obtain(message.getPlayerId(), message.getPlayerName(),
+				message.getPlayerImageUrl(), complete, 0, complete.length, message.isPlayerBot(), message.getPlayerHandle());
+		try {
+			super.onWrappedReceivePooledTournamentCustomMessage(reassembled);
+		}
+		finally {
+			reassembled.release();
+		}
+	}
+
+	/**
+	 * Add a fragment to its message
+	 * @return The complete message, null if fragments are still missing or the fragment is invalid
+	 */
+	private byte[] receive(String playerId, byte[] data, int offset, int length) {
+		final int messageId = readShort(data, offset + 1);
+		final int fragmentOffset = readInt(data, offset + 3);
+		final int total = readInt(data, offset + 7);
+		final int fragmentLength = length - HEADER_SIZE;
+		if (total <= 0 || fragmentOffset < 0 || fragmentLength <= 0 || fragmentOffset > total - fragmentLength) {
+			return null;
+		}
+
+		if (fragmentOffset == 0 && fragmentLength == total) {
+			final byte[] complete = new byte[total];
+			System.arraycopy(data, offset + HEADER_SIZE, complete, 0, total);
+			_messagesReassembled++;
+			return complete;
+		}
+
+		synchronized (_partials) {
+			Partial partial = findPartial(playerId, messageId);
+			if (partial == null) {
+				if (total > _maxReassemblyBytes) {
+					_reassemblyDropped++;
+					return null;
+				}
+				while (_reassemblyBytes + total > _maxReassemblyBytes && !_partials.isEmpty()) {
+					removePartial(oldestPartial());
+					_reassemblyDropped++;
+				}
+
+				partial = new Partial();
+				partial.playerId = playerId;
+				partial.messageId = messageId;
+				partial.data = new byte[total];
+				_partials.add(partial);
+				_reassemblyBytes += total;
+			}
+			else if (partial.data.length != total) {
+				return null;
+			}
+
+			System.arraycopy(data, offset + HEADER_SIZE, partial.data, fragmentOffset, fragmentLength);
+			partial.received += fragmentLength;
+			partial.lastFragmentNanos = System.nanoTime();
+			if (partial.received < total) return null;
+
+			removePartial(partial);
+			_messagesReassembled++;
+			return partial.data;
+		}
+	}
+
+	private void dropExpired(long now) {
+		synchronized (_partials) {
+			for (int i = _partials.size() - 1; i >= 0; i--) {
+				if (now - _partials.get(i).lastFragmentNanos > _reassemblyTimeoutNanos) {
+					removePartial(_partials.get(i));
+					_reassemblyDropped++;
+				}
+			}
+		}
+	}
+
+	private void clearReassembly() {
+		synchronized (_partials) {
+			_partials.clear();
+			_reassemblyBytes = 0;
+		}
+	}
+
+	private Partial findPartial(String playerId, int messageId) {
+		for (int i = 0; i < _partials.size(); i++) {
+			final Partial partial = _partials.get(i);
+			if (partial.messageId == messageId && (partial.playerId == null ? playerId == null : partial.playerId.equals(playerId))) {
+				return partial;
+			}
+		}
+		return null;
+	}
+
+	private Partial oldestPartial() {
+		Partial oldest = _partials.get(0);
+		for (int i = 1; i < _partials.size(); i++) {
+			if (_partials.get(i).lastFragmentNanos - oldest.lastFragmentNanos < 0) {
+				oldest = _partials.get(i);
+			}
+		}
+		return oldest;
+	}
+
+	private void removePartial(Partial partial) {
+		_partials.remove(partial);
+		_reassemblyBytes -= partial.data.length;
+	}
+
+	private int nextMessageId() {
+		final int messageId = _nextMessageId;
+		_nextMessageId = (messageId + 1) & 0xFFFF;
+		return messageId;
+	}
+
+	private byte[] fragment(byte[] data, int messageId, int offset) {
+		final int length = Math.min(_fragmentSize, data.length - offset);
+		final byte[] fragment = new byte[HEADER_SIZE + length];
+		fragment[0] = FRAGMENT_HEADER;
+		writeShort(fragment, 1, messageId);
+		writeInt(fragment, 3, offset);
+		writeInt(fragment, 7, data.length);
+		System.arraycopy(data, offset, fragment, HEADER_SIZE, length);
+		return fragment;
+	}
+
+	private static int readInt(byte[] data, int position) {
+		return ((data[position] & 0xFF) << 24) | ((data[position + 1] & 0xFF) << 16)
+				| ((data[position + 2] & 0xFF) << 8) | (data[position + 3] & 0xFF);
+	}
+
+	private static int readShort(byte[] data, int position) {
+		return ((data[position] & 0xFF) << 8) | (data[position + 1] & 0xFF);
+	}
+
+	private static void writeInt(byte[] data, int position, int value) {
+		data[position] = (byte)(value >>> 24);
+		data[position + 1] = (byte)(value >>> 16);
+		data[position + 2] = (byte)(value >>> 8);
+		data[position + 3] = (byte)value;
+	}
+
+	private static void writeShort(byte[] data, int position, int value) {
+		data[position] = (byte)(value >>> 8);
+		data[position + 1] = (byte)value;
+	}
+}
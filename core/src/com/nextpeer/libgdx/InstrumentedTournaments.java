@@ -0,0 +1,148 @@
+//
+//  Nextpeer libGDX plugin
+//  http://www.nextpeer.com
+//
+//  Created by Nextpeer development team.
+//  Copyright (c) 2014 Innobell, Ltd. All rights reserved.
+//
+
+package com.nextpeer.libgdx;
+
+/**
+ * Tournaments layer recording {@link NetworkMetrics}: the messages and bytes sent and received per channel,
+ * and the time the game callback takes to handle each event (the time the SDK thread is blocked).
+ * Usage: {@code NextpeerPlugin.load(new InstrumentedTournaments(new AndroidTournaments(this), metrics));}
+ * <p>The overhead is a few atomic increments per message and two {@code System.nanoTime()} calls per event.</p>
+ */
+public class InstrumentedTournaments extends TournamentsWrapper {
+
+	private final NetworkMetrics _metrics;
+
+	/**
+	 * Constructor for the InstrumentedTournaments class
+	 * @param tournaments The Tournaments instance to measure
+	 * @param metrics The metrics to record into, can be shared by several instances
+	 * @throws IllegalArgumentException if {@code tournaments} or {@code metrics} is null.
+	 */
+	public InstrumentedTournaments(Tournaments tournaments, NetworkMetrics metrics) {
+		super(tournaments);
+
+		if (metrics == null) {
+			throw new IllegalArgumentException("metrics cannot be null");
+		}
+		_metrics = metrics;
+	}
+
+	/**
+	 * Constructor for the InstrumentedTournaments class with its own metrics
+	 * @param tournaments The Tournaments instance to measure
+	 */
+	public InstrumentedTournaments(Tournaments tournaments) {
+		this(tournaments, new NetworkMetrics());
+	}
+
+	/**
+	 * Gets the recorded metrics
+	 * @return The metrics
+	 */
+	public NetworkMetrics getMetrics() {
+		return _metrics;
+	}
+
+	@Override
+	public void unreliablePushDataToOtherPlayers(byte[] data) {
+		super.unreliablePushDataToOtherPlayers(data);
+		_metrics.recordSend(NetworkMetrics.CHANNEL_UNRELIABLE, data.length);
+	}
+
+	@Override
+	public void pushDataToOtherPlayers(byte[] data) {
+		super.pushDataToOtherPlayers(data);
+		_metrics.recordSend(NetworkMetrics.CHANNEL_RELIABLE, data.length);
+	}
+
+	@Override
+	protected void onWrappedTournamentStart(long tournamentRandomSeed) {
+		final long start = System.nanoTime();
+		try {
+			super.onWrappedTournamentStart(tournamentRandomSeed);
+		}
+		finally {
+			_metrics.recordCallback(NetworkMetrics.CALLBACK_CONTROL, System.nanoTime() - start);
+		}
+	}
+
+	@Override
+	protected void onWrappedTournamentEnd() {
+		final long start = System.nanoTime();
+		try {
+			super.onWrappedTournamentEnd();
+		}
+		finally {
+			_metrics.recordCallback(NetworkMetrics.CALLBACK_CONTROL, System.nanoTime() - start);
+		}
+	}
+
+	@Override
+	protected void onWrappedReceiveSynchronizedEvent(String name, boolean timedOut) {
+		final long start = System.nanoTime();
+		try {
+			super.onWrappedReceiveSynchronizedEvent(name, timedOut);
+		}
+		finally {
+			_metrics.recordCallback(NetworkMetrics.CALLBACK_CONTROL, System.nanoTime() - start);
+		}
+	}
+
+	@Override
+	protected void onWrappedReceiveTournamentCustomMessage(NextpeerTournamentCustomMessage message) {
+		_metrics.recordReceive(NetworkMetrics.CHANNEL_RELIABLE, message.customMessage.length);
+
+		final long start = System.nanoTime();
+		try {
+			super.onWrappedReceiveTournamentCustomMessage(message);
+		}
+		finally {
+			_metrics.recordCallback(NetworkMetrics.CALLBACK_MESSAGE, System.nanoTime() - start);
+		}
+	}
+
+	@Override
+	protected void onWrappedReceiveUnreliableTournamentCustomMessage(NextpeerTournamentCustomMessage message) {
+		_metrics.recordReceive(NetworkMetrics.CHANNEL_UNRELIABLE, message.customMessage.length);
+
+		final long start = System.nanoTime();
+		try {
+			super.onWrappedReceiveUnreliableTournamentCustomMessage(message);
+		}
+		finally {
+			_metrics.recordCallback(NetworkMetrics.CALLBACK_UNRELIABLE_MESSAGE, System.nanoTime() - start);
+		}
+	}
+
+	@Override
+	protected void onWrappedReceivePooledTournamentCustomMessage(PooledTournamentCustomMessage message) {
+		_metrics.recordReceive(NetworkMetrics.CHANNEL_RELIABLE, message.getLength());
+
+		final long start = System.nanoTime();
+		try {
+			super.onWrappedReceivePooledTournamentCustomMessage(message);
+		}
+		finally {
+			_metrics.recordCallback(NetworkMetrics.CALLBACK_MESSAGE, System.nanoTime() - start);
+		}
+	}
+
+	@Override
+	protected void onWrappedReceivePooledUnreliableTournamentCustomMessage(PooledTournamentCustomMessage message) {
+		_metrics.recordReceive(NetworkMetrics.CHANNEL_UNRELIABLE, message.getLength());
+
+		final long start = System.nanoTime();
+		try {
+			super.onWrappedReceivePooledUnreliableTournamentCustomMessage(message);
+		}
+		finally {
+			_metrics.recordCallback(NetworkMetrics.CALLBACK_UNRELIABLE_MESSAGE, System.nanoTime() - start);
+		}
+	}
+}
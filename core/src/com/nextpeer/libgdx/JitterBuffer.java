@@ -0,0 +1,392 @@
+//
+//  Nextpeer libGDX plugin
+//  http://www.nextpeer.com
+//
+//  Created by Nextpeer development team.
+//  Copyright (c) 2014 Innobell, Ltd. All rights reserved.
+//
+
+package com.nextpeer.libgdx;
+
+/**
+ * Buffers the states received from a remote player and renders them a little in the past, interpolating between
+ * the two states around the render time. The unreliable messages arrive with irregular timing, rendering them as they
+ * arrive stutters. When the next state is late the last movement is extrapolated, up to a limit.
+ * <p>Each state carries the sender timestamp (for example its tick times the tick duration). The arrival times are
+ * used to measure the jitter (RFC 3550 interarrival jitter) and the playback delay follows it, unless a fixed delay is set.
+ * The states are kept in primitive ring arrays, adding and sampling don't allocate.</p>
+ * <p><strong>Note:</strong> The buffer is not thread safe, add and sample on the render thread
+ * (through a {@link TournamentsCallbackDispatcher}). See {@link JitterBuffers} for one buffer per player.</p>
+ */
+public final class JitterBuffer {
+
+	/**
+	 * Default number of buffered states
+	 */
+	public static final int DEFAULT_CAPACITY = 32;
+
+	/**
+	 * Default smallest playback delay
+	 */
+	public static final long DEFAULT_MIN_DELAY_MILLIS = 50;
+
+	/**
+	 * Default largest playback delay
+	 */
+	public static final long DEFAULT_MAX_DELAY_MILLIS = 500;
+
+	/**
+	 * Default longest extrapolation past the last state
+	 */
+	public static final long DEFAULT_MAX_EXTRAPOLATION_MILLIS = 100;
+
+	/**
+	 * Default number of jitter deviations added to the smallest delay
+	 */
+	public static final float DEFAULT_JITTER_MULTIPLIER = 3;
+
+	/**
+	 * {@link #sample(long, float[])} result: no state was received yet, the output is unchanged
+	 */
+	public static final int RESULT_EMPTY = 0;
+
+	/**
+	 * {@link #sample(long, float[])} result: the output is interpolated between two states
+	 */
+	public static final int RESULT_INTERPOLATED = 1;
+
+	/**
+	 * {@link #sample(long, float[])} result: the render time is past the last state, the output is extrapolated
+	 */
+	public static final int RESULT_EXTRAPOLATED = 2;
+
+	/**
+	 * {@link #sample(long, float[])} result: the render time is out of the buffered states and the extrapolation limit,
+	 * the output is the oldest state or the state at the extrapolation limit
+	 */
+	public static final int RESULT_CLAMPED = 3;
+
+	private static final long NANOS_PER_MILLI = 1000000L;
+
+	private final int _fields;
+	private final int _capacity;
+	private final long[] _times;
+	private final float[] _values;
+	private int _head;
+	private int _size;
+
+	// Clock offset: arrival time minus sender time of the fastest recent state
+	private boolean _hasOffset;
+	private long _offsetNanos;
+	private long _lastTransitNanos;
+	private double _jitterNanos;
+
+	private long _minDelayNanos = DEFAULT_MIN_DELAY_MILLIS * NANOS_PER_MILLI;
+	private long _maxDelayNanos = DEFAULT_MAX_DELAY_MILLIS * NANOS_PER_MILLI;
+	private long _maxExtrapolationNanos = DEFAULT_MAX_EXTRAPOLATION_MILLIS * NANOS_PER_MILLI;
+	private float _jitterMultiplier = DEFAULT_JITTER_MULTIPLIER;
+	private boolean _adaptive = true;
+	private double _delayNanos = _minDelayNanos;
+
+	private long _statesAdded;
+	private long _statesDropped;
+	private long _samplesExtrapolated;
+	private long _samplesClamped;
+
+	/**
+	 * Constructor for the JitterBuffer class
+	 * @param fields The number of float values in a state (for example 3 for x, y and rotation)
+	 * @param capacity The number of buffered states, should cover the largest delay
+	 * @throws IllegalArgumentException if {@code fields} or {@code capacity} is smaller than 1 (2 for the capacity).
+	 */
+	public JitterBuffer(int fields, int capacity) {
+		if (fields < 1) {
+			throw new IllegalArgumentException("fields must be positive: " + fields);
+		}
+		if (capacity < 2) {
+			throw new IllegalArgumentException("capacity must be at least 2: " + capacity);
+		}
+
+		_fields = fields;
+		_capacity = capacity;
+		_times = new long[capacity];
+		_values = new float[capacity * fields];
+	}
+
+	/**
+	 * Constructor for the JitterBuffer class with {@link #DEFAULT_CAPACITY} states
+	 * @param fields The number of float values in a state
+	 */
+	public JitterBuffer(int fields) {
+		this(fields, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Use a fixed playback delay instead of the measured one
+	 * @param delayInMilliseconds The playback delay in milliseconds
+	 */
+	public void setFixedDelay(long delayInMilliseconds) {
+		_adaptive = false;
+		_delayNanos = Math.max(0, delayInMilliseconds) * NANOS_PER_MILLI;
+	}
+
+	/**
+	 * Size the playback delay from the measured jitter (default): {@code minDelay + multiplier * jitter}, up to the largest delay
+	 * @param minDelayInMilliseconds The smallest playback delay in milliseconds
+	 * @param maxDelayInMilliseconds The largest playback delay in milliseconds
+	 * @param jitterMultiplier The number of jitter deviations added to the smallest delay
+	 * @throws IllegalArgumentException if the largest delay is smaller than the smallest one.
+	 */
+	public void setAdaptiveDelay(long minDelayInMilliseconds, long maxDelayInMilliseconds, float jitterMultiplier) {
+		if (maxDelayInMilliseconds < minDelayInMilliseconds) {
+			throw new IllegalArgumentException("maxDelay is smaller than minDelay: " + maxDelayInMilliseconds + " < " + minDelayInMilliseconds);
+		}
+
+		_adaptive = true;
+		_minDelayNanos = Math.max(0, minDelayInMilliseconds) * NANOS_PER_MILLI;
+		_maxDelayNanos = maxDelayInMilliseconds * NANOS_PER_MILLI;
+		_jitterMultiplier = Math.max(0, jitterMultiplier);
+		_delayNanos = Math.max(_minDelayNanos, Math.min(_maxDelayNanos, _delayNanos));
+	}
+
+	/**
+	 * Set the longest extrapolation past the last received state
+	 * @param maxExtrapolationInMilliseconds The limit in milliseconds, 0 to hold the last state
+	 */
+	public void setMaxExtrapolation(long maxExtrapolationInMilliseconds) {
+		_maxExtrapolationNanos = Math.max(0, maxExtrapolationInMilliseconds) * NANOS_PER_MILLI;
+	}
+
+	/**
+	 * Add a state received now
+	 * @param timestampInMilliseconds The sender timestamp of the state
+	 * @param state The state values, {@code fields} values from index 0
+	 * @return true if the state was added, false if it is older than the last state (late reordered packet)
+	 */
+	public boolean add(long timestampInMilliseconds, float[] state) {
+		return add(timestampInMilliseconds, System.nanoTime(), state, 0);
+	}
+
+	/**
+	 * Add a state
+	 * @param timestampInMilliseconds The sender timestamp of the state
+	 * @param arrivalNanos The local arrival time, on the System.nanoTime() clock
+	 * @param state The array holding the state values
+	 * @param offset The index of the first value in {@code state}
+	 * @return true if the state was added, false if it is older than the last state (late reordered packet)
+	 */
+	public boolean add(long timestampInMilliseconds, long arrivalNanos, float[] state, int offset) {
+		final long time = timestampInMilliseconds * NANOS_PER_MILLI;
+		if (_size > 0 && time <= _times[newest()]) {
+			if (time == _times[newest()]) {
+				System.arraycopy(state, offset, _values, newest() * _fields, _fields);
+				return true;
+			}
+			_statesDropped++;
+			return false;
+		}
+
+		measure(time, arrivalNanos);
+
+		final int slot = (_head + _size) % _capacity;
+		_times[slot] = time;
+		System.arraycopy(state, offset, _values, slot * _fields, _fields);
+		if (_size < _capacity) {
+			_size++;
+		}
+		else {
+			_head = (_head + 1) % _capacity;
+		}
+
+		_statesAdded++;
+		return true;
+	}
+
+	/**
+	 * Compute the state to render now
+	 * @param out The array receiving the state values
+	 * @return One of the {@code RESULT_...} values
+	 */
+	public int sample(float[] out) {
+		return sample(System.nanoTime(), out);
+	}
+
+	/**
+	 * Compute the state to render
+	 * @param nowNanos The local render time, on the System.nanoTime() clock
+	 * @param out The array receiving the state values, from index 0
+	 * @return One of the {@code RESULT_...} values
+	 */
+	public int sample(long nowNanos, float[] out) {
+		if (_size == 0) return RESULT_EMPTY;
+
+		final long renderTime = getRenderTime(nowNanos);
+		final int oldest = _head;
+		final int newest = newest();
+
+		if (renderTime <= _times[oldest]) {
+			System.arraycopy(_values, oldest * _fields, out, 0, _fields);
+			return (renderTime == _times[oldest]) ? RESULT_INTERPOLATED : clamped();
+		}
+
+		if (renderTime >= _times[newest]) {
+			if (_size < 2 || _maxExtrapolationNanos == 0) {
+				System.arraycopy(_values, newest * _fields, out, 0, _fields);
+				return (renderTime == _times[newest]) ? RESULT_INTERPOLATED : clamped();
+			}
+
+			// Continue the movement between the two last states
+			final int previous = (newest + _capacity - 1) % _capacity;
+			final long ahead = Math.min(renderTime - _times[newest], _maxExtrapolationNanos);
+			final float t = 1 + (float)ahead / (_times[newest] - _times[previous]);
+			lerp(previous, newest, t, out);
+
+			if (renderTime - _times[newest] > _maxExtrapolationNanos) return clamped();
+			_samplesExtrapolated++;
+			return RESULT_EXTRAPOLATED;
+		}
+
+		// Binary search of the last state at or before the render time
+		int low = 0;
+		int high = _size - 1;
+		while (high - low > 1) {
+			final int middle = (low + high) >>> 1;
+			if (_times[(_head + middle) % _capacity] <= renderTime) {
+				low = middle;
+			}
+			else {
+				high = middle;
+			}
+		}
+
+		final int from = (_head + low) % _capacity;
+		final int to = (_head + high) % _capacity;
+		lerp(from, to, (float)(renderTime - _times[from]) / (_times[to] - _times[from]), out);
+		return RESULT_INTERPOLATED;
+	}
+
+	/**
+	 * Gets the sender time rendered at a local time
+	 * @param nowNanos The local time, on the System.nanoTime() clock
+	 * @return The sender time in nanoseconds
+	 */
+	public long getRenderTime(long nowNanos) {
+		return nowNanos - _offsetNanos - (long)_delayNanos;
+	}
+
+	/**
+	 * Gets the current playback delay
+	 * @return The delay in milliseconds
+	 */
+	public float getDelayMillis() {
+		return (float)(_delayNanos / NANOS_PER_MILLI);
+	}
+
+	/**
+	 * Gets the measured interarrival jitter
+	 * @return The jitter in milliseconds
+	 */
+	public float getJitterMillis() {
+		return (float)(_jitterNanos / NANOS_PER_MILLI);
+	}
+
+	/**
+	 * Gets the number of buffered states
+	 * @return The number of states
+	 */
+	public int size() {
+		return _size;
+	}
+
+	/**
+	 * Gets the number of states added
+	 * @return The number of added states
+	 */
+	public long getStatesAdded() {
+		return _statesAdded;
+	}
+
+	/**
+	 * Gets the number of states dropped because they arrived after a newer state
+	 * @return The number of dropped states
+	 */
+	public long getStatesDropped() {
+		return _statesDropped;
+	}
+
+	/**
+	 * Gets the number of samples which were extrapolated
+	 * @return The number of extrapolated samples
+	 */
+	public long getSamplesExtrapolated() {
+		return _samplesExtrapolated;
+	}
+
+	/**
+	 * Gets the number of samples out of the buffered states and the extrapolation limit
+	 * @return The number of clamped samples
+	 */
+	public long getSamplesClamped() {
+		return _samplesClamped;
+	}
+
+	/**
+	 * Forget the states and the measured jitter, for example when the tournament ends
+	 */
+	public void clear() {
+		_head = 0;
+		_size = 0;
+		_hasOffset = false;
+		_offsetNanos = 0;
+		_jitterNanos = 0;
+		if (_adaptive) {
+			_delayNanos = _minDelayNanos;
+		}
+	}
+
+	private void measure(long time, long arrivalNanos) {
+		final long transit = arrivalNanos - time;
+		if (!_hasOffset) {
+			_hasOffset = true;
+			_offsetNanos = transit;
+			_lastTransitNanos = transit;
+			return;
+		}
+
+		// The fastest state gives the offset, it creeps up slowly to follow a clock drift
+		if (transit < _offsetNanos) {
+			_offsetNanos = transit;
+		}
+		else {
+			_offsetNanos += (transit - _offsetNanos) >> 10;
+		}
+
+		// RFC 3550 interarrival jitter
+		final long difference = Math.abs(transit - _lastTransitNanos);
+		_lastTransitNanos = transit;
+		_jitterNanos += (difference - _jitterNanos) / 16;
+
+		if (_adaptive) {
+			final double target = Math.min(_maxDelayNanos, _minDelayNanos + _jitterMultiplier * _jitterNanos);
+			// Move slowly, a delay jump is a visible jump of the remote player
+			_delayNanos += (target - _delayNanos) / 8;
+		}
+	}
+
+	private void lerp(int from, int to, float t, float[] out) {
+		final int a = from * _fields;
+		final int b = to * _fields;
+		for (int i = 0; i < _fields; i++) {
+			out[i] = _values[a + i] + (_values[b + i] - _values[a + i]) * t;
+		}
+	}
+
+	private int clamped() {
+		_samplesClamped++;
+		return RESULT_CLAMPED;
+	}
+
+	private int newest() {
+		return (_head + _size - 1) % _capacity;
+	}
+}
@@ -0,0 +1,176 @@
+//
+//  Nextpeer libGDX plugin
+//  http://www.nextpeer.com
+//
+//  Created by Nextpeer development team.
+//  Copyright (c) 2014 Innobell, Ltd. All rights reserved.
+//
+
+package com.nextpeer.libgdx;
+
+import java.util.Arrays;
+
+/**
+ * One {@link JitterBuffer} per remote player, indexed by the player handle of the received messages
+ * (see {@link PlayerRegistry}). The buffers are created the first time a player is seen and reused by the next tournaments.
+ * <p><strong>Note:</strong> Not thread safe, use it on the render thread like the buffers.</p>
+ */
+public final class JitterBuffers {
+
+	private final int _fields;
+	private final int _capacity;
+	private JitterBuffer[] _buffers = new JitterBuffer[8];
+
+	private boolean _adaptive = true;
+	private long _fixedDelayMillis;
+	private long _minDelayMillis = JitterBuffer.DEFAULT_MIN_DELAY_MILLIS;
+	private long _maxDelayMillis = JitterBuffer.DEFAULT_MAX_DELAY_MILLIS;
+	private float _jitterMultiplier = JitterBuffer.DEFAULT_JITTER_MULTIPLIER;
+	private long _maxExtrapolationMillis = JitterBuffer.DEFAULT_MAX_EXTRAPOLATION_MILLIS;
+
+	/**
+	 * Constructor for the JitterBuffers class
+	 * @param fields The number of float values in a state
+	 * @param capacity The number of buffered states per player
+	 * @throws IllegalArgumentException if {@code fields} or {@code capacity} is smaller than 1 (2 for the capacity).
+	 */
+	public JitterBuffers(int fields, int capacity) {
+		if (fields < 1) {
+			throw new IllegalArgumentException("fields must be positive: " + fields);
+		}
+		if (capacity < 2) {
+			throw new IllegalArgumentException("capacity must be at least 2: " + capacity);
+		}
+
+		_fields = fields;
+		_capacity = capacity;
+	}
+
+	/**
+	 * Constructor for the JitterBuffers class with {@link JitterBuffer#DEFAULT_CAPACITY} states per player
+	 * @param fields The number of float values in a state
+	 */
+	public JitterBuffers(int fields) {
+		this(fields, JitterBuffer.DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Use a fixed playback delay for all the players, see {@link JitterBuffer#setFixedDelay(long)}
+	 * @param delayInMilliseconds The playback delay in milliseconds
+	 */
+	public void setFixedDelay(long delayInMilliseconds) {
+		_adaptive = false;
+		_fixedDelayMillis = delayInMilliseconds;
+		for (JitterBuffer buffer : _buffers) {
+			if (buffer != null) configure(buffer);
+		}
+	}
+
+	/**
+	 * Size the playback delay of each player from its measured jitter, see {@link JitterBuffer#setAdaptiveDelay(long, long, float)}
+	 * @param minDelayInMilliseconds The smallest playback delay in milliseconds
+	 * @param maxDelayInMilliseconds The largest playback delay in milliseconds
+	 * @param jitterMultiplier The number of jitter deviations added to the smallest delay
+	 * @throws IllegalArgumentException if {@code maxDelayInMilliseconds} is smaller than {@code minDelayInMilliseconds}.
+	 */
+	public void setAdaptiveDelay(long minDelayInMilliseconds, long maxDelayInMilliseconds, float jitterMultiplier) {
+		if (maxDelayInMilliseconds < minDelayInMilliseconds) {
+			throw new IllegalArgumentException("maxDelay is smaller than minDelay: " + maxDelayInMilliseconds + " < " + minDelayInMilliseconds);
+		}
+
+		_adaptive = true;
+		_minDelayMillis = minDelayInMilliseconds;
+		_maxDelayMillis = maxDelayInMilliseconds;
+		_jitterMultiplier = jitterMultiplier;
+		for (JitterBuffer buffer : _buffers) {
+			if (buffer != null) configure(buffer);
+		}
+	}
+
+	/**
+	 * Set the longest extrapolation for all the players, see {@link JitterBuffer#setMaxExtrapolation(long)}
+	 * @param maxExtrapolationInMilliseconds The limit in milliseconds
+	 */
+	public void setMaxExtrapolation(long maxExtrapolationInMilliseconds) {
+		_maxExtrapolationMillis = maxExtrapolationInMilliseconds;
+		for (JitterBuffer buffer : _buffers) {
+			if (buffer != null) configure(buffer);
+		}
+	}
+
+	/**
+	 * Gets the buffer of a player, creating it the first time
+	 * @param playerHandle The player handle, from {@link PooledTournamentCustomMessage#getPlayerHandle()} or {@link NextpeerTournamentCustomMessage#playerHandle}
+	 * @return The player buffer
+	 * @throws IllegalArgumentException if {@code playerHandle} is negative.
+	 */
+	public JitterBuffer get(int playerHandle) {
+		if (playerHandle < 0) {
+			throw new IllegalArgumentException("invalid player handle: " + playerHandle);
+		}
+
+		if (playerHandle >= _buffers.length) {
+			_buffers = Arrays.copyOf(_buffers, Math.max(playerHandle + 1, _buffers.length * 2));
+		}
+
+		JitterBuffer buffer = _buffers[playerHandle];
+		if (buffer == null) {
+			buffer = new JitterBuffer(_fields, _capacity);
+			configure(buffer);
+			_buffers[playerHandle] = buffer;
+		}
+		return buffer;
+	}
+
+	/**
+	 * Does a player has a buffer
+	 * @param playerHandle The player handle
+	 * @return true if a state was added for the player, false otherwise
+	 */
+	public boolean contains(int playerHandle) {
+		return playerHandle >= 0 && playerHandle < _buffers.length && _buffers[playerHandle] != null
+				&& _buffers[playerHandle].size() > 0;
+	}
+
+	/**
+	 * Add a state received now for a player, see {@link JitterBuffer#add(long, float[])}
+	 * @param playerHandle The player handle
+	 * @param timestampInMilliseconds The sender timestamp of the state
+	 * @param state The state values
+	 * @return true if the state was added, false if it is older than the last state of the player
+	 */
+	public boolean add(int playerHandle, long timestampInMilliseconds, float[] state) {
+		return get(playerHandle).add(timestampInMilliseconds, state);
+	}
+
+	/**
+	 * Compute the state of a player to render now, see {@link JitterBuffer#sample(float[])}
+	 * @param playerHandle The player handle
+	 * @param out The array receiving the state values
+	 * @return One of the {@code JitterBuffer.RESULT_...} values, {@link JitterBuffer#RESULT_EMPTY} for an unknown player
+	 */
+	public int sample(int playerHandle, float[] out) {
+		if (!contains(playerHandle)) return JitterBuffer.RESULT_EMPTY;
+
+		return _buffers[playerHandle].sample(out);
+	}
+
+	/**
+	 * Clear the buffers of all the players, call it when the tournament ends since the handles are reused
+	 */
+	public void clear() {
+		for (JitterBuffer buffer : _buffers) {
+			if (buffer != null) buffer.clear();
+		}
+	}
+
+	private void configure(JitterBuffer buffer) {
+		if (_adaptive) {
+			buffer.setAdaptiveDelay(_minDelayMillis, _maxDelayMillis, _jitterMultiplier);
+		}
+		else {
+			buffer.setFixedDelay(_fixedDelayMillis);
+		}
+		buffer.setMaxExtrapolation(_maxExtrapolationMillis);
+	}
+}
@@ -0,0 +1,193 @@
+//
+//  Nextpeer libGDX plugin
+//  http://www.nextpeer.com
+//
+//  Created by Nextpeer development team.
+//  Copyright (c) 2014 Innobell, Ltd. All rights reserved.
+//
+
+package com.nextpeer.libgdx;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed memory histogram of durations in nanoseconds. Each power of two is split in 4 buckets, so a percentile is
+ * known within 25% of its value, from 1ns up to the largest long. Recording never allocates or locks.
+ * <p>Values can be recorded from any thread and read from another one (an overlay or a log dump).
+ * A read done while values are recorded may mix a few of the old and the new values.</p>
+ */
+public final class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 2;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	/**
+	 * Number of buckets, the exact values 0 to 3 and 4 buckets for each power of two from 4 to 2^62
+	 */
+	static final int BUCKET_COUNT = (63 - SUB_BUCKET_BITS) * SUB_BUCKETS + SUB_BUCKETS;
+
+	private final AtomicLongArray _buckets = new AtomicLongArray(BUCKET_COUNT);
+	private final AtomicLong _count = new AtomicLong();
+	private final AtomicLong _total = new AtomicLong();
+	private final AtomicLong _max = new AtomicLong();
+
+	/**
+	 * Record a duration
+	 * @param nanos The duration in nanoseconds, negative values are recorded as 0
+	 */
+	public void record(long nanos) {
+		final long value = Math.max(0, nanos);
+		_buckets.incrementAndGet(bucketIndex(value));
+		_count.incrementAndGet();
+		_total.addAndGet(value);
+
+		long max = _max.get();
+		while (value > max && !_max.compareAndSet(max, value)) {
+			max = _max.get();
+		}
+	}
+
+	/**
+	 * Gets the number of recorded durations
+	 * @return The number of recorded durations
+	 */
+	public long getCount() {
+		return _count.get();
+	}
+
+	/**
+	 * Gets the sum of the recorded durations
+	 * @return The total in nanoseconds
+	 */
+	public long getTotal() {
+		return _total.get();
+	}
+
+	/**
+	 * Gets the longest recorded duration
+	 * @return The maximum in nanoseconds, 0 if nothing was recorded
+	 */
+	public long getMax() {
+		return _max.get();
+	}
+
+	/**
+	 * Gets the mean of the recorded durations
+	 * @return The mean in nanoseconds, 0 if nothing was recorded
+	 */
+	public long getMean() {
+		final long count = _count.get();
+		return (count == 0) ? 0 : _total.get() / count;
+	}
+
+	/**
+	 * Gets a percentile of the recorded durations
+	 * @param percentile The percentile, between 0 and 100 (50 for the median)
+	 * @return The upper bound of the bucket holding the percentile in nanoseconds (never above the maximum), 0 if nothing was recorded
+	 */
+	public long getPercentile(double percentile) {
+		final long count = _count.get();
+		if (count == 0) return 0;
+
+		final long rank = Math.max(1, (long)Math.ceil(count * Math.max(0, Math.min(100, percentile)) / 100));
+		long seen = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			seen += _buckets.get(i);
+			if (seen >= rank) {
+				return Math.min(bucketUpperBound(i), _max.get());
+			}
+		}
+
+		return _max.get();
+	}
+
+	/**
+	 * Gets the number of durations recorded in a bucket
+	 * @param bucket The bucket index, between 0 and {@link #getBucketCount()} - 1
+	 * @return The number of durations in the bucket
+	 */
+	public long getBucketCount(int bucket) {
+		return _buckets.get(bucket);
+	}
+
+	/**
+	 * Gets the number of buckets
+	 * @return The number of buckets
+	 */
+	public int getBucketCount() {
+		return BUCKET_COUNT;
+	}
+
+	/**
+	 * Gets the smallest duration of a bucket
+	 * @param bucket The bucket index
+	 * @return The lower bound in nanoseconds (inclusive)
+	 */
+	public static long bucketLowerBound(int bucket) {
+		if (bucket < SUB_BUCKETS) return bucket;
+
+		final int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		final long subBucket = bucket & (SUB_BUCKETS - 1);
+		return (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+	}
+
+	/**
+	 * Gets the largest duration of a bucket
+	 * @param bucket The bucket index
+	 * @return The upper bound in nanoseconds (inclusive)
+	 */
+	public static long bucketUpperBound(int bucket) {
+		if (bucket < SUB_BUCKETS) return bucket;
+		if (bucket == BUCKET_COUNT - 1) return Long.MAX_VALUE;
+
+		return bucketLowerBound(bucket + 1) - 1;
+	}
+
+	/**
+	 * Copy the recorded durations into another histogram, without allocating
+	 * @param into The histogram receiving the copy, its previous values are replaced
+	 */
+	public void copyTo(LatencyHistogram into) {
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			into._buckets.set(i, _buckets.get(i));
+		}
+		into._count.set(_count.get());
+		into._total.set(_total.get());
+		into._max.set(_max.get());
+	}
+
+	/**
+	 * Forget all the recorded durations
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			_buckets.set(i, 0);
+		}
+		_count.set(0);
+		_total.set(0);
+		_max.set(0);
+	}
+
+	/**
+	 * Gets a one line summary, in microseconds
+	 * @return The count, mean, median, 99th percentile and maximum
+	 */
+	@Override
+	public String toString() {
+		return "count=" + getCount() + " mean=" + micros(getMean()) + "us p50=" + micros(getPercentile(50))
+				+ "us p99=" + micros(getPercentile(99)) + "us max=" + micros(getMax()) + "us";
+	}
+
+	static int bucketIndex(long value) {
+		if (value < SUB_BUCKETS) return (int)value;
+
+		final int exponent = 63 - Long.numberOfLeadingZeros(value);
+		final int subBucket = (int)(value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	private static String micros(long nanos) {
+		return Long.toString(nanos / 1000) + "." + (nanos / 100) % 10;
+	}
+}
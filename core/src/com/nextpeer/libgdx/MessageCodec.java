@@ -0,0 +1,39 @@
+//
+//  Nextpeer libGDX plugin
+//  http://www.nextpeer.com
+//
+//  Created by Nextpeer development team.
+//  Copyright (c) 2014 Innobell, Ltd. All rights reserved.
+//
+
+package com.nextpeer.libgdx;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Writes and reads the fields of a message type registered in a {@link MessageRegistry}.
+ * Implementations should use the absolute or relative ByteBuffer accessors only, without allocating.
+ * @param <T> The message class
+ */
+public interface MessageCodec<T> {
+
+	/**
+	 * Create the instance which is reused to decode the received messages of this type
+	 * @return A new message instance
+	 */
+	T newMessage();
+
+	/**
+	 * Write the message fields
+	 * @param message The message to write
+	 * @param buffer The buffer, positioned after the type id
+	 */
+	void write(T message, ByteBuffer buffer);
+
+	/**
+	 * Read the message fields. The data comes from another player, a runtime exception thrown here drops the message as malformed.
+	 * @param buffer The buffer, positioned after the type id and limited to the end of the message
+	 * @param message The reused instance receiving the fields
+	 */
+	void read(ByteBuffer buffer, T message);
+}
@@ -0,0 +1,24 @@
+//
+//  Nextpeer libGDX plugin
+//  http://www.nextpeer.com
+//
+//  Created by Nextpeer development team.
+//  Copyright (c) 2014 Innobell, Ltd. All rights reserved.
+//
+
+package com.nextpeer.libgdx;
+
+/**
+ * Receives the decoded messages of a type registered in a {@link MessageRegistry}.
+ * @param <T> The message class
+ */
+public interface MessageHandler<T> {
+
+	/**
+	 * Called when a message of the registered type was received
+	 * @param message The decoded message. The instance is reused for the next message of the same type, copy what should be kept.
+	 * @param playerId The identifier of the player who sent the message
+	 * @param reliable true if the message came from the reliable channel, false if it came from the unreliable one
+	 */
+	void onMessage(T message, String playerId, boolean reliable);
+}
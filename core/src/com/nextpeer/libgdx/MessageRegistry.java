@@ -0,0 +1,321 @@
+//
+//  Nextpeer libGDX plugin
+//  http://www.nextpeer.com
+//
+//  Created by Nextpeer development team.
+//  Copyright (c) 2014 Innobell, Ltd. All rights reserved.
+//
+
+package com.nextpeer.libgdx;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Typed binary messages over the custom message channels. Each registered type gets a one byte id which is written
+ * in front of its fields. Messages are written into a reusable ByteBuffer and received messages are decoded into
+ * a reusable instance per type, then dispatched to the type handler by id.
+ * <p>The registry is also a callback layer: wrap the game callback with it, messages which don't start with a
+ * registered type id are forwarded to the wrapped callback as is.</p>
+ * <p>The header bytes of the other layers sharing the channels ({@link UnreliableMessageBatcher}, {@link AcknowledgedChannel},
+ * {@link TimeSyncService}, {@link FragmentingTournaments} and {@link CompressingTournaments}) are reserved and can't be registered,
+ * see {@link #isReservedId(int)}.</p>
+ * <p><strong>Note:</strong> Messages should be sent from a single thread, and received on a single thread
+ * (put a {@link TournamentsCallbackDispatcher} in front of the registry to receive them on the render thread).</p>
+ */
+public class MessageRegistry extends TournamentsCallbackWrapper {
+
+	/**
+	 * Default size of the send buffer, the largest message that can be written
+	 */
+	public static final int DEFAULT_MAX_MESSAGE_SIZE = 1024;
+
+	/**
+	 * Number of available type ids
+	 */
+	public static final int MAX_TYPES = 256;
+
+	/**
+	 * Type ids used as header bytes by the other layers
+	 */
+	private static final byte[] RESERVED_IDS = {
+		UnreliableMessageBatcher.BATCH_HEADER,
+		UnreliableMessageBatcher.RAW_HEADER,
+		AcknowledgedChannel.CHANNEL_HEADER,
+		TimeSyncService.SYNC_HEADER,
+		FragmentingTournaments.FRAGMENT_HEADER,
+		CompressingTournaments.COMPRESSED_HEADER,
+		CompressingTournaments.RAW_HEADER,
+	};
+
+	/**
+	 * A message type registered in a {@link MessageRegistry}, used to send the messages of that type
+	 * @param <T> The message class
+	 */
+	public static final class MessageType<T> {
+		public final int id;
+
+		final MessageCodec<T> codec;
+		final MessageHandler<T> handler;
+		final T received;
+
+		MessageType(int id, MessageCodec<T> codec, MessageHandler<T> handler) {
+			this.id = id;
+			this.codec = codec;
+			this.handler = handler;
+			this.received = codec.newMessage();
+		}
+
+		/**
+		 * Read the received message, the data comes from another player and any exception thrown by the codec means it is malformed
+		 * @return true if the message was read, false if it is malformed
+		 */
+		boolean read(ByteBuffer buffer) {
+			try {
+				codec.read(buffer, received);
+				return true;
+			}
+			catch (RuntimeException e) {
+				return false;
+			}
+		}
+
+		void dispatch(String playerId, boolean reliable) {
+			if (handler != null) {
+				handler.onMessage(received, playerId, reliable);
+			}
+		}
+	}
+
+	private final Tournaments _tournaments;
+	private final MessageType<?>[] _types = new MessageType<?>[MAX_TYPES];
+	private final ByteBuffer _sendBuffer;
+	private byte[] _sendArray;
+	private ByteBuffer _receiveBuffer;
+	private UnreliableMessageBatcher _unreliableBatcher;
+
+	private long _messagesSent;
+	private long _messagesReceived;
+	private long _malformedMessages;
+
+	/**
+	 * Constructor for the MessageRegistry class
+	 * @param tournaments The Tournaments instance used to send the messages
+	 * @param callback The callback receiving the messages which are not registry messages
+	 * @param maxMessageSize The size of the send buffer, type id included
+	 * @param direct true to write the messages into a direct ByteBuffer, false for a heap one
+	 * @throws IllegalArgumentException if {@code tournaments} is null.
+	 */
+	public MessageRegistry(Tournaments tournaments, TournamentsCallback callback, int maxMessageSize, boolean direct) {
+		super(callback);
+
+		if (tournaments == null) {
+			throw new IllegalArgumentException("tournaments cannot be null");
+		}
+		if (maxMessageSize < 2) {
+			throw new IllegalArgumentException("maxMessageSize is too small: " + maxMessageSize);
+		}
+
+		_tournaments = tournaments;
+		_sendBuffer = direct ? ByteBuffer.allocateDirect(maxMessageSize) : ByteBuffer.allocate(maxMessageSize);
+		_receiveBuffer = ByteBuffer.allocate(maxMessageSize);
+	}
+
+	/**
+	 * Constructor for the MessageRegistry class with a heap send buffer of {@link #DEFAULT_MAX_MESSAGE_SIZE}
+	 * @param tournaments The Tournaments instance used to send the messages
+	 * @param callback The callback receiving the messages which are not registry messages
+	 */
+	public MessageRegistry(Tournaments tournaments, TournamentsCallback callback) {
+		this(tournaments, callback, DEFAULT_MAX_MESSAGE_SIZE, false);
+	}
+
+	/**
+	 * Register a message type
+	 * @param id The type id, between 0 and 255 and not reserved, should be the same on all the players
+	 * @param codec The codec writing and reading the message fields
+	 * @param handler The handler receiving the decoded messages, can be null for send only types
+	 * @return The message type, used to send the messages
+	 * @throws IllegalArgumentException if {@code id} is out of range, reserved or already registered.
+	 */
+	public synchronized <T> MessageType<T> register(int id, MessageCodec<T> codec, MessageHandler<T> handler) {
+		if (id < 0 || id >= MAX_TYPES) {
+			throw new IllegalArgumentException("id must be between 0 and " + (MAX_TYPES - 1) + ": " + id);
+		}
+		if (isReservedId(id)) {
+			throw new IllegalArgumentException("id is reserved by another layer: 0x" + Integer.toHexString(id).toUpperCase());
+		}
+		if (codec == null) {
+			throw new IllegalArgumentException("codec cannot be null");
+		}
+		if (_types[id] != null) {
+			throw new IllegalArgumentException("id is already registered: " + id);
+		}
+
+		final MessageType<T> type = new MessageType<T>(id, codec, handler);
+		_types[id] = type;
+		return type;
+	}
+
+	/**
+	 * Is the type id used as a header byte by another layer
+	 * @param id The type id
+	 * @return true if the id can't be registered, false otherwise
+	 */
+	public static boolean isReservedId(int id) {
+		for (byte reserved : RESERVED_IDS) {
+			if ((reserved & 0xFF) == id) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Send unreliable messages through a batcher, the message bytes are then appended to the pending packet without allocating.
+	 * @param batcher The batcher, see {@link NextpeerPlugin#unreliableBatcher()}. null to send every message by itself.
+	 */
+	public void setUnreliableBatcher(UnreliableMessageBatcher batcher) {
+		_unreliableBatcher = batcher;
+	}
+
+	/**
+	 * Write a message into the send buffer
+	 * @param type The registered message type
+	 * @param message The message to write
+	 * @return The send buffer, from position 0 to the end of the message. Valid until the next encode or send.
+	 * @throws IllegalArgumentException if the message is larger than the send buffer.
+	 */
+	public <T> ByteBuffer encode(MessageType<T> type, T message) {
+		_sendBuffer.clear();
+		try {
+			_sendBuffer.put((byte)type.id);
+			type.codec.write(message, _sendBuffer);
+		}
+		catch (BufferOverflowException e) {
+			throw new IllegalArgumentException("message is larger than the send buffer: " + _sendBuffer.capacity());
+		}
+
+		_sendBuffer.flip();
+		return _sendBuffer;
+	}
+
+	/**
+	 * Send a message to the other players
+	 * @param type The registered message type
+	 * @param message The message to send
+	 * @param reliable true to use the reliable channel, false to use the unreliable one
+	 * @throws IllegalArgumentException if the message is larger than the send buffer.
+	 */
+	public <T> void send(MessageType<T> type, T message, boolean reliable) {
+		final ByteBuffer buffer = encode(type, message);
+		final int length = buffer.remaining();
+		_messagesSent++;
+
+		final UnreliableMessageBatcher batcher = _unreliableBatcher;
+		if (!reliable && batcher != null) {
+			if (buffer.hasArray()) {
+				batcher.append(buffer.array(), buffer.arrayOffset(), length);
+			}
+			else {
+				batcher.append(toSendArray(buffer, length), 0, length);
+			}
+			return;
+		}
+
+		final byte[] data = new byte[length];
+		buffer.get(data);
+		if (reliable) {
+			_tournaments.pushDataToOtherPlayers(data);
+		}
+		else {
+			_tournaments.unreliablePushDataToOtherPlayers(data);
+		}
+	}
+
+	@Override
+	public void onReceiveTournamentCustomMessage(NextpeerTournamentCustomMessage message) {
+		if (!receive(message.customMessage, 0, message.customMessage.length, message.playerId, true)) {
+			super.onReceiveTournamentCustomMessage(message);
+		}
+	}
+
+	@Override
+	public void onReceiveUnreliableTournamentCustomMessage(NextpeerTournamentCustomMessage message) {
+		if (!receive(message.customMessage, 0, message.customMessage.length, message.playerId, false)) {
+			super.onReceiveUnreliableTournamentCustomMessage(message);
+		}
+	}
+
+	@Override
+	public void onReceivePooledTournamentCustomMessage(PooledTournamentCustomMessage message) {
+		if (!receive(message.getData(), message.getOffset(), message.getLength(), message.getPlayerId(), true)) {
+			super.onReceivePooledTournamentCustomMessage(message);
+		}
+	}
+
+	@Override
+	public void onReceivePooledUnreliableTournamentCustomMessage(PooledTournamentCustomMessage message) {
+		if (!receive(message.getData(), message.getOffset(), message.getLength(), message.getPlayerId(), false)) {
+			super.onReceivePooledUnreliableTournamentCustomMessage(message);
+		}
+	}
+
+	/**
+	 * Gets the number of messages sent
+	 * @return The number of messages sent
+	 */
+	public long getMessagesSent() {
+		return _messagesSent;
+	}
+
+	/**
+	 * Gets the number of messages decoded and dispatched to a handler
+	 * @return The number of messages received
+	 */
+	public long getMessagesReceived() {
+		return _messagesReceived;
+	}
+
+	/**
+	 * Gets the number of messages with a registered type id which could not be decoded (the codec threw), those were dropped
+	 * @return The number of malformed messages
+	 */
+	public long getMalformedMessages() {
+		return _malformedMessages;
+	}
+
+	/**
+	 * Decode and dispatch a received message
+	 * @return true if the message was handled by the registry, false if it should be forwarded
+	 */
+	private boolean receive(byte[] data, int offset, int length, String playerId, boolean reliable) {
+		if (length <= 0) return false;
+
+		final MessageType<?> type = _types[data[offset] & 0xFF];
+		if (type == null) return false;
+
+		if (_receiveBuffer.capacity() < length - 1) {
+			_receiveBuffer = ByteBuffer.allocate(Math.max(length - 1, _receiveBuffer.capacity() * 2));
+		}
+		_receiveBuffer.clear();
+		_receiveBuffer.put(data, offset + 1, length - 1);
+		_receiveBuffer.flip();
+
+		if (!type.read(_receiveBuffer)) {
+			_malformedMessages++;
+			return true;
+		}
+
+		// The exceptions of the game handler are not malformed messages, they are not caught
+		_messagesReceived++;
+		type.dispatch(playerId, reliable);
+		return true;
+	}
+
+	private byte[] toSendArray(ByteBuffer buffer, int length) {
+		if (_sendArray == null || _sendArray.length < length) {
+			_sendArray = new byte[_sendBuffer.capacity()];
+		}
+		buffer.get(_sendArray, 0, length);
+		return _sendArray;
+	}
+}
@@ -0,0 +1,277 @@
+//
+//  Nextpeer libGDX plugin
+//  http://www.nextpeer.com
+//
+//  Created by Nextpeer development team.
+//  Copyright (c) 2014 Innobell, Ltd. All rights reserved.
+//
+
+package com.nextpeer.libgdx;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Networking counters and callback timings, recorded by {@link InstrumentedTournaments}.
+ * Counts the sent and received messages and bytes per channel, and how long the game callback blocks the SDK thread per event type.
+ * <p>All the values can be read from any thread. Use {@link #snapshot(Snapshot)} to copy them at once (without allocating)
+ * for an in-game overlay, or {@link Snapshot#toString()} to dump them to the logs.</p>
+ */
+public final class NetworkMetrics {
+
+	/**
+	 * Index of the reliable channel ({@code pushDataToOtherPlayers})
+	 */
+	public static final int CHANNEL_RELIABLE = 0;
+
+	/**
+	 * Index of the unreliable channel ({@code unreliablePushDataToOtherPlayers})
+	 */
+	public static final int CHANNEL_UNRELIABLE = 1;
+
+	/**
+	 * Number of channels
+	 */
+	public static final int CHANNEL_COUNT = 2;
+
+	/**
+	 * Callback timing of the custom messages received on the reliable channel
+	 */
+	public static final int CALLBACK_MESSAGE = 0;
+
+	/**
+	 * Callback timing of the custom messages received on the unreliable channel
+	 */
+	public static final int CALLBACK_UNRELIABLE_MESSAGE = 1;
+
+	/**
+	 * Callback timing of the tournament start, tournament end and synchronized events
+	 */
+	public static final int CALLBACK_CONTROL = 2;
+
+	/**
+	 * Number of callback timings
+	 */
+	public static final int CALLBACK_COUNT = 3;
+
+	private static final int SENT_MESSAGES = 0;
+	private static final int SENT_BYTES = 1;
+	private static final int RECEIVED_MESSAGES = 2;
+	private static final int RECEIVED_BYTES = 3;
+	private static final int COUNTERS_PER_CHANNEL = 4;
+
+	private static final String[] CHANNEL_NAMES = { "reliable", "unreliable" };
+	private static final String[] CALLBACK_NAMES = { "message", "unreliable message", "control" };
+
+	/**
+	 * Copy of the metrics at a point in time
+	 */
+	public static final class Snapshot {
+
+		/**
+		 * The System.nanoTime() value when the snapshot was taken
+		 */
+		public long timestampNanos;
+
+		/**
+		 * Messages sent, indexed by channel
+		 */
+		public final long[] sentMessages = new long[CHANNEL_COUNT];
+
+		/**
+		 * Bytes sent, indexed by channel
+		 */
+		public final long[] sentBytes = new long[CHANNEL_COUNT];
+
+		/**
+		 * Messages received, indexed by channel
+		 */
+		public final long[] receivedMessages = new long[CHANNEL_COUNT];
+
+		/**
+		 * Bytes received, indexed by channel
+		 */
+		public final long[] receivedBytes = new long[CHANNEL_COUNT];
+
+		/**
+		 * Time spent in the game callback, indexed by {@code CALLBACK_...}
+		 */
+		public final LatencyHistogram[] callbackTimes = new LatencyHistogram[CALLBACK_COUNT];
+
+		/**
+		 * Constructor for the Snapshot class, reuse the instance with {@link NetworkMetrics#snapshot(Snapshot)}
+		 */
+		public Snapshot() {
+			for (int i = 0; i < CALLBACK_COUNT; i++) {
+				callbackTimes[i] = new LatencyHistogram();
+			}
+		}
+
+		/**
+		 * Gets the send rate between an older snapshot and this one
+		 * @param previous The older snapshot
+		 * @param channel The channel index
+		 * @return The number of messages sent per second
+		 */
+		public float getSendRate(Snapshot previous, int channel) {
+			return rate(sentMessages[channel] - previous.sentMessages[channel], previous);
+		}
+
+		/**
+		 * Gets the receive rate between an older snapshot and this one
+		 * @param previous The older snapshot
+		 * @param channel The channel index
+		 * @return The number of messages received per second
+		 */
+		public float getReceiveRate(Snapshot previous, int channel) {
+			return rate(receivedMessages[channel] - previous.receivedMessages[channel], previous);
+		}
+
+		/**
+		 * Gets a multi line dump of the metrics, for the logs
+		 * @return The metrics as text
+		 */
+		@Override
+		public String toString() {
+			final StringBuilder builder = new StringBuilder();
+			for (int i = 0; i < CHANNEL_COUNT; i++) {
+				builder.append(CHANNEL_NAMES[i]).append(": sent ").append(sentMessages[i]).append(" (").append(sentBytes[i])
+						.append(" bytes), received ").append(receivedMessages[i]).append(" (").append(receivedBytes[i]).append(" bytes)\n");
+			}
+			for (int i = 0; i < CALLBACK_COUNT; i++) {
+				builder.append(CALLBACK_NAMES[i]).append(" callback: ").append(callbackTimes[i]).append('\n');
+			}
+			return builder.toString();
+		}
+
+		private float rate(long count, Snapshot previous) {
+			final long elapsed = timestampNanos - previous.timestampNanos;
+			return (elapsed <= 0) ? 0 : count * 1e9f / elapsed;
+		}
+	}
+
+	private final AtomicLongArray _counters = new AtomicLongArray(CHANNEL_COUNT * COUNTERS_PER_CHANNEL);
+	private final LatencyHistogram[] _callbackTimes = new LatencyHistogram[CALLBACK_COUNT];
+
+	/**
+	 * Constructor for the NetworkMetrics class
+	 */
+	public NetworkMetrics() {
+		for (int i = 0; i < CALLBACK_COUNT; i++) {
+			_callbackTimes[i] = new LatencyHistogram();
+		}
+	}
+
+	/**
+	 * Record a sent message
+	 * @param channel The channel index
+	 * @param bytes The message size
+	 */
+	public void recordSend(int channel, int bytes) {
+		_counters.incrementAndGet(channel * COUNTERS_PER_CHANNEL + SENT_MESSAGES);
+		_counters.addAndGet(channel * COUNTERS_PER_CHANNEL + SENT_BYTES, bytes);
+	}
+
+	/**
+	 * Record a received message
+	 * @param channel The channel index
+	 * @param bytes The message size
+	 */
+	public void recordReceive(int channel, int bytes) {
+		_counters.incrementAndGet(channel * COUNTERS_PER_CHANNEL + RECEIVED_MESSAGES);
+		_counters.addAndGet(channel * COUNTERS_PER_CHANNEL + RECEIVED_BYTES, bytes);
+	}
+
+	/**
+	 * Record the time spent in the game callback
+	 * @param callback The callback timing index
+	 * @param nanos The duration in nanoseconds
+	 */
+	public void recordCallback(int callback, long nanos) {
+		_callbackTimes[callback].record(nanos);
+	}
+
+	/**
+	 * Gets the number of messages sent on a channel
+	 * @param channel The channel index
+	 * @return The number of messages sent
+	 */
+	public long getSentMessages(int channel) {
+		return _counters.get(channel * COUNTERS_PER_CHANNEL + SENT_MESSAGES);
+	}
+
+	/**
+	 * Gets the number of bytes sent on a channel
+	 * @param channel The channel index
+	 * @return The number of bytes sent
+	 */
+	public long getSentBytes(int channel) {
+		return _counters.get(channel * COUNTERS_PER_CHANNEL + SENT_BYTES);
+	}
+
+	/**
+	 * Gets the number of messages received on a channel
+	 * @param channel The channel index
+	 * @return The number of messages received
+	 */
+	public long getReceivedMessages(int channel) {
+		return _counters.get(channel * COUNTERS_PER_CHANNEL + RECEIVED_MESSAGES);
+	}
+
+	/**
+	 * Gets the number of bytes received on a channel
+	 * @param channel The channel index
+	 * @return The number of bytes received
+	 */
+	public long getReceivedBytes(int channel) {
+		return _counters.get(channel * COUNTERS_PER_CHANNEL + RECEIVED_BYTES);
+	}
+
+	/**
+	 * Gets the live histogram of the time spent in the game callback
+	 * @param callback The callback timing index
+	 * @return The histogram, still updated while it is read
+	 */
+	public LatencyHistogram getCallbackTimes(int callback) {
+		return _callbackTimes[callback];
+	}
+
+	/**
+	 * Copy all the metrics, without allocating
+	 * @param into The snapshot receiving the copy
+	 * @return The given snapshot
+	 */
+	public Snapshot snapshot(Snapshot into) {
+		into.timestampNanos = System.nanoTime();
+		for (int i = 0; i < CHANNEL_COUNT; i++) {
+			into.sentMessages[i] = getSentMessages(i);
+			into.sentBytes[i] = getSentBytes(i);
+			into.receivedMessages[i] = getReceivedMessages(i);
+			into.receivedBytes[i] = getReceivedBytes(i);
+		}
+		for (int i = 0; i < CALLBACK_COUNT; i++) {
+			_callbackTimes[i].copyTo(into.callbackTimes[i]);
+		}
+
+		return into;
+	}
+
+	/**
+	 * Copy all the metrics into a new snapshot
+	 * @return The snapshot
+	 */
+	public Snapshot snapshot() {
+		return snapshot(new Snapshot());
+	}
+
+	/**
+	 * Reset all the counters and histograms
+	 */
+	public void reset() {
+		for (int i = 0; i < _counters.length(); i++) {
+			_counters.set(i, 0);
+		}
+		for (LatencyHistogram histogram : _callbackTimes) {
+			histogram.reset();
+		}
+	}
+}
@@ -12,13 +12,22 @@ import com.nextpeer.libgdx.Tournaments;
 
 /**
  * Cross platform wrapper for Nextpeer platform. In case the Tournament instance is not available for certain platform (Desktop) the execution will not fail.
+ * <p>The static methods act on the {@link NextpeerSession} of the loaded instance, create other sessions to run several
+ * Tournaments instances in the same process.</p>
  */
 public final class NextpeerPlugin {
 
 	private static NextpeerPlugin _sInstance = null;
 
+	/**
+	 * Default interval between two tournament state checks against the platform SDK
+	 */
+	public static final long DEFAULT_TOURNAMENT_STATE_REFRESH_INTERVAL_MILLIS = 1000;
+
 	public final Tournaments tournaments;
-	public long lastKnownTournamentRandomSeed = 0;
+	public volatile long lastKnownTournamentRandomSeed = 0;
+
+	private final NextpeerSession _session;
 
 	/***
 	 * Private methods
@@ -31,6 +40,22 @@ public final class NextpeerPlugin {
 	private NextpeerPlugin(Tournaments tournaments) {
 		this.tournaments = tournaments;
 
+		_session = new NextpeerSession(tournaments, new Tournaments.StateListener() {
+			@Override
+			public void onTournamentStateChanged(boolean inTournament, long tournamentRandomSeed) {
+				if (inTournament) {
+					lastKnownTournamentRandomSeed = tournamentRandomSeed;
+				}
+			}
+		});
+	}
+
+	/**
+	 * Gets the session of the loaded instance, null if the plugin is not loaded
+	 */
+	private static NextpeerSession session() {
+		final NextpeerPlugin plugin = instance();
+		return (plugin == null) ? null : plugin._session;
 	}
 
 	/**
@@ -54,6 +79,14 @@ public final class NextpeerPlugin {
 		return _sInstance;
 	}
 
+	/**
+	 * Gets the session the static methods act on
+	 * @return The session of this instance
+	 */
+	public NextpeerSession getSession() {
+		return _session;
+	}
+
 	/**
 	 * Convenience method. Return true if the Tournaments instance if available, false if not
 	 * @return true Tournaments instance if available, false if not
@@ -63,28 +96,77 @@ public final class NextpeerPlugin {
 	}
 
 	/**
-	 * Convenience method. Gets the Tournaments instance if available, null if not
-	 * @return The Tournaments instance if available, null if not
+	 * Returns true if the platform SDK is initialized. It can be initialized in the background by the platform implementation,
+	 * until then there is no tournament and {@link #launch()} is queued.
+	 * @return true if the plugin is loaded and the platform SDK is initialized, false otherwise
 	 */
-	private static Tournaments tournaments() {
-		if (!NextpeerPlugin.isAvailable()) {
-			return null;
-		}
+	public static boolean isReady() {
+		final NextpeerSession session = session();
+		return (session != null) && session.isReady();
+	}
 
-		return instance().tournaments;
+	/**
+	 * Gets the initialization of the platform SDK, to read the startup time (see {@link DeferredInitialization#getTimeToReadyMillis()})
+	 * @return The initialization, null if the plugin is not loaded or the platform SDK is initialized synchronously
+	 */
+	public static DeferredInitialization initialization() {
+		final NextpeerSession session = session();
+		return (session == null) ? null : session.getInitialization();
 	}
 
 	/**
 	 * Returns true if there is an active tournament.
+	 * The value is cached by the plugin and updated on the tournament start/end transitions, the platform SDK
+	 * is queried only once per refresh interval (see {@link #setTournamentStateRefreshInterval(long)}) to correct drift.
 	 * @return true if there is any tournament running at this moment, false otherwise.
-	 * @throws IllegalArgumentException if {@code userId} is empty or null.
-	 * @throws IllegalArgumentException if {@code timeDelta} is negative.
 	 */
 	public static final boolean isCurrentlyInTournament() {
-		Tournaments t = tournaments();
-		if (t == null) return false;
+		NextpeerSession session = session();
+		if (session == null) return false;
+
+		return session.isCurrentlyInTournament();
+	}
+
+	/**
+	 * Query the platform SDK for the tournament state and update the cached value used by {@link #isCurrentlyInTournament()}.
+	 * @return true if there is any tournament running at this moment, false otherwise.
+	 */
+	public static final boolean refreshTournamentState() {
+		NextpeerSession session = session();
+		if (session == null) return false;
+
+		return session.refreshTournamentState();
+	}
+
+	/**
+	 * Set the interval between two tournament state checks against the platform SDK.
+	 * Those checks only correct drift, the cached state follows the tournament start/end transitions anyway.
+	 * @param intervalInMilliseconds The refresh interval in milliseconds, zero to query the platform SDK only from {@link #refreshTournamentState()}.
+	 * @throws IllegalArgumentException if {@code intervalInMilliseconds} is negative.
+	 */
+	public static final void setTournamentStateRefreshInterval(long intervalInMilliseconds) {
+		if (intervalInMilliseconds < 0) {
+			throw new IllegalArgumentException("intervalInMilliseconds cannot be negative: " + intervalInMilliseconds);
+		}
+
+		NextpeerSession session = session();
+		if (session == null) return;
+
+		session.setTournamentStateRefreshInterval(intervalInMilliseconds);
+	}
 
-		return t.isCurrentlyInTournament();
+	/**
+	 * Creates a deterministic random generator for a subsystem from the last known tournament random seed.
+	 * All the players get the same values for the same stream name, whatever the other streams draw.
+	 * Call it from {@code TournamentsCallback#onTournamentStart(long)} or later.
+	 * @param name The stream name, for example "level" or "ai"
+	 * @return A new {@link TournamentRandom} stream, seeded with 0 if the plugin is not loaded
+	 */
+	public static final TournamentRandom randomStream(String name) {
+		NextpeerSession session = session();
+		if (session == null) return new TournamentRandom(0).stream(name);
+
+		return session.randomStream(name);
 	}
 
 	/**
@@ -94,11 +176,57 @@ public final class NextpeerPlugin {
 	 * @throws IllegalArgumentException if {@code score} is negative.
 	 */
 	public static final void reportScoreForCurrentTournament(int score) {
+		NextpeerSession session = session();
+		if (session == null) return;
+
+		session.reportScoreForCurrentTournament(score);
+	}
 
-		Tournaments t = tournaments();
-		if (t == null) return;
+	/**
+	 * Turn on the rate limited score reporting. Once enabled, {@link #reportScoreForCurrentTournament(int)} drops unchanged
+	 * scores and sends the changed ones at most once per interval. The latest score is always sent before
+	 * {@link #reportControlledTournamentOverWithScore(int)} and {@link #reportForfeitForCurrentTournament()}.
+	 * <p><strong>Note:</strong> Score reporting should be used from the game (render) thread only.</p>
+	 * @param reportIntervalInMilliseconds The minimal interval between two score reports.
+	 * @throws IllegalArgumentException if {@code reportIntervalInMilliseconds} is negative.
+	 */
+	public static final void enableScoreReportRateLimit(long reportIntervalInMilliseconds) {
+		NextpeerSession session = session();
+		if (session == null) return;
 
-		t.reportScoreForCurrentTournament(score);
+		session.enableScoreReportRateLimit(reportIntervalInMilliseconds);
+	}
+
+	/**
+	 * Turn off the rate limited score reporting. The pending score is sent first.
+	 */
+	public static final void disableScoreReportRateLimit() {
+		NextpeerSession session = session();
+		if (session == null) return;
+
+		session.disableScoreReportRateLimit();
+	}
+
+	/**
+	 * Gets the score reporter, can be used to read the sent and suppressed counters.
+	 * @return The score reporter if the rate limited score reporting is enabled, null otherwise
+	 */
+	public static final TournamentScoreReporter scoreReporter() {
+		NextpeerSession session = session();
+		if (session == null) return null;
+
+		return session.scoreReporter();
+	}
+
+	/**
+	 * Send the pending score if the report interval has passed.
+	 * Call this method once per frame when the rate limited score reporting is enabled and the game does not report the score every frame.
+	 */
+	public static final void updateScoreReport() {
+		NextpeerSession session = session();
+		if (session == null) return;
+
+		session.updateScoreReport();
 	}
 
 	/**
@@ -108,17 +236,79 @@ public final class NextpeerPlugin {
 	 * This can potentially be used notify other players of changes in the game state. 
 	 * The buffer will be sent to the other players and will activate the 
 	 * {@code NextpeerListener::onReceiveUnreliableTournamentCustomMessage:} method on their listener.
+	 * The buffer is sent unchanged, unless {@link #setUnreliableEscaping(boolean)} is enabled.
 	 * @param data The byte array to send to the other connected players.
 	 * @throws IllegalArgumentException if {@code data} is empty.
 	 */
 	public static final void unreliablePushDataToOtherPlayers(byte[] data) {
+		NextpeerSession session = session();
+		if (session == null) return;
 
-		if (!isCurrentlyInTournament()) return;
+		session.unreliablePushDataToOtherPlayers(data);
+	}
 
-		Tournaments t = tournaments();
-		if (t == null) return;
+	/**
+	 * Escape the unreliable messages sent without batching: a buffer starting with {@link UnreliableMessageBatcher#BATCH_HEADER}
+	 * or {@link UnreliableMessageBatcher#RAW_HEADER} is sent with a {@link UnreliableMessageBatcher#RAW_HEADER} prefix,
+	 * which {@link UnreliableMessageBatchReceiver} removes instead of splitting the buffer.
+	 * <p><strong>Note:</strong> Only enable it when all the players wrap their callback with {@link UnreliableMessageBatchReceiver},
+	 * for example when batching is turned off during the game. Disabled by default, the buffers are sent unchanged.</p>
+	 * @param enabled true to escape the buffers, false to send them unchanged
+	 */
+	public static final void setUnreliableEscaping(boolean enabled) {
+		NextpeerSession session = session();
+		if (session == null) return;
 
-		t.unreliablePushDataToOtherPlayers(data);
+		session.setUnreliableEscaping(enabled);
+	}
+
+	/**
+	 * Turn on the batching send mode for the unreliable channel. Once enabled, {@link #unreliablePushDataToOtherPlayers(byte[])}
+	 * appends the data to a pending packet which is sent by {@link #flushUnreliableData()}, or earlier when the packet size limit is reached.
+	 * The packets are only sent during a tournament, the messages pushed outside of one are dropped.
+	 * <p><strong>Note:</strong> The other players should wrap their callback with {@link UnreliableMessageBatchReceiver}.
+	 * Batching should be used from the game (render) thread only.</p>
+	 * @param maxPacketSize The packet size limit in bytes.
+	 * @throws IllegalArgumentException if {@code maxPacketSize} is too small.
+	 */
+	public static final void enableUnreliableBatching(int maxPacketSize) {
+		NextpeerSession session = session();
+		if (session == null) return;
+
+		session.enableUnreliableBatching(maxPacketSize);
+	}
+
+	/**
+	 * Turn off the batching send mode for the unreliable channel. The pending messages are flushed first.
+	 */
+	public static final void disableUnreliableBatching() {
+		NextpeerSession session = session();
+		if (session == null) return;
+
+		session.disableUnreliableBatching();
+	}
+
+	/**
+	 * Gets the unreliable channel batcher, can be used to read the batching statistics.
+	 * @return The batcher if the batching send mode is enabled, null otherwise
+	 */
+	public static final UnreliableMessageBatcher unreliableBatcher() {
+		NextpeerSession session = session();
+		if (session == null) return null;
+
+		return session.unreliableBatcher();
+	}
+
+	/**
+	 * Send the unreliable messages pushed since the last flush as a single packet.
+	 * Call this method once per frame (for example at the end of {@code render()}) when the batching send mode is enabled.
+	 * The pending messages are dropped in case there is no active tournament.
+	 */
+	public static final void flushUnreliableData() {
+		NextpeerSession session = session();
+		if (session == null) return;
+
+		session.flushUnreliableData();
 	}
 
 	/**
@@ -128,39 +318,35 @@ public final class NextpeerPlugin {
 	 * @throws IllegalArgumentException if {@code score} is negative.
 	 */
 	public static final void reportControlledTournamentOverWithScore(int score) {
-		if (!isCurrentlyInTournament()) return;
-
-		Tournaments t = tournaments();
-		if (t == null) return;
+		NextpeerSession session = session();
+		if (session == null) return;
 
-		t.reportControlledTournamentOverWithScore(score);
+		session.reportControlledTournamentOverWithScore(score);
 	}
 
 	/**
 	 * Call this method when the user wishes to exit the current tournament.
 	 */
 	public static final void reportForfeitForCurrentTournament() {
-		if (!isCurrentlyInTournament()) return;
+		NextpeerSession session = session();
+		if (session == null) return;
 
-		Tournaments t = tournaments();
-		if (t == null) return;
-
-		t.reportForfeitForCurrentTournament();
+		session.reportForfeitForCurrentTournament();
 	}
 
     /**
 	 * Launches the Nextpeer console.
 	 */
     public static final void launch() {
-		Tournaments t = tournaments();
-		if (t == null) return;
+		NextpeerSession session = session();
+		if (session == null) return;
 
-		t.launch();
+		session.launch();
     }
     
     /**
      * Register to a synchronized event which will be triggered once all connected players register to such event.
-     * Nextpeer will trigger a call to {@code TournamentsCallback#onReceiveSynchronizedEvent(String)}
+     * Nextpeer will trigger a call to {@code TournamentsCallback#onReceiveSynchronizedEvent(String, boolean)}
      * when the rest of the connected players will register to this synchronized event.
      * For example, you can register for a start game synchronized event.
      * This way, your can be sure that all players will start the game together, without taking into consideration different loading time per device.
@@ -170,11 +356,9 @@ public final class NextpeerPlugin {
 	 * @throws IllegalArgumentException if {@code timeoutInMilliseconds} is zero or negative.
      */
     public static final void registerToSynchronizedEvent(String eventName, int timeoutInMilliseconds) {
-		if (!isCurrentlyInTournament()) return;
-        
-		Tournaments t = tournaments();
-		if (t == null) return;
+		NextpeerSession session = session();
+		if (session == null) return;
         
-		t.registerToSynchronizedEvent(eventName, timeoutInMilliseconds);
+		session.registerToSynchronizedEvent(eventName, timeoutInMilliseconds);
     }
 }
@@ -0,0 +1,386 @@
+//
+//  Nextpeer libGDX plugin
+//  http://www.nextpeer.com
+//
+//  Created by Nextpeer development team.
+//  Copyright (c) 2014 Innobell, Ltd. All rights reserved.
+//
+
+package com.nextpeer.libgdx;
+
+/**
+ * Instance-scoped version of the {@link NextpeerPlugin} API, for one Tournaments instance. The static plugin delegates to the session of
+ * the loaded instance, other sessions can be created to run several tournaments in the same process (load tests, bots, servers).
+ * <p>The session caches the tournament state, holds the unreliable batcher and the score reporter, like the plugin.
+ * In case the Tournament instance is null (Desktop) the calls do nothing.</p>
+ * <p><strong>Note:</strong> A Tournaments instance can be used by a single session.</p>
+ */
+public final class NextpeerSession {
+
+	private final Tournaments _tournaments;
+	private final Tournaments.StateListener _stateObserver;
+	private volatile long _lastKnownTournamentRandomSeed = 0;
+
+	private volatile UnreliableMessageBatcher _unreliableBatcher = null;
+	private volatile boolean _unreliableEscaping = false;
+	private volatile TournamentScoreReporter _scoreReporter = null;
+
+	// Cached tournament state, updated on the tournament start/end transitions and corrected by refreshTournamentState()
+	private volatile boolean _inTournament = false;
+	private volatile long _lastStateRefreshNanos = 0;
+	// Number of start/end transitions, a refresh racing a transition must not write back the state it read before it
+	private final Object _stateLock = new Object();
+	private volatile long _stateTransitions = 0;
+	private volatile long _stateRefreshIntervalNanos = NextpeerPlugin.DEFAULT_TOURNAMENT_STATE_REFRESH_INTERVAL_MILLIS * 1000000L;
+
+	/**
+	 * Constructor for the NextpeerSession class
+	 * @param tournaments The Tournaments instance of the session, null if it is not available on this platform
+	 */
+	public NextpeerSession(Tournaments tournaments) {
+		this(tournaments, null);
+	}
+
+	/**
+	 * Constructor for the NextpeerSession class, used by the plugin to follow the state transitions
+	 * @param tournaments The Tournaments instance of the session, null if it is not available on this platform
+	 * @param stateObserver Notified after the session on the tournament start/end transitions, null for none
+	 */
+	NextpeerSession(Tournaments tournaments, Tournaments.StateListener stateObserver) {
+		_tournaments = tournaments;
+		_stateObserver = stateObserver;
+
+		if (tournaments != null) {
+			tournaments.stateListener = new Tournaments.StateListener() {
+				@Override
+				public void onTournamentStateChanged(boolean inTournament, long tournamentRandomSeed) {
+					if (inTournament) {
+						_lastKnownTournamentRandomSeed = tournamentRandomSeed;
+					}
+					synchronized (_stateLock) {
+						_inTournament = inTournament;
+						_stateTransitions++;
+					}
+
+					final TournamentScoreReporter reporter = _scoreReporter;
+					if (reporter != null) {
+						reporter.reset();
+					}
+
+					if (_stateObserver != null) {
+						_stateObserver.onTournamentStateChanged(inTournament, tournamentRandomSeed);
+					}
+				}
+			};
+			refreshState();
+		}
+	}
+
+	/**
+	 * Query the platform SDK for the tournament state and update the cached value.
+	 * The value read is dropped if a start/end transition happened during the query, the transition is more recent.
+	 * @return true if there is an active tournament, false otherwise
+	 */
+	private boolean refreshState() {
+		final long transitions = _stateTransitions;
+		boolean inTournament = _tournaments.isCurrentlyInTournament();
+		synchronized (_stateLock) {
+			if (_stateTransitions == transitions) {
+				_inTournament = inTournament;
+			}
+			else {
+				inTournament = _inTournament;
+			}
+		}
+		_lastStateRefreshNanos = System.nanoTime();
+
+		return inTournament;
+	}
+
+	/**
+	 * Gets the Tournaments instance of the session
+	 * @return The Tournaments instance, null if it is not available
+	 */
+	public Tournaments getTournaments() {
+		return _tournaments;
+	}
+
+	/**
+	 * Gets the random seed of the last tournament which started
+	 * @return The tournament random seed, 0 if no tournament started
+	 */
+	public long getLastKnownTournamentRandomSeed() {
+		return _lastKnownTournamentRandomSeed;
+	}
+
+	/**
+	 * Returns true if the platform SDK is initialized, see {@link Tournaments#isReady()}
+	 * @return true if the Tournaments instance is available and initialized, false otherwise
+	 */
+	public boolean isReady() {
+		return (_tournaments != null) && _tournaments.isReady();
+	}
+
+	/**
+	 * Gets the initialization of the platform SDK, to read the startup time
+	 * @return The initialization, null if the Tournaments instance is not available or is initialized synchronously
+	 */
+	public DeferredInitialization getInitialization() {
+		return (_tournaments == null) ? null : _tournaments.getInitialization();
+	}
+
+	/**
+	 * Returns true if there is an active tournament.
+	 * The value is cached and updated on the tournament start/end transitions, the platform SDK
+	 * is queried only once per refresh interval (see {@link #setTournamentStateRefreshInterval(long)}) to correct drift.
+	 * @return true if there is any tournament running at this moment, false otherwise.
+	 */
+	public boolean isCurrentlyInTournament() {
+		if (_tournaments == null) return false;
+
+		final long interval = _stateRefreshIntervalNanos;
+		if (interval > 0 && System.nanoTime() - _lastStateRefreshNanos >= interval) {
+			return refreshState();
+		}
+
+		return _inTournament;
+	}
+
+	/**
+	 * Query the platform SDK for the tournament state and update the cached value used by {@link #isCurrentlyInTournament()}.
+	 * @return true if there is any tournament running at this moment, false otherwise.
+	 */
+	public boolean refreshTournamentState() {
+		if (_tournaments == null) return false;
+
+		return refreshState();
+	}
+
+	/**
+	 * Set the interval between two tournament state checks against the platform SDK.
+	 * Those checks only correct drift, the cached state follows the tournament start/end transitions anyway.
+	 * @param intervalInMilliseconds The refresh interval in milliseconds, zero to query the platform SDK only from {@link #refreshTournamentState()}.
+	 * @throws IllegalArgumentException if {@code intervalInMilliseconds} is negative.
+	 */
+	public void setTournamentStateRefreshInterval(long intervalInMilliseconds) {
+		if (intervalInMilliseconds < 0) {
+			throw new IllegalArgumentException("intervalInMilliseconds cannot be negative: " + intervalInMilliseconds);
+		}
+
+		_stateRefreshIntervalNanos = intervalInMilliseconds * 1000000L;
+	}
+
+	/**
+	 * Creates a deterministic random generator for a subsystem from the last known tournament random seed.
+	 * All the players get the same values for the same stream name, whatever the other streams draw.
+	 * Call it from {@code TournamentsCallback#onTournamentStart(long)} or later.
+	 * @param name The stream name, for example "level" or "ai"
+	 * @return A new {@link TournamentRandom} stream
+	 */
+	public TournamentRandom randomStream(String name) {
+		return new TournamentRandom(_lastKnownTournamentRandomSeed).stream(name);
+	}
+
+	/**
+	 * Call this method to report the current score for the tournament. This allows Nextpeer to send
+	 * various notifications about the players' scores.
+	 * @param score The current game score to be reported.
+	 * @throws IllegalArgumentException if {@code score} is negative.
+	 */
+	public void reportScoreForCurrentTournament(int score) {
+		final TournamentScoreReporter reporter = _scoreReporter;
+		if (reporter != null) {
+			reporter.report(score);
+			return;
+		}
+
+		if (_tournaments == null) return;
+
+		_tournaments.reportScoreForCurrentTournament(score);
+	}
+
+	/**
+	 * Turn on the rate limited score reporting. Once enabled, {@link #reportScoreForCurrentTournament(int)} drops unchanged
+	 * scores and sends the changed ones at most once per interval. The latest score is always sent before
+	 * {@link #reportControlledTournamentOverWithScore(int)} and {@link #reportForfeitForCurrentTournament()}.
+	 * <p><strong>Note:</strong> Score reporting should be used from the game (render) thread only.</p>
+	 * @param reportIntervalInMilliseconds The minimal interval between two score reports.
+	 * @throws IllegalArgumentException if {@code reportIntervalInMilliseconds} is negative.
+	 */
+	public void enableScoreReportRateLimit(long reportIntervalInMilliseconds) {
+		if (_tournaments == null) return;
+
+		final TournamentScoreReporter reporter = _scoreReporter;
+		if (reporter != null) {
+			reporter.setReportInterval(reportIntervalInMilliseconds);
+			return;
+		}
+
+		_scoreReporter = new TournamentScoreReporter(_tournaments, reportIntervalInMilliseconds);
+	}
+
+	/**
+	 * Turn off the rate limited score reporting. The pending score is sent first.
+	 */
+	public void disableScoreReportRateLimit() {
+		final TournamentScoreReporter reporter = _scoreReporter;
+		if (reporter == null) return;
+
+		reporter.flush();
+		_scoreReporter = null;
+	}
+
+	/**
+	 * Gets the score reporter, can be used to read the sent and suppressed counters.
+	 * @return The score reporter if the rate limited score reporting is enabled, null otherwise
+	 */
+	public TournamentScoreReporter scoreReporter() {
+		return _scoreReporter;
+	}
+
+	/**
+	 * Send the pending score if the report interval has passed.
+	 * Call this method once per frame when the rate limited score reporting is enabled and the game does not report the score every frame.
+	 */
+	public void updateScoreReport() {
+		final TournamentScoreReporter reporter = _scoreReporter;
+		if (reporter == null) return;
+
+		reporter.update();
+	}
+
+	private void flushScoreReport() {
+		final TournamentScoreReporter reporter = _scoreReporter;
+		if (reporter == null) return;
+
+		reporter.flush();
+	}
+
+	/**
+	 * This method is used to push a buffer to the other players through the unreliable channel,
+	 * see {@link NextpeerPlugin#unreliablePushDataToOtherPlayers(byte[])}.
+	 * @param data The byte array to send to the other connected players.
+	 * @throws IllegalArgumentException if {@code data} is empty.
+	 */
+	public void unreliablePushDataToOtherPlayers(byte[] data) {
+		final UnreliableMessageBatcher batcher = _unreliableBatcher;
+		if (batcher != null) {
+			batcher.append(data);
+			return;
+		}
+
+		if (!isCurrentlyInTournament()) return;
+
+		_tournaments.unreliablePushDataToOtherPlayers(_unreliableEscaping ? UnreliableMessageBatcher.escape(data) : data);
+	}
+
+	/**
+	 * Escape the unreliable messages sent without batching, see {@link NextpeerPlugin#setUnreliableEscaping(boolean)}.
+	 * @param enabled true to escape the messages starting with a batch header byte, false to send them unchanged (default)
+	 */
+	public void setUnreliableEscaping(boolean enabled) {
+		_unreliableEscaping = enabled;
+	}
+
+	/**
+	 * Turn on the batching send mode for the unreliable channel. Once enabled, {@link #unreliablePushDataToOtherPlayers(byte[])}
+	 * appends the data to a pending packet which is sent by {@link #flushUnreliableData()}, or earlier when the packet size limit is reached.
+	 * The packets are only sent during a tournament, the messages pushed outside of one are dropped.
+	 * <p><strong>Note:</strong> The other players should wrap their callback with {@link UnreliableMessageBatchReceiver}.
+	 * Batching should be used from the game (render) thread only.</p>
+	 * @param maxPacketSize The packet size limit in bytes.
+	 * @throws IllegalArgumentException if {@code maxPacketSize} is too small.
+	 */
+	public void enableUnreliableBatching(int maxPacketSize) {
+		if (_tournaments == null) return;
+
+		final UnreliableMessageBatcher batcher = _unreliableBatcher;
+		if (batcher != null) {
+			batcher.flush();
+		}
+		_unreliableBatcher = new UnreliableMessageBatcher(_tournaments, maxPacketSize, new UnreliableMessageBatcher.SendGate() {
+			@Override
+			public boolean canSend() {
+				return isCurrentlyInTournament();
+			}
+		});
+	}
+
+	/**
+	 * Turn off the batching send mode for the unreliable channel. The pending messages are flushed first.
+	 */
+	public void disableUnreliableBatching() {
+		if (_unreliableBatcher == null) return;
+
+		flushUnreliableData();
+		_unreliableBatcher = null;
+	}
+
+	/**
+	 * Gets the unreliable channel batcher, can be used to read the batching statistics.
+	 * @return The batcher if the batching send mode is enabled, null otherwise
+	 */
+	public UnreliableMessageBatcher unreliableBatcher() {
+		return _unreliableBatcher;
+	}
+
+	/**
+	 * Send the unreliable messages pushed since the last flush as a single packet.
+	 * Call this method once per frame (for example at the end of {@code render()}) when the batching send mode is enabled.
+	 * The pending messages are dropped in case there is no active tournament.
+	 */
+	public void flushUnreliableData() {
+		final UnreliableMessageBatcher batcher = _unreliableBatcher;
+		if (batcher == null) return;
+
+		batcher.flush();
+	}
+
+	/**
+	 * Call this method when your game manages the current tournament and the player just died (a.k.a. 'Last Man Standing').
+	 * <p><strong>Note:</strong> The method will act only if the current tournament is from a 'GameControlled' tournament type.</p>
+	 * @param score The current game score to be reported.
+	 * @throws IllegalArgumentException if {@code score} is negative.
+	 */
+	public void reportControlledTournamentOverWithScore(int score) {
+		if (!isCurrentlyInTournament()) return;
+
+		flushScoreReport();
+
+		_tournaments.reportControlledTournamentOverWithScore(score);
+	}
+
+	/**
+	 * Call this method when the user wishes to exit the current tournament.
+	 */
+	public void reportForfeitForCurrentTournament() {
+		if (!isCurrentlyInTournament()) return;
+
+		flushScoreReport();
+
+		_tournaments.reportForfeitForCurrentTournament();
+	}
+
+	/**
+	 * Launches the Nextpeer console.
+	 */
+	public void launch() {
+		if (_tournaments == null) return;
+
+		_tournaments.launch();
+	}
+
+	/**
+	 * Register to a synchronized event which will be triggered once all connected players register to such event,
+	 * see {@link NextpeerPlugin#registerToSynchronizedEvent(String, int)}.
+	 * @param eventName The synchronized event name that the clients will register to. Cannot be empty or null.
+	 * @param timeoutInMilliseconds The timeout in milliseconds for the synchronized event. Cannot be zero or negative.
+	 * @throws IllegalArgumentException if {@code eventName} is empty or null.
+	 * @throws IllegalArgumentException if {@code timeoutInMilliseconds} is zero or negative.
+	 */
+	public void registerToSynchronizedEvent(String eventName, int timeoutInMilliseconds) {
+		if (!isCurrentlyInTournament()) return;
+
+		_tournaments.registerToSynchronizedEvent(eventName, timeoutInMilliseconds);
+	}
+}
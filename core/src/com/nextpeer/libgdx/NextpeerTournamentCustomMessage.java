@@ -38,12 +38,23 @@ public final class NextpeerTournamentCustomMessage {
 	 * Boolean value that indicates if this message came form a bot recording or a real-life player.
 	 */
 	public final boolean playerIsBot;
+
+	/**
+	 * The player handle in the {@link PlayerRegistry} of the current tournament, {@link PlayerRegistry#NO_HANDLE} if the message did not go through a registry.
+	 * Can be used as an index into per-player arrays.
+	 */
+	public final int playerHandle;
 	
 	public NextpeerTournamentCustomMessage(String playerId, String playerName, String playerImageUrl, byte[] customMessage, boolean playerIsBot) {
+		this(playerId, playerName, playerImageUrl, customMessage, playerIsBot, PlayerRegistry.NO_HANDLE);
+	}
+
+	public NextpeerTournamentCustomMessage(String playerId, String playerName, String playerImageUrl, byte[] customMessage, boolean playerIsBot, int playerHandle) {
 		this.playerId = playerId;
 		this.playerName = playerName;
 		this.playerImageUrl = playerImageUrl;
 		this.customMessage = customMessage;
 		this.playerIsBot = playerIsBot;
+		this.playerHandle = playerHandle;
 	}
 }
\ No newline at end of file
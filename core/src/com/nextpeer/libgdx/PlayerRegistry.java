@@ -0,0 +1,169 @@
+//
+//  Nextpeer libGDX plugin
+//  http://www.nextpeer.com
+//
+//  Created by Nextpeer development team.
+//  Copyright (c) 2014 Innobell, Ltd. All rights reserved.
+//
+
+package com.nextpeer.libgdx;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Gives each player of the current tournament a small int handle (0, 1, 2...) the first time one of their messages is received.
+ * The received messages carry the handle, so the per-player game state can live in plain arrays indexed by handle
+ * instead of maps keyed by the player identifier.
+ * <p>The registry is owned by the Tournaments instance and cleared when the tournament ends, the handles are then reused by the next tournament.
+ * Players are registered on the SDK thread, the lookups by handle can be done from any thread.</p>
+ */
+public final class PlayerRegistry {
+
+	/**
+	 * Handle of a message which did not go through a registry
+	 */
+	public static final int NO_HANDLE = -1;
+
+	private static final int INITIAL_CAPACITY = 8;
+
+	private final HashMap<String, Integer> _handles = new HashMap<String, Integer>();
+
+	// Accessed under the lock, _size lets the readers reject invalid handles without locking
+	private String[] _playerIds = new String[INITIAL_CAPACITY];
+	private String[] _playerNames = new String[INITIAL_CAPACITY];
+	private String[] _playerImageUrls = new String[INITIAL_CAPACITY];
+	private boolean[] _playerIsBot = new boolean[INITIAL_CAPACITY];
+	private volatile int _size;
+
+	// Last registered player, most messages in a row come from the same few players
+	private String _lastPlayerId;
+	private int _lastHandle = NO_HANDLE;
+
+	/**
+	 * Gets the handle of a player, registering the player if it is seen for the first time
+	 * @param playerId The player identifier
+	 * @param playerName The player name
+	 * @param playerImageUrl The player's profile image URL
+	 * @param playerIsBot Does the player is a bot recording
+	 * @return The player handle, {@link #NO_HANDLE} if {@code playerId} is null
+	 */
+	public synchronized int register(String playerId, String playerName, String playerImageUrl, boolean playerIsBot) {
+		if (playerId == null) return NO_HANDLE;
+		if (playerId.equals(_lastPlayerId)) return _lastHandle;
+
+		final Integer existing = _handles.get(playerId);
+		final int handle;
+		if (existing != null) {
+			handle = existing.intValue();
+		}
+		else {
+			handle = _size;
+			ensureCapacity(handle + 1);
+			_playerIds[handle] = playerId;
+			_playerNames[handle] = playerName;
+			_playerImageUrls[handle] = playerImageUrl;
+			_playerIsBot[handle] = playerIsBot;
+			_handles.put(playerId, Integer.valueOf(handle));
+			_size = handle + 1;
+		}
+
+		_lastPlayerId = playerId;
+		_lastHandle = handle;
+		return handle;
+	}
+
+	/**
+	 * Gets the handle of a registered player
+	 * @param playerId The player identifier
+	 * @return The player handle, {@link #NO_HANDLE} if the player was not seen in the current tournament
+	 */
+	public synchronized int handleOf(String playerId) {
+		final Integer handle = _handles.get(playerId);
+		return (handle == null) ? NO_HANDLE : handle.intValue();
+	}
+
+	/**
+	 * Gets the number of registered players, handles go from 0 to size - 1
+	 * @return The number of registered players
+	 */
+	public int size() {
+		return _size;
+	}
+
+	/**
+	 * Gets the identifier of a player
+	 * @param handle The player handle
+	 * @return The player identifier, null if there is no such player
+	 */
+	public String getPlayerId(int handle) {
+		if (!isValid(handle)) return null;
+		synchronized (this) {
+			return _playerIds[handle];
+		}
+	}
+
+	/**
+	 * Gets the name of a player
+	 * @param handle The player handle
+	 * @return The player name, null if there is no such player
+	 */
+	public String getPlayerName(int handle) {
+		if (!isValid(handle)) return null;
+		synchronized (this) {
+			return _playerNames[handle];
+		}
+	}
+
+	/**
+	 * Gets the profile image URL of a player
+	 * @param handle The player handle
+	 * @return The player's profile image URL, null if there is no such player
+	 */
+	public String getPlayerImageUrl(int handle) {
+		if (!isValid(handle)) return null;
+		synchronized (this) {
+			return _playerImageUrls[handle];
+		}
+	}
+
+	/**
+	 * Does a player is a bot recording or a real-life player
+	 * @param handle The player handle
+	 * @return true if the player is a bot recording, false otherwise (or if there is no such player)
+	 */
+	public boolean isBot(int handle) {
+		if (!isValid(handle)) return false;
+		synchronized (this) {
+			return _playerIsBot[handle];
+		}
+	}
+
+	/**
+	 * Forget all the players, called when the tournament ends
+	 */
+	public synchronized void clear() {
+		_handles.clear();
+		Arrays.fill(_playerIds, null);
+		Arrays.fill(_playerNames, null);
+		Arrays.fill(_playerImageUrls, null);
+		Arrays.fill(_playerIsBot, false);
+		_lastPlayerId = null;
+		_lastHandle = NO_HANDLE;
+		_size = 0;
+	}
+
+	private boolean isValid(int handle) {
+		return handle >= 0 && handle < _size;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity <= _playerIds.length) return;
+
+		final int newCapacity = Math.max(capacity, _playerIds.length * 2);
+		_playerIds = Arrays.copyOf(_playerIds, newCapacity);
+		_playerNames = Arrays.copyOf(_playerNames, newCapacity);
+		_playerImageUrls = Arrays.copyOf(_playerImageUrls, newCapacity);
+		_playerIsBot = Arrays.copyOf(_playerIsBot, newCapacity);
+	}
+}
@@ -0,0 +1,238 @@
+//
+//  Nextpeer libGDX plugin
+//  http://www.nextpeer.com
+//
+//  Created by Nextpeer development team.
+//  Copyright (c) 2014 Innobell, Ltd. All rights reserved.
+//
+
+package com.nextpeer.libgdx;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reusable version of {@link NextpeerTournamentCustomMessage}, delivered when a {@link TournamentCustomMessagePool} is set on the Tournaments instance.
+ * The custom message is a view ({@link #getData()}, {@link #getOffset()}, {@link #getLength()}) over a backing array which is reused
+ * by the next messages.
+ * <p><strong>Note:</strong> The instance goes back to the pool once the callback returns. Call {@link #retain()} (and later {@link #release()})
+ * to keep it longer, or {@link #toMessage()} to get an immutable copy.</p>
+ */
+public final class PooledTournamentCustomMessage {
+
+	private final TournamentCustomMessagePool _pool;
+	private final AtomicInteger _references = new AtomicInteger();
+
+	private String _playerId;
+	private String _playerName;
+	private String _playerImageUrl;
+	private boolean _playerIsBot;
+	private int _playerHandle = PlayerRegistry.NO_HANDLE;
+
+	// Backing array owned by this instance, reused between the messages
+	private byte[] _ownData;
+	private byte[] _data;
+	private int _offset;
+	private int _length;
+
+	// The message this one is a view of, null if the message owns its data
+	private PooledTournamentCustomMessage _parent;
+
+	private ByteBuffer _readOnlyBuffer;
+	private byte[] _readOnlyBufferData;
+
+	PooledTournamentCustomMessage(TournamentCustomMessagePool pool) {
+		_pool = pool;
+	}
+
+	/**
+	 * Gets the unique player identifier for the current game
+	 * @return The player identifier
+	 */
+	public String getPlayerId() {
+		return _playerId;
+	}
+
+	/**
+	 * Gets the player name
+	 * @return The player name
+	 */
+	public String getPlayerName() {
+		return _playerName;
+	}
+
+	/**
+	 * Gets the player's profile image URL
+	 * @return The player's profile image URL
+	 */
+	public String getPlayerImageUrl() {
+		return _playerImageUrl;
+	}
+
+	/**
+	 * Does this message came from a bot recording or a real-life player
+	 * @return true if the message came from a bot recording, false otherwise
+	 */
+	public boolean isPlayerBot() {
+		return _playerIsBot;
+	}
+
+	/**
+	 * Gets the player handle in the {@link PlayerRegistry} of the current tournament, can be used as an index into per-player arrays
+	 * @return The player handle, {@link PlayerRegistry#NO_HANDLE} if the message did not go through a registry
+	 */
+	public int getPlayerHandle() {
+		return _playerHandle;
+	}
+
+	/**
+	 * Gets the array holding the custom message. Only the range described by {@link #getOffset()} and {@link #getLength()} belongs to the message.
+	 * @return The backing array of the custom message
+	 * @note The array must not be modified, other messages may share it.
+	 */
+	public byte[] getData() {
+		return _data;
+	}
+
+	/**
+	 * Gets the offset of the custom message in {@link #getData()}
+	 * @return The offset of the custom message
+	 */
+	public int getOffset() {
+		return _offset;
+	}
+
+	/**
+	 * Gets the length of the custom message
+	 * @return The length of the custom message in bytes
+	 */
+	public int getLength() {
+		return _length;
+	}
+
+	/**
+	 * Gets a byte of the custom message
+	 * @param index The index of the byte, relative to the start of the custom message
+	 * @return The byte value
+	 * @throws IndexOutOfBoundsException if {@code index} is outside of the custom message.
+	 */
+	public byte get(int index) {
+		if (index < 0 || index >= _length) {
+			throw new IndexOutOfBoundsException("index: " + index + ", length: " + _length);
+		}
+
+		return _data[_offset + index];
+	}
+
+	/**
+	 * Gets a read-only ByteBuffer over the custom message. The position is set to the start of the message and the limit to its end.
+	 * The buffer is cached and reused as long as the backing array does not change.
+	 * @return A read-only ByteBuffer over the custom message
+	 */
+	public ByteBuffer asByteBuffer() {
+		if (_readOnlyBuffer == null || _readOnlyBufferData != _data) {
+			_readOnlyBuffer = ByteBuffer.wrap(_data).asReadOnlyBuffer();
+			_readOnlyBufferData = _data;
+		}
+
+		_readOnlyBuffer.limit(_offset + _length);
+		_readOnlyBuffer.position(_offset);
+		return _readOnlyBuffer;
+	}
+
+	/**
+	 * Copy the custom message into an array
+	 * @param destination The destination array
+	 * @param destinationOffset The offset in {@code destination}
+	 */
+	public void copyTo(byte[] destination, int destinationOffset) {
+		System.arraycopy(_data, _offset, destination, destinationOffset, _length);
+	}
+
+	/**
+	 * Creates an immutable copy of this message
+	 * @return A new {@link NextpeerTournamentCustomMessage} holding a copy of the custom message
+	 */
+	public NextpeerTournamentCustomMessage toMessage() {
+		final byte[] customMessage = new byte[_length];
+		copyTo(customMessage, 0);
+
+		return new NextpeerTournamentCustomMessage(_playerId, _playerName, _playerImageUrl, customMessage, _playerIsBot, _playerHandle);
+	}
+
+	/**
+	 * Keep the message after the callback returns. Each call must be matched by a {@link #release()} call.
+	 */
+	public void retain() {
+		_references.incrementAndGet();
+	}
+
+	/**
+	 * Release the message, it goes back to the pool once the last reference is released.
+	 * @throws IllegalStateException if the message was already released.
+	 */
+	public void release() {
+		final int references = _references.decrementAndGet();
+		if (references > 0) return;
+		if (references < 0) {
+			_references.incrementAndGet();
+			throw new IllegalStateException("message was already released");
+		}
+
+		final PooledTournamentCustomMessage parent = _parent;
+		_parent = null;
+		_playerId = null;
+		_playerName = null;
+		_playerImageUrl = null;
+		_playerHandle = PlayerRegistry.NO_HANDLE;
+		_data = null;
+		_offset = 0;
+		_length = 0;
+
+		if (parent != null) {
+			parent.release();
+		}
+		_pool.free(this);
+	}
+
+	/**
+	 * Gets the pool this message belongs to
+	 * @return The owner pool
+	 */
+	public TournamentCustomMessagePool getPool() {
+		return _pool;
+	}
+
+	void setCopy(String playerId, String playerName, String playerImageUrl, byte[] data, int offset, int length,
+			boolean playerIsBot, int playerHandle) {
+		if (_ownData == null || _ownData.length < length) {
+			_ownData = new byte[Math.max(length, _pool.initialBufferSize)];
+		}
+		System.arraycopy(data, offset, _ownData, 0, length);
+
+		setFields(playerId, playerName, playerImageUrl, playerIsBot, playerHandle);
+		_data = _ownData;
+		_offset = 0;
+		_length = length;
+		_references.set(1);
+	}
+
+	void setView(PooledTournamentCustomMessage parent, int offset, int length) {
+		parent.retain();
+
+		setFields(parent._playerId, parent._playerName, parent._playerImageUrl, parent._playerIsBot, parent._playerHandle);
+		_parent = parent;
+		_data = parent._data;
+		_offset = parent._offset + offset;
+		_length = length;
+		_references.set(1);
+	}
+
+	private void setFields(String playerId, String playerName, String playerImageUrl, boolean playerIsBot, int playerHandle) {
+		_playerId = playerId;
+		_playerName = playerName;
+		_playerImageUrl = playerImageUrl;
+		_playerIsBot = playerIsBot;
+		_playerHandle = playerHandle;
+	}
+}
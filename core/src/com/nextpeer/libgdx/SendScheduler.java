@@ -0,0 +1,498 @@
+//
+//  Nextpeer libGDX plugin
+//  http://www.nextpeer.com
+//
+//  Created by Nextpeer development team.
+//  Copyright (c) 2014 Innobell, Ltd. All rights reserved.
+//
+
+package com.nextpeer.libgdx;
+
+import java.util.Arrays;
+
+/**
+ * Outbound queue in front of the Tournaments push methods, sending at most a byte budget per tick in priority order.
+ * <p>Each message has a priority class ({@link #PRIORITY_CRITICAL} first) and an optional replacement key, for example an entity id.
+ * A message queued with the key of a message which is still waiting replaces it (latest wins), so a busy frame never sends a stale
+ * position ahead of a fresh one. The replaced message keeps its place in the queue.</p>
+ * <p>{@link #flush()} sends the queued messages, highest priority first and in queue order within a class, until the budget is used.
+ * The remaining messages wait for the next tick. When the queue is full, the oldest message of a lower class is dropped to make room.</p>
+ * <p><strong>Note:</strong> The scheduler is not thread safe, it should be used from the game (render) thread only.</p>
+ */
+public final class SendScheduler {
+
+	/**
+	 * Highest priority class, for example the game events
+	 */
+	public static final int PRIORITY_CRITICAL = 0;
+
+	/**
+	 * High priority class, for example the local player state
+	 */
+	public static final int PRIORITY_HIGH = 1;
+
+	/**
+	 * Normal priority class, for example the entity updates
+	 */
+	public static final int PRIORITY_NORMAL = 2;
+
+	/**
+	 * Lowest priority class, for example cosmetic effects
+	 */
+	public static final int PRIORITY_LOW = 3;
+
+	/**
+	 * Number of priority classes
+	 */
+	public static final int PRIORITY_COUNT = 4;
+
+	/**
+	 * Replacement key of a message which is never replaced
+	 */
+	public static final long NO_KEY = Long.MIN_VALUE;
+
+	/**
+	 * Default maximal number of queued messages
+	 */
+	public static final int DEFAULT_CAPACITY = 256;
+
+	/**
+	 * Default number of bytes sent per tick
+	 */
+	public static final int DEFAULT_BYTE_BUDGET_PER_TICK = 2048;
+
+	private static final int NONE = -1;
+
+	private final Tournaments _tournaments;
+	private UnreliableMessageBatcher _unreliableBatcher;
+	private boolean _unreliableEscaping;
+	private int _byteBudget = DEFAULT_BYTE_BUDGET_PER_TICK;
+
+	// Message slots, linked in one doubly linked list per priority class, free slots are linked through _next
+	private final byte[][] _data;
+	private final int[] _length;
+	private final boolean[] _reliable;
+	private final int[] _priority;
+	private final long[] _key;
+	private final int[] _next;
+	private final int[] _previous;
+	private final int[] _heads = new int[PRIORITY_COUNT];
+	private final int[] _tails = new int[PRIORITY_COUNT];
+	private final int[] _classDepth = new int[PRIORITY_COUNT];
+	private int _free;
+	private int _queued;
+	private int _queuedBytes;
+
+	// Open addressing map from replacement key to slot
+	private final long[] _mapKeys;
+	private final int[] _mapSlots;
+	private final int _mapMask;
+
+	private long _messagesSent;
+	private long _bytesSent;
+	private long _replacements;
+	private long _dropped;
+	private long _deferredBytes;
+	private int _maxQueueDepth;
+
+	/**
+	 * Constructor for the SendScheduler class
+	 * @param tournaments The Tournaments instance used to send the messages
+	 * @param capacity The maximal number of queued messages
+	 * @param byteBudgetPerTick The number of bytes sent by each {@link #flush()}
+	 * @throws IllegalArgumentException if {@code tournaments} is null, or {@code capacity} or {@code byteBudgetPerTick} is zero or negative.
+	 */
+	public SendScheduler(Tournaments tournaments, int capacity, int byteBudgetPerTick) {
+		if (tournaments == null) {
+			throw new IllegalArgumentException("tournaments cannot be null");
+		}
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("capacity must be positive: " + capacity);
+		}
+
+		_tournaments = tournaments;
+		setByteBudgetPerTick(byteBudgetPerTick);
+
+		_data = new byte[capacity][];
+		_length = new int[capacity];
+		_reliable = new boolean[capacity];
+		_priority = new int[capacity];
+		_key = new long[capacity];
+		_next = new int[capacity];
+		_previous = new int[capacity];
+
+		final int mapSize = Integer.highestOneBit(capacity * 2 - 1) << 1;
+		_mapKeys = new long[mapSize];
+		_mapSlots = new int[mapSize];
+		_mapMask = mapSize - 1;
+
+		clear();
+	}
+
+	/**
+	 * Constructor for the SendScheduler class with the default capacity and budget
+	 * @param tournaments The Tournaments instance used to send the messages
+	 */
+	public SendScheduler(Tournaments tournaments) {
+		this(tournaments, DEFAULT_CAPACITY, DEFAULT_BYTE_BUDGET_PER_TICK);
+	}
+
+	/**
+	 * Set the number of bytes sent per tick
+	 * @param byteBudgetPerTick The budget in bytes. A message larger than the budget is sent alone in a tick.
+	 * @throws IllegalArgumentException if {@code byteBudgetPerTick} is zero or negative.
+	 */
+	public void setByteBudgetPerTick(int byteBudgetPerTick) {
+		if (byteBudgetPerTick <= 0) {
+			throw new IllegalArgumentException("byteBudgetPerTick must be positive: " + byteBudgetPerTick);
+		}
+
+		_byteBudget = byteBudgetPerTick;
+	}
+
+	/**
+	 * Gets the number of bytes sent per tick
+	 * @return The budget in bytes
+	 */
+	public int getByteBudgetPerTick() {
+		return _byteBudget;
+	}
+
+	/**
+	 * Send the unreliable messages through a batcher, which is flushed at the end of every {@link #flush()}
+	 * @param batcher The batcher, null to send every message by itself
+	 */
+	public void setUnreliableBatcher(UnreliableMessageBatcher batcher) {
+		_unreliableBatcher = batcher;
+	}
+
+	/**
+	 * Escape the unreliable messages sent without a batcher with {@link UnreliableMessageBatcher#escape(byte[])}.
+	 * Only enable it when the other players wrap their callback with {@link UnreliableMessageBatchReceiver}.
+	 * @param enabled true to escape the messages, false to send them unchanged (default)
+	 */
+	public void setUnreliableEscaping(boolean enabled) {
+		_unreliableEscaping = enabled;
+	}
+
+	/**
+	 * Queue a message which is never replaced
+	 * @param data The message, it is copied
+	 * @param reliable true to send it with {@code pushDataToOtherPlayers}, false with {@code unreliablePushDataToOtherPlayers}
+	 * @param priority The priority class, {@link #PRIORITY_CRITICAL} to {@link #PRIORITY_LOW}
+	 * @return true if the message was queued, false if the queue is full of messages of the same or a higher priority
+	 */
+	public boolean enqueue(byte[] data, boolean reliable, int priority) {
+		return enqueue(data, 0, (data == null) ? 0 : data.length, reliable, priority, NO_KEY);
+	}
+
+	/**
+	 * Queue a message, replacing the queued message with the same key
+	 * @param data The message, it is copied
+	 * @param reliable true to send it with {@code pushDataToOtherPlayers}, false with {@code unreliablePushDataToOtherPlayers}
+	 * @param priority The priority class, {@link #PRIORITY_CRITICAL} to {@link #PRIORITY_LOW}
+	 * @param replacementKey The key, for example an entity id, {@link #NO_KEY} for a message which is never replaced
+	 * @return true if the message was queued, false if the queue is full of messages of the same or a higher priority
+	 */
+	public boolean enqueue(byte[] data, boolean reliable, int priority, long replacementKey) {
+		return enqueue(data, 0, (data == null) ? 0 : data.length, reliable, priority, replacementKey);
+	}
+
+	/**
+	 * Queue a message, replacing the queued message with the same key
+	 * @param data The array holding the message, the bytes are copied
+	 * @param offset The offset of the message in {@code data}
+	 * @param length The length of the message
+	 * @param reliable true to send it with {@code pushDataToOtherPlayers}, false with {@code unreliablePushDataToOtherPlayers}
+	 * @param priority The priority class, {@link #PRIORITY_CRITICAL} to {@link #PRIORITY_LOW}
+	 * @param replacementKey The key, for example an entity id, {@link #NO_KEY} for a message which is never replaced
+	 * @return true if the message was queued, false if the queue is full of messages of the same or a higher priority
+	 * @throws IllegalArgumentException if the message is empty or {@code priority} is out of range.
+	 */
+	public boolean enqueue(byte[] data, int offset, int length, boolean reliable, int priority, long replacementKey) {
+		if (data == null || length <= 0) {
+			throw new IllegalArgumentException("data cannot be empty");
+		}
+		if (priority < 0 || priority >= PRIORITY_COUNT) {
+			throw new IllegalArgumentException("priority must be between 0 and " + (PRIORITY_COUNT - 1) + ": " + priority);
+		}
+
+		int slot = (replacementKey == NO_KEY) ? NONE : mapGet(replacementKey);
+		if (slot != NONE) {
+			_replacements++;
+			_queuedBytes -= _length[slot];
+			if (_priority[slot] != priority) {
+				unlink(slot);
+				link(slot, priority);
+			}
+		}
+		else {
+			if (_free == NONE && !dropLowerThan(priority)) {
+				_dropped++;
+				return false;
+			}
+
+			slot = _free;
+			_free = _next[slot];
+			link(slot, priority);
+			_queued++;
+			_maxQueueDepth = Math.max(_maxQueueDepth, _queued);
+
+			_key[slot] = replacementKey;
+			if (replacementKey != NO_KEY) {
+				mapPut(replacementKey, slot);
+			}
+		}
+
+		if (_data[slot] == null || _data[slot].length < length) {
+			_data[slot] = new byte[Math.max(length, 64)];
+		}
+		System.arraycopy(data, offset, _data[slot], 0, length);
+		_length[slot] = length;
+		_reliable[slot] = reliable;
+		_queuedBytes += length;
+		return true;
+	}
+
+	/**
+	 * Send the queued messages, highest priority first, up to the byte budget. Should be called once per tick.
+	 * @return The number of bytes sent
+	 */
+	public int flush() {
+		int sentBytes = 0;
+		int priority = 0;
+
+		while (priority < PRIORITY_COUNT && sentBytes < _byteBudget) {
+			final int slot = _heads[priority];
+			if (slot == NONE) {
+				priority++;
+				continue;
+			}
+
+			// A message larger than the whole budget goes out alone, otherwise it would never be sent
+			final int length = _length[slot];
+			if (sentBytes > 0 && sentBytes + length > _byteBudget) break;
+
+			send(slot);
+			remove(slot);
+			sentBytes += length;
+		}
+
+		final UnreliableMessageBatcher batcher = _unreliableBatcher;
+		if (batcher != null) {
+			batcher.flush();
+		}
+
+		_deferredBytes += _queuedBytes;
+		return sentBytes;
+	}
+
+	/**
+	 * Drop all the queued messages (for example when the tournament is over)
+	 */
+	public void clear() {
+		Arrays.fill(_heads, NONE);
+		Arrays.fill(_tails, NONE);
+		Arrays.fill(_classDepth, 0);
+		Arrays.fill(_mapSlots, NONE);
+		for (int i = 0; i < _next.length; i++) {
+			_next[i] = (i + 1 < _next.length) ? i + 1 : NONE;
+			_previous[i] = NONE;
+		}
+		_free = 0;
+		_queued = 0;
+		_queuedBytes = 0;
+	}
+
+	/**
+	 * Gets the number of queued messages
+	 * @return The queue depth
+	 */
+	public int getQueueDepth() {
+		return _queued;
+	}
+
+	/**
+	 * Gets the number of queued messages of a priority class
+	 * @param priority The priority class
+	 * @return The queue depth of the class
+	 */
+	public int getQueueDepth(int priority) {
+		return _classDepth[priority];
+	}
+
+	/**
+	 * Gets the largest queue depth seen
+	 * @return The largest number of queued messages
+	 */
+	public int getMaxQueueDepth() {
+		return _maxQueueDepth;
+	}
+
+	/**
+	 * Gets the size of the queued messages
+	 * @return The number of queued bytes
+	 */
+	public int getQueuedBytes() {
+		return _queuedBytes;
+	}
+
+	/**
+	 * Gets the number of messages which replaced a queued message with the same key
+	 * @return The number of replacements
+	 */
+	public long getReplacements() {
+		return _replacements;
+	}
+
+	/**
+	 * Gets the number of messages dropped because the queue was full
+	 * @return The number of dropped messages
+	 */
+	public long getDropped() {
+		return _dropped;
+	}
+
+	/**
+	 * Gets the bytes left in the queue after each flush, summed over all the flushes (a byte waiting for 3 ticks counts 3 times)
+	 * @return The number of deferred bytes
+	 */
+	public long getDeferredBytes() {
+		return _deferredBytes;
+	}
+
+	/**
+	 * Gets the number of messages sent
+	 * @return The number of messages sent
+	 */
+	public long getMessagesSent() {
+		return _messagesSent;
+	}
+
+	/**
+	 * Gets the number of bytes sent
+	 * @return The number of bytes sent
+	 */
+	public long getBytesSent() {
+		return _bytesSent;
+	}
+
+	private void send(int slot) {
+		final int length = _length[slot];
+		final UnreliableMessageBatcher batcher = _unreliableBatcher;
+		if (!_reliable[slot] && batcher != null) {
+			batcher.append(_data[slot], 0, length);
+		}
+		else {
+			final byte[] data = Arrays.copyOf(_data[slot], length);
+			if (_reliable[slot]) {
+				_tournaments.pushDataToOtherPlayers(data);
+			}
+			else {
+				_tournaments.unreliablePushDataToOtherPlayers(_unreliableEscaping ? UnreliableMessageBatcher.escape(data) : data);
+			}
+		}
+
+		_messagesSent++;
+		_bytesSent += length;
+	}
+
+	/**
+	 * Make room by dropping the oldest message of the lowest class below the given priority
+	 */
+	private boolean dropLowerThan(int priority) {
+		for (int lower = PRIORITY_COUNT - 1; lower > priority; lower--) {
+			if (_heads[lower] != NONE) {
+				remove(_heads[lower]);
+				_dropped++;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void remove(int slot) {
+		unlink(slot);
+		if (_key[slot] != NO_KEY) {
+			mapRemove(_key[slot]);
+		}
+		_queued--;
+		_queuedBytes -= _length[slot];
+		_next[slot] = _free;
+		_free = slot;
+	}
+
+	private void link(int slot, int priority) {
+		_priority[slot] = priority;
+		_next[slot] = NONE;
+		_previous[slot] = _tails[priority];
+		if (_tails[priority] != NONE) {
+			_next[_tails[priority]] = slot;
+		}
+		else {
+			_heads[priority] = slot;
+		}
+		_tails[priority] = slot;
+		_classDepth[priority]++;
+	}
+
+	private void unlink(int slot) {
+		final int priority = _priority[slot];
+		final int previous = _previous[slot];
+		final int next = _next[slot];
+		if (previous != NONE) {
+			_next[previous] = next;
+		}
+		else {
+			_heads[priority] = next;
+		}
+		if (next != NONE) {
+			_previous[next] = previous;
+		}
+		else {
+			_tails[priority] = previous;
+		}
+		_classDepth[priority]--;
+	}
+
+	private int mapIndex(long key) {
+		long hash = key * 0x9E3779B97F4A7C15L;
+		return (int)(hash ^ (hash >>> 32)) & _mapMask;
+	}
+
+	private int mapGet(long key) {
+		for (int i = mapIndex(key); _mapSlots[i] != NONE; i = (i + 1) & _mapMask) {
+			if (_mapKeys[i] == key) return _mapSlots[i];
+		}
+		return NONE;
+	}
+
+	private void mapPut(long key, int slot) {
+		int i = mapIndex(key);
+		while (_mapSlots[i] != NONE) {
+			i = (i + 1) & _mapMask;
+		}
+		_mapKeys[i] = key;
+		_mapSlots[i] = slot;
+	}
+
+	private void mapRemove(long key) {
+		int i = mapIndex(key);
+		while (_mapKeys[i] != key || _mapSlots[i] == NONE) {
+			if (_mapSlots[i] == NONE) return;
+			i = (i + 1) & _mapMask;
+		}
+
+		// Backward shift deletion, keeps the probe sequences without tombstones
+		int hole = i;
+		for (int j = (hole + 1) & _mapMask; _mapSlots[j] != NONE; j = (j + 1) & _mapMask) {
+			final int home = mapIndex(_mapKeys[j]);
+			if (((j - home) & _mapMask) >= ((j - hole) & _mapMask)) {
+				_mapKeys[hole] = _mapKeys[j];
+				_mapSlots[hole] = _mapSlots[j];
+				hole = j;
+			}
+		}
+		_mapSlots[hole] = NONE;
+	}
+}
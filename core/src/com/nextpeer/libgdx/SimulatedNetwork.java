@@ -0,0 +1,511 @@
+//
+//  Nextpeer libGDX plugin
+//  http://www.nextpeer.com
+//
+//  Created by Nextpeer development team.
+//  Copyright (c) 2014 Innobell, Ltd. All rights reserved.
+//
+
+package com.nextpeer.libgdx;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * In-process network connecting {@link SimulatedTournaments} peers, so the whole stack can run (and be measured) headless in a single JVM.
+ * Pushed buffers are routed between the peers with a configurable latency, jitter, loss and reordering. The reliable channel is
+ * never lossy and keeps the order between two peers. The network also drives the tournament start/end and the synchronized events.
+ * <p>The network runs either on a manual clock, advanced with {@link #advance(long)} (deterministic, for tests), or on the real clock,
+ * with {@link #update()} called by the game loop or by the thread started with {@link #start()}. The callbacks are called from the
+ * thread advancing the network, as the platform SDK would call them from its own thread.</p>
+ */
+public final class SimulatedNetwork {
+
+	/**
+	 * Default one way latency of the unreliable channel
+	 */
+	public static final long DEFAULT_LATENCY_MILLIS = 50;
+
+	/**
+	 * Default one way latency of the reliable channel
+	 */
+	public static final long DEFAULT_RELIABLE_LATENCY_MILLIS = 100;
+
+	private static final int DELIVERY_MESSAGE = 1;
+	private static final int DELIVERY_UNRELIABLE_MESSAGE = 2;
+	private static final int DELIVERY_SYNCHRONIZED_EVENT = 3;
+	private static final int DELIVERY_SYNCHRONIZED_EVENT_TIMEOUT = 4;
+
+	/**
+	 * A buffer (or synchronized event) on its way to a peer
+	 */
+	private static final class Delivery implements Comparable<Delivery> {
+		final long time;
+		final long order;
+		final int type;
+		final SimulatedTournaments sender;
+		final SimulatedTournaments receiver;
+		final byte[] data;
+		final String name;
+
+		Delivery(long time, long order, int type, SimulatedTournaments sender, SimulatedTournaments receiver, byte[] data, String name) {
+			this.time = time;
+			this.order = order;
+			this.type = type;
+			this.sender = sender;
+			this.receiver = receiver;
+			this.data = data;
+			this.name = name;
+		}
+
+		@Override
+		public int compareTo(Delivery other) {
+			if (time != other.time) return (time < other.time) ? -1 : 1;
+			return (order < other.order) ? -1 : ((order == other.order) ? 0 : 1);
+		}
+	}
+
+	/**
+	 * Synchronized event waiting for all the peers to register
+	 */
+	private static final class PendingEvent {
+		final List<SimulatedTournaments> registered = new ArrayList<SimulatedTournaments>();
+		long deadline;
+	}
+
+	private final boolean _manualClock;
+	private final long _startNanos = System.nanoTime();
+	private final TournamentRandom _random;
+	private final List<SimulatedTournaments> _peers = new ArrayList<SimulatedTournaments>();
+	private final PriorityQueue<Delivery> _deliveries = new PriorityQueue<Delivery>();
+	private final Map<String, PendingEvent> _pendingEvents = new HashMap<String, PendingEvent>();
+	private final List<Delivery> _due = new ArrayList<Delivery>();
+
+	// Serializes the deliveries, like the single SDK thread of a platform
+	private final Object _updateLock = new Object();
+
+	private long _manualTimeMillis;
+	private long _order;
+	private long[][] _lastReliableDelivery = new long[0][0];
+
+	private volatile long _latencyMillis = DEFAULT_LATENCY_MILLIS;
+	private volatile long _reliableLatencyMillis = DEFAULT_RELIABLE_LATENCY_MILLIS;
+	private volatile long _jitterMillis;
+	private volatile float _lossRate;
+	private volatile float _reorderRate;
+
+	private boolean _inTournament;
+	private Thread _thread;
+	private volatile boolean _running;
+
+	private long _packetsSent;
+	private long _packetsDelivered;
+	private long _packetsLost;
+	private long _packetsReordered;
+
+	/**
+	 * Constructor for the SimulatedNetwork class
+	 * @param manualClock true to use a clock advanced by {@link #advance(long)}, false to use the real clock
+	 * @param randomSeed The seed of the loss, jitter and reordering draws, the same seed gives the same network behavior on a manual clock
+	 */
+	public SimulatedNetwork(boolean manualClock, long randomSeed) {
+		_manualClock = manualClock;
+		_random = new TournamentRandom(randomSeed);
+	}
+
+	/**
+	 * Set the one way latency of the unreliable channel
+	 * @param latencyInMilliseconds The latency in milliseconds
+	 */
+	public void setLatency(long latencyInMilliseconds) {
+		_latencyMillis = Math.max(0, latencyInMilliseconds);
+	}
+
+	/**
+	 * Set the one way latency of the reliable channel
+	 * @param latencyInMilliseconds The latency in milliseconds
+	 */
+	public void setReliableLatency(long latencyInMilliseconds) {
+		_reliableLatencyMillis = Math.max(0, latencyInMilliseconds);
+	}
+
+	/**
+	 * Set the jitter, a random extra delay between 0 and the jitter is added to every delivery
+	 * @param jitterInMilliseconds The maximal extra delay in milliseconds
+	 */
+	public void setJitter(long jitterInMilliseconds) {
+		_jitterMillis = Math.max(0, jitterInMilliseconds);
+	}
+
+	/**
+	 * Set the probability for an unreliable buffer to be lost
+	 * @param lossRate The loss probability, between 0 and 1
+	 */
+	public void setLossRate(float lossRate) {
+		_lossRate = Math.max(0, Math.min(1, lossRate));
+	}
+
+	/**
+	 * Set the probability for an unreliable buffer to be held back long enough to arrive after the next ones
+	 * @param reorderRate The reordering probability, between 0 and 1
+	 */
+	public void setReorderRate(float reorderRate) {
+		_reorderRate = Math.max(0, Math.min(1, reorderRate));
+	}
+
+	/**
+	 * Creates a new peer connected to this network
+	 * @param playerId The player identifier
+	 * @param playerName The player name
+	 * @param playerIsBot Does the player is a bot recording
+	 * @return The peer, set its callback with {@link Tournaments#setTournamentsCallback(TournamentsCallback)}
+	 */
+	public synchronized SimulatedTournaments addPeer(String playerId, String playerName, boolean playerIsBot) {
+		final SimulatedTournaments peer = new SimulatedTournaments(this, _peers.size(), playerId, playerName, playerIsBot);
+		_peers.add(peer);
+
+		final int count = _peers.size();
+		final long[][] lastReliableDelivery = new long[count][count];
+		for (int i = 0; i < _lastReliableDelivery.length; i++) {
+			System.arraycopy(_lastReliableDelivery[i], 0, lastReliableDelivery[i], 0, _lastReliableDelivery[i].length);
+		}
+		_lastReliableDelivery = lastReliableDelivery;
+
+		return peer;
+	}
+
+	/**
+	 * Gets the peers connected to this network
+	 * @return A copy of the peer list
+	 */
+	public synchronized List<SimulatedTournaments> getPeers() {
+		return new ArrayList<SimulatedTournaments>(_peers);
+	}
+
+	/**
+	 * Start a tournament on all the peers, their {@code onTournamentStart} is called on the calling thread
+	 * @param tournamentRandomSeed The tournament random seed given to all the peers
+	 */
+	public void startTournament(long tournamentRandomSeed) {
+		final List<SimulatedTournaments> peers;
+		synchronized (this) {
+			_inTournament = true;
+			_deliveries.clear();
+			_pendingEvents.clear();
+			peers = new ArrayList<SimulatedTournaments>(_peers);
+			for (SimulatedTournaments peer : peers) {
+				peer.setInTournament(true);
+			}
+		}
+
+		for (SimulatedTournaments peer : peers) {
+			peer.fireTournamentStart(tournamentRandomSeed);
+		}
+	}
+
+	/**
+	 * End the tournament on all the peers still in it, their {@code onTournamentEnd} is called on the calling thread
+	 */
+	public void endTournament() {
+		final List<SimulatedTournaments> peers = new ArrayList<SimulatedTournaments>();
+		synchronized (this) {
+			_inTournament = false;
+			_pendingEvents.clear();
+			for (SimulatedTournaments peer : _peers) {
+				if (peer.isCurrentlyInTournament()) {
+					peer.setInTournament(false);
+					peers.add(peer);
+				}
+			}
+		}
+
+		for (SimulatedTournaments peer : peers) {
+			peer.fireTournamentEnd();
+		}
+	}
+
+	/**
+	 * Does a tournament is running on the network
+	 * @return true if a tournament is running, false otherwise
+	 */
+	public synchronized boolean isInTournament() {
+		return _inTournament;
+	}
+
+	/**
+	 * Gets the network time
+	 * @return The current time in milliseconds, manual or elapsed since the network creation
+	 */
+	public synchronized long currentTimeMillis() {
+		if (_manualClock) return _manualTimeMillis;
+
+		return (System.nanoTime() - _startNanos) / 1000000L;
+	}
+
+	/**
+	 * Advance the manual clock and deliver everything that became due, on the calling thread
+	 * @param millis The time to advance in milliseconds
+	 * @throws IllegalStateException if the network uses the real clock.
+	 */
+	public void advance(long millis) {
+		if (!_manualClock) {
+			throw new IllegalStateException("the network uses the real clock");
+		}
+
+		synchronized (this) {
+			_manualTimeMillis += Math.max(0, millis);
+		}
+		update();
+	}
+
+	/**
+	 * Deliver everything that became due and fire the timed out synchronized events, on the calling thread
+	 * @return The number of deliveries
+	 */
+	public int update() {
+		synchronized (_updateLock) {
+			return deliverDue();
+		}
+	}
+
+	private int deliverDue() {
+		final List<Delivery> due = _due;
+		synchronized (this) {
+			final long now = currentTimeMillis();
+			while (!_deliveries.isEmpty() && _deliveries.peek().time <= now) {
+				due.add(_deliveries.poll());
+			}
+
+			final Iterator<Map.Entry<String, PendingEvent>> events = _pendingEvents.entrySet().iterator();
+			while (events.hasNext()) {
+				final Map.Entry<String, PendingEvent> entry = events.next();
+				if (entry.getValue().deadline <= now) {
+					// Like the platform, the event is fired on timeout for the players which registered to it
+					for (SimulatedTournaments peer : entry.getValue().registered) {
+						due.add(new Delivery(now, _order++, DELIVERY_SYNCHRONIZED_EVENT_TIMEOUT, null, peer, null, entry.getKey()));
+					}
+					events.remove();
+				}
+			}
+		}
+
+		final int count = due.size();
+		try {
+			for (int i = 0; i < count; i++) {
+				deliver(due.get(i));
+			}
+		}
+		finally {
+			due.clear();
+		}
+
+		return count;
+	}
+
+	/**
+	 * Start a thread which delivers the due buffers every millisecond, for the real clock
+	 * @throws IllegalStateException if the network uses the manual clock.
+	 */
+	public synchronized void start() {
+		if (_manualClock) {
+			throw new IllegalStateException("the network uses the manual clock");
+		}
+		if (_thread != null) return;
+
+		_running = true;
+		_thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				while (_running) {
+					update();
+					try {
+						Thread.sleep(1);
+					}
+					catch (InterruptedException e) {
+						return;
+					}
+				}
+			}
+		}, "SimulatedNetwork");
+		_thread.setDaemon(true);
+		_thread.start();
+	}
+
+	/**
+	 * Stop the thread started by {@link #start()}
+	 */
+	public void stop() {
+		final Thread thread;
+		synchronized (this) {
+			thread = _thread;
+			_thread = null;
+			_running = false;
+		}
+		if (thread == null) return;
+
+		thread.interrupt();
+		try {
+			thread.join();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Gets the number of buffers sent, one per receiving peer
+	 * @return The number of packets sent
+	 */
+	public synchronized long getPacketsSent() {
+		return _packetsSent;
+	}
+
+	/**
+	 * Gets the number of buffers delivered
+	 * @return The number of packets delivered
+	 */
+	public synchronized long getPacketsDelivered() {
+		return _packetsDelivered;
+	}
+
+	/**
+	 * Gets the number of unreliable buffers lost
+	 * @return The number of packets lost
+	 */
+	public synchronized long getPacketsLost() {
+		return _packetsLost;
+	}
+
+	/**
+	 * Gets the number of unreliable buffers held back to be reordered
+	 * @return The number of packets reordered
+	 */
+	public synchronized long getPacketsReordered() {
+		return _packetsReordered;
+	}
+
+	/**
+	 * Gets the number of deliveries waiting for their time
+	 * @return The number of packets in flight
+	 */
+	public synchronized int getPacketsInFlight() {
+		return _deliveries.size();
+	}
+
+	synchronized void send(SimulatedTournaments sender, byte[] data, boolean reliable) {
+		if (!_inTournament || !sender.isCurrentlyInTournament()) return;
+
+		final long now = currentTimeMillis();
+		for (SimulatedTournaments receiver : _peers) {
+			if (receiver == sender || !receiver.isCurrentlyInTournament()) continue;
+
+			_packetsSent++;
+			long time = now + jitter();
+			if (reliable) {
+				time += _reliableLatencyMillis;
+
+				// The reliable channel keeps the order between two peers
+				final long[] last = _lastReliableDelivery[sender.index];
+				time = Math.max(time, last[receiver.index]);
+				last[receiver.index] = time;
+			}
+			else {
+				if (_lossRate > 0 && _random.nextFloat() < _lossRate) {
+					_packetsLost++;
+					continue;
+				}
+
+				time += _latencyMillis;
+				if (_reorderRate > 0 && _random.nextFloat() < _reorderRate) {
+					time += _latencyMillis + _jitterMillis + 1;
+					_packetsReordered++;
+				}
+			}
+
+			_deliveries.add(new Delivery(time, _order++, reliable ? DELIVERY_MESSAGE : DELIVERY_UNRELIABLE_MESSAGE,
+					sender, receiver, data, null));
+		}
+	}
+
+	synchronized void registerToSynchronizedEvent(SimulatedTournaments peer, String eventName, int timeoutInMilliseconds) {
+		if (!_inTournament || !peer.isCurrentlyInTournament()) return;
+
+		final long now = currentTimeMillis();
+		PendingEvent event = _pendingEvents.get(eventName);
+		if (event == null) {
+			event = new PendingEvent();
+			event.deadline = now + timeoutInMilliseconds;
+			_pendingEvents.put(eventName, event);
+		}
+		if (!event.registered.contains(peer)) {
+			event.registered.add(peer);
+		}
+
+		for (SimulatedTournaments other : _peers) {
+			if (other.isCurrentlyInTournament() && !event.registered.contains(other)) return;
+		}
+
+		_pendingEvents.remove(eventName);
+		for (SimulatedTournaments registered : event.registered) {
+			_deliveries.add(new Delivery(now + _latencyMillis + jitter(), _order++, DELIVERY_SYNCHRONIZED_EVENT,
+					null, registered, null, eventName));
+		}
+	}
+
+	/**
+	 * Called when a peer reported its final score or forfeited, the tournament ends once all the peers are out of it
+	 */
+	void onPeerLeft(SimulatedTournaments peer) {
+		final boolean allLeft;
+		synchronized (this) {
+			if (!peer.isCurrentlyInTournament()) return;
+
+			peer.setInTournament(false);
+			boolean anyLeft = false;
+			for (SimulatedTournaments other : _peers) {
+				anyLeft |= other.isCurrentlyInTournament();
+			}
+			allLeft = !anyLeft;
+			if (allLeft) {
+				_inTournament = false;
+			}
+		}
+
+		peer.fireTournamentEnd();
+	}
+
+	private long jitter() {
+		final long jitter = _jitterMillis;
+		if (jitter <= 0) return 0;
+
+		return _random.nextInt((int)Math.min(Integer.MAX_VALUE, jitter + 1));
+	}
+
+	private void deliver(Delivery delivery) {
+		final SimulatedTournaments receiver = delivery.receiver;
+		if (!receiver.isCurrentlyInTournament()) return;
+
+		synchronized (this) {
+			_packetsDelivered++;
+		}
+
+		switch (delivery.type) {
+		case DELIVERY_MESSAGE:
+			receiver.receive(delivery.sender, delivery.data, true);
+			break;
+		case DELIVERY_UNRELIABLE_MESSAGE:
+			receiver.receive(delivery.sender, delivery.data, false);
+			break;
+		case DELIVERY_SYNCHRONIZED_EVENT:
+			receiver.fireReceiveSynchronizedEvent(delivery.name, false);
+			break;
+		case DELIVERY_SYNCHRONIZED_EVENT_TIMEOUT:
+			receiver.fireReceiveSynchronizedEvent(delivery.name, true);
+			break;
+		}
+	}
+}
@@ -0,0 +1,161 @@
+//
+//  Nextpeer libGDX plugin
+//  http://www.nextpeer.com
+//
+//  Created by Nextpeer development team.
+//  Copyright (c) 2014 Innobell, Ltd. All rights reserved.
+//
+
+package com.nextpeer.libgdx;
+
+/**
+ * Pure Java Tournaments implementation of a virtual peer connected to a {@link SimulatedNetwork}.
+ * Runs the plugin headless (desktop, server, tests, benchmarks) with several players in the same JVM.
+ * Create the peers with {@link SimulatedNetwork#addPeer(String, String, boolean)}.
+ */
+public final class SimulatedTournaments extends Tournaments {
+
+	private final SimulatedNetwork _network;
+	final int index;
+
+	private final String _playerId;
+	private final String _playerName;
+	private final boolean _playerIsBot;
+
+	private volatile boolean _inTournament;
+	private volatile int _score;
+	private volatile boolean _reportedFinalScore;
+
+	SimulatedTournaments(SimulatedNetwork network, int index, String playerId, String playerName, boolean playerIsBot) {
+		_network = network;
+		this.index = index;
+		_playerId = playerId;
+		_playerName = playerName;
+		_playerIsBot = playerIsBot;
+	}
+
+	/**
+	 * Gets the network this peer is connected to
+	 * @return The simulated network
+	 */
+	public SimulatedNetwork getNetwork() {
+		return _network;
+	}
+
+	/**
+	 * Gets the player identifier of this peer
+	 * @return The player identifier
+	 */
+	public String getPlayerId() {
+		return _playerId;
+	}
+
+	/**
+	 * Gets the player name of this peer
+	 * @return The player name
+	 */
+	public String getPlayerName() {
+		return _playerName;
+	}
+
+	/**
+	 * Gets the last score reported by this peer
+	 * @return The last reported score
+	 */
+	public int getScore() {
+		return _score;
+	}
+
+	/**
+	 * Does this peer reported its final score with {@link #reportControlledTournamentOverWithScore(int)}
+	 * @return true if the final score was reported in the last tournament, false otherwise
+	 */
+	public boolean hasReportedFinalScore() {
+		return _reportedFinalScore;
+	}
+
+	@Override
+	public boolean isSupported() {
+		return true;
+	}
+
+	@Override
+	public void launch() {
+		// No UI, tournaments are started with SimulatedNetwork#startTournament(long)
+	}
+
+	@Override
+	public void reportScoreForCurrentTournament(int score) {
+		if (!_inTournament) return;
+
+		_score = score;
+	}
+
+	@Override
+	public void reportControlledTournamentOverWithScore(int score) {
+		if (!_inTournament) return;
+
+		_score = score;
+		_reportedFinalScore = true;
+		_network.onPeerLeft(this);
+	}
+
+	@Override
+	public void reportForfeitForCurrentTournament() {
+		_network.onPeerLeft(this);
+	}
+
+	@Override
+	public boolean isCurrentlyInTournament() {
+		return _inTournament;
+	}
+
+	@Override
+	public void unreliablePushDataToOtherPlayers(byte[] data) {
+		if (data == null || data.length == 0) {
+			throw new IllegalArgumentException("data cannot be empty");
+		}
+
+		_network.send(this, data.clone(), false);
+	}
+
+	@Override
+	public void pushDataToOtherPlayers(byte[] data) {
+		if (data == null || data.length == 0) {
+			throw new IllegalArgumentException("data cannot be empty");
+		}
+
+		_network.send(this, data.clone(), true);
+	}
+
+	@Override
+	public void registerToSynchronizedEvent(String eventName, int timeoutInMilliseconds) {
+		if (eventName == null || eventName.length() == 0) {
+			throw new IllegalArgumentException("eventName cannot be empty or null");
+		}
+		if (timeoutInMilliseconds <= 0) {
+			throw new IllegalArgumentException("timeoutInMilliseconds must be positive: " + timeoutInMilliseconds);
+		}
+
+		_network.registerToSynchronizedEvent(this, eventName, timeoutInMilliseconds);
+	}
+
+	void setInTournament(boolean inTournament) {
+		_inTournament = inTournament;
+		if (inTournament) {
+			_score = 0;
+			_reportedFinalScore = false;
+		}
+	}
+
+	void receive(SimulatedTournaments sender, byte[] data, boolean reliable) {
+		// Each receiver gets its own array, like from the platform SDK (the pooled mode copies it anyway)
+		final byte[] customMessage = (getMessagePool() == null) ? data.clone() : data;
+		if (reliable) {
+			fireReceiveTournamentCustomMessage(sender._playerId, sender._playerName, null, customMessage, sender._playerIsBot);
+		}
+		else {
+			fireReceiveUnreliableTournamentCustomMessage(sender._playerId, sender._playerName, null, customMessage, sender._playerIsBot);
+		}
+	}
+}
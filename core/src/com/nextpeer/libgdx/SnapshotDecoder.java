@@ -0,0 +1,289 @@
+//
+//  Nextpeer libGDX plugin
+//  http://www.nextpeer.com
+//
+//  Created by Nextpeer development team.
+//  Copyright (c) 2014 Innobell, Ltd. All rights reserved.
+//
+
+package com.nextpeer.libgdx;
+
+/**
+ * Decodes the snapshots written by {@link SnapshotEncoder}. Use one decoder per remote player.
+ * Deltas which refer to a keyframe the decoder did not receive are skipped and {@link #needsKeyframe()} is raised
+ * until the next keyframe arrives. Snapshots older than the last decoded one (reordered packets) are skipped too.
+ * <p>Keyframe recovery: once per missing keyframe, {@link #pollKeyframeRequest()} returns its tick. Send it to the sending player
+ * over the reliable channel (for example as a {@link MessageRegistry} message), that player calls {@link SnapshotEncoder#requestKeyframe(int)}
+ * so the next snapshot is a keyframe instead of waiting for the next scheduled one. If that keyframe is lost too, the deltas refer to it
+ * and a new request is raised.</p>
+ * <p><strong>Note:</strong> The decoder is not thread safe.</p>
+ */
+public final class SnapshotDecoder {
+
+	/**
+	 * The decoded snapshot was a keyframe
+	 */
+	public static final int RESULT_KEYFRAME = 1;
+
+	/**
+	 * The decoded snapshot was a delta
+	 */
+	public static final int RESULT_DELTA = 2;
+
+	/**
+	 * The snapshot is a delta against a keyframe which was not received, the output was not changed
+	 */
+	public static final int RESULT_MISSING_KEYFRAME = -1;
+
+	/**
+	 * The snapshot is older than the last decoded one, the output was not changed
+	 */
+	public static final int RESULT_STALE = -2;
+
+	/**
+	 * The snapshot could not be decoded, the output content is undefined
+	 */
+	public static final int RESULT_MALFORMED = -3;
+
+	private final SnapshotSchema _schema;
+	private final EntitySnapshot _keyframe;
+	private final BitReader _reader = new BitReader();
+
+	private boolean _hasKeyframe;
+	private int _keyframeTick;
+	private boolean _hasTick;
+	private int _lastTick;
+	private boolean _needsKeyframe;
+	private boolean _keyframeRequestPending;
+	private boolean _hasRequestedKeyframeTick;
+	private int _requestedKeyframeTick;
+
+	private long _keyframesDecoded;
+	private long _deltasDecoded;
+	private long _missingKeyframe;
+	private long _stale;
+	private long _malformed;
+
+	/**
+	 * Constructor for the SnapshotDecoder class
+	 * @param schema The entity layout, shared with the encoder
+	 * @param capacity The maximal number of entities in a snapshot
+	 */
+	public SnapshotDecoder(SnapshotSchema schema, int capacity) {
+		_schema = schema;
+		_keyframe = new EntitySnapshot(schema, capacity);
+	}
+
+	/**
+	 * Decode a snapshot
+	 * @param message The received custom message
+	 * @param output The snapshot receiving the decoded entities
+	 * @return One of the {@code RESULT_} values, positive when {@code output} was updated
+	 */
+	public int decode(NextpeerTournamentCustomMessage message, EntitySnapshot output) {
+		return decode(message.customMessage, 0, message.customMessage.length, output);
+	}
+
+	/**
+	 * Decode a snapshot
+	 * @param data The array holding the encoded snapshot
+	 * @param offset The offset of the snapshot in {@code data}
+	 * @param length The length of the snapshot
+	 * @param output The snapshot receiving the decoded entities, must use the decoder schema
+	 * @return One of the {@code RESULT_} values, positive when {@code output} was updated
+	 */
+	public int decode(byte[] data, int offset, int length, EntitySnapshot output) {
+		if (output.schema != _schema) {
+			throw new IllegalArgumentException("output must use the decoder schema");
+		}
+
+		try {
+			_reader.reset(data, offset, length);
+
+			final int type = _reader.read(SnapshotEncoder.TYPE_BITS);
+			final int tick = _reader.read(SnapshotEncoder.TICK_BITS);
+			if (_hasTick && !isNewer(tick, _lastTick)) {
+				_stale++;
+				return RESULT_STALE;
+			}
+
+			if (type == SnapshotEncoder.TYPE_KEYFRAME) {
+				readKeyframe(output);
+				_keyframe.copyFrom(output);
+				_keyframeTick = tick;
+				_hasKeyframe = true;
+				_needsKeyframe = false;
+				_keyframeRequestPending = false;
+				onDecoded(tick);
+				_keyframesDecoded++;
+				return RESULT_KEYFRAME;
+			}
+
+			if (type != SnapshotEncoder.TYPE_DELTA) {
+				_malformed++;
+				return RESULT_MALFORMED;
+			}
+
+			final int keyframeTick = _reader.read(SnapshotEncoder.TICK_BITS);
+			if (!_hasKeyframe || keyframeTick != _keyframeTick) {
+				_needsKeyframe = true;
+				_missingKeyframe++;
+				if (!_hasRequestedKeyframeTick || keyframeTick != _requestedKeyframeTick) {
+					_requestedKeyframeTick = keyframeTick;
+					_hasRequestedKeyframeTick = true;
+					_keyframeRequestPending = true;
+				}
+				return RESULT_MISSING_KEYFRAME;
+			}
+
+			readDelta(output);
+			onDecoded(tick);
+			_deltasDecoded++;
+			return RESULT_DELTA;
+		}
+		catch (IndexOutOfBoundsException e) {
+			_malformed++;
+			return RESULT_MALFORMED;
+		}
+		catch (IllegalArgumentException e) {
+			_malformed++;
+			return RESULT_MALFORMED;
+		}
+		catch (IllegalStateException e) {
+			_malformed++;
+			return RESULT_MALFORMED;
+		}
+	}
+
+	/**
+	 * Does the decoder received deltas for a keyframe it does not have, see {@link #pollKeyframeRequest()} to ask the sender for one
+	 * @return true if a keyframe is needed, false otherwise
+	 */
+	public boolean needsKeyframe() {
+		return _needsKeyframe;
+	}
+
+	/**
+	 * Gets the keyframe to request from the sender, once per missing keyframe. Should be checked after {@link #decode(byte[], int, int, EntitySnapshot)},
+	 * the result should be sent to the sender over the reliable channel and given to its {@link SnapshotEncoder#requestKeyframe(int)}.
+	 * @return The tick of the missing keyframe, -1 if there is nothing to request
+	 */
+	public int pollKeyframeRequest() {
+		if (!_keyframeRequestPending) return -1;
+
+		_keyframeRequestPending = false;
+		return _requestedKeyframeTick;
+	}
+
+	/**
+	 * Forget the keyframe and the last tick, for example when a new tournament starts
+	 */
+	public void reset() {
+		_hasKeyframe = false;
+		_hasTick = false;
+		_needsKeyframe = false;
+		_keyframeRequestPending = false;
+		_hasRequestedKeyframeTick = false;
+	}
+
+	/**
+	 * Gets the number of keyframes decoded
+	 * @return The number of keyframes
+	 */
+	public long getKeyframesDecoded() {
+		return _keyframesDecoded;
+	}
+
+	/**
+	 * Gets the number of deltas decoded
+	 * @return The number of deltas
+	 */
+	public long getDeltasDecoded() {
+		return _deltasDecoded;
+	}
+
+	/**
+	 * Gets the number of deltas skipped because their keyframe was not received
+	 * @return The number of deltas without keyframe
+	 */
+	public long getMissingKeyframeCount() {
+		return _missingKeyframe;
+	}
+
+	/**
+	 * Gets the number of snapshots skipped because they were older than the last decoded one
+	 * @return The number of stale snapshots
+	 */
+	public long getStaleCount() {
+		return _stale;
+	}
+
+	/**
+	 * Gets the number of snapshots which could not be decoded
+	 * @return The number of malformed snapshots
+	 */
+	public long getMalformedCount() {
+		return _malformed;
+	}
+
+	private void onDecoded(int tick) {
+		_lastTick = tick;
+		_hasTick = true;
+	}
+
+	private void readKeyframe(EntitySnapshot output) {
+		final int fieldCount = _schema.getFieldCount();
+		final int count = _reader.read(SnapshotEncoder.COUNT_BITS);
+
+		output.clear();
+		for (int i = 0; i < count; i++) {
+			final int index = output.add(_reader.read(_schema.idBits));
+			for (int field = 0; field < fieldCount; field++) {
+				output.set(index, field, _reader.read(_schema.getFieldBits(field)));
+			}
+		}
+	}
+
+	private void readDelta(EntitySnapshot output) {
+		final int fieldCount = _schema.getFieldCount();
+		final int deltaBits = _schema.deltaBits;
+		final int count = _reader.read(SnapshotEncoder.COUNT_BITS);
+
+		output.clear();
+		for (int i = 0; i < count; i++) {
+			final int id = _reader.read(_schema.idBits);
+			final int index = output.add(id);
+			final boolean inKeyframe = _reader.readBoolean();
+			final int keyIndex = inKeyframe ? _keyframe.indexOf(id) : -1;
+			if (inKeyframe && keyIndex < 0) {
+				throw new IllegalStateException("entity is missing from the keyframe: " + id);
+			}
+
+			for (int field = 0; field < fieldCount; field++) {
+				final int bits = _schema.getFieldBits(field);
+
+				if (!inKeyframe) {
+					output.set(index, field, _reader.read(bits));
+					continue;
+				}
+
+				final int keyValue = _keyframe.get(keyIndex, field);
+				if (!_reader.readBoolean()) {
+					output.set(index, field, keyValue);
+				}
+				else if (!_reader.readBoolean()) {
+					final int delta = SnapshotQuantizer.zigZagDecode(_reader.read(deltaBits));
+					output.set(index, field, (keyValue + delta) & SnapshotSchema.mask(bits));
+				}
+				else {
+					output.set(index, field, _reader.read(bits));
+				}
+			}
+		}
+	}
+
+	private static boolean isNewer(int tick, int lastTick) {
+		final int difference = (tick - lastTick) & 0xFFFF;
+		return difference != 0 && difference < 0x8000;
+	}
+}
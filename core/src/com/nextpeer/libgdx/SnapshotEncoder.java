@@ -0,0 +1,271 @@
+//
+//  Nextpeer libGDX plugin
+//  http://www.nextpeer.com
+//
+//  Created by Nextpeer development team.
+//  Copyright (c) 2014 Innobell, Ltd. All rights reserved.
+//
+
+package com.nextpeer.libgdx;
+
+/**
+ * Encodes {@link EntitySnapshot}s for the unreliable channel. A full keyframe is sent every few ticks and the
+ * ticks in between are bit packed deltas against the last keyframe (not against the previous tick), so a lost
+ * delta never breaks the next ones. A lost keyframe is recovered by the next keyframe, or earlier with {@link #requestKeyframe(int)}
+ * when a player asks for it (see {@link SnapshotDecoder#pollKeyframeRequest()}): the keyframe requests should go over the reliable channel,
+ * the snapshots over the unreliable one.
+ * <p>Usage: {@code int length = encoder.encode(snapshot); NextpeerPlugin.unreliablePushDataToOtherPlayers(encoder.toByteArray());}
+ * and {@link SnapshotDecoder} on the other players.</p>
+ * <p><strong>Note:</strong> The encoder is not thread safe.</p>
+ */
+public final class SnapshotEncoder {
+
+	/**
+	 * Default number of ticks between two keyframes
+	 */
+	public static final int DEFAULT_KEYFRAME_INTERVAL = 30;
+
+	static final int TYPE_KEYFRAME = 0;
+	static final int TYPE_DELTA = 1;
+	static final int TYPE_BITS = 2;
+	static final int TICK_BITS = 16;
+	static final int COUNT_BITS = 16;
+
+	private final SnapshotSchema _schema;
+	private final EntitySnapshot _keyframe;
+	private final BitWriter _writer;
+
+	private int _keyframeInterval;
+	private int _tick;
+	private int _keyframeTick;
+	private boolean _hasKeyframe;
+	private boolean _keyframeRequested;
+
+	private long _keyframesEncoded;
+	private long _deltasEncoded;
+	private long _bytesEncoded;
+	private long _keyframeRequestsHonored;
+	private int _lastEncodedSize;
+
+	/**
+	 * Constructor for the SnapshotEncoder class
+	 * @param schema The entity layout, shared with the decoders
+	 * @param capacity The maximal number of entities in a snapshot
+	 * @param keyframeInterval The number of ticks between two keyframes
+	 * @throws IllegalArgumentException if {@code keyframeInterval} is zero or negative.
+	 */
+	public SnapshotEncoder(SnapshotSchema schema, int capacity, int keyframeInterval) {
+		_schema = schema;
+		_keyframe = new EntitySnapshot(schema, capacity);
+		_writer = new BitWriter(64 + capacity * ((schema.getEntityBits() + 7) >>> 3));
+		setKeyframeInterval(keyframeInterval);
+	}
+
+	/**
+	 * Constructor for the SnapshotEncoder class with the {@link #DEFAULT_KEYFRAME_INTERVAL}
+	 * @param schema The entity layout, shared with the decoders
+	 * @param capacity The maximal number of entities in a snapshot
+	 */
+	public SnapshotEncoder(SnapshotSchema schema, int capacity) {
+		this(schema, capacity, DEFAULT_KEYFRAME_INTERVAL);
+	}
+
+	/**
+	 * Set the number of ticks between two keyframes
+	 * @param keyframeInterval The keyframe interval in ticks, up to 32767
+	 * @throws IllegalArgumentException if {@code keyframeInterval} is out of range.
+	 */
+	public void setKeyframeInterval(int keyframeInterval) {
+		if (keyframeInterval <= 0 || keyframeInterval >= (1 << (TICK_BITS - 1))) {
+			throw new IllegalArgumentException("keyframeInterval must be between 1 and 32767: " + keyframeInterval);
+		}
+
+		_keyframeInterval = keyframeInterval;
+	}
+
+	/**
+	 * Force the next snapshot to be a keyframe, for example when a new player joins.
+	 */
+	public void requestKeyframe() {
+		_keyframeRequested = true;
+	}
+
+	/**
+	 * Force the next snapshot to be a keyframe if a player is missing the current one, received from {@link SnapshotDecoder#pollKeyframeRequest()}
+	 * over the reliable channel. A request for an older keyframe is ignored, a newer keyframe was already sent.
+	 * @param missingKeyframeTick The tick of the keyframe the player is missing
+	 * @return true if the next snapshot is a keyframe, false if the request was ignored
+	 */
+	public boolean requestKeyframe(int missingKeyframeTick) {
+		if (_hasKeyframe && (missingKeyframeTick & 0xFFFF) != _keyframeTick) return false;
+
+		if (!_keyframeRequested) {
+			_keyframeRequested = true;
+			_keyframeRequestsHonored++;
+		}
+		return true;
+	}
+
+	/**
+	 * Encode the snapshot of the current tick. The result is valid until the next call.
+	 * @param snapshot The entities state, must use the encoder schema
+	 * @return The size of the encoded snapshot in bytes
+	 */
+	public int encode(EntitySnapshot snapshot) {
+		if (snapshot.schema != _schema) {
+			throw new IllegalArgumentException("snapshot must use the encoder schema");
+		}
+
+		final int tick = _tick;
+		_tick = (_tick + 1) & 0xFFFF;
+
+		_writer.reset();
+		if (!_hasKeyframe || _keyframeRequested || ((tick - _keyframeTick) & 0xFFFF) >= _keyframeInterval) {
+			writeKeyframe(snapshot, tick);
+			_keyframe.copyFrom(snapshot);
+			_keyframeTick = tick;
+			_hasKeyframe = true;
+			_keyframeRequested = false;
+			_keyframesEncoded++;
+		}
+		else {
+			writeDelta(snapshot, tick);
+			_deltasEncoded++;
+		}
+
+		_lastEncodedSize = _writer.getByteLength();
+		_bytesEncoded += _lastEncodedSize;
+		return _lastEncodedSize;
+	}
+
+	/**
+	 * Gets the buffer holding the last encoded snapshot, valid up to the size returned by {@link #encode(EntitySnapshot)}
+	 * @return The encoder buffer
+	 */
+	public byte[] getBuffer() {
+		return _writer.getBuffer();
+	}
+
+	/**
+	 * Copy the last encoded snapshot into a new array, as expected by the push methods
+	 * @return A new array holding the last encoded snapshot
+	 */
+	public byte[] toByteArray() {
+		return _writer.toByteArray();
+	}
+
+	/**
+	 * Gets the number of keyframes encoded
+	 * @return The number of keyframes
+	 */
+	public long getKeyframesEncoded() {
+		return _keyframesEncoded;
+	}
+
+	/**
+	 * Gets the number of deltas encoded
+	 * @return The number of deltas
+	 */
+	public long getDeltasEncoded() {
+		return _deltasEncoded;
+	}
+
+	/**
+	 * Gets the number of keyframe requests from the players which forced a keyframe
+	 * @return The number of honored keyframe requests
+	 */
+	public long getKeyframeRequestsHonored() {
+		return _keyframeRequestsHonored;
+	}
+
+	/**
+	 * Gets the number of bytes encoded
+	 * @return The total size of the encoded snapshots
+	 */
+	public long getBytesEncoded() {
+		return _bytesEncoded;
+	}
+
+	/**
+	 * Gets the average size of an encoded snapshot
+	 * @return The average number of bytes per tick, 0 if nothing was encoded
+	 */
+	public float getAverageBytesPerTick() {
+		final long ticks = _keyframesEncoded + _deltasEncoded;
+		if (ticks == 0) return 0;
+
+		return (float)_bytesEncoded / ticks;
+	}
+
+	/**
+	 * Gets the size of the last encoded snapshot
+	 * @return The number of bytes of the last snapshot
+	 */
+	public int getLastEncodedSize() {
+		return _lastEncodedSize;
+	}
+
+	private void writeKeyframe(EntitySnapshot snapshot, int tick) {
+		final int fieldCount = _schema.getFieldCount();
+
+		_writer.write(TYPE_KEYFRAME, TYPE_BITS);
+		_writer.write(tick, TICK_BITS);
+		_writer.write(snapshot.size(), COUNT_BITS);
+
+		for (int i = 0; i < snapshot.size(); i++) {
+			_writer.write(snapshot.getId(i), _schema.idBits);
+			for (int field = 0; field < fieldCount; field++) {
+				_writer.write(snapshot.get(i, field), _schema.getFieldBits(field));
+			}
+		}
+	}
+
+	private void writeDelta(EntitySnapshot snapshot, int tick) {
+		final int fieldCount = _schema.getFieldCount();
+		final int deltaBits = _schema.deltaBits;
+
+		_writer.write(TYPE_DELTA, TYPE_BITS);
+		_writer.write(tick, TICK_BITS);
+		_writer.write(_keyframeTick, TICK_BITS);
+		_writer.write(snapshot.size(), COUNT_BITS);
+
+		for (int i = 0; i < snapshot.size(); i++) {
+			final int id = snapshot.getId(i);
+			final int keyIndex = _keyframe.indexOf(id);
+
+			_writer.write(id, _schema.idBits);
+			_writer.writeBoolean(keyIndex >= 0);
+
+			for (int field = 0; field < fieldCount; field++) {
+				final int bits = _schema.getFieldBits(field);
+				final int value = snapshot.get(i, field) & SnapshotSchema.mask(bits);
+
+				if (keyIndex < 0) {
+					_writer.write(value, bits);
+					continue;
+				}
+
+				final int keyValue = _keyframe.get(keyIndex, field) & SnapshotSchema.mask(bits);
+				if (value == keyValue) {
+					_writer.writeBoolean(false);
+					continue;
+				}
+
+				_writer.writeBoolean(true);
+				final int zigZag = SnapshotQuantizer.zigZagEncode(signExtend(value - keyValue, bits));
+				if ((zigZag >>> deltaBits) == 0) {
+					_writer.writeBoolean(false);
+					_writer.write(zigZag, deltaBits);
+				}
+				else {
+					_writer.writeBoolean(true);
+					_writer.write(value, bits);
+				}
+			}
+		}
+	}
+
+	static int signExtend(int value, int bits) {
+		return (value << (32 - bits)) >> (32 - bits);
+	}
+}
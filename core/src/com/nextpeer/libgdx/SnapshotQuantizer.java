@@ -0,0 +1,107 @@
+//
+//  Nextpeer libGDX plugin
+//  http://www.nextpeer.com
+//
+//  Created by Nextpeer development team.
+//  Copyright (c) 2014 Innobell, Ltd. All rights reserved.
+//
+
+package com.nextpeer.libgdx;
+
+/**
+ * Helpers to turn positions and angles into the small integers stored in an {@link EntitySnapshot}.
+ */
+public final class SnapshotQuantizer {
+
+	private static final float TWO_PI = (float)(Math.PI * 2);
+
+	private SnapshotQuantizer() {}
+
+	/**
+	 * Quantize a value in a range. Values outside of the range are clamped.
+	 * @param value The value to quantize
+	 * @param min The minimal value of the range
+	 * @param max The maximal value of the range
+	 * @param bits The number of bits of the result, between 1 and 31
+	 * @return The quantized value, between 0 and 2^bits - 1
+	 */
+	public static int quantize(float value, float min, float max, int bits) {
+		final int steps = (1 << bits) - 1;
+		if (value <= min) return 0;
+		if (value >= max) return steps;
+
+		return Math.round((value - min) / (max - min) * steps);
+	}
+
+	/**
+	 * Restore a value quantized by {@link #quantize(float, float, float, int)}
+	 * @param quantized The quantized value
+	 * @param min The minimal value of the range
+	 * @param max The maximal value of the range
+	 * @param bits The number of bits used by the quantized value
+	 * @return The restored value
+	 */
+	public static float dequantize(int quantized, float min, float max, int bits) {
+		final int steps = (1 << bits) - 1;
+
+		return min + (max - min) * quantized / steps;
+	}
+
+	/**
+	 * Quantize an angle, any value is wrapped into a full turn
+	 * @param radians The angle in radians
+	 * @param bits The number of bits of the result, between 1 and 31
+	 * @return The quantized angle, between 0 and 2^bits - 1
+	 */
+	public static int quantizeAngle(float radians, int bits) {
+		final int steps = 1 << bits;
+		float turns = radians / TWO_PI;
+		turns -= (float)Math.floor(turns);
+
+		return Math.round(turns * steps) & (steps - 1);
+	}
+
+	/**
+	 * Restore an angle quantized by {@link #quantizeAngle(float, int)}
+	 * @param quantized The quantized angle
+	 * @param bits The number of bits used by the quantized angle
+	 * @return The angle in radians, between 0 and 2 * PI
+	 */
+	public static float dequantizeAngle(int quantized, int bits) {
+		return quantized * TWO_PI / (1 << bits);
+	}
+
+	/**
+	 * Gets the number of bits needed to hold a range at a given precision
+	 * @param min The minimal value of the range
+	 * @param max The maximal value of the range
+	 * @param precision The largest acceptable error
+	 * @return The number of bits to use with {@link #quantize(float, float, float, int)}
+	 */
+	public static int bitsRequired(float min, float max, float precision) {
+		final double steps = Math.ceil((max - min) / (2 * precision));
+		int bits = 1;
+		while (bits < 31 && (1L << bits) - 1 < steps) {
+			bits++;
+		}
+		return bits;
+	}
+
+	/**
+	 * Map a signed value to an unsigned one, so small negative values stay small
+	 * @param value The signed value
+	 * @return The zig-zag encoded value
+	 */
+	public static int zigZagEncode(int value) {
+		return (value << 1) ^ (value >> 31);
+	}
+
+	/**
+	 * Restore a value encoded by {@link #zigZagEncode(int)}
+	 * @param value The zig-zag encoded value
+	 * @return The signed value
+	 */
+	public static int zigZagDecode(int value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+}
@@ -0,0 +1,89 @@
+//
+//  Nextpeer libGDX plugin
+//  http://www.nextpeer.com
+//
+//  Created by Nextpeer development team.
+//  Copyright (c) 2014 Innobell, Ltd. All rights reserved.
+//
+
+package com.nextpeer.libgdx;
+
+/**
+ * Describes the layout of an entity in an {@link EntitySnapshot}: the width of the entity id and of each
+ * (already quantized) field, and the width used for small deltas by {@link SnapshotEncoder}.
+ */
+public final class SnapshotSchema {
+
+	/**
+	 * Number of bits used for the entity id
+	 */
+	public final int idBits;
+
+	/**
+	 * Number of bits used for a small (zig-zag encoded) field delta, larger deltas are sent as the full value
+	 */
+	public final int deltaBits;
+
+	private final int[] _fieldBits;
+
+	/**
+	 * Constructor for the SnapshotSchema class
+	 * @param idBits Number of bits used for the entity id, between 1 and 32
+	 * @param deltaBits Number of bits used for a small field delta, between 1 and 31
+	 * @param fieldBits Number of bits used by each field, between 1 and 32
+	 * @throws IllegalArgumentException if one of the widths is out of range or there are no fields.
+	 */
+	public SnapshotSchema(int idBits, int deltaBits, int... fieldBits) {
+		checkBits("idBits", idBits, 32);
+		checkBits("deltaBits", deltaBits, 31);
+		if (fieldBits == null || fieldBits.length == 0) {
+			throw new IllegalArgumentException("fieldBits cannot be empty");
+		}
+		for (int bits : fieldBits) {
+			checkBits("fieldBits", bits, 32);
+		}
+
+		this.idBits = idBits;
+		this.deltaBits = deltaBits;
+		_fieldBits = fieldBits.clone();
+	}
+
+	/**
+	 * Gets the number of fields of an entity
+	 * @return The number of fields
+	 */
+	public int getFieldCount() {
+		return _fieldBits.length;
+	}
+
+	/**
+	 * Gets the width of a field
+	 * @param field The field index
+	 * @return The number of bits used by the field
+	 */
+	public int getFieldBits(int field) {
+		return _fieldBits[field];
+	}
+
+	/**
+	 * Gets the size of an entity in a keyframe
+	 * @return The number of bits of a full entity, id included
+	 */
+	public int getEntityBits() {
+		int bits = idBits;
+		for (int fieldBits : _fieldBits) {
+			bits += fieldBits;
+		}
+		return bits;
+	}
+
+	static int mask(int bits) {
+		return (bits == 32) ? -1 : (1 << bits) - 1;
+	}
+
+	private static void checkBits(String name, int bits, int max) {
+		if (bits < 1 || bits > max) {
+			throw new IllegalArgumentException(name + " must be between 1 and " + max + ": " + bits);
+		}
+	}
+}
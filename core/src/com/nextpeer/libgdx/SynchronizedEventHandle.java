@@ -0,0 +1,144 @@
+//
+//  Nextpeer libGDX plugin
+//  http://www.nextpeer.com
+//
+//  Created by Nextpeer development team.
+//  Copyright (c) 2014 Innobell, Ltd. All rights reserved.
+//
+
+package com.nextpeer.libgdx;
+
+/**
+ * Completion handle of a synchronized event registered in a {@link SynchronizedEventManager}.
+ * The handle is pending until the event is fired by all the players, times out or is cancelled. The game can poll
+ * {@link #isDone()} or be notified through a {@link SynchronizedEventListener}.
+ * <p><strong>Note:</strong> Not thread safe, the handles are used from the render thread like their manager.</p>
+ */
+public final class SynchronizedEventHandle {
+
+	/**
+	 * The event is waiting for the other players
+	 */
+	public static final int STATE_PENDING = 0;
+
+	/**
+	 * All the players registered to the event
+	 */
+	public static final int STATE_FIRED = 1;
+
+	/**
+	 * The timeout expired before all the players registered to the event
+	 */
+	public static final int STATE_TIMED_OUT = 2;
+
+	/**
+	 * The event was cancelled by the game or by the end of the tournament
+	 */
+	public static final int STATE_CANCELLED = 3;
+
+	private final SynchronizedEventManager _manager;
+	private final String _name;
+	private final int _timeoutMillis;
+	private final long _registerNanos;
+	private final SynchronizedEventListener _listener;
+	private int _state = STATE_PENDING;
+	private long _doneNanos;
+
+	// Timer wheel slot list, owned by the manager
+	SynchronizedEventHandle wheelPrevious;
+	SynchronizedEventHandle wheelNext;
+	int wheelSlot = -1;
+	long wheelRounds;
+
+	// Pending handles of the same name, owned by the manager
+	SynchronizedEventHandle nextSameName;
+
+	SynchronizedEventHandle(SynchronizedEventManager manager, String name, int timeoutMillis, long registerNanos,
+			SynchronizedEventListener listener) {
+		_manager = manager;
+		_name = name;
+		_timeoutMillis = timeoutMillis;
+		_registerNanos = registerNanos;
+		_listener = listener;
+	}
+
+	/**
+	 * Gets the name of the synchronized event
+	 * @return The event name
+	 */
+	public String getName() {
+		return _name;
+	}
+
+	/**
+	 * Gets the timeout given at registration
+	 * @return The timeout in milliseconds
+	 */
+	public int getTimeoutMillis() {
+		return _timeoutMillis;
+	}
+
+	/**
+	 * Gets the state of the event
+	 * @return One of the {@code STATE_...} values
+	 */
+	public int getState() {
+		return _state;
+	}
+
+	/**
+	 * Is the event fired, timed out or cancelled
+	 * @return true if the event is done, false if it is still pending
+	 */
+	public boolean isDone() {
+		return _state != STATE_PENDING;
+	}
+
+	/**
+	 * Did all the players register to the event
+	 * @return true if the event was fired, false otherwise
+	 */
+	public boolean isFired() {
+		return _state == STATE_FIRED;
+	}
+
+	/**
+	 * Did the timeout expire before all the players registered to the event
+	 * @return true if the event timed out, false otherwise
+	 */
+	public boolean isTimedOut() {
+		return _state == STATE_TIMED_OUT;
+	}
+
+	/**
+	 * Gets the time between the registration and the completion of the event
+	 * @return The time in milliseconds, -1 while the event is pending
+	 */
+	public long getElapsedMillis() {
+		return isDone() ? (_doneNanos - _registerNanos) / 1000000L : -1;
+	}
+
+	/**
+	 * Cancel the event, the listener is notified with {@link #STATE_CANCELLED}. Does nothing if the event is done.
+	 * <p><strong>Note:</strong> Nextpeer has no way to unregister, a later fire of the event is ignored by the handle.</p>
+	 */
+	public void cancel() {
+		_manager.cancel(this);
+	}
+
+	@Override
+	public String toString() {
+		return "SynchronizedEventHandle [" + _name + ", state=" + _state + "]";
+	}
+
+	/**
+	 * Complete the handle and notify its listener, called by the manager once the handle is unlinked
+	 */
+	void complete(int state, long nowNanos) {
+		_state = state;
+		_doneNanos = nowNanos;
+		if (_listener != null) {
+			_listener.onSynchronizedEventDone(this);
+		}
+	}
+}
@@ -0,0 +1,21 @@
+//
+//  Nextpeer libGDX plugin
+//  http://www.nextpeer.com
+//
+//  Created by Nextpeer development team.
+//  Copyright (c) 2014 Innobell, Ltd. All rights reserved.
+//
+
+package com.nextpeer.libgdx;
+
+/**
+ * Receives the result of a synchronized event registered in a {@link SynchronizedEventManager}.
+ */
+public interface SynchronizedEventListener {
+
+	/**
+	 * Called on the render thread once the synchronized event is fired, timed out or cancelled
+	 * @param handle The completed handle, see {@link SynchronizedEventHandle#getState()}
+	 */
+	void onSynchronizedEventDone(SynchronizedEventHandle handle);
+}
@@ -0,0 +1,394 @@
+//
+//  Nextpeer libGDX plugin
+//  http://www.nextpeer.com
+//
+//  Created by Nextpeer development team.
+//  Copyright (c) 2014 Innobell, Ltd. All rights reserved.
+//
+
+package com.nextpeer.libgdx;
+
+import java.util.HashMap;
+
+/**
+ * Synchronized events with completion handles. {@link #register(String, int, SynchronizedEventListener)} registers the event to
+ * Nextpeer and returns a {@link SynchronizedEventHandle} which completes when the event is fired, times out or is cancelled.
+ * <p>The timeouts of all the pending events are tracked by a single hashed timer wheel: a ring of slots of {@code tick} duration,
+ * each holding the events expiring in that slot, with the number of remaining wheel turns. {@link #update()} advances the wheel and only
+ * looks at the slots it passes, so registering, firing and cancelling are O(1) and the cost per frame does not grow with the number of pending events.</p>
+ * <p>The event is registered to Nextpeer with its timeout and the handle completes with the reason Nextpeer gives when it fires the event,
+ * so a Nextpeer timeout (which can start at the registration of another player) is reported as a timeout. The local timer wheel is a backstop
+ * for a platform which never fires the event: it times the handle out a little after the timeout (see {@link #setLocalTimeoutSlack(int)}).
+ * Registering a name which is already pending joins the pending registration, Nextpeer is not called again.</p>
+ * <p>The manager is also a callback layer: wrap the game callback with it, all the events are forwarded to the wrapped callback,
+ * and it cancels the pending events on {@code onTournamentEnd}.</p>
+ * <p><strong>Note:</strong> Registration, {@link #update()} and the receive path must run on the same thread, put a
+ * {@link TournamentsCallbackDispatcher} in front of the manager and call {@link #update()} once per frame from {@code render()},
+ * the listeners are then called on the render thread.</p>
+ */
+public class SynchronizedEventManager extends TournamentsCallbackWrapper {
+
+	/**
+	 * Default duration of a timer wheel slot
+	 */
+	public static final int DEFAULT_TICK_MILLIS = 10;
+
+	/**
+	 * Default number of timer wheel slots
+	 */
+	public static final int DEFAULT_WHEEL_SIZE = 512;
+
+	/**
+	 * Default time added to the timeout of the local timer wheel, after which the handle times out if Nextpeer did not fire the event
+	 */
+	public static final int DEFAULT_LOCAL_TIMEOUT_SLACK_MILLIS = 500;
+
+	private final Tournaments _tournaments;
+	private final long _tickNanos;
+	private final SynchronizedEventHandle[] _wheel;
+	private final int _mask;
+	private long _tick;
+	private long _tickStartNanos;
+	private int _localTimeoutSlackMillis = DEFAULT_LOCAL_TIMEOUT_SLACK_MILLIS;
+
+	// Pending handles by name, the value is the head of the name list
+	private final HashMap<String, SynchronizedEventHandle> _pendingByName = new HashMap<String, SynchronizedEventHandle>();
+
+	private int _pendingCount;
+	private int _maxPendingCount;
+	private long _firedCount;
+	private long _timedOutCount;
+	private long _cancelledCount;
+
+	/**
+	 * Constructor for the SynchronizedEventManager class
+	 * @param tournaments The Tournaments instance used to register the events
+	 * @param callback The callback receiving the forwarded events
+	 * @param tickInMilliseconds The duration of a timer wheel slot, the precision of the timeouts
+	 * @param wheelSize The number of timer wheel slots, rounded up to a power of two
+	 * @throws IllegalArgumentException if {@code tournaments} is null, {@code tickInMilliseconds} or {@code wheelSize} is zero or negative.
+	 */
+	public SynchronizedEventManager(Tournaments tournaments, TournamentsCallback callback, int tickInMilliseconds, int wheelSize) {
+		super(callback);
+
+		if (tournaments == null) {
+			throw new IllegalArgumentException("tournaments cannot be null");
+		}
+		if (tickInMilliseconds <= 0) {
+			throw new IllegalArgumentException("tickInMilliseconds must be positive: " + tickInMilliseconds);
+		}
+		if (wheelSize <= 0 || wheelSize > (1 << 20)) {
+			throw new IllegalArgumentException("invalid wheel size: " + wheelSize);
+		}
+
+		_tournaments = tournaments;
+		_tickNanos = tickInMilliseconds * 1000000L;
+		final int size = (wheelSize == 1) ? 1 : Integer.highestOneBit(wheelSize - 1) << 1;
+		_wheel = new SynchronizedEventHandle[size];
+		_mask = size - 1;
+		_tickStartNanos = System.nanoTime();
+	}
+
+	/**
+	 * Constructor for the SynchronizedEventManager class with the default timer wheel
+	 * @param tournaments The Tournaments instance used to register the events
+	 * @param callback The callback receiving the forwarded events
+	 */
+	public SynchronizedEventManager(Tournaments tournaments, TournamentsCallback callback) {
+		this(tournaments, callback, DEFAULT_TICK_MILLIS, DEFAULT_WHEEL_SIZE);
+	}
+
+	/**
+	 * Set the time added to the timeout of the local timer wheel, so the Nextpeer timeout normally fires first and gives the reason
+	 * @param slackInMilliseconds The slack in milliseconds, applies to the events registered afterwards
+	 * @throws IllegalArgumentException if {@code slackInMilliseconds} is negative.
+	 */
+	public void setLocalTimeoutSlack(int slackInMilliseconds) {
+		if (slackInMilliseconds < 0) {
+			throw new IllegalArgumentException("slackInMilliseconds cannot be negative: " + slackInMilliseconds);
+		}
+
+		_localTimeoutSlackMillis = slackInMilliseconds;
+	}
+
+	/**
+	 * Register to a synchronized event, see {@link Tournaments#registerToSynchronizedEvent(String, int)}
+	 * @param eventName The synchronized event name
+	 * @param timeoutInMilliseconds The timeout in milliseconds
+	 * @param listener The listener notified when the event is done, null to poll the handle
+	 * @return The completion handle of the event
+	 * @throws IllegalArgumentException if {@code eventName} is empty or null.
+	 * @throws IllegalArgumentException if {@code timeoutInMilliseconds} is zero or negative.
+	 */
+	public SynchronizedEventHandle register(String eventName, int timeoutInMilliseconds, SynchronizedEventListener listener) {
+		if (eventName == null || eventName.length() == 0) {
+			throw new IllegalArgumentException("eventName cannot be empty");
+		}
+		if (timeoutInMilliseconds <= 0) {
+			throw new IllegalArgumentException("timeoutInMilliseconds must be positive: " + timeoutInMilliseconds);
+		}
+
+		final long now = System.nanoTime();
+		final SynchronizedEventHandle handle = new SynchronizedEventHandle(this, eventName, timeoutInMilliseconds, now, listener);
+
+		// The wheel is at the start of the current tick, count from there
+		final long delay = ((long)timeoutInMilliseconds + _localTimeoutSlackMillis) * 1000000L + Math.max(0, now - _tickStartNanos);
+		final long ticks = Math.max(1, (delay + _tickNanos - 1) / _tickNanos);
+		schedule(handle, ticks);
+
+		final SynchronizedEventHandle head = _pendingByName.get(eventName);
+		handle.nextSameName = head;
+		_pendingByName.put(eventName, handle);
+
+		if (++_pendingCount > _maxPendingCount) {
+			_maxPendingCount = _pendingCount;
+		}
+
+		if (head == null) {
+			_tournaments.registerToSynchronizedEvent(eventName, timeoutInMilliseconds);
+		}
+		return handle;
+	}
+
+	/**
+	 * Register to a synchronized event, the handle should be polled
+	 * @param eventName The synchronized event name
+	 * @param timeoutInMilliseconds The timeout in milliseconds
+	 * @return The completion handle of the event
+	 */
+	public SynchronizedEventHandle register(String eventName, int timeoutInMilliseconds) {
+		return register(eventName, timeoutInMilliseconds, null);
+	}
+
+	/**
+	 * Advance the timer wheel and time out the events Nextpeer did not fire in time. Should be called once per frame.
+	 * @return The number of events which timed out
+	 */
+	public int update() {
+		return update(System.nanoTime());
+	}
+
+	/**
+	 * Advance the timer wheel and time out the expired events
+	 * @param nowNanos The current time, from {@link System#nanoTime()}
+	 * @return The number of events which timed out
+	 */
+	public int update(long nowNanos) {
+		SynchronizedEventHandle expiredHead = null;
+		SynchronizedEventHandle expiredTail = null;
+
+		while (nowNanos - _tickStartNanos >= _tickNanos) {
+			_tickStartNanos += _tickNanos;
+			_tick++;
+
+			SynchronizedEventHandle handle = _wheel[(int)_tick & _mask];
+			while (handle != null) {
+				final SynchronizedEventHandle next = handle.wheelNext;
+				if (handle.wheelRounds > 0) {
+					handle.wheelRounds--;
+				}
+				else {
+					unschedule(handle);
+					removeFromName(handle);
+					if (expiredTail == null) {
+						expiredHead = handle;
+					}
+					else {
+						expiredTail.wheelNext = handle;
+					}
+					expiredTail = handle;
+				}
+				handle = next;
+			}
+		}
+
+		// Listeners are called once the wheel is consistent, they may register or cancel events
+		int expired = 0;
+		while (expiredHead != null) {
+			final SynchronizedEventHandle handle = expiredHead;
+			expiredHead = handle.wheelNext;
+			handle.wheelNext = null;
+			_pendingCount--;
+			_timedOutCount++;
+			expired++;
+			handle.complete(SynchronizedEventHandle.STATE_TIMED_OUT, nowNanos);
+		}
+		return expired;
+	}
+
+	/**
+	 * Cancel all the pending events
+	 * @return The number of cancelled events
+	 */
+	public int cancelAll() {
+		if (_pendingCount == 0) return 0;
+
+		final long now = System.nanoTime();
+		final SynchronizedEventHandle[] heads = _pendingByName.values().toArray(new SynchronizedEventHandle[_pendingByName.size()]);
+		_pendingByName.clear();
+
+		int cancelled = 0;
+		for (SynchronizedEventHandle handle : heads) {
+			while (handle != null) {
+				final SynchronizedEventHandle next = handle.nextSameName;
+				handle.nextSameName = null;
+				unschedule(handle);
+				_pendingCount--;
+				_cancelledCount++;
+				cancelled++;
+				handle.complete(SynchronizedEventHandle.STATE_CANCELLED, now);
+				handle = next;
+			}
+		}
+		return cancelled;
+	}
+
+	/**
+	 * Gets the number of pending events
+	 * @return The number of pending events
+	 */
+	public int getPendingCount() {
+		return _pendingCount;
+	}
+
+	/**
+	 * Gets the largest number of events pending at once
+	 * @return The pending count high water mark
+	 */
+	public int getMaxPendingCount() {
+		return _maxPendingCount;
+	}
+
+	/**
+	 * Gets the number of events fired because all the players registered to them
+	 * @return The number of fired events
+	 */
+	public long getFiredCount() {
+		return _firedCount;
+	}
+
+	/**
+	 * Gets the number of events which timed out, reported by Nextpeer or by the local timer wheel
+	 * @return The number of timed out events
+	 */
+	public long getTimedOutCount() {
+		return _timedOutCount;
+	}
+
+	/**
+	 * Gets the number of cancelled events
+	 * @return The number of cancelled events
+	 */
+	public long getCancelledCount() {
+		return _cancelledCount;
+	}
+
+	/**
+	 * Cancel the pending events, then forward the event
+	 */
+	@Override
+	public void onTournamentEnd() {
+		cancelAll();
+		super.onTournamentEnd();
+	}
+
+	/**
+	 * Handle an event fired without a reason as fired by all the players
+	 */
+	@Override
+	public void onReceiveSynchronizedEvent(String name) {
+		onReceiveSynchronizedEvent(name, false);
+	}
+
+	/**
+	 * Complete the pending handles of the event with the reason given by Nextpeer, then forward it
+	 */
+	@Override
+	public void onReceiveSynchronizedEvent(String name, boolean timedOut) {
+		SynchronizedEventHandle handle = (name != null) ? _pendingByName.remove(name) : null;
+		if (handle != null) {
+			final long now = System.nanoTime();
+			final int state = timedOut ? SynchronizedEventHandle.STATE_TIMED_OUT : SynchronizedEventHandle.STATE_FIRED;
+			while (handle != null) {
+				final SynchronizedEventHandle next = handle.nextSameName;
+				handle.nextSameName = null;
+				unschedule(handle);
+				_pendingCount--;
+				if (timedOut) {
+					_timedOutCount++;
+				}
+				else {
+					_firedCount++;
+				}
+				handle.complete(state, now);
+				handle = next;
+			}
+		}
+
+		super.onReceiveSynchronizedEvent(name, timedOut);
+	}
+
+	/**
+	 * Cancel a pending handle, called by {@link SynchronizedEventHandle#cancel()}
+	 */
+	void cancel(SynchronizedEventHandle handle) {
+		if (handle.isDone() || handle.wheelSlot < 0) return;
+
+		unschedule(handle);
+		removeFromName(handle);
+		_pendingCount--;
+		_cancelledCount++;
+		handle.complete(SynchronizedEventHandle.STATE_CANCELLED, System.nanoTime());
+	}
+
+	private void schedule(SynchronizedEventHandle handle, long ticks) {
+		final int slot = (int)((_tick + ticks) & _mask);
+		handle.wheelRounds = (ticks - 1) / _wheel.length;
+		handle.wheelSlot = slot;
+		handle.wheelPrevious = null;
+		handle.wheelNext = _wheel[slot];
+		if (_wheel[slot] != null) {
+			_wheel[slot].wheelPrevious = handle;
+		}
+		_wheel[slot] = handle;
+	}
+
+	private void unschedule(SynchronizedEventHandle handle) {
+		if (handle.wheelSlot < 0) return;
+
+		if (handle.wheelPrevious != null) {
+			handle.wheelPrevious.wheelNext = handle.wheelNext;
+		}
+		else {
+			_wheel[handle.wheelSlot] = handle.wheelNext;
+		}
+		if (handle.wheelNext != null) {
+			handle.wheelNext.wheelPrevious = handle.wheelPrevious;
+		}
+		handle.wheelPrevious = null;
+		handle.wheelNext = null;
+		handle.wheelSlot = -1;
+	}
+
+	private void removeFromName(SynchronizedEventHandle handle) {
+		final String name = handle.getName();
+		SynchronizedEventHandle current = _pendingByName.get(name);
+		SynchronizedEventHandle previous = null;
+		while (current != null && current != handle) {
+			previous = current;
+			current = current.nextSameName;
+		}
+		if (current == null) return;
+
+		if (previous != null) {
+			previous.nextSameName = handle.nextSameName;
+		}
+		else if (handle.nextSameName != null) {
+			_pendingByName.put(name, handle.nextSameName);
+		}
+		else {
+			_pendingByName.remove(name);
+		}
+		handle.nextSameName = null;
+	}
+}
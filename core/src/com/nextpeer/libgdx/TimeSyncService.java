@@ -0,0 +1,456 @@
+//
+//  Nextpeer libGDX plugin
+//  http://www.nextpeer.com
+//
+//  Created by Nextpeer development team.
+//  Copyright (c) 2014 Innobell, Ltd. All rights reserved.
+//
+
+package com.nextpeer.libgdx;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Shared tournament clock and round trip time estimation, NTP style, over the unreliable channel.
+ * <p>Every player periodically pings the others, the answer carries the time the ping was received and answered.
+ * Each exchange gives a round trip time and a clock offset sample. Like the NTP clock filter, the offset is taken from the
+ * sample with the shortest round trip of the last few ones (the least delayed by queues) and smoothed.</p>
+ * <p>The tournament time is the time elapsed since {@code onTournamentStart} on the reference player, the player with the
+ * lowest endpoint id. All the players get the same value from {@link #tournamentTimeMillis()}, within the measurement error,
+ * for lag compensation or to compare finish times. The service starts on {@code onTournamentStart} and stops on {@code onTournamentEnd}.</p>
+ * <p>The service is also a callback layer: wrap the game callback with it, unreliable messages which don't belong to the service
+ * are forwarded to the wrapped callback as is.</p>
+ * <p><strong>Note:</strong> {@link #update()} and the receive path must run on the same thread, put a
+ * {@link TournamentsCallbackDispatcher} in front of the service and call {@link #update()} once per frame from {@code render()}.</p>
+ */
+public class TimeSyncService extends TournamentsCallbackWrapper {
+
+	/**
+	 * First byte of every time sync packet
+	 */
+	public static final byte SYNC_HEADER = (byte)0xC3;
+
+	/**
+	 * Maximal number of players tracked by the service
+	 */
+	public static final int MAX_PEERS = 32;
+
+	/**
+	 * Default interval between two pings once the clocks are synchronized
+	 */
+	public static final long DEFAULT_PROBE_INTERVAL_MILLIS = 1000;
+
+	/**
+	 * Interval between the first pings of a tournament
+	 */
+	public static final long FAST_PROBE_INTERVAL_MILLIS = 100;
+
+	/**
+	 * Number of pings sent at the fast interval when a tournament starts
+	 */
+	public static final int FAST_PROBE_COUNT = 10;
+
+	private static final int TYPE_PING = 1;
+	private static final int TYPE_PONG = 2;
+	private static final int PING_SIZE = 1 + 1 + 4 + 8;
+	private static final int PONG_SIZE = 1 + 1 + 4 + 4 + 8 + 8 + 8;
+
+	/**
+	 * Number of samples kept by the clock filter
+	 */
+	private static final int SAMPLE_WINDOW = 8;
+
+	private static final long NANOS_PER_MILLI = 1000000L;
+
+	/**
+	 * Clock state kept for another player
+	 */
+	private static final class Peer {
+		int endpointId;
+		String playerId;
+
+		final long[] sampleRtt = new long[SAMPLE_WINDOW];
+		final long[] sampleOffset = new long[SAMPLE_WINDOW];
+		int sampleCount;
+		int nextSample;
+
+		boolean hasOffset;
+		double offsetNanos;
+		double smoothedRttNanos;
+		long minRttNanos = Long.MAX_VALUE;
+	}
+
+	private final Tournaments _tournaments;
+	private final int _endpointId;
+	private final Peer[] _peers = new Peer[MAX_PEERS];
+	private int _peerCount;
+	private final byte[] _packet = new byte[PONG_SIZE];
+
+	private volatile boolean _running;
+	private long _epochNanos;
+	private long _nextProbeNanos;
+	private int _probesSent;
+	private long _probeIntervalNanos = DEFAULT_PROBE_INTERVAL_MILLIS * NANOS_PER_MILLI;
+	private long _lastTournamentTimeNanos;
+
+	private long _pingsSent;
+	private long _pongsReceived;
+
+	/**
+	 * Constructor for the TimeSyncService class
+	 * @param tournaments The Tournaments instance used to send the probes
+	 * @param callback The callback receiving the unreliable messages which don't belong to the service
+	 * @throws IllegalArgumentException if {@code tournaments} is null.
+	 */
+	public TimeSyncService(Tournaments tournaments, TournamentsCallback callback) {
+		super(callback);
+
+		if (tournaments == null) {
+			throw new IllegalArgumentException("tournaments cannot be null");
+		}
+		_tournaments = tournaments;
+
+		int endpointId;
+		final Random random = new Random();
+		do {
+			endpointId = random.nextInt();
+		} while (endpointId == 0);
+		_endpointId = endpointId;
+	}
+
+	/**
+	 * Set the interval between two pings once the first fast pings of the tournament were sent
+	 * @param intervalInMilliseconds The interval in milliseconds
+	 * @throws IllegalArgumentException if {@code intervalInMilliseconds} is zero or negative.
+	 */
+	public void setProbeInterval(long intervalInMilliseconds) {
+		if (intervalInMilliseconds <= 0) {
+			throw new IllegalArgumentException("intervalInMilliseconds must be positive: " + intervalInMilliseconds);
+		}
+
+		_probeIntervalNanos = intervalInMilliseconds * NANOS_PER_MILLI;
+	}
+
+	/**
+	 * Send a ping when it is due. Should be called once per frame.
+	 */
+	public void update() {
+		if (!_running) return;
+
+		final long now = System.nanoTime();
+		if (now - _nextProbeNanos < 0) return;
+
+		_probesSent++;
+		_nextProbeNanos = now + ((_probesSent < FAST_PROBE_COUNT) ? FAST_PROBE_INTERVAL_MILLIS * NANOS_PER_MILLI : _probeIntervalNanos);
+
+		_packet[0] = SYNC_HEADER;
+		_packet[1] = TYPE_PING;
+		writeInt(_packet, 2, _endpointId);
+		writeLong(_packet, 6, now - _epochNanos);
+		_tournaments.unreliablePushDataToOtherPlayers(Arrays.copyOf(_packet, PING_SIZE));
+		_pingsSent++;
+	}
+
+	/**
+	 * Start the service on a new tournament, the local tournament clock starts now
+	 */
+	@Override
+	public void onTournamentStart(long tournamentRandomSeed) {
+		start();
+		super.onTournamentStart(tournamentRandomSeed);
+	}
+
+	/**
+	 * Stop the service at the end of the tournament
+	 */
+	@Override
+	public void onTournamentEnd() {
+		_running = false;
+		super.onTournamentEnd();
+	}
+
+	@Override
+	public void onReceiveUnreliableTournamentCustomMessage(NextpeerTournamentCustomMessage message) {
+		if (!receive(message.customMessage, 0, message.customMessage.length, message.playerId)) {
+			super.onReceiveUnreliableTournamentCustomMessage(message);
+		}
+	}
+
+	@Override
+	public void onReceivePooledUnreliableTournamentCustomMessage(PooledTournamentCustomMessage message) {
+		if (!receive(message.getData(), message.getOffset(), message.getLength(), message.getPlayerId())) {
+			super.onReceivePooledUnreliableTournamentCustomMessage(message);
+		}
+	}
+
+	/**
+	 * Start measuring, called on the tournament start. Forgets the previous measurements.
+	 */
+	public void start() {
+		Arrays.fill(_peers, null);
+		_peerCount = 0;
+		_epochNanos = System.nanoTime();
+		_nextProbeNanos = _epochNanos;
+		_probesSent = 0;
+		_lastTournamentTimeNanos = 0;
+		_running = true;
+	}
+
+	/**
+	 * Does the service is running (between the tournament start and end)
+	 * @return true if the service is running, false otherwise
+	 */
+	public boolean isRunning() {
+		return _running;
+	}
+
+	/**
+	 * Gets the shared tournament time, the time elapsed since the tournament start on the reference player.
+	 * The value never goes backward, a correction of the clock offset only slows it down for a while.
+	 * @return The tournament time in milliseconds
+	 */
+	public long tournamentTimeMillis() {
+		return tournamentTimeNanos() / NANOS_PER_MILLI;
+	}
+
+	/**
+	 * Gets the shared tournament time in nanoseconds, see {@link #tournamentTimeMillis()}
+	 * @return The tournament time in nanoseconds
+	 */
+	public long tournamentTimeNanos() {
+		final long time = toTournamentTimeNanos(System.nanoTime());
+		if (time > _lastTournamentTimeNanos) {
+			_lastTournamentTimeNanos = time;
+		}
+		return _lastTournamentTimeNanos;
+	}
+
+	/**
+	 * Convert a local time to the shared tournament time, for example the arrival time of a message
+	 * @param localNanos The local time, on the System.nanoTime() clock
+	 * @return The tournament time in nanoseconds
+	 */
+	public long toTournamentTimeNanos(long localNanos) {
+		final Peer reference = reference();
+		final long localTime = localNanos - _epochNanos;
+		return (reference == null) ? localTime : localTime + (long)reference.offsetNanos;
+	}
+
+	/**
+	 * Does the clock is synchronized with the reference player
+	 * @return true if this player is the reference or the offset to the reference was measured, false otherwise
+	 */
+	public boolean isSynchronized() {
+		final Peer reference = reference();
+		return _running && (reference == null || reference.hasOffset);
+	}
+
+	/**
+	 * Does this player is the reference clock of the tournament
+	 * @return true if no known player has a lower endpoint id, false otherwise
+	 */
+	public boolean isReference() {
+		return reference() == null;
+	}
+
+	/**
+	 * Gets the smoothed clock offset of a player: its tournament clock minus the local one
+	 * @param playerId The player identifier
+	 * @return The clock offset in milliseconds, 0 if there is no measurement yet
+	 */
+	public float getClockOffset(String playerId) {
+		final Peer peer = findPeer(playerId);
+		return (peer == null || !peer.hasOffset) ? 0 : (float)(peer.offsetNanos / NANOS_PER_MILLI);
+	}
+
+	/**
+	 * Gets the smoothed round trip time to a player
+	 * @param playerId The player identifier
+	 * @return The round trip time in milliseconds, -1 if there is no measurement yet
+	 */
+	public float getRoundTripTime(String playerId) {
+		final Peer peer = findPeer(playerId);
+		return (peer == null || !peer.hasOffset) ? -1 : (float)(peer.smoothedRttNanos / NANOS_PER_MILLI);
+	}
+
+	/**
+	 * Gets the shortest round trip time measured to a player
+	 * @param playerId The player identifier
+	 * @return The shortest round trip time in milliseconds, -1 if there is no measurement yet
+	 */
+	public float getMinRoundTripTime(String playerId) {
+		final Peer peer = findPeer(playerId);
+		return (peer == null || !peer.hasOffset) ? -1 : (float)peer.minRttNanos / NANOS_PER_MILLI;
+	}
+
+	/**
+	 * Gets the average of the smoothed round trip times to all the players
+	 * @return The round trip time in milliseconds, -1 if there is no measurement yet
+	 */
+	public float getAverageRoundTripTime() {
+		double total = 0;
+		int count = 0;
+		for (int i = 0; i < _peerCount; i++) {
+			if (_peers[i].hasOffset) {
+				total += _peers[i].smoothedRttNanos;
+				count++;
+			}
+		}
+		return (count == 0) ? -1 : (float)(total / count / NANOS_PER_MILLI);
+	}
+
+	/**
+	 * Gets the number of pings sent
+	 * @return The number of pings sent
+	 */
+	public long getPingsSent() {
+		return _pingsSent;
+	}
+
+	/**
+	 * Gets the number of answers received to the pings
+	 * @return The number of pongs received
+	 */
+	public long getPongsReceived() {
+		return _pongsReceived;
+	}
+
+	/**
+	 * Handle a received unreliable message
+	 * @return true if the message belongs to the service, false if it should be forwarded
+	 */
+	private boolean receive(byte[] data, int offset, int length, String playerId) {
+		if (length < PING_SIZE || data[offset] != SYNC_HEADER) return false;
+
+		final int type = data[offset + 1];
+		if (type == TYPE_PING && length == PING_SIZE) {
+			if (_running) {
+				final int endpointId = readInt(data, offset + 2);
+				findOrCreatePeer(endpointId, playerId);
+				answer(endpointId, readLong(data, offset + 6));
+			}
+			return true;
+		}
+		if (type == TYPE_PONG && length == PONG_SIZE) {
+			if (_running && readInt(data, offset + 6) == _endpointId) {
+				onPong(readInt(data, offset + 2), playerId, readLong(data, offset + 10),
+						readLong(data, offset + 18), readLong(data, offset + 26));
+			}
+			return true;
+		}
+
+		return false;
+	}
+
+	private void answer(int endpointId, long pingTime) {
+		final long received = System.nanoTime() - _epochNanos;
+
+		_packet[0] = SYNC_HEADER;
+		_packet[1] = TYPE_PONG;
+		writeInt(_packet, 2, _endpointId);
+		writeInt(_packet, 6, endpointId);
+		writeLong(_packet, 10, pingTime);
+		writeLong(_packet, 18, received);
+		writeLong(_packet, 26, System.nanoTime() - _epochNanos);
+		_tournaments.unreliablePushDataToOtherPlayers(Arrays.copyOf(_packet, PONG_SIZE));
+	}
+
+	/**
+	 * @param sent Local time of the ping (t0)
+	 * @param received Remote time the ping was received (t1)
+	 * @param answered Remote time the pong was sent (t2)
+	 */
+	private void onPong(int endpointId, String playerId, long sent, long received, long answered) {
+		final long arrived = System.nanoTime() - _epochNanos;
+		final long rtt = (arrived - sent) - (answered - received);
+		if (rtt < 0) return;
+
+		final Peer peer = findOrCreatePeer(endpointId, playerId);
+		if (peer == null) return;
+		_pongsReceived++;
+
+		peer.sampleRtt[peer.nextSample] = rtt;
+		peer.sampleOffset[peer.nextSample] = ((received - sent) + (answered - arrived)) / 2;
+		peer.nextSample = (peer.nextSample + 1) % SAMPLE_WINDOW;
+		peer.sampleCount = Math.min(peer.sampleCount + 1, SAMPLE_WINDOW);
+
+		// Clock filter: the sample with the shortest round trip has the most accurate offset
+		int best = 0;
+		for (int i = 1; i < peer.sampleCount; i++) {
+			if (peer.sampleRtt[i] < peer.sampleRtt[best]) best = i;
+		}
+
+		if (!peer.hasOffset) {
+			peer.offsetNanos = peer.sampleOffset[best];
+			peer.smoothedRttNanos = rtt;
+			peer.hasOffset = true;
+		}
+		else {
+			peer.offsetNanos += (peer.sampleOffset[best] - peer.offsetNanos) / 8;
+			peer.smoothedRttNanos += (rtt - peer.smoothedRttNanos) / 8;
+		}
+		peer.minRttNanos = Math.min(peer.minRttNanos, rtt);
+	}
+
+	/**
+	 * Gets the reference player, null if this player is the reference
+	 */
+	private Peer reference() {
+		Peer reference = null;
+		int lowest = _endpointId;
+		for (int i = 0; i < _peerCount; i++) {
+			if (_peers[i].endpointId < lowest) {
+				lowest = _peers[i].endpointId;
+				reference = _peers[i];
+			}
+		}
+		return reference;
+	}
+
+	private Peer findPeer(String playerId) {
+		for (int i = 0; i < _peerCount; i++) {
+			if (_peers[i].playerId != null && _peers[i].playerId.equals(playerId)) {
+				return _peers[i];
+			}
+		}
+		return null;
+	}
+
+	private Peer findOrCreatePeer(int endpointId, String playerId) {
+		for (int i = 0; i < _peerCount; i++) {
+			if (_peers[i].endpointId == endpointId) {
+				return _peers[i];
+			}
+		}
+
+		if (_peerCount == MAX_PEERS) return null;
+
+		final Peer peer = new Peer();
+		peer.endpointId = endpointId;
+		peer.playerId = playerId;
+		_peers[_peerCount++] = peer;
+		return peer;
+	}
+
+	private static int readInt(byte[] data, int position) {
+		return ((data[position] & 0xFF) << 24) | ((data[position + 1] & 0xFF) << 16)
+				| ((data[position + 2] & 0xFF) << 8) | (data[position + 3] & 0xFF);
+	}
+
+	private static long readLong(byte[] data, int position) {
+		return ((long)readInt(data, position) << 32) | (readInt(data, position + 4) & 0xFFFFFFFFL);
+	}
+
+	private static void writeInt(byte[] data, int position, int value) {
+		data[position] = (byte)(value >>> 24);
+		data[position + 1] = (byte)(value >>> 16);
+		data[position + 2] = (byte)(value >>> 8);
+		data[position + 3] = (byte)value;
+	}
+
+	private static void writeLong(byte[] data, int position, long value) {
+		writeInt(data, position, (int)(value >>> 32));
+		writeInt(data, position + 4, (int)value);
+	}
+}
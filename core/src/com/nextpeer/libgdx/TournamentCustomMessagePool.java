@@ -0,0 +1,139 @@
+//
+//  Nextpeer libGDX plugin
+//  http://www.nextpeer.com
+//
+//  Created by Nextpeer development team.
+//  Copyright (c) 2014 Innobell, Ltd. All rights reserved.
+//
+
+package com.nextpeer.libgdx;
+
+/**
+ * Pool of {@link PooledTournamentCustomMessage} instances and their payload buffers.
+ * Set it with {@link Tournaments#setMessagePool(TournamentCustomMessagePool)} to receive the custom messages without allocations.
+ * Messages can be obtained and released from different threads.
+ */
+public final class TournamentCustomMessagePool {
+
+	/**
+	 * Default number of free messages kept by the pool
+	 */
+	public static final int DEFAULT_MAX_FREE = 64;
+
+	/**
+	 * Default size of a new message payload buffer
+	 */
+	public static final int DEFAULT_INITIAL_BUFFER_SIZE = 256;
+
+	final int initialBufferSize;
+
+	private final PooledTournamentCustomMessage[] _free;
+	private int _freeCount;
+
+	private long _obtained;
+	private long _created;
+
+	/**
+	 * Constructor for the TournamentCustomMessagePool class
+	 * @param maxFree The number of free messages kept by the pool, extra released messages are left to the GC
+	 * @param initialBufferSize The size of a new payload buffer, buffers grow when a larger message arrives
+	 * @throws IllegalArgumentException if {@code maxFree} is negative or {@code initialBufferSize} is zero or negative.
+	 */
+	public TournamentCustomMessagePool(int maxFree, int initialBufferSize) {
+		if (maxFree < 0) {
+			throw new IllegalArgumentException("maxFree cannot be negative: " + maxFree);
+		}
+		if (initialBufferSize <= 0) {
+			throw new IllegalArgumentException("initialBufferSize must be positive: " + initialBufferSize);
+		}
+
+		_free = new PooledTournamentCustomMessage[maxFree];
+		this.initialBufferSize = initialBufferSize;
+	}
+
+	/**
+	 * Constructor for the TournamentCustomMessagePool class with the default settings
+	 */
+	public TournamentCustomMessagePool() {
+		this(DEFAULT_MAX_FREE, DEFAULT_INITIAL_BUFFER_SIZE);
+	}
+
+	/**
+	 * Obtain a message and copy the custom message into its reusable buffer
+	 * @param playerId The player identifier
+	 * @param playerName The player name
+	 * @param playerImageUrl The player's profile image URL
+	 * @param data The array holding the custom message, it is copied
+	 * @param offset The offset of the custom message in {@code data}
+	 * @param length The length of the custom message
+	 * @param playerIsBot Does the message came from a bot recording
+	 * @param playerHandle The player handle in the {@link PlayerRegistry}, {@link PlayerRegistry#NO_HANDLE} if there is none
+	 * @return The message, with a single reference which should be released by the caller
+	 */
+	public PooledTournamentCustomMessage obtain(String playerId, String playerName, String playerImageUrl,
+			byte[] data, int offset, int length, boolean playerIsBot, int playerHandle) {
+		final PooledTournamentCustomMessage message = take();
+		message.setCopy(playerId, playerName, playerImageUrl, data, offset, length, playerIsBot, playerHandle);
+		return message;
+	}
+
+	/**
+	 * Obtain a message which is a view over a part of another message, without copying. The parent is retained until the view is released.
+	 * @param parent The message holding the data
+	 * @param offset The offset of the view, relative to the start of the parent's custom message
+	 * @param length The length of the view
+	 * @return The message, with a single reference which should be released by the caller
+	 * @throws IndexOutOfBoundsException if the view is outside of the parent's custom message.
+	 */
+	public PooledTournamentCustomMessage obtainView(PooledTournamentCustomMessage parent, int offset, int length) {
+		if (offset < 0 || length < 0 || offset + length > parent.getLength()) {
+			throw new IndexOutOfBoundsException("offset: " + offset + ", length: " + length + ", parent length: " + parent.getLength());
+		}
+
+		final PooledTournamentCustomMessage message = take();
+		message.setView(parent, offset, length);
+		return message;
+	}
+
+	/**
+	 * Gets the number of messages obtained from the pool
+	 * @return The number of obtained messages
+	 */
+	public synchronized long getObtainedCount() {
+		return _obtained;
+	}
+
+	/**
+	 * Gets the number of messages the pool had to create because it was empty
+	 * @return The number of created messages
+	 */
+	public synchronized long getCreatedCount() {
+		return _created;
+	}
+
+	/**
+	 * Gets the number of free messages in the pool
+	 * @return The number of free messages
+	 */
+	public synchronized int getFreeCount() {
+		return _freeCount;
+	}
+
+	synchronized void free(PooledTournamentCustomMessage message) {
+		if (_freeCount < _free.length) {
+			_free[_freeCount++] = message;
+		}
+	}
+
+	private synchronized PooledTournamentCustomMessage take() {
+		_obtained++;
+		if (_freeCount == 0) {
+			_created++;
+			return new PooledTournamentCustomMessage(this);
+		}
+
+		final PooledTournamentCustomMessage message = _free[--_freeCount];
+		_free[_freeCount] = null;
+		return message;
+	}
+}
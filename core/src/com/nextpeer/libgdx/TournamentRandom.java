@@ -0,0 +1,247 @@
+//
+//  Nextpeer libGDX plugin
+//  http://www.nextpeer.com
+//
+//  Created by Nextpeer development team.
+//  Copyright (c) 2014 Innobell, Ltd. All rights reserved.
+//
+
+package com.nextpeer.libgdx;
+
+/**
+ * Fast deterministic random generator (xoshiro256**, seeded with SplitMix64) for the tournament random seed.
+ * All the players get the same seed in {@code TournamentsCallback#onTournamentStart(long)}, so the same draws give the same world.
+ * <p>Each subsystem (level generation, AI, particles...) should draw from its own named stream, see {@link #stream(String)}.
+ * Streams only depend on the seed and the name, so an extra draw in one subsystem never changes the others.
+ * All the draws use integer arithmetic (and StrictMath for {@link #nextGaussian()}) to give the same values on every platform.</p>
+ * <p><strong>Note:</strong> The generator is not thread safe (and not synchronized, unlike {@code java.util.Random}), use a stream per thread.</p>
+ */
+public final class TournamentRandom {
+
+	private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+	private static final long FNV_OFFSET_BASIS = 0xCBF29CE484222325L;
+	private static final long FNV_PRIME = 0x100000001B3L;
+	private static final double DOUBLE_UNIT = 1.0 / (1L << 53);
+	private static final float FLOAT_UNIT = 1.0f / (1 << 24);
+
+	private final long _seed;
+	private long _s0;
+	private long _s1;
+	private long _s2;
+	private long _s3;
+
+	private boolean _hasNextGaussian;
+	private double _nextGaussian;
+
+	/**
+	 * Constructor for the TournamentRandom class
+	 * @param seed The seed, usually the tournament random seed
+	 */
+	public TournamentRandom(long seed) {
+		_seed = seed;
+		reset();
+	}
+
+	/**
+	 * Gets the seed of this generator
+	 * @return The seed
+	 */
+	public long getSeed() {
+		return _seed;
+	}
+
+	/**
+	 * Restart the sequence from the seed
+	 */
+	public void reset() {
+		long state = _seed;
+		state += GOLDEN_GAMMA;
+		_s0 = mix(state);
+		state += GOLDEN_GAMMA;
+		_s1 = mix(state);
+		state += GOLDEN_GAMMA;
+		_s2 = mix(state);
+		state += GOLDEN_GAMMA;
+		_s3 = mix(state);
+		_hasNextGaussian = false;
+	}
+
+	/**
+	 * Set the raw xoshiro256** state, to check the generator against the reference vectors
+	 */
+	void setState(long s0, long s1, long s2, long s3) {
+		_s0 = s0;
+		_s1 = s1;
+		_s2 = s2;
+		_s3 = s3;
+		_hasNextGaussian = false;
+	}
+
+	/**
+	 * Creates an independent generator for a subsystem. The result only depends on the seed of this generator and the name,
+	 * not on the values already drawn from it.
+	 * @param name The stream name, for example "level" or "ai"
+	 * @return A new generator
+	 */
+	public TournamentRandom stream(String name) {
+		long hash = FNV_OFFSET_BASIS;
+		for (int i = 0; i < name.length(); i++) {
+			hash ^= name.charAt(i);
+			hash *= FNV_PRIME;
+		}
+
+		return stream(hash);
+	}
+
+	/**
+	 * Creates an independent generator for a numbered subsystem (for example one stream per entity). The result only depends
+	 * on the seed of this generator and the id, not on the values already drawn from it.
+	 * @param id The stream id
+	 * @return A new generator
+	 */
+	public TournamentRandom stream(long id) {
+		return new TournamentRandom(mix(_seed ^ mix(id + GOLDEN_GAMMA)));
+	}
+
+	/**
+	 * Gets the next 64 bit value
+	 * @return A uniformly distributed long
+	 */
+	public long nextLong() {
+		final long result = Long.rotateLeft(_s1 * 5, 7) * 9;
+		final long t = _s1 << 17;
+
+		_s2 ^= _s0;
+		_s3 ^= _s1;
+		_s1 ^= _s2;
+		_s0 ^= _s3;
+		_s2 ^= t;
+		_s3 = Long.rotateLeft(_s3, 45);
+
+		return result;
+	}
+
+	/**
+	 * Gets the next 32 bit value
+	 * @return A uniformly distributed int
+	 */
+	public int nextInt() {
+		return (int)(nextLong() >>> 32);
+	}
+
+	/**
+	 * Gets a value between 0 (inclusive) and the bound (exclusive), without modulo bias
+	 * @param bound The upper bound, must be positive
+	 * @return A uniformly distributed int in [0, bound)
+	 * @throws IllegalArgumentException if {@code bound} is zero or negative.
+	 */
+	public int nextInt(int bound) {
+		if (bound <= 0) {
+			throw new IllegalArgumentException("bound must be positive: " + bound);
+		}
+
+		// Lemire's multiply and reject method
+		long product = (nextLong() >>> 32) * bound;
+		long low = product & 0xFFFFFFFFL;
+		if (low < bound) {
+			final long threshold = (0x100000000L - bound) % bound;
+			while (low < threshold) {
+				product = (nextLong() >>> 32) * bound;
+				low = product & 0xFFFFFFFFL;
+			}
+		}
+
+		return (int)(product >>> 32);
+	}
+
+	/**
+	 * Gets a value in a range
+	 * @param min The lower bound (inclusive)
+	 * @param max The upper bound (inclusive)
+	 * @return A uniformly distributed int in [min, max]
+	 * @throws IllegalArgumentException if {@code max} is smaller than {@code min}.
+	 */
+	public int nextInt(int min, int max) {
+		if (max < min) {
+			throw new IllegalArgumentException("max is smaller than min: " + max + " < " + min);
+		}
+
+		final long range = (long)max - min + 1;
+		if (range <= Integer.MAX_VALUE) {
+			return min + nextInt((int)range);
+		}
+
+		while (true) {
+			final int value = nextInt();
+			if (value >= min && value <= max) return value;
+		}
+	}
+
+	/**
+	 * Gets the next boolean
+	 * @return A uniformly distributed boolean
+	 */
+	public boolean nextBoolean() {
+		return nextLong() < 0;
+	}
+
+	/**
+	 * Gets a float between 0 (inclusive) and 1 (exclusive)
+	 * @return A uniformly distributed float in [0, 1)
+	 */
+	public float nextFloat() {
+		return (nextLong() >>> 40) * FLOAT_UNIT;
+	}
+
+	/**
+	 * Gets a float in a range
+	 * @param min The lower bound (inclusive)
+	 * @param max The upper bound (exclusive)
+	 * @return A uniformly distributed float in [min, max)
+	 */
+	public float nextFloat(float min, float max) {
+		return min + (max - min) * nextFloat();
+	}
+
+	/**
+	 * Gets a double between 0 (inclusive) and 1 (exclusive)
+	 * @return A uniformly distributed double in [0, 1)
+	 */
+	public double nextDouble() {
+		return (nextLong() >>> 11) * DOUBLE_UNIT;
+	}
+
+	/**
+	 * Gets a normally distributed value (Marsaglia polar method)
+	 * @return A double with mean 0 and standard deviation 1
+	 */
+	public double nextGaussian() {
+		if (_hasNextGaussian) {
+			_hasNextGaussian = false;
+			return _nextGaussian;
+		}
+
+		double v1;
+		double v2;
+		double s;
+		do {
+			v1 = 2 * nextDouble() - 1;
+			v2 = 2 * nextDouble() - 1;
+			s = v1 * v1 + v2 * v2;
+		} while (s >= 1 || s == 0);
+
+		final double multiplier = StrictMath.sqrt(-2 * StrictMath.log(s) / s);
+		_nextGaussian = v2 * multiplier;
+		_hasNextGaussian = true;
+		return v1 * multiplier;
+	}
+
+	/**
+	 * SplitMix64 finalizer
+	 */
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+}
@@ -0,0 +1,374 @@
+//
+//  Nextpeer libGDX plugin
+//  http://www.nextpeer.com
+//
+//  Created by Nextpeer development team.
+//  Copyright (c) 2014 Innobell, Ltd. All rights reserved.
+//
+
+package com.nextpeer.libgdx;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+
+/**
+ * Tournaments layer recording the tournament stream to a file: the tournament start and end, the synchronized events and every sent and
+ * received custom message with its time, channel and player. The log is replayed with a {@link TournamentReplayer}, to reproduce a desync
+ * or to run a ghost.
+ * <p>The records are appended to a memory-mapped region of the file, mapped {@link #DEFAULT_CHUNK_SIZE chunk} by chunk,
+ * so recording is a copy to memory and the operating system writes the pages in the background.
+ * The log stays readable if the game is killed: the unwritten part of the file is zeroed, which reads as the end of the log.</p>
+ * <p>Log layout: the {@link #MAGIC} and {@link #VERSION} header, the recording wall clock time, then the records. A record is a type byte,
+ * the time since the previous record in microseconds (varint), then the record data. A player is described by a player record the first
+ * time it is seen, the messages then refer to it by its index.</p>
+ * <p>If the file cannot be extended the recording stops, the game is not affected, see {@link #getRecordingError()}.
+ * Call {@link #close()} when the recording is over.</p>
+ */
+public class TournamentRecorder extends TournamentsWrapper {
+
+	/**
+	 * First bytes of a log ("NPRL")
+	 */
+	public static final int MAGIC = 0x4E50524C;
+
+	/**
+	 * Log format version
+	 */
+	public static final int VERSION = 1;
+
+	/**
+	 * Default size of the mapped regions
+	 */
+	public static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+
+	static final int HEADER_SIZE = 4 + 1 + 8;
+
+	static final byte RECORD_END_OF_LOG = 0;
+	static final byte RECORD_TOURNAMENT_START = 1;
+	static final byte RECORD_TOURNAMENT_END = 2;
+	static final byte RECORD_SENT = 3;
+	static final byte RECORD_UNRELIABLE_SENT = 4;
+	static final byte RECORD_RECEIVED = 5;
+	static final byte RECORD_UNRELIABLE_RECEIVED = 6;
+	static final byte RECORD_SYNCHRONIZED_EVENT = 7;
+	static final byte RECORD_PLAYER = 8;
+	static final byte RECORD_SYNCHRONIZED_EVENT_TIMEOUT = 9;
+
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	// Largest record header: type byte and time varint
+	private static final int MAX_RECORD_HEADER_SIZE = 1 + 10;
+
+	private final RandomAccessFile _file;
+	private final FileChannel _channel;
+	private final int _chunkSize;
+
+	// Guarded by _players, the messages are received and sent from different threads
+	private final HashMap<String, Integer> _players = new HashMap<String, Integer>();
+	private MappedByteBuffer _mapped;
+	private long _mappedStart;
+	private long _lastRecordNanos;
+	private long _recordCount;
+	private boolean _closed;
+	private IOException _error;
+
+	/**
+	 * Constructor for the TournamentRecorder class, the file is created or overwritten
+	 * @param tournaments The Tournaments instance to wrap
+	 * @param file The log file
+	 * @param chunkSize The size of the mapped regions
+	 * @throws IOException if the file cannot be created or mapped.
+	 * @throws IllegalArgumentException if {@code file} is null or {@code chunkSize} is smaller than 64.
+	 */
+	public TournamentRecorder(Tournaments tournaments, File file, int chunkSize) throws IOException {
+		super(tournaments);
+
+		if (file == null) {
+			throw new IllegalArgumentException("file cannot be null");
+		}
+		if (chunkSize < 64) {
+			throw new IllegalArgumentException("chunkSize is too small: " + chunkSize);
+		}
+
+		_chunkSize = chunkSize;
+		_file = new RandomAccessFile(file, "rw");
+		try {
+			_file.setLength(0);
+			_channel = _file.getChannel();
+			_mapped = _channel.map(FileChannel.MapMode.READ_WRITE, 0, chunkSize);
+		}
+		catch (IOException e) {
+			_file.close();
+			throw e;
+		}
+
+		_mapped.putInt(MAGIC);
+		_mapped.put((byte)VERSION);
+		_mapped.putLong(System.currentTimeMillis());
+		_lastRecordNanos = System.nanoTime();
+	}
+
+	/**
+	 * Constructor for the TournamentRecorder class with the {@link #DEFAULT_CHUNK_SIZE}, the file is created or overwritten
+	 * @param tournaments The Tournaments instance to wrap
+	 * @param file The log file
+	 * @throws IOException if the file cannot be created or mapped.
+	 */
+	public TournamentRecorder(Tournaments tournaments, File file) throws IOException {
+		this(tournaments, file, DEFAULT_CHUNK_SIZE);
+	}
+
+	@Override
+	public void pushDataToOtherPlayers(byte[] data) {
+		if (data != null) {
+			recordMessage(RECORD_SENT, null, null, null, false, data, 0, data.length);
+		}
+		super.pushDataToOtherPlayers(data);
+	}
+
+	@Override
+	public void unreliablePushDataToOtherPlayers(byte[] data) {
+		if (data != null) {
+			recordMessage(RECORD_UNRELIABLE_SENT, null, null, null, false, data, 0, data.length);
+		}
+		super.unreliablePushDataToOtherPlayers(data);
+	}
+
+	/**
+	 * Gets the number of records written
+	 * @return The number of records
+	 */
+	public long getRecordCount() {
+		synchronized (_players) {
+			return _recordCount;
+		}
+	}
+
+	/**
+	 * Gets the size of the log
+	 * @return The number of bytes written
+	 */
+	public long getRecordedBytes() {
+		synchronized (_players) {
+			return (_mapped != null) ? _mappedStart + _mapped.position() : _mappedStart;
+		}
+	}
+
+	/**
+	 * Is the recording over, because of {@link #close()} or an error
+	 * @return true if the records are not written anymore, false otherwise
+	 */
+	public boolean isClosed() {
+		synchronized (_players) {
+			return _closed;
+		}
+	}
+
+	/**
+	 * Gets the error which stopped the recording
+	 * @return The error, null if there was none
+	 */
+	public IOException getRecordingError() {
+		synchronized (_players) {
+			return _error;
+		}
+	}
+
+	/**
+	 * Stop the recording, flush the log and cut the file to its size. The calls are still forwarded to the wrapped instance.
+	 * @throws IOException if the log could not be written.
+	 */
+	public void close() throws IOException {
+		synchronized (_players) {
+			if (_closed && _mapped == null) {
+				if (_error != null) throw _error;
+				return;
+			}
+			_closed = true;
+
+			final long size = _mappedStart + _mapped.position();
+			try {
+				_mapped.force();
+				_mapped = null;
+				_mappedStart = size;
+				try {
+					_channel.truncate(size);
+				}
+				catch (IOException e) {
+					// Some platforms can't truncate a mapped file, the zeroed tail reads as the end of the log
+				}
+			}
+			finally {
+				_file.close();
+			}
+
+			if (_error != null) throw _error;
+		}
+	}
+
+	@Override
+	protected void onWrappedTournamentStart(long tournamentRandomSeed) {
+		synchronized (_players) {
+			if (beginRecord(RECORD_TOURNAMENT_START, 8)) {
+				_mapped.putLong(tournamentRandomSeed);
+			}
+		}
+		super.onWrappedTournamentStart(tournamentRandomSeed);
+	}
+
+	@Override
+	protected void onWrappedTournamentEnd() {
+		synchronized (_players) {
+			beginRecord(RECORD_TOURNAMENT_END, 0);
+			_players.clear();
+		}
+		super.onWrappedTournamentEnd();
+	}
+
+	@Override
+	protected void onWrappedReceiveSynchronizedEvent(String name, boolean timedOut) {
+		if (name != null) {
+			final byte[] bytes = name.getBytes(UTF8);
+			synchronized (_players) {
+				if (beginRecord(timedOut ? RECORD_SYNCHRONIZED_EVENT_TIMEOUT : RECORD_SYNCHRONIZED_EVENT, 5 + bytes.length)) {
+					putBytes(bytes, 0, bytes.length);
+				}
+			}
+		}
+		super.onWrappedReceiveSynchronizedEvent(name, timedOut);
+	}
+
+	@Override
+	protected void onWrappedReceiveTournamentCustomMessage(NextpeerTournamentCustomMessage message) {
+		recordMessage(RECORD_RECEIVED, message.playerId, message.playerName, message.playerImageUrl, message.playerIsBot,
+				message.customMessage, 0, message.customMessage.length);
+		super.onWrappedReceiveTournamentCustomMessage(message);
+	}
+
+	@Override
+	protected void onWrappedReceiveUnreliableTournamentCustomMessage(NextpeerTournamentCustomMessage message) {
+		recordMessage(RECORD_UNRELIABLE_RECEIVED, message.playerId, message.playerName, message.playerImageUrl, message.playerIsBot,
+				message.customMessage, 0, message.customMessage.length);
+		super.onWrappedReceiveUnreliableTournamentCustomMessage(message);
+	}
+
+	@Override
+	protected void onWrappedReceivePooledTournamentCustomMessage(PooledTournamentCustomMessage message) {
+		recordMessage(RECORD_RECEIVED, message.getPlayerId(), message.getPlayerName(), message.getPlayerImageUrl(), message.isPlayerBot(),
+				message.getData(), message.getOffset(), message.getLength());
+		super.onWrappedReceivePooledTournamentCustomMessage(message);
+	}
+
+	@Override
+	protected void onWrappedReceivePooledUnreliableTournamentCustomMessage(PooledTournamentCustomMessage message) {
+		recordMessage(RECORD_UNRELIABLE_RECEIVED, message.getPlayerId(), message.getPlayerName(), message.getPlayerImageUrl(), message.isPlayerBot(),
+				message.getData(), message.getOffset(), message.getLength());
+		super.onWrappedReceivePooledUnreliableTournamentCustomMessage(message);
+	}
+
+	/**
+	 * Record a sent message (null player) or a received one, with the player record the first time the player is seen
+	 */
+	private void recordMessage(byte type, String playerId, String playerName, String playerImageUrl, boolean playerIsBot,
+			byte[] data, int offset, int length) {
+		synchronized (_players) {
+			if (_closed) return;
+
+			int playerIndex = -1;
+			if (playerId != null) {
+				final Integer index = _players.get(playerId);
+				if (index != null) {
+					playerIndex = index.intValue();
+				}
+				else {
+					playerIndex = _players.size();
+					if (!recordPlayer(playerIndex, playerId, playerName, playerImageUrl, playerIsBot)) return;
+					_players.put(playerId, Integer.valueOf(playerIndex));
+				}
+			}
+
+			if (!beginRecord(type, 10 + length)) return;
+			if (playerIndex >= 0) {
+				putVarint(playerIndex);
+			}
+			putBytes(data, offset, length);
+		}
+	}
+
+	private boolean recordPlayer(int playerIndex, String playerId, String playerName, String playerImageUrl, boolean playerIsBot) {
+		final byte[] id = playerId.getBytes(UTF8);
+		final byte[] name = (playerName != null) ? playerName.getBytes(UTF8) : null;
+		final byte[] imageUrl = (playerImageUrl != null) ? playerImageUrl.getBytes(UTF8) : null;
+		final int size = 5 + 1 + 15 + id.length + ((name != null) ? name.length : 0) + ((imageUrl != null) ? imageUrl.length : 0);
+		if (!beginRecord(RECORD_PLAYER, size)) return false;
+
+		putVarint(playerIndex);
+		putBytes(id, 0, id.length);
+		putNullableBytes(name);
+		putNullableBytes(imageUrl);
+		_mapped.put(playerIsBot ? (byte)1 : (byte)0);
+		return true;
+	}
+
+	/**
+	 * Write the record header, must be called with the _players lock held
+	 * @param size The largest size of the record data
+	 * @return true if the record data can be written, false if the recording is over
+	 */
+	private boolean beginRecord(byte type, int size) {
+		if (_closed) return false;
+
+		if (_mapped.remaining() < MAX_RECORD_HEADER_SIZE + size) {
+			try {
+				// No force, the operating system writes the previous chunk in the background
+				_mappedStart += _mapped.position();
+				_mapped = _channel.map(FileChannel.MapMode.READ_WRITE, _mappedStart, Math.max(_chunkSize, MAX_RECORD_HEADER_SIZE + size));
+			}
+			catch (IOException e) {
+				// Nothing more is written, the log ends at _mappedStart
+				_error = e;
+				_closed = true;
+				_mapped.position(0);
+				return false;
+			}
+		}
+
+		final long now = System.nanoTime();
+		final long deltaMicros = Math.max(0, (now - _lastRecordNanos) / 1000L);
+		// Keep the remainder so the deltas don't drift
+		_lastRecordNanos += deltaMicros * 1000L;
+
+		_mapped.put(type);
+		putVarint(deltaMicros);
+		_recordCount++;
+		return true;
+	}
+
+	private void putBytes(byte[] data, int offset, int length) {
+		putVarint(length);
+		_mapped.put(data, offset, length);
+	}
+
+	private void putNullableBytes(byte[] data) {
+		if (data == null) {
+			putVarint(0);
+		}
+		else {
+			putVarint(data.length + 1L);
+			_mapped.put(data, 0, data.length);
+		}
+	}
+
+	private void putVarint(long value) {
+		while ((value & ~0x7FL) != 0) {
+			_mapped.put((byte)((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		_mapped.put((byte)value);
+	}
+}
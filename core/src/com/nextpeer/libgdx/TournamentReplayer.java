@@ -0,0 +1,404 @@
+//
+//  Nextpeer libGDX plugin
+//  http://www.nextpeer.com
+//
+//  Created by Nextpeer development team.
+//  Copyright (c) 2014 Innobell, Ltd. All rights reserved.
+//
+
+package com.nextpeer.libgdx;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+
+/**
+ * Tournaments implementation playing back a log written by a {@link TournamentRecorder}. The recorded tournament start and end,
+ * synchronized events and received messages are delivered to the callback, through the message pool when one is set,
+ * either in real time with {@link #update()} or as fast as possible with {@link #replayAll()}.
+ * <p>It can be loaded in the plugin like the platform implementation to reproduce a desync offline. The messages pushed by the game
+ * are only counted. The recorded sent messages are skipped, or delivered as the messages of a bot player after
+ * {@link #setSentMessagesPlayer(String, String)} to race against a ghost of the recorded run.</p>
+ * <p><strong>Note:</strong> Not thread safe, call {@link #update()} from the render thread.</p>
+ */
+public class TournamentReplayer extends Tournaments {
+
+	/**
+	 * Player of the recorded messages
+	 */
+	private static final class Player {
+		String id;
+		String name;
+		String imageUrl;
+		boolean bot;
+	}
+
+	private final MappedByteBuffer _log;
+	private final long _recordedAtMillis;
+	private final ArrayList<Player> _players = new ArrayList<Player>();
+	private Player _sentPlayer;
+	private float _speed = 1f;
+
+	// Next record, its header is read ahead
+	private byte _nextType;
+	private long _nextTimeMicros;
+	private long _startNanos = -1;
+
+	private boolean _inTournament;
+	private long _replayedRecords;
+	private long _pushedMessages;
+	private boolean _corrupted;
+
+	/**
+	 * Constructor for the TournamentReplayer class
+	 * @param file The log file
+	 * @throws IOException if the file cannot be read or is not a log.
+	 * @throws IllegalArgumentException if {@code file} is null.
+	 */
+	public TournamentReplayer(File file) throws IOException {
+		if (file == null) {
+			throw new IllegalArgumentException("file cannot be null");
+		}
+
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			final long size = raf.length();
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException("log is too large: " + size);
+			}
+			if (size < TournamentRecorder.HEADER_SIZE) {
+				throw new IOException("not a tournament log: " + file);
+			}
+			_log = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, size);
+		}
+		finally {
+			raf.close();
+		}
+
+		if (_log.getInt() != TournamentRecorder.MAGIC) {
+			throw new IOException("not a tournament log: " + file);
+		}
+		final int version = _log.get();
+		if (version != TournamentRecorder.VERSION) {
+			throw new IOException("unsupported log version: " + version);
+		}
+		_recordedAtMillis = _log.getLong();
+
+		readHeader();
+	}
+
+	/**
+	 * Set the playback speed of {@link #update()}
+	 * @param speed The speed, 1 for real time
+	 * @throws IllegalArgumentException if {@code speed} is zero or negative.
+	 */
+	public void setSpeed(float speed) {
+		if (!(speed > 0)) {
+			throw new IllegalArgumentException("speed must be positive: " + speed);
+		}
+
+		// Keep the current replay time
+		if (_startNanos >= 0) {
+			final long now = System.nanoTime();
+			_startNanos = now - (long)((now - _startNanos) * (double)_speed / speed);
+		}
+		_speed = speed;
+	}
+
+	/**
+	 * Deliver the recorded sent messages as the messages of a bot player, to replay a ghost of the recorded player
+	 * @param playerId The player identifier of the ghost, null to skip the sent messages (default)
+	 * @param playerName The player name of the ghost
+	 */
+	public void setSentMessagesPlayer(String playerId, String playerName) {
+		if (playerId == null) {
+			_sentPlayer = null;
+			return;
+		}
+
+		final Player player = new Player();
+		player.id = playerId;
+		player.name = playerName;
+		player.bot = true;
+		_sentPlayer = player;
+	}
+
+	/**
+	 * Deliver the records which are due, the first call starts the playback clock. Should be called once per frame.
+	 * @return The number of records delivered
+	 */
+	public int update() {
+		final long now = System.nanoTime();
+		if (_startNanos < 0) {
+			_startNanos = now;
+		}
+
+		final long replayMicros = (long)((now - _startNanos) / 1000L * (double)_speed);
+		int replayed = 0;
+		while (_nextType != TournamentRecorder.RECORD_END_OF_LOG && _nextTimeMicros <= replayMicros) {
+			replayNext();
+			replayed++;
+		}
+		return replayed;
+	}
+
+	/**
+	 * Deliver all the remaining records at once
+	 * @return The number of records delivered
+	 */
+	public int replayAll() {
+		int replayed = 0;
+		while (_nextType != TournamentRecorder.RECORD_END_OF_LOG) {
+			replayNext();
+			replayed++;
+		}
+		return replayed;
+	}
+
+	/**
+	 * Are all the records delivered
+	 * @return true if the end of the log was reached, false otherwise
+	 */
+	public boolean isFinished() {
+		return _nextType == TournamentRecorder.RECORD_END_OF_LOG;
+	}
+
+	/**
+	 * Does the log end with a truncated or invalid record (the recording was interrupted)
+	 * @return true if the log is corrupted, false otherwise
+	 */
+	public boolean isCorrupted() {
+		return _corrupted;
+	}
+
+	/**
+	 * Gets the wall clock time of the start of the recording
+	 * @return The time in milliseconds since the epoch
+	 */
+	public long getRecordedAtMillis() {
+		return _recordedAtMillis;
+	}
+
+	/**
+	 * Gets the recording time of the next record
+	 * @return The time in microseconds since the start of the recording
+	 */
+	public long getNextRecordTimeMicros() {
+		return _nextTimeMicros;
+	}
+
+	/**
+	 * Gets the number of records delivered
+	 * @return The number of records
+	 */
+	public long getReplayedRecords() {
+		return _replayedRecords;
+	}
+
+	/**
+	 * Gets the number of messages pushed by the game during the playback
+	 * @return The number of pushed messages
+	 */
+	public long getPushedMessages() {
+		return _pushedMessages;
+	}
+
+	/**
+	 * Does tournaments supported by the replayer
+	 * @return true
+	 */
+	@Override
+	public boolean isSupported() {
+		return true;
+	}
+
+	/**
+	 * Start the playback clock, like {@link #update()} does on its first call
+	 */
+	@Override
+	public void launch() {
+		if (_startNanos < 0) {
+			_startNanos = System.nanoTime();
+		}
+	}
+
+	@Override
+	public void reportScoreForCurrentTournament(int score) {}
+
+	@Override
+	public void reportControlledTournamentOverWithScore(int score) {}
+
+	@Override
+	public void reportForfeitForCurrentTournament() {}
+
+	/**
+	 * Is the playback between a recorded tournament start and end
+	 * @return true if a recorded tournament is being replayed, false otherwise
+	 */
+	@Override
+	public boolean isCurrentlyInTournament() {
+		return _inTournament;
+	}
+
+	/**
+	 * Counted only, the recorded messages are replayed instead
+	 */
+	@Override
+	public void unreliablePushDataToOtherPlayers(byte[] data) {
+		_pushedMessages++;
+	}
+
+	/**
+	 * Counted only, the recorded messages are replayed instead
+	 */
+	@Override
+	public void pushDataToOtherPlayers(byte[] data) {
+		_pushedMessages++;
+	}
+
+	/**
+	 * Ignored, the recorded synchronized events are replayed instead
+	 */
+	@Override
+	public void registerToSynchronizedEvent(String eventName, int timeoutInMilliseconds) {}
+
+	/**
+	 * Read the type and the time of the next record
+	 */
+	private void readHeader() {
+		if (!_log.hasRemaining()) {
+			_nextType = TournamentRecorder.RECORD_END_OF_LOG;
+			return;
+		}
+
+		try {
+			_nextType = _log.get();
+			if (_nextType != TournamentRecorder.RECORD_END_OF_LOG) {
+				_nextTimeMicros += getVarint();
+			}
+		}
+		catch (BufferUnderflowException e) {
+			endCorrupted();
+		}
+	}
+
+	private void replayNext() {
+		final byte type = _nextType;
+		try {
+			switch (type) {
+			case TournamentRecorder.RECORD_TOURNAMENT_START:
+				final long seed = _log.getLong();
+				_inTournament = true;
+				fireTournamentStart(seed);
+				break;
+			case TournamentRecorder.RECORD_TOURNAMENT_END:
+				_inTournament = false;
+				_players.clear();
+				fireTournamentEnd();
+				break;
+			case TournamentRecorder.RECORD_SYNCHRONIZED_EVENT:
+			case TournamentRecorder.RECORD_SYNCHRONIZED_EVENT_TIMEOUT:
+				fireReceiveSynchronizedEvent(getString(), type == TournamentRecorder.RECORD_SYNCHRONIZED_EVENT_TIMEOUT);
+				break;
+			case TournamentRecorder.RECORD_PLAYER:
+				readPlayer();
+				break;
+			case TournamentRecorder.RECORD_RECEIVED:
+			case TournamentRecorder.RECORD_UNRELIABLE_RECEIVED:
+				final int index = (int)getVarint();
+				if (index < 0 || index >= _players.size() || _players.get(index) == null) {
+					endCorrupted();
+					return;
+				}
+				deliver(_players.get(index), getByteArray(), type == TournamentRecorder.RECORD_RECEIVED);
+				break;
+			case TournamentRecorder.RECORD_SENT:
+			case TournamentRecorder.RECORD_UNRELIABLE_SENT:
+				final byte[] data = getByteArray();
+				if (_sentPlayer != null) {
+					deliver(_sentPlayer, data, type == TournamentRecorder.RECORD_SENT);
+				}
+				break;
+			default:
+				endCorrupted();
+				return;
+			}
+		}
+		catch (BufferUnderflowException e) {
+			endCorrupted();
+			return;
+		}
+
+		_replayedRecords++;
+		readHeader();
+	}
+
+	private void deliver(Player player, byte[] data, boolean reliable) {
+		if (reliable) {
+			fireReceiveTournamentCustomMessage(player.id, player.name, player.imageUrl, data, player.bot);
+		}
+		else {
+			fireReceiveUnreliableTournamentCustomMessage(player.id, player.name, player.imageUrl, data, player.bot);
+		}
+	}
+
+	private void readPlayer() {
+		final int index = (int)getVarint();
+		final Player player = new Player();
+		player.id = getString();
+		player.name = getNullableString();
+		player.imageUrl = getNullableString();
+		player.bot = _log.get() != 0;
+
+		while (_players.size() <= index) {
+			_players.add(null);
+		}
+		_players.set(index, player);
+	}
+
+	private void endCorrupted() {
+		_corrupted = true;
+		_nextType = TournamentRecorder.RECORD_END_OF_LOG;
+	}
+
+	private byte[] getByteArray() {
+		final long length = getVarint();
+		if (length < 0 || length > _log.remaining()) {
+			throw new BufferUnderflowException();
+		}
+
+		final byte[] data = new byte[(int)length];
+		_log.get(data);
+		return data;
+	}
+
+	private String getString() {
+		return new String(getByteArray(), TournamentRecorder.UTF8);
+	}
+
+	private String getNullableString() {
+		final long length = getVarint() - 1;
+		if (length < 0) return null;
+		if (length > _log.remaining()) {
+			throw new BufferUnderflowException();
+		}
+
+		final byte[] data = new byte[(int)length];
+		_log.get(data);
+		return new String(data, TournamentRecorder.UTF8);
+	}
+
+	private long getVarint() {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			final byte b = _log.get();
+			value |= (long)(b & 0x7F) << shift;
+			if ((b & 0x80) == 0) return value;
+		}
+		throw new BufferUnderflowException();
+	}
+}
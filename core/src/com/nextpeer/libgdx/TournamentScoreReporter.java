@@ -0,0 +1,212 @@
+//
+//  Nextpeer libGDX plugin
+//  http://www.nextpeer.com
+//
+//  Created by Nextpeer development team.
+//  Copyright (c) 2014 Innobell, Ltd. All rights reserved.
+//
+
+package com.nextpeer.libgdx;
+
+/**
+ * Rate limited score reporter. Only the latest score is kept, unchanged scores are dropped and the
+ * changed ones are sent to the platform SDK at most once per report interval.
+ * <p><strong>Note:</strong> The reporter is not thread safe, it should be used from the game (render) thread only.
+ * {@link #reset()} is the only method which can be called from any thread.</p>
+ */
+public final class TournamentScoreReporter {
+
+	/**
+	 * Default minimal interval between two score reports
+	 */
+	public static final long DEFAULT_REPORT_INTERVAL_MILLIS = 250;
+
+	private final Tournaments _tournaments;
+	private long _reportIntervalNanos;
+
+	private int _latestScore;
+	private int _lastSentScore;
+	private boolean _hasSentScore;
+	private boolean _hasPendingScore;
+	private long _lastSendNanos;
+	private volatile boolean _resetRequested;
+
+	private long _reportsSent;
+	private long _unchangedSuppressed;
+	private long _rateLimitedSuppressed;
+
+	/**
+	 * Constructor for the TournamentScoreReporter class
+	 * @param tournaments The Tournaments instance used to report the scores
+	 * @param reportIntervalInMilliseconds The minimal interval between two score reports, zero to send every changed score
+	 * @throws IllegalArgumentException if {@code tournaments} is null.
+	 * @throws IllegalArgumentException if {@code reportIntervalInMilliseconds} is negative.
+	 */
+	public TournamentScoreReporter(Tournaments tournaments, long reportIntervalInMilliseconds) {
+		if (tournaments == null) {
+			throw new IllegalArgumentException("tournaments cannot be null");
+		}
+
+		_tournaments = tournaments;
+		setReportInterval(reportIntervalInMilliseconds);
+	}
+
+	/**
+	 * Constructor for the TournamentScoreReporter class with the {@link #DEFAULT_REPORT_INTERVAL_MILLIS}
+	 * @param tournaments The Tournaments instance used to report the scores
+	 */
+	public TournamentScoreReporter(Tournaments tournaments) {
+		this(tournaments, DEFAULT_REPORT_INTERVAL_MILLIS);
+	}
+
+	/**
+	 * Set the minimal interval between two score reports
+	 * @param reportIntervalInMilliseconds The report interval in milliseconds, zero to send every changed score
+	 * @throws IllegalArgumentException if {@code reportIntervalInMilliseconds} is negative.
+	 */
+	public void setReportInterval(long reportIntervalInMilliseconds) {
+		if (reportIntervalInMilliseconds < 0) {
+			throw new IllegalArgumentException("reportIntervalInMilliseconds cannot be negative: " + reportIntervalInMilliseconds);
+		}
+
+		_reportIntervalNanos = reportIntervalInMilliseconds * 1000000L;
+	}
+
+	/**
+	 * Report the current score. The score is sent right away if it changed and the report interval has passed,
+	 * otherwise it is kept as the pending score and sent by a later call, {@link #update()} or {@link #flush()}.
+	 * @param score The current game score.
+	 * @throws IllegalArgumentException if {@code score} is negative.
+	 */
+	public void report(int score) {
+		if (score < 0) {
+			throw new IllegalArgumentException("score cannot be negative: " + score);
+		}
+
+		checkReset();
+		_latestScore = score;
+
+		if (_hasSentScore && score == _lastSentScore) {
+			_hasPendingScore = false;
+			_unchangedSuppressed++;
+			return;
+		}
+
+		_hasPendingScore = true;
+		if (!send(System.nanoTime())) {
+			_rateLimitedSuppressed++;
+		}
+	}
+
+	/**
+	 * Send the pending score if the report interval has passed. Call this method once per frame in case the game
+	 * does not report the score every frame.
+	 */
+	public void update() {
+		checkReset();
+		if (!_hasPendingScore) return;
+
+		send(System.nanoTime());
+	}
+
+	/**
+	 * Send the pending score right away, regardless of the report interval.
+	 * Called before the final score is reported or the tournament is forfeited.
+	 */
+	public void flush() {
+		checkReset();
+		if (!_hasPendingScore) return;
+
+		sendNow(System.nanoTime());
+	}
+
+	/**
+	 * Forget the last sent score, for example when a new tournament starts. Can be called from any thread.
+	 */
+	public void reset() {
+		_resetRequested = true;
+	}
+
+	/**
+	 * Gets the latest reported score
+	 * @return The latest score passed to {@link #report(int)}
+	 */
+	public int getLatestScore() {
+		return _latestScore;
+	}
+
+	/**
+	 * Does the latest score is waiting to be sent
+	 * @return true if there is a pending score, false otherwise
+	 */
+	public boolean hasPendingScore() {
+		return _hasPendingScore;
+	}
+
+	/**
+	 * Gets the number of scores sent to the platform SDK
+	 * @return The number of score reports sent
+	 */
+	public long getReportsSent() {
+		return _reportsSent;
+	}
+
+	/**
+	 * Gets the number of {@link #report(int)} calls which were not sent
+	 * @return The number of suppressed calls, unchanged and rate limited together
+	 */
+	public long getSuppressedCount() {
+		return _unchangedSuppressed + _rateLimitedSuppressed;
+	}
+
+	/**
+	 * Gets the number of {@link #report(int)} calls dropped because the score did not change
+	 * @return The number of unchanged scores
+	 */
+	public long getUnchangedSuppressedCount() {
+		return _unchangedSuppressed;
+	}
+
+	/**
+	 * Gets the number of {@link #report(int)} calls held back by the report interval. Only the latest of them is sent later.
+	 * @return The number of rate limited scores
+	 */
+	public long getRateLimitedSuppressedCount() {
+		return _rateLimitedSuppressed;
+	}
+
+	/**
+	 * Reset all the statistics counters
+	 */
+	public void resetStatistics() {
+		_reportsSent = 0;
+		_unchangedSuppressed = 0;
+		_rateLimitedSuppressed = 0;
+	}
+
+	private void checkReset() {
+		if (!_resetRequested) return;
+
+		_resetRequested = false;
+		_hasSentScore = false;
+		_hasPendingScore = false;
+		_lastSendNanos = 0;
+	}
+
+	private boolean send(long now) {
+		if (_hasSentScore && now - _lastSendNanos < _reportIntervalNanos) return false;
+
+		sendNow(now);
+		return true;
+	}
+
+	private void sendNow(long now) {
+		_tournaments.reportScoreForCurrentTournament(_latestScore);
+
+		_lastSentScore = _latestScore;
+		_hasSentScore = true;
+		_hasPendingScore = false;
+		_lastSendNanos = now;
+		_reportsSent++;
+	}
+}
@@ -20,6 +20,28 @@ public abstract class Tournaments {
 	 */
 	protected TournamentsCallback callback;
 
+	/**
+	 * Pool used for the received custom messages, null when the immutable messages are used (default)
+	 */
+	private volatile TournamentCustomMessagePool _messagePool;
+
+	/**
+	 * Listener notified on the tournament start and end transitions, before the callback
+	 */
+	interface StateListener {
+		void onTournamentStateChanged(boolean inTournament, long tournamentRandomSeed);
+	}
+
+	/**
+	 * Set by NextpeerPlugin to keep its cached tournament state
+	 */
+	volatile StateListener stateListener;
+
+	/**
+	 * Players of the current tournament, gives the player handles of the received messages
+	 */
+	private final PlayerRegistry _players = new PlayerRegistry();
+
 	/**
 	 * Default constructor for the Tournaments class
 	 */
@@ -42,11 +64,172 @@ public abstract class Tournaments {
 	public void setTournamentsCallback(TournamentsCallback callback) {
 		this.callback = callback;
 	}
+
+	/**
+	 * Turn on the pooled receive mode. The custom messages are delivered through the
+	 * {@code TournamentsCallback#onReceivePooled...} methods with {@link PooledTournamentCustomMessage} instances from the given pool.
+	 * @param pool The message pool, null to go back to the immutable {@link NextpeerTournamentCustomMessage} (default)
+	 */
+	public void setMessagePool(TournamentCustomMessagePool pool) {
+		_messagePool = pool;
+	}
+
+	/**
+	 * Gets the pool used for the received custom messages
+	 * @return The message pool, null if the pooled receive mode is off
+	 */
+	public TournamentCustomMessagePool getMessagePool() {
+		return _messagePool;
+	}
+
+	/**
+	 * Gets the registry of the players seen in the current tournament, it is cleared when the tournament ends
+	 * @return The player registry
+	 */
+	public PlayerRegistry getPlayerRegistry() {
+		return _players;
+	}
+
+	/**
+	 * Notify the plugin and the callback that the tournament is about to start.
+	 * Should be used by the platform implementations instead of calling the callback directly.
+	 * @param tournamentRandomSeed The tournament random seed, same for all the players
+	 */
+	protected void fireTournamentStart(long tournamentRandomSeed) {
+		final StateListener listener = stateListener;
+		if (listener != null) {
+			listener.onTournamentStateChanged(true, tournamentRandomSeed);
+		}
+
+		final TournamentsCallback cb = callback;
+		if (cb != null) {
+			cb.onTournamentStart(tournamentRandomSeed);
+		}
+	}
+
+	/**
+	 * Notify the plugin and the callback that the current tournament has finished, the player registry is cleared.
+	 * Should be used by the platform implementations instead of calling the callback directly.
+	 */
+	protected void fireTournamentEnd() {
+		_players.clear();
+
+		final StateListener listener = stateListener;
+		if (listener != null) {
+			listener.onTournamentStateChanged(false, 0);
+		}
+
+		final TournamentsCallback cb = callback;
+		if (cb != null) {
+			cb.onTournamentEnd();
+		}
+	}
+
+	/**
+	 * Notify the callback that a synchronized event was triggered because all the players registered to it.
+	 * Should be used by the platform implementations instead of calling the callback directly.
+	 * @param name The name of the synchronized event
+	 */
+	protected void fireReceiveSynchronizedEvent(String name) {
+		fireReceiveSynchronizedEvent(name, false);
+	}
+
+	/**
+	 * Notify the callback that a synchronized event was triggered.
+	 * Should be used by the platform implementations instead of calling the callback directly.
+	 * @param name The name of the synchronized event
+	 * @param timedOut true if the event timed out, false if all the players registered to it
+	 */
+	protected void fireReceiveSynchronizedEvent(String name, boolean timedOut) {
+		final TournamentsCallback cb = callback;
+		if (cb != null) {
+			cb.onReceiveSynchronizedEvent(name, timedOut);
+		}
+	}
+
+	/**
+	 * Deliver a custom message received from the reliable channel to the callback.
+	 * Should be used by the platform implementations, the message is pooled or immutable according to {@link #setMessagePool(TournamentCustomMessagePool)}.
+	 * @param playerId The player identifier
+	 * @param playerName The player name
+	 * @param playerImageUrl The player's profile image URL
+	 * @param customMessage The custom message, copied when the pooled receive mode is on
+	 * @param playerIsBot Does the message came from a bot recording
+	 */
+	protected void fireReceiveTournamentCustomMessage(String playerId, String playerName, String playerImageUrl,
+			byte[] customMessage, boolean playerIsBot) {
+		fireReceiveCustomMessage(playerId, playerName, playerImageUrl, customMessage, playerIsBot, true);
+	}
+
+	/**
+	 * Deliver a custom message received from the unreliable channel to the callback.
+	 * Should be used by the platform implementations, the message is pooled or immutable according to {@link #setMessagePool(TournamentCustomMessagePool)}.
+	 * @param playerId The player identifier
+	 * @param playerName The player name
+	 * @param playerImageUrl The player's profile image URL
+	 * @param customMessage The custom message, copied when the pooled receive mode is on
+	 * @param playerIsBot Does the message came from a bot recording
+	 */
+	protected void fireReceiveUnreliableTournamentCustomMessage(String playerId, String playerName, String playerImageUrl,
+			byte[] customMessage, boolean playerIsBot) {
+		fireReceiveCustomMessage(playerId, playerName, playerImageUrl, customMessage, playerIsBot, false);
+	}
+
+	private void fireReceiveCustomMessage(String playerId, String playerName, String playerImageUrl,
+			byte[] customMessage, boolean playerIsBot, boolean reliable) {
+		final TournamentsCallback cb = callback;
+		if (cb == null) return;
+
+		final int playerHandle = _players.register(playerId, playerName, playerImageUrl, playerIsBot);
+		final TournamentCustomMessagePool pool = _messagePool;
+		if (pool == null) {
+			final NextpeerTournamentCustomMessage message =
+					new NextpeerTournamentCustomMessage(playerId, playerName, playerImageUrl, customMessage, playerIsBot, playerHandle);
+			if (reliable) {
+				cb.onReceiveTournamentCustomMessage(message);
+			}
+			else {
+				cb.onReceiveUnreliableTournamentCustomMessage(message);
+			}
+			return;
+		}
+
+		final PooledTournamentCustomMessage message =
+				pool.obtain(playerId, playerName, playerImageUrl, customMessage, 0, customMessage.length, playerIsBot, playerHandle);
+		try {
+			if (reliable) {
+				cb.onReceivePooledTournamentCustomMessage(message);
+			}
+			else {
+				cb.onReceivePooledUnreliableTournamentCustomMessage(message);
+			}
+		}
+		finally {
+			message.release();
+		}
+	}
     
 	/**
 	 * Call this method to report that the view is visible to the user.
 	 */
 	public void onStart() {}
+
+	/**
+	 * Is the platform SDK initialized. Platform implementations initializing it in the background return false until it is done,
+	 * the tournament calls are then ignored and {@link #launch()} and {@link #onStart()} are queued.
+	 * @return true if the platform SDK can be used (default), false otherwise
+	 */
+	public boolean isReady() {
+		return true;
+	}
+
+	/**
+	 * Gets the initialization of the platform SDK, to read the startup time
+	 * @return The initialization, null if the platform SDK is initialized synchronously or there is none (default)
+	 */
+	public DeferredInitialization getInitialization() {
+		return null;
+	}
     
 	/**
 	 * Does tournaments supported by the current OS (Android, iOS, Desktop)
@@ -110,7 +293,7 @@ public abstract class Tournaments {
     
     /**
      * Register to a synchronized event which will be triggered once all connected players register to such event.
-     * Nextpeer will trigger a call to {@code TournamentsCallback#onReceiveSynchronizedEvent(String)}
+     * Nextpeer will trigger a call to {@code TournamentsCallback#onReceiveSynchronizedEvent(String, boolean)}
      * when the rest of the connected players will register to this synchronized event.
      * For example, you can register for a start game synchronized event.
      * This way, your can be sure that all players will start the game together, without taking into consideration different loading time per device.
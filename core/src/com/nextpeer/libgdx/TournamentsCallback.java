@@ -41,12 +41,42 @@ public abstract class TournamentsCallback {
 	 * @param message The custom message {@link NextpeerTournamentCustomMessage}
 	 */
 	public void onReceiveUnreliableTournamentCustomMessage(NextpeerTournamentCustomMessage message) {}
+
+	/**
+	 * Pooled version of {@link #onReceiveTournamentCustomMessage(NextpeerTournamentCustomMessage)}, called when a
+	 * {@link TournamentCustomMessagePool} is set on the Tournaments instance. The message goes back to the pool once this method returns.
+	 * The default implementation passes an immutable copy to {@link #onReceiveTournamentCustomMessage(NextpeerTournamentCustomMessage)}.
+	 * @param message The pooled custom message {@link PooledTournamentCustomMessage}
+	 */
+	public void onReceivePooledTournamentCustomMessage(PooledTournamentCustomMessage message) {
+		onReceiveTournamentCustomMessage(message.toMessage());
+	}
+
+	/**
+	 * Pooled version of {@link #onReceiveUnreliableTournamentCustomMessage(NextpeerTournamentCustomMessage)}, called when a
+	 * {@link TournamentCustomMessagePool} is set on the Tournaments instance. The message goes back to the pool once this method returns.
+	 * The default implementation passes an immutable copy to {@link #onReceiveUnreliableTournamentCustomMessage(NextpeerTournamentCustomMessage)}.
+	 * @param message The pooled custom message {@link PooledTournamentCustomMessage}
+	 */
+	public void onReceivePooledUnreliableTournamentCustomMessage(PooledTournamentCustomMessage message) {
+		onReceiveUnreliableTournamentCustomMessage(message.toMessage());
+	}
     
 	/**
 	 * This method is invoked when a synchronized event has triggered by the platform.
 	 * @param name The name of the synchronized event as it was registered in {@code Tournaments#registerToSynchronizedEvent(String, int)}.
 	 */
 	public void onReceiveSynchronizedEvent(String name) {}
+
+	/**
+	 * This method is invoked when a synchronized event has triggered by the platform, with the reason it was fired.
+	 * The default implementation calls {@link #onReceiveSynchronizedEvent(String)}.
+	 * @param name The name of the synchronized event as it was registered in {@code Tournaments#registerToSynchronizedEvent(String, int)}.
+	 * @param timedOut true if the event timed out before all the players registered to it, false if they all did.
+	 */
+	public void onReceiveSynchronizedEvent(String name, boolean timedOut) {
+		onReceiveSynchronizedEvent(name);
+	}
     
     /**
      * Guide the SDK whether the game supports the given tournament. This method s called once for each tournament UUID that is present in the dashboard.
@@ -0,0 +1,346 @@
+//
+//  Nextpeer libGDX plugin
+//  http://www.nextpeer.com
+//
+//  Created by Nextpeer development team.
+//  Copyright (c) 2014 Innobell, Ltd. All rights reserved.
+//
+
+package com.nextpeer.libgdx;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Moves the Nextpeer events from the SDK thread to the game (render) thread.
+ * The events are stored in a bounded single-producer/single-consumer ring buffer, without locks,
+ * and are delivered to the wrapped callback when {@link #drain()} is called from {@code render()}.
+ * <p>The SDK thread is never blocked: when the buffer is full the incoming custom messages are dropped and counted.
+ * A few slots are kept for the tournament start/end and synchronized events so a flood of messages can't push them out.</p>
+ * <p><strong>Note:</strong> The events must be produced by a single thread (the SDK thread) and drained by a single thread (the render thread).
+ * {@code onSupportsTournament} is answered by the wrapped callback directly, on the calling thread.</p>
+ * Usage: {@code tournaments.setTournamentsCallback(dispatcher = new TournamentsCallbackDispatcher(gameCallback));} and
+ * {@code dispatcher.drain();} at the beginning of {@code render()}.
+ */
+public class TournamentsCallbackDispatcher extends TournamentsCallbackWrapper {
+
+	/**
+	 * Default capacity of the ring buffer
+	 */
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	/**
+	 * Default number of custom messages delivered per {@link #drain()} call
+	 */
+	public static final int DEFAULT_MESSAGE_BUDGET_PER_FRAME = 256;
+
+	private static final int EVENT_TOURNAMENT_START = 1;
+	private static final int EVENT_TOURNAMENT_END = 2;
+	private static final int EVENT_CUSTOM_MESSAGE = 3;
+	private static final int EVENT_UNRELIABLE_CUSTOM_MESSAGE = 4;
+	private static final int EVENT_SYNCHRONIZED_EVENT = 5;
+	private static final int EVENT_POOLED_CUSTOM_MESSAGE = 6;
+	private static final int EVENT_POOLED_UNRELIABLE_CUSTOM_MESSAGE = 7;
+	private static final int EVENT_SYNCHRONIZED_EVENT_TIMEOUT = 8;
+
+	/**
+	 * Pre-allocated ring buffer slot
+	 */
+	private static final class Event {
+		int type;
+		long tournamentRandomSeed;
+		NextpeerTournamentCustomMessage message;
+		PooledTournamentCustomMessage pooledMessage;
+		String name;
+	}
+
+	private final Event[] _events;
+	private final int _mask;
+	private final int _controlReserve;
+
+	// Index of the next slot to read, written by the consumer only
+	private final AtomicLong _head = new AtomicLong();
+	// Index of the next slot to write, written by the producer only
+	private final AtomicLong _tail = new AtomicLong();
+	// Producer side copy of _head, refreshed only when the buffer looks full
+	private long _cachedHead;
+
+	private volatile int _messageBudgetPerFrame = DEFAULT_MESSAGE_BUDGET_PER_FRAME;
+
+	private volatile long _droppedMessages;
+	private volatile long _droppedControlEvents;
+	private volatile int _highWaterMark;
+	private volatile long _deliveredEvents;
+
+	/**
+	 * Constructor for the TournamentsCallbackDispatcher class
+	 * @param callback The game callback, all the events are delivered to it from {@link #drain()}
+	 * @param capacity The number of events the ring buffer can hold, rounded up to a power of two
+	 * @throws IllegalArgumentException if {@code capacity} is smaller than 2.
+	 */
+	public TournamentsCallbackDispatcher(TournamentsCallback callback, int capacity) {
+		super(callback);
+
+		if (capacity < 2) {
+			throw new IllegalArgumentException("capacity is too small: " + capacity);
+		}
+		if (capacity > (1 << 30)) {
+			throw new IllegalArgumentException("capacity is too large: " + capacity);
+		}
+
+		final int size = Integer.highestOneBit(capacity - 1) << 1;
+		_events = new Event[size];
+		for (int i = 0; i < size; i++) {
+			_events[i] = new Event();
+		}
+		_mask = size - 1;
+		_controlReserve = Math.max(1, Math.min(16, size / 8));
+	}
+
+	/**
+	 * Constructor for the TournamentsCallbackDispatcher class with the {@link #DEFAULT_CAPACITY}
+	 * @param callback The game callback, all the events are delivered to it from {@link #drain()}
+	 */
+	public TournamentsCallbackDispatcher(TournamentsCallback callback) {
+		this(callback, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Set the number of custom messages delivered per {@link #drain()} call. The rest stays queued for the next frame.
+	 * Tournament start/end and synchronized events are not counted against the budget.
+	 * @param budget The number of custom messages per frame.
+	 * @throws IllegalArgumentException if {@code budget} is zero or negative.
+	 */
+	public void setMessageBudgetPerFrame(int budget) {
+		if (budget <= 0) {
+			throw new IllegalArgumentException("budget must be positive: " + budget);
+		}
+
+		_messageBudgetPerFrame = budget;
+	}
+
+	/**
+	 * Gets the number of custom messages delivered per {@link #drain()} call
+	 * @return The message budget per frame
+	 */
+	public int getMessageBudgetPerFrame() {
+		return _messageBudgetPerFrame;
+	}
+
+	/**
+	 * Deliver the queued events to the wrapped callback, up to the message budget. Should be called from the render thread.
+	 * @return The number of events delivered
+	 */
+	public int drain() {
+		return drain(_messageBudgetPerFrame);
+	}
+
+	/**
+	 * Deliver the queued events to the wrapped callback. Should be called from the render thread.
+	 * @param messageBudget The maximal number of custom messages to deliver
+	 * @return The number of events delivered
+	 */
+	public int drain(int messageBudget) {
+		long head = _head.get();
+		final long tail = _tail.get();
+		int delivered = 0;
+		int messages = 0;
+
+		while (head < tail) {
+			final Event event = _events[(int)head & _mask];
+			final int type = event.type;
+			final boolean isMessage = isMessage(type);
+			if (isMessage && messages >= messageBudget) break;
+
+			final long seed = event.tournamentRandomSeed;
+			final NextpeerTournamentCustomMessage message = event.message;
+			final PooledTournamentCustomMessage pooledMessage = event.pooledMessage;
+			final String name = event.name;
+			event.message = null;
+			event.pooledMessage = null;
+			event.name = null;
+
+			// Release the slot before the delivery, so the producer can reuse it while the game handles the event
+			_head.lazySet(++head);
+
+			switch (type) {
+			case EVENT_TOURNAMENT_START:
+				super.onTournamentStart(seed);
+				break;
+			case EVENT_TOURNAMENT_END:
+				super.onTournamentEnd();
+				break;
+			case EVENT_CUSTOM_MESSAGE:
+				super.onReceiveTournamentCustomMessage(message);
+				break;
+			case EVENT_UNRELIABLE_CUSTOM_MESSAGE:
+				super.onReceiveUnreliableTournamentCustomMessage(message);
+				break;
+			case EVENT_SYNCHRONIZED_EVENT:
+				super.onReceiveSynchronizedEvent(name, false);
+				break;
+			case EVENT_SYNCHRONIZED_EVENT_TIMEOUT:
+				super.onReceiveSynchronizedEvent(name, true);
+				break;
+			case EVENT_POOLED_CUSTOM_MESSAGE:
+				try {
+					super.onReceivePooledTournamentCustomMessage(pooledMessage);
+				}
+				finally {
+					pooledMessage.release();
+				}
+				break;
+			case EVENT_POOLED_UNRELIABLE_CUSTOM_MESSAGE:
+				try {
+					super.onReceivePooledUnreliableTournamentCustomMessage(pooledMessage);
+				}
+				finally {
+					pooledMessage.release();
+				}
+				break;
+			}
+
+			if (isMessage) messages++;
+			delivered++;
+		}
+
+		_deliveredEvents += delivered;
+		return delivered;
+	}
+
+	@Override
+	public void onTournamentStart(long tournamentRandomSeed) {
+		offer(EVENT_TOURNAMENT_START, tournamentRandomSeed, null, null, null);
+	}
+
+	@Override
+	public void onTournamentEnd() {
+		offer(EVENT_TOURNAMENT_END, 0, null, null, null);
+	}
+
+	@Override
+	public void onReceiveTournamentCustomMessage(NextpeerTournamentCustomMessage message) {
+		offer(EVENT_CUSTOM_MESSAGE, 0, message, null, null);
+	}
+
+	@Override
+	public void onReceiveUnreliableTournamentCustomMessage(NextpeerTournamentCustomMessage message) {
+		offer(EVENT_UNRELIABLE_CUSTOM_MESSAGE, 0, message, null, null);
+	}
+
+	/**
+	 * Queue a pooled message, it is retained until it gets delivered from {@link #drain()}
+	 */
+	@Override
+	public void onReceivePooledTournamentCustomMessage(PooledTournamentCustomMessage message) {
+		offer(EVENT_POOLED_CUSTOM_MESSAGE, 0, null, message, null);
+	}
+
+	/**
+	 * Queue a pooled message, it is retained until it gets delivered from {@link #drain()}
+	 */
+	@Override
+	public void onReceivePooledUnreliableTournamentCustomMessage(PooledTournamentCustomMessage message) {
+		offer(EVENT_POOLED_UNRELIABLE_CUSTOM_MESSAGE, 0, null, message, null);
+	}
+
+	@Override
+	public void onReceiveSynchronizedEvent(String name) {
+		offer(EVENT_SYNCHRONIZED_EVENT, 0, null, null, name);
+	}
+
+	@Override
+	public void onReceiveSynchronizedEvent(String name, boolean timedOut) {
+		offer(timedOut ? EVENT_SYNCHRONIZED_EVENT_TIMEOUT : EVENT_SYNCHRONIZED_EVENT, 0, null, null, name);
+	}
+
+	/**
+	 * Gets the number of events waiting to be drained
+	 * @return The number of queued events
+	 */
+	public int getPendingCount() {
+		return (int)(_tail.get() - _head.get());
+	}
+
+	/**
+	 * Gets the capacity of the ring buffer
+	 * @return The number of events the buffer can hold
+	 */
+	public int getCapacity() {
+		return _events.length;
+	}
+
+	/**
+	 * Gets the number of custom messages dropped because the buffer was full
+	 * @return The number of dropped messages
+	 */
+	public long getDroppedMessages() {
+		return _droppedMessages;
+	}
+
+	/**
+	 * Gets the number of tournament start/end and synchronized events dropped because even the reserved slots were full.
+	 * Any value other than 0 means the buffer is too small or {@link #drain()} is not called.
+	 * @return The number of dropped control events
+	 */
+	public long getDroppedControlEvents() {
+		return _droppedControlEvents;
+	}
+
+	/**
+	 * Gets the largest number of events queued at once, as seen by the producer (may be slightly above the real value)
+	 * @return The queue high water mark
+	 */
+	public int getHighWaterMark() {
+		return _highWaterMark;
+	}
+
+	/**
+	 * Gets the number of events delivered to the wrapped callback
+	 * @return The number of delivered events
+	 */
+	public long getDeliveredEvents() {
+		return _deliveredEvents;
+	}
+
+	private static boolean isMessage(int type) {
+		return (type == EVENT_CUSTOM_MESSAGE || type == EVENT_UNRELIABLE_CUSTOM_MESSAGE
+				|| type == EVENT_POOLED_CUSTOM_MESSAGE || type == EVENT_POOLED_UNRELIABLE_CUSTOM_MESSAGE);
+	}
+
+	private void offer(int type, long tournamentRandomSeed, NextpeerTournamentCustomMessage message,
+			PooledTournamentCustomMessage pooledMessage, String name) {
+		final long tail = _tail.get();
+		final boolean isMessage = isMessage(type);
+		final int limit = isMessage ? _events.length - _controlReserve : _events.length;
+
+		if (tail - _cachedHead >= limit) {
+			_cachedHead = _head.get();
+
+			if (tail - _cachedHead >= limit) {
+				if (isMessage) {
+					_droppedMessages++;
+				}
+				else {
+					_droppedControlEvents++;
+				}
+				return;
+			}
+		}
+
+		final Event event = _events[(int)tail & _mask];
+		event.type = type;
+		event.tournamentRandomSeed = tournamentRandomSeed;
+		event.message = message;
+		event.pooledMessage = pooledMessage;
+		event.name = name;
+		if (pooledMessage != null) {
+			pooledMessage.retain();
+		}
+		_tail.lazySet(tail + 1);
+
+		final int depth = (int)(tail + 1 - _cachedHead);
+		if (depth > _highWaterMark) {
+			_highWaterMark = depth;
+		}
+	}
+}
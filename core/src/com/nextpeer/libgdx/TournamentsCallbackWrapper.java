@@ -0,0 +1,105 @@
+//
+//  Nextpeer libGDX plugin
+//  http://www.nextpeer.com
+//
+//  Created by Nextpeer development team.
+//  Copyright (c) 2014 Innobell, Ltd. All rights reserved.
+//
+
+package com.nextpeer.libgdx;
+
+/**
+ * TournamentsCallback that forwards every event to another TournamentsCallback.
+ * Used as the base class for layers that sit between the Tournaments instance and the game's callback
+ * and only need to intercept some of the events.
+ */
+public class TournamentsCallbackWrapper extends TournamentsCallback {
+
+	/**
+	 * The wrapped callback, all the events are forwarded to it
+	 * @note Can be null in case we don't have callback
+	 */
+	protected final TournamentsCallback callback;
+
+	/**
+	 * Constructor for the TournamentsCallbackWrapper class
+	 * @param callback The callback which will receive the forwarded events
+	 */
+	public TournamentsCallbackWrapper(TournamentsCallback callback) {
+		this.callback = callback;
+	}
+
+	/**
+	 * Gets the wrapped callback
+	 * @return The wrapped callback, null if there is no callback
+	 */
+	public TournamentsCallback getWrappedCallback() {
+		return callback;
+	}
+
+	@Override
+	public void onTournamentStart(long tournamentRandomSeed) {
+		if (callback != null) {
+			callback.onTournamentStart(tournamentRandomSeed);
+		}
+	}
+
+	@Override
+	public void onTournamentEnd() {
+		if (callback != null) {
+			callback.onTournamentEnd();
+		}
+	}
+
+	@Override
+	public void onReceiveTournamentCustomMessage(NextpeerTournamentCustomMessage message) {
+		if (callback != null) {
+			callback.onReceiveTournamentCustomMessage(message);
+		}
+	}
+
+	@Override
+	public void onReceiveUnreliableTournamentCustomMessage(NextpeerTournamentCustomMessage message) {
+		if (callback != null) {
+			callback.onReceiveUnreliableTournamentCustomMessage(message);
+		}
+	}
+
+	@Override
+	public void onReceivePooledTournamentCustomMessage(PooledTournamentCustomMessage message) {
+		if (callback != null) {
+			callback.onReceivePooledTournamentCustomMessage(message);
+		}
+	}
+
+	@Override
+	public void onReceivePooledUnreliableTournamentCustomMessage(PooledTournamentCustomMessage message) {
+		if (callback != null) {
+			callback.onReceivePooledUnreliableTournamentCustomMessage(message);
+		}
+	}
+
+	@Override
+	public void onReceiveSynchronizedEvent(String name) {
+		if (callback != null) {
+			callback.onReceiveSynchronizedEvent(name);
+		}
+	}
+
+	/**
+	 * Forwards the event with its reason, a layer handling the synchronized events should override this method
+	 */
+	@Override
+	public void onReceiveSynchronizedEvent(String name, boolean timedOut) {
+		if (callback != null) {
+			callback.onReceiveSynchronizedEvent(name, timedOut);
+		}
+	}
+
+	@Override
+	public boolean onSupportsTournament(String tournamentUuid) {
+		if (callback == null) return true;
+
+		return callback.onSupportsTournament(tournamentUuid);
+	}
+}
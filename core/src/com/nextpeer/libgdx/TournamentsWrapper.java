@@ -0,0 +1,242 @@
+//
+//  Nextpeer libGDX plugin
+//  http://www.nextpeer.com
+//
+//  Created by Nextpeer development team.
+//  Copyright (c) 2014 Innobell, Ltd. All rights reserved.
+//
+
+package com.nextpeer.libgdx;
+
+/**
+ * Tournaments that forwards every call to another Tournaments instance, and the events of that instance to its own callback.
+ * Used as the base class for layers that sit between the game and the platform Tournaments (metrics, fragmentation, compression...)
+ * and only need to intercept some of the calls or events. Layers can be stacked, the outermost one is given to {@link NextpeerPlugin#load(Tournaments)}.
+ * <p>The wrapper owns the callback of the wrapped instance, the game callback is set on the wrapper.
+ * The events of the wrapped instance go through the {@code onWrapped...} methods, which subclasses override to intercept them.</p>
+ */
+public class TournamentsWrapper extends Tournaments {
+
+	/**
+	 * The wrapped Tournaments instance, all the calls are forwarded to it
+	 */
+	protected final Tournaments tournaments;
+
+	/**
+	 * Callback set on the wrapped instance, hands its events to the onWrapped methods
+	 */
+	private final class Relay extends TournamentsCallback {
+		@Override
+		public void onTournamentStart(long tournamentRandomSeed) {
+			onWrappedTournamentStart(tournamentRandomSeed);
+		}
+
+		@Override
+		public void onTournamentEnd() {
+			onWrappedTournamentEnd();
+		}
+
+		@Override
+		public void onReceiveTournamentCustomMessage(NextpeerTournamentCustomMessage message) {
+			onWrappedReceiveTournamentCustomMessage(message);
+		}
+
+		@Override
+		public void onReceiveUnreliableTournamentCustomMessage(NextpeerTournamentCustomMessage message) {
+			onWrappedReceiveUnreliableTournamentCustomMessage(message);
+		}
+
+		@Override
+		public void onReceivePooledTournamentCustomMessage(PooledTournamentCustomMessage message) {
+			onWrappedReceivePooledTournamentCustomMessage(message);
+		}
+
+		@Override
+		public void onReceivePooledUnreliableTournamentCustomMessage(PooledTournamentCustomMessage message) {
+			onWrappedReceivePooledUnreliableTournamentCustomMessage(message);
+		}
+
+		@Override
+		public void onReceiveSynchronizedEvent(String name) {
+			onWrappedReceiveSynchronizedEvent(name, false);
+		}
+
+		@Override
+		public void onReceiveSynchronizedEvent(String name, boolean timedOut) {
+			onWrappedReceiveSynchronizedEvent(name, timedOut);
+		}
+
+		@Override
+		public boolean onSupportsTournament(String tournamentUuid) {
+			final TournamentsCallback cb = callback;
+			return (cb == null) || cb.onSupportsTournament(tournamentUuid);
+		}
+	}
+
+	/**
+	 * Constructor for the TournamentsWrapper class
+	 * @param tournaments The Tournaments instance to wrap, its callback is replaced by the wrapper
+	 * @throws IllegalArgumentException if {@code tournaments} is null.
+	 */
+	public TournamentsWrapper(Tournaments tournaments) {
+		if (tournaments == null) {
+			throw new IllegalArgumentException("tournaments cannot be null");
+		}
+
+		this.tournaments = tournaments;
+		tournaments.setTournamentsCallback(new Relay());
+	}
+
+	/**
+	 * Gets the wrapped Tournaments instance
+	 * @return The wrapped Tournaments instance
+	 */
+	public Tournaments getWrappedTournaments() {
+		return tournaments;
+	}
+
+	/**
+	 * Turn on the pooled receive mode, on the wrapped instance as well since it creates the messages
+	 */
+	@Override
+	public void setMessagePool(TournamentCustomMessagePool pool) {
+		super.setMessagePool(pool);
+		tournaments.setMessagePool(pool);
+	}
+
+	/**
+	 * Gets the registry of the wrapped instance, which registers the players of the received messages
+	 */
+	@Override
+	public PlayerRegistry getPlayerRegistry() {
+		return tournaments.getPlayerRegistry();
+	}
+
+	@Override
+	public void onStart() {
+		tournaments.onStart();
+	}
+
+	@Override
+	public boolean isSupported() {
+		return tournaments.isSupported();
+	}
+
+	@Override
+	public boolean isReady() {
+		return tournaments.isReady();
+	}
+
+	@Override
+	public DeferredInitialization getInitialization() {
+		return tournaments.getInitialization();
+	}
+
+	@Override
+	public void launch() {
+		tournaments.launch();
+	}
+
+	@Override
+	public void reportScoreForCurrentTournament(int score) {
+		tournaments.reportScoreForCurrentTournament(score);
+	}
+
+	@Override
+	public void reportControlledTournamentOverWithScore(int score) {
+		tournaments.reportControlledTournamentOverWithScore(score);
+	}
+
+	@Override
+	public void reportForfeitForCurrentTournament() {
+		tournaments.reportForfeitForCurrentTournament();
+	}
+
+	@Override
+	public boolean isCurrentlyInTournament() {
+		return tournaments.isCurrentlyInTournament();
+	}
+
+	@Override
+	public void unreliablePushDataToOtherPlayers(byte[] data) {
+		tournaments.unreliablePushDataToOtherPlayers(data);
+	}
+
+	@Override
+	public void pushDataToOtherPlayers(byte[] data) {
+		tournaments.pushDataToOtherPlayers(data);
+	}
+
+	@Override
+	public void registerToSynchronizedEvent(String eventName, int timeoutInMilliseconds) {
+		tournaments.registerToSynchronizedEvent(eventName, timeoutInMilliseconds);
+	}
+
+	/**
+	 * Called when the wrapped instance starts a tournament, notifies the plugin and the callback
+	 * @param tournamentRandomSeed The tournament random seed
+	 */
+	protected void onWrappedTournamentStart(long tournamentRandomSeed) {
+		fireTournamentStart(tournamentRandomSeed);
+	}
+
+	/**
+	 * Called when the wrapped instance ends the tournament, notifies the plugin and the callback
+	 */
+	protected void onWrappedTournamentEnd() {
+		fireTournamentEnd();
+	}
+
+	/**
+	 * Called when the wrapped instance receives a reliable message, forwards it to the callback
+	 * @param message The received message
+	 */
+	protected void onWrappedReceiveTournamentCustomMessage(NextpeerTournamentCustomMessage message) {
+		final TournamentsCallback cb = callback;
+		if (cb != null) {
+			cb.onReceiveTournamentCustomMessage(message);
+		}
+	}
+
+	/**
+	 * Called when the wrapped instance receives an unreliable message, forwards it to the callback
+	 * @param message The received message
+	 */
+	protected void onWrappedReceiveUnreliableTournamentCustomMessage(NextpeerTournamentCustomMessage message) {
+		final TournamentsCallback cb = callback;
+		if (cb != null) {
+			cb.onReceiveUnreliableTournamentCustomMessage(message);
+		}
+	}
+
+	/**
+	 * Called when the wrapped instance receives a reliable message in pooled mode, forwards it to the callback
+	 * @param message The received message, released by the wrapped instance once the method returns
+	 */
+	protected void onWrappedReceivePooledTournamentCustomMessage(PooledTournamentCustomMessage message) {
+		final TournamentsCallback cb = callback;
+		if (cb != null) {
+			cb.onReceivePooledTournamentCustomMessage(message);
+		}
+	}
+
+	/**
+	 * Called when the wrapped instance receives an unreliable message in pooled mode, forwards it to the callback
+	 * @param message The received message, released by the wrapped instance once the method returns
+	 */
+	protected void onWrappedReceivePooledUnreliableTournamentCustomMessage(PooledTournamentCustomMessage message) {
+		final TournamentsCallback cb = callback;
+		if (cb != null) {
+			cb.onReceivePooledUnreliableTournamentCustomMessage(message);
+		}
+	}
+
+	/**
+	 * Called when a synchronized event is triggered on the wrapped instance, forwards it to the callback
+	 * @param name The name of the synchronized event
+	 * @param timedOut true if the event timed out, false if all the players registered to it
+	 */
+	protected void onWrappedReceiveSynchronizedEvent(String name, boolean timedOut) {
+		fireReceiveSynchronizedEvent(name, timedOut);
+	}
+}
@@ -0,0 +1,181 @@
+//
+//  Nextpeer libGDX plugin
+//  http://www.nextpeer.com
+//
+//  Created by Nextpeer development team.
+//  Copyright (c) 2014 Innobell, Ltd. All rights reserved.
+//
+
+package com.nextpeer.libgdx;
+
+import java.util.Arrays;
+
+/**
+ * Splits the packets sent by {@link UnreliableMessageBatcher} back into the original messages.
+ * Each message is delivered to the wrapped callback by its own {@code onReceiveUnreliableTournamentCustomMessage} call.
+ * Packets escaped by {@link UnreliableMessageBatcher#escape(byte[])} are forwarded without their {@link UnreliableMessageBatcher#RAW_HEADER},
+ * the other packets which are not batched (or are malformed) are forwarded as is.
+ */
+public class UnreliableMessageBatchReceiver extends TournamentsCallbackWrapper {
+
+	private volatile long _packetsReceived;
+	private volatile long _messagesReceived;
+	private volatile long _malformedPackets;
+
+	/**
+	 * Constructor for the UnreliableMessageBatchReceiver class
+	 * @param callback The callback which will receive the split messages
+	 */
+	public UnreliableMessageBatchReceiver(TournamentsCallback callback) {
+		super(callback);
+	}
+
+	@Override
+	public void onReceiveUnreliableTournamentCustomMessage(NextpeerTournamentCustomMessage message) {
+		final byte[] packet = message.customMessage;
+		if (packet != null && packet.length > 0 && packet[0] == UnreliableMessageBatcher.RAW_HEADER) {
+			super.onReceiveUnreliableTournamentCustomMessage(new NextpeerTournamentCustomMessage(message.playerId, message.playerName,
+					message.playerImageUrl, Arrays.copyOfRange(packet, 1, packet.length), message.playerIsBot, message.playerHandle));
+			return;
+		}
+
+		final int messageCount = (packet == null) ? 0 : countMessages(packet, 0, packet.length);
+
+		if (messageCount <= 0) {
+			if (packet != null && packet.length > 0 && packet[0] == UnreliableMessageBatcher.BATCH_HEADER) {
+				_malformedPackets++;
+			}
+			super.onReceiveUnreliableTournamentCustomMessage(message);
+			return;
+		}
+
+		_packetsReceived++;
+		_messagesReceived += messageCount;
+
+		int position = 1;
+		while (position < packet.length) {
+			final int length = readLength(packet, position);
+			position += UnreliableMessageBatcher.LENGTH_PREFIX_SIZE;
+
+			final byte[] data = Arrays.copyOfRange(packet, position, position + length);
+			position += length;
+
+			super.onReceiveUnreliableTournamentCustomMessage(new NextpeerTournamentCustomMessage(message.playerId,
+					message.playerName, message.playerImageUrl, data, message.playerIsBot, message.playerHandle));
+		}
+	}
+
+	/**
+	 * Split the packet into views over the pooled message, without copying the messages
+	 */
+	@Override
+	public void onReceivePooledUnreliableTournamentCustomMessage(PooledTournamentCustomMessage message) {
+		final byte[] data = message.getData();
+		final int offset = message.getOffset();
+		if (message.getLength() > 0 && data[offset] == UnreliableMessageBatcher.RAW_HEADER) {
+			final PooledTournamentCustomMessage view = message.getPool().obtainView(message, 1, message.getLength() - 1);
+			try {
+				super.onReceivePooledUnreliableTournamentCustomMessage(view);
+			}
+			finally {
+				view.release();
+			}
+			return;
+		}
+
+		final int messageCount = countMessages(data, offset, message.getLength());
+
+		if (messageCount <= 0) {
+			if (message.getLength() > 0 && data[offset] == UnreliableMessageBatcher.BATCH_HEADER) {
+				_malformedPackets++;
+			}
+			super.onReceivePooledUnreliableTournamentCustomMessage(message);
+			return;
+		}
+
+		_packetsReceived++;
+		_messagesReceived += messageCount;
+
+		final TournamentCustomMessagePool pool = message.getPool();
+		int position = 1;
+		while (position < message.getLength()) {
+			final int length = readLength(data, offset + position);
+			position += UnreliableMessageBatcher.LENGTH_PREFIX_SIZE;
+
+			final PooledTournamentCustomMessage view = pool.obtainView(message, position, length);
+			position += length;
+
+			try {
+				super.onReceivePooledUnreliableTournamentCustomMessage(view);
+			}
+			finally {
+				view.release();
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of batched packets received since the last statistics reset
+	 * @return The number of batched packets received
+	 */
+	public long getPacketsReceived() {
+		return _packetsReceived;
+	}
+
+	/**
+	 * Gets the number of messages extracted from batched packets since the last statistics reset
+	 * @return The number of messages received
+	 */
+	public long getMessagesReceived() {
+		return _messagesReceived;
+	}
+
+	/**
+	 * Gets the number of packets which started with the batch header but could not be split, those were forwarded as is
+	 * @return The number of malformed packets
+	 */
+	public long getMalformedPackets() {
+		return _malformedPackets;
+	}
+
+	/**
+	 * Reset all the statistics counters
+	 */
+	public void resetStatistics() {
+		_packetsReceived = 0;
+		_messagesReceived = 0;
+		_malformedPackets = 0;
+	}
+
+	/**
+	 * Validate the packet layout before any message gets delivered
+	 * @param packet The array holding the received packet
+	 * @param offset The offset of the packet in the array
+	 * @param size The size of the packet
+	 * @return The number of messages in the packet, 0 if the packet is not a valid batch
+	 */
+	static int countMessages(byte[] packet, int offset, int size) {
+		if (size < 1 + UnreliableMessageBatcher.LENGTH_PREFIX_SIZE + 1) return 0;
+		if (packet[offset] != UnreliableMessageBatcher.BATCH_HEADER) return 0;
+
+		final int end = offset + size;
+		int count = 0;
+		int position = offset + 1;
+		while (position < end) {
+			if (position + UnreliableMessageBatcher.LENGTH_PREFIX_SIZE > end) return 0;
+
+			final int length = readLength(packet, position);
+			position += UnreliableMessageBatcher.LENGTH_PREFIX_SIZE;
+			if (length == 0 || position + length > end) return 0;
+
+			position += length;
+			count++;
+		}
+
+		return count;
+	}
+
+	static int readLength(byte[] packet, int position) {
+		return ((packet[position] & 0xFF) << 8) | (packet[position + 1] & 0xFF);
+	}
+}
@@ -0,0 +1,348 @@
+//
+//  Nextpeer libGDX plugin
+//  http://www.nextpeer.com
+//
+//  Created by Nextpeer development team.
+//  Copyright (c) 2014 Innobell, Ltd. All rights reserved.
+//
+
+package com.nextpeer.libgdx;
+
+import java.util.Arrays;
+
+/**
+ * Collects the unreliable messages pushed during a frame and sends them to the other players as a single packet.
+ * <p>Packet layout: one {@link #BATCH_HEADER} byte followed by the messages, each one prefixed with its length
+ * as an unsigned 16 bit big endian value. The other players should wrap their callback with
+ * {@link UnreliableMessageBatchReceiver} to get the messages back one by one. When some messages bypass the batcher, those starting
+ * with one of the two header bytes should be sent through {@link #escape(byte[])} so the receiver does not split them
+ * (see {@link NextpeerPlugin#setUnreliableEscaping(boolean)}).</p>
+ * <p>A {@link SendGate} can stop the packets from being sent, for example once the tournament is over: the packets flushed while
+ * the gate is closed are dropped and counted by {@link #getMessagesDropped()}.</p>
+ * <p><strong>Note:</strong> The batcher is not thread safe, it should be used from the game (render) thread only.</p>
+ */
+public final class UnreliableMessageBatcher {
+
+	/**
+	 * First byte of every batched packet
+	 */
+	public static final byte BATCH_HEADER = (byte)0xB7;
+
+	/**
+	 * First byte of an unbatched message which would otherwise start with a header byte, see {@link #escape(byte[])}
+	 */
+	public static final byte RAW_HEADER = (byte)0xB6;
+
+	/**
+	 * Size of the length prefix in front of every message
+	 */
+	public static final int LENGTH_PREFIX_SIZE = 2;
+
+	/**
+	 * The maximal size of a single message in a batch
+	 */
+	public static final int MAX_MESSAGE_SIZE = 0xFFFF;
+
+	/**
+	 * Default packet size limit, a packet is flushed before it grows beyond that size
+	 */
+	public static final int DEFAULT_MAX_PACKET_SIZE = 1024;
+
+	/**
+	 * Packets that hold more messages than this value are counted in the last bucket of {@link #packetsWithMessageCount(int)}
+	 */
+	public static final int MESSAGE_COUNT_BUCKETS = 32;
+
+	/**
+	 * Decides if the packets can be sent
+	 */
+	public interface SendGate {
+		/**
+		 * Can a packet be sent now
+		 * @return true to send the packet, false to drop it
+		 */
+		boolean canSend();
+	}
+
+	private final Tournaments _tournaments;
+	private final SendGate _gate;
+	private final byte[] _buffer;
+	private int _position;
+	private int _messageCount;
+
+	private long _packetsSent;
+	private long _messagesSent;
+	private long _bytesSent;
+	private long _messagesDropped;
+	private int _lastPacketMessageCount;
+	private int _maxPacketMessageCount;
+	private final long[] _messageCountHistogram = new long[MESSAGE_COUNT_BUCKETS + 1];
+
+	/**
+	 * Constructor for the UnreliableMessageBatcher class
+	 * @param tournaments The Tournaments instance used to send the packets
+	 * @param maxPacketSize The packet size limit in bytes, the pending messages are flushed before it is exceeded
+	 * @param gate Checked before every packet is sent, null to always send
+	 * @throws IllegalArgumentException if {@code tournaments} is null.
+	 * @throws IllegalArgumentException if {@code maxPacketSize} can't hold a single byte message.
+	 */
+	public UnreliableMessageBatcher(Tournaments tournaments, int maxPacketSize, SendGate gate) {
+		if (tournaments == null) {
+			throw new IllegalArgumentException("tournaments cannot be null");
+		}
+		if (maxPacketSize < 1 + LENGTH_PREFIX_SIZE + 1) {
+			throw new IllegalArgumentException("maxPacketSize is too small: " + maxPacketSize);
+		}
+
+		_tournaments = tournaments;
+		_gate = gate;
+		_buffer = new byte[maxPacketSize];
+		clear();
+	}
+
+	/**
+	 * Constructor for the UnreliableMessageBatcher class, always sending the packets
+	 * @param tournaments The Tournaments instance used to send the packets
+	 * @param maxPacketSize The packet size limit in bytes, the pending messages are flushed before it is exceeded
+	 */
+	public UnreliableMessageBatcher(Tournaments tournaments, int maxPacketSize) {
+		this(tournaments, maxPacketSize, null);
+	}
+
+	/**
+	 * Constructor for the UnreliableMessageBatcher class with the {@link #DEFAULT_MAX_PACKET_SIZE}
+	 * @param tournaments The Tournaments instance used to send the packets
+	 */
+	public UnreliableMessageBatcher(Tournaments tournaments) {
+		this(tournaments, DEFAULT_MAX_PACKET_SIZE, null);
+	}
+
+	/**
+	 * Prefix an unbatched message with {@link #RAW_HEADER} if it starts with one of the header bytes,
+	 * so {@link UnreliableMessageBatchReceiver} delivers it unchanged instead of splitting it
+	 * @param data The message
+	 * @return {@code data} if it can be sent as is, an escaped copy otherwise
+	 */
+	public static byte[] escape(byte[] data) {
+		if (data == null || data.length == 0 || (data[0] != BATCH_HEADER && data[0] != RAW_HEADER)) return data;
+
+		final byte[] escaped = new byte[data.length + 1];
+		escaped[0] = RAW_HEADER;
+		System.arraycopy(data, 0, escaped, 1, data.length);
+		return escaped;
+	}
+
+	/**
+	 * Append a message to the current packet. The pending packet is flushed first in case the message does not fit into it.
+	 * @param data The message to append.
+	 * @throws IllegalArgumentException if {@code data} is empty.
+	 */
+	public void append(byte[] data) {
+		if (data == null) {
+			throw new IllegalArgumentException("data cannot be null");
+		}
+
+		append(data, 0, data.length);
+	}
+
+	/**
+	 * Append a message to the current packet. The pending packet is flushed first in case the message does not fit into it.
+	 * A message which is larger than the packet size limit is sent in a packet of its own.
+	 * @param data The array holding the message. The bytes are copied, the array can be reused once the method returns.
+	 * @param offset The offset of the message in {@code data}.
+	 * @param length The length of the message.
+	 * @throws IllegalArgumentException if the message is empty or larger than {@link #MAX_MESSAGE_SIZE}.
+	 */
+	public void append(byte[] data, int offset, int length) {
+		if (data == null || length <= 0) {
+			throw new IllegalArgumentException("data cannot be empty");
+		}
+		if (length > MAX_MESSAGE_SIZE) {
+			throw new IllegalArgumentException("message is too large for batching: " + length);
+		}
+		if (offset < 0 || offset + length > data.length) {
+			throw new IndexOutOfBoundsException("offset: " + offset + ", length: " + length + ", size: " + data.length);
+		}
+
+		final int frameSize = LENGTH_PREFIX_SIZE + length;
+
+		if (1 + frameSize > _buffer.length) {
+			flush();
+			sendSingle(data, offset, length);
+			return;
+		}
+
+		if (_position + frameSize > _buffer.length) {
+			flush();
+		}
+
+		_buffer[_position++] = (byte)(length >>> 8);
+		_buffer[_position++] = (byte)length;
+		System.arraycopy(data, offset, _buffer, _position, length);
+		_position += length;
+		_messageCount++;
+	}
+
+	/**
+	 * Send the pending messages as a single packet. Does nothing if there are no pending messages.
+	 * The messages are dropped if the gate is closed. Should be called once per frame, after the game logic pushed its updates.
+	 */
+	public void flush() {
+		if (_messageCount == 0) return;
+
+		final int messageCount = _messageCount;
+		if (_gate != null && !_gate.canSend()) {
+			clear();
+			_messagesDropped += messageCount;
+			return;
+		}
+
+		final byte[] packet = Arrays.copyOf(_buffer, _position);
+		clear();
+
+		_tournaments.unreliablePushDataToOtherPlayers(packet);
+		onPacketSent(packet.length, messageCount);
+	}
+
+	/**
+	 * Drop the pending messages without sending them (for example when the tournament is over).
+	 */
+	public void clear() {
+		_buffer[0] = BATCH_HEADER;
+		_position = 1;
+		_messageCount = 0;
+	}
+
+	/**
+	 * Gets the number of messages that are waiting for the next flush
+	 * @return The number of pending messages
+	 */
+	public int getPendingMessageCount() {
+		return _messageCount;
+	}
+
+	/**
+	 * Gets the size of the pending packet
+	 * @return The size of the pending packet in bytes, including the header
+	 */
+	public int getPendingPacketSize() {
+		return _position;
+	}
+
+	/**
+	 * Gets the packet size limit
+	 * @return The packet size limit in bytes
+	 */
+	public int getMaxPacketSize() {
+		return _buffer.length;
+	}
+
+	/**
+	 * Gets the number of packets sent since the last statistics reset
+	 * @return The number of packets sent
+	 */
+	public long getPacketsSent() {
+		return _packetsSent;
+	}
+
+	/**
+	 * Gets the number of messages sent since the last statistics reset
+	 * @return The number of messages sent
+	 */
+	public long getMessagesSent() {
+		return _messagesSent;
+	}
+
+	/**
+	 * Gets the number of bytes sent (headers included) since the last statistics reset
+	 * @return The number of bytes sent
+	 */
+	public long getBytesSent() {
+		return _bytesSent;
+	}
+
+	/**
+	 * Gets the number of messages dropped because the gate was closed since the last statistics reset
+	 * @return The number of messages dropped
+	 */
+	public long getMessagesDropped() {
+		return _messagesDropped;
+	}
+
+	/**
+	 * Gets the number of messages in the last packet sent
+	 * @return The number of messages in the last packet, 0 if no packet was sent
+	 */
+	public int getLastPacketMessageCount() {
+		return _lastPacketMessageCount;
+	}
+
+	/**
+	 * Gets the largest number of messages sent in a single packet since the last statistics reset
+	 * @return The largest number of messages in a packet
+	 */
+	public int getMaxPacketMessageCount() {
+		return _maxPacketMessageCount;
+	}
+
+	/**
+	 * Gets the average number of messages per packet since the last statistics reset
+	 * @return The average number of messages per packet, 0 if no packet was sent
+	 */
+	public float getAverageMessagesPerPacket() {
+		if (_packetsSent == 0) return 0;
+
+		return (float)_messagesSent / _packetsSent;
+	}
+
+	/**
+	 * Gets the number of packets which were sent with the given number of messages
+	 * @param messageCount The number of messages in a packet, values above {@link #MESSAGE_COUNT_BUCKETS} share the last bucket
+	 * @return The number of packets sent with {@code messageCount} messages
+	 */
+	public long packetsWithMessageCount(int messageCount) {
+		if (messageCount <= 0) return 0;
+
+		return _messageCountHistogram[Math.min(messageCount, MESSAGE_COUNT_BUCKETS)];
+	}
+
+	/**
+	 * Reset all the statistics counters
+	 */
+	public void resetStatistics() {
+		_packetsSent = 0;
+		_messagesSent = 0;
+		_bytesSent = 0;
+		_messagesDropped = 0;
+		_lastPacketMessageCount = 0;
+		_maxPacketMessageCount = 0;
+		Arrays.fill(_messageCountHistogram, 0);
+	}
+
+	private void sendSingle(byte[] data, int offset, int length) {
+		if (_gate != null && !_gate.canSend()) {
+			_messagesDropped++;
+			return;
+		}
+
+		final byte[] packet = new byte[1 + LENGTH_PREFIX_SIZE + length];
+		packet[0] = BATCH_HEADER;
+		packet[1] = (byte)(length >>> 8);
+		packet[2] = (byte)length;
+		System.arraycopy(data, offset, packet, 1 + LENGTH_PREFIX_SIZE, length);
+
+		_tournaments.unreliablePushDataToOtherPlayers(packet);
+		onPacketSent(packet.length, 1);
+	}
+
+	private void onPacketSent(int size, int messageCount) {
+		_packetsSent++;
+		_messagesSent += messageCount;
+		_bytesSent += size;
+		_lastPacketMessageCount = messageCount;
+		if (messageCount > _maxPacketMessageCount) {
+			_maxPacketMessageCount = messageCount;
+		}
+		_messageCountHistogram[Math.min(messageCount, MESSAGE_COUNT_BUCKETS)]++;
+	}
+}
@@ -0,0 +1,134 @@
+//
+//  Nextpeer libGDX plugin
+//  http://www.nextpeer.com
+//
+//  Created by Nextpeer development team.
+//  Copyright (c) 2014 Innobell, Ltd. All rights reserved.
+//
+
+package com.nextpeer.libgdx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Runs three players on a {@link SimulatedNetwork} with a manual clock, the channels follow the network clock.
+ */
+public class AcknowledgedChannelTest {
+
+	private static final int FRAME_MILLIS = 10;
+
+	/**
+	 * Records the channel messages received by a player
+	 */
+	private static final class Received implements AcknowledgedChannel.Listener {
+		final List<String> messages = new ArrayList<String>();
+
+		@Override
+		public void onChannelMessage(byte[] data, int offset, int length, String playerId) {
+			messages.add(playerId + ":" + new String(data, offset, length));
+		}
+	}
+
+	/**
+	 * Drops the first channel packets received by a player, like a lost packet
+	 */
+	private static final class DropFirst extends TournamentsCallbackWrapper {
+		int remaining;
+
+		DropFirst(TournamentsCallback callback, int count) {
+			super(callback);
+			remaining = count;
+		}
+
+		@Override
+		public void onReceiveUnreliableTournamentCustomMessage(NextpeerTournamentCustomMessage message) {
+			if (remaining > 0 && message.customMessage[0] == AcknowledgedChannel.CHANNEL_HEADER) {
+				remaining--;
+				return;
+			}
+			super.onReceiveUnreliableTournamentCustomMessage(message);
+		}
+	}
+
+	private final SimulatedNetwork _network = new SimulatedNetwork(true, 1);
+	private final List<AcknowledgedChannel> _channels = new ArrayList<AcknowledgedChannel>();
+
+	private AcknowledgedChannel addPlayer(String playerId, Received received, int droppedPackets, int playerCount) {
+		final SimulatedTournaments peer = _network.addPeer(playerId, playerId, false);
+		final AcknowledgedChannel channel = new AcknowledgedChannel(peer, null, received, true, playerCount) {
+			@Override
+			long currentTimeMillis() {
+				return _network.currentTimeMillis();
+			}
+		};
+		peer.setTournamentsCallback((droppedPackets > 0) ? new DropFirst(channel, droppedPackets) : channel);
+		_channels.add(channel);
+		return channel;
+	}
+
+	private void run(int frames) {
+		for (int i = 0; i < frames; i++) {
+			_network.advance(FRAME_MILLIS);
+			for (AcknowledgedChannel channel : _channels) {
+				channel.update();
+			}
+		}
+	}
+
+	@Test
+	public void resendsToAPlayerWhoLostTheFirstCopyBeforeSendingAnything() {
+		final Received b = new Received();
+		final Received c = new Received();
+		final AcknowledgedChannel sender = addPlayer("a", new Received(), 0, 2);
+		addPlayer("b", b, 0, 2);
+		addPlayer("c", c, 1, 2);
+		_network.startTournament(1);
+
+		assertTrue(sender.send("pickup".getBytes()));
+
+		// b acknowledged it, c lost it and never sent anything: the message must stay pending
+		run(15);
+		assertEquals(1, b.messages.size());
+		assertEquals(0, c.messages.size());
+		assertFalse(sender.hasAllPlayers());
+		assertEquals(1, sender.getPendingCount());
+
+		run(200);
+		assertEquals(1, b.messages.size());
+		assertEquals(1, c.messages.size());
+		assertEquals("a:pickup", c.messages.get(0));
+		assertTrue(sender.hasAllPlayers());
+		assertEquals(0, sender.getPendingCount());
+		assertTrue(sender.getRetransmits() > 0);
+		assertEquals(0, sender.getExpired());
+	}
+
+	@Test
+	public void keepsTheMessagesOfAMissingPlayerUntilThePlayerCountIsLowered() {
+		final Received b = new Received();
+		final AcknowledgedChannel sender = addPlayer("a", new Received(), 0, 2);
+		addPlayer("b", b, 0, 2);
+		sender.setMaxRetransmits(2);
+		_network.startTournament(1);
+
+		assertTrue(sender.send("kill".getBytes()));
+
+		// The second player never joins: no free and no expiry while the players are not all known
+		run(500);
+		assertEquals(1, b.messages.size());
+		assertEquals(1, sender.getPendingCount());
+		assertEquals(0, sender.getExpired());
+
+		sender.setPlayerCount(1);
+		run(1);
+		assertEquals(0, sender.getPendingCount());
+		assertEquals(0, sender.getExpired());
+	}
+}
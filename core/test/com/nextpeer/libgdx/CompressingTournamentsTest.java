@@ -0,0 +1,191 @@
+//
+//  Nextpeer libGDX plugin
+//  http://www.nextpeer.com
+//
+//  Created by Nextpeer development team.
+//  Copyright (c) 2014 Innobell, Ltd. All rights reserved.
+//
+
+package com.nextpeer.libgdx;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import org.junit.Test;
+
+/**
+ * Runs a sender, a receiver and a player without the layer (which sees the bytes on the wire) on a {@link SimulatedNetwork}
+ * with a manual clock. The malformed streams are handed to the receiver directly.
+ */
+public class CompressingTournamentsTest {
+
+	/**
+	 * Records the reliable messages received by a player
+	 */
+	private static final class Received extends TournamentsCallback {
+		final List<byte[]> messages = new ArrayList<byte[]>();
+
+		@Override
+		public void onTournamentStart(long tournamentRandomSeed) {
+		}
+
+		@Override
+		public void onTournamentEnd() {
+		}
+
+		@Override
+		public void onReceiveTournamentCustomMessage(NextpeerTournamentCustomMessage message) {
+			messages.add(message.customMessage);
+		}
+	}
+
+	private final SimulatedNetwork _network = new SimulatedNetwork(true, 1);
+	private final Received _wire = new Received();
+
+	private CompressingTournaments addPlayer(String playerId, byte[] dictionary, int maxMessageSize, Received received) {
+		final CompressingTournaments tournaments = new CompressingTournaments(_network.addPeer(playerId, playerId, false),
+				dictionary, Deflater.DEFAULT_COMPRESSION, maxMessageSize);
+		tournaments.setTournamentsCallback(received);
+		return tournaments;
+	}
+
+	private void start() {
+		_network.addPeer("wire", "wire", false).setTournamentsCallback(_wire);
+		_network.startTournament(1);
+	}
+
+	private static byte[] text(String line, int length) {
+		final byte[] data = new byte[length];
+		final byte[] bytes = line.getBytes();
+		for (int i = 0; i < length; i++) {
+			data[i] = bytes[i % bytes.length];
+		}
+		return data;
+	}
+
+	private static NextpeerTournamentCustomMessage message(byte[] data) {
+		return new NextpeerTournamentCustomMessage("wire", "wire", null, data, false, 0);
+	}
+
+	@Test
+	public void compressedRawAndEscapedMessagesRoundTrip() {
+		final CompressingTournaments sender = addPlayer("a", null, CompressingTournaments.DEFAULT_MAX_MESSAGE_SIZE, new Received());
+		final Received received = new Received();
+		final CompressingTournaments receiver = addPlayer("b", null, CompressingTournaments.DEFAULT_MAX_MESSAGE_SIZE, received);
+		start();
+
+		final byte[] compressible = text("{\"event\":\"jump\",\"x\":12,\"y\":40}", 1000);
+		final byte[] small = text("move", 20);
+		final byte[] escaped = text("move", 20);
+		escaped[0] = CompressingTournaments.COMPRESSED_HEADER;
+		final byte[] incompressible = new byte[500];
+		new Random(1).nextBytes(incompressible);
+		incompressible[0] = CompressingTournaments.RAW_HEADER;
+
+		sender.pushDataToOtherPlayers(compressible);
+		sender.pushDataToOtherPlayers(small);
+		sender.pushDataToOtherPlayers(escaped);
+		sender.pushDataToOtherPlayers(incompressible);
+		_network.advance(1000);
+
+		assertEquals(4, received.messages.size());
+		assertArrayEquals(compressible, received.messages.get(0));
+		assertArrayEquals(small, received.messages.get(1));
+		assertArrayEquals(escaped, received.messages.get(2));
+		assertArrayEquals(incompressible, received.messages.get(3));
+
+		assertEquals(CompressingTournaments.COMPRESSED_HEADER, _wire.messages.get(0)[0]);
+		assertTrue(_wire.messages.get(0).length < compressible.length / 4);
+		assertArrayEquals(small, _wire.messages.get(1));
+		assertEquals(CompressingTournaments.RAW_HEADER, _wire.messages.get(2)[0]);
+		assertEquals(escaped.length + 1, _wire.messages.get(2).length);
+		assertEquals(CompressingTournaments.RAW_HEADER, _wire.messages.get(3)[0]);
+		assertEquals(incompressible.length + 1, _wire.messages.get(3).length);
+
+		assertEquals(1, sender.getMessagesCompressed());
+		assertEquals(3, sender.getMessagesSkipped());
+		assertEquals(1, receiver.getMessagesDecompressed());
+		assertEquals(0, receiver.getDecompressFailures());
+	}
+
+	@Test
+	public void messageCompressedWithAnotherDictionaryIsDropped() {
+		final byte[] dictionary = CompressingTournaments.trainDictionary(new byte[][] {
+				"{\"event\":\"jump\",\"x\":".getBytes(), "{\"event\":\"fire\",\"weapon\":".getBytes() }, 1024);
+		final byte[] other = "{\"event\":\"chat\",\"text\":".getBytes();
+
+		final CompressingTournaments sender = addPlayer("a", dictionary, CompressingTournaments.DEFAULT_MAX_MESSAGE_SIZE, new Received());
+		final Received sameReceived = new Received();
+		final CompressingTournaments same = addPlayer("b", dictionary, CompressingTournaments.DEFAULT_MAX_MESSAGE_SIZE, sameReceived);
+		final Received otherReceived = new Received();
+		final CompressingTournaments mismatch = addPlayer("c", other, CompressingTournaments.DEFAULT_MAX_MESSAGE_SIZE, otherReceived);
+		final Received noneReceived = new Received();
+		final CompressingTournaments none = addPlayer("d", null, CompressingTournaments.DEFAULT_MAX_MESSAGE_SIZE, noneReceived);
+		start();
+
+		final byte[] data = text("{\"event\":\"jump\",\"x\":12}{\"event\":\"fire\",\"weapon\":2}", 300);
+		sender.pushDataToOtherPlayers(data);
+		_network.advance(1000);
+
+		assertEquals(1, sender.getMessagesCompressed());
+		assertEquals(1, sameReceived.messages.size());
+		assertArrayEquals(data, sameReceived.messages.get(0));
+		assertEquals(1, same.getMessagesDecompressed());
+
+		assertTrue(otherReceived.messages.isEmpty());
+		assertEquals(1, mismatch.getDecompressFailures());
+		assertTrue(noneReceived.messages.isEmpty());
+		assertEquals(1, none.getDecompressFailures());
+	}
+
+	@Test
+	public void truncatedStreamIsDropped() {
+		final CompressingTournaments sender = addPlayer("a", null, CompressingTournaments.DEFAULT_MAX_MESSAGE_SIZE, new Received());
+		final Received received = new Received();
+		final CompressingTournaments receiver = addPlayer("b", null, CompressingTournaments.DEFAULT_MAX_MESSAGE_SIZE, received);
+		start();
+
+		sender.pushDataToOtherPlayers(text("{\"event\":\"jump\",\"x\":12,\"y\":40}", 1000));
+		_network.advance(1000);
+		final byte[] compressed = _wire.messages.get(0);
+		received.messages.clear();
+
+		// Cut in the zlib stream, in the length varint and right after the header
+		receiver.onWrappedReceiveTournamentCustomMessage(message(Arrays.copyOf(compressed, compressed.length - 4)));
+		receiver.onWrappedReceiveTournamentCustomMessage(message(Arrays.copyOf(compressed, 2)));
+		receiver.onWrappedReceiveTournamentCustomMessage(message(Arrays.copyOf(compressed, 1)));
+
+		assertTrue(received.messages.isEmpty());
+		assertEquals(3, receiver.getDecompressFailures());
+		assertEquals(1, receiver.getMessagesDecompressed());
+	}
+
+	@Test
+	public void lengthAboveMaxMessageSizeIsDropped() {
+		final CompressingTournaments sender = addPlayer("a", null, CompressingTournaments.DEFAULT_MAX_MESSAGE_SIZE, new Received());
+		final Received received = new Received();
+		final CompressingTournaments receiver = addPlayer("b", null, 1000, received);
+		start();
+
+		sender.pushDataToOtherPlayers(text("{\"event\":\"jump\",\"x\":12,\"y\":40}", 1000));
+		sender.pushDataToOtherPlayers(text("{\"event\":\"jump\",\"x\":12,\"y\":40}", 1001));
+		_network.advance(1000);
+
+		assertEquals(1, received.messages.size());
+		assertEquals(1000, received.messages.get(0).length);
+		assertEquals(1, receiver.getDecompressFailures());
+
+		// A forged length is rejected before anything is allocated or inflated
+		final byte[] forged = new byte[] { CompressingTournaments.COMPRESSED_HEADER, (byte)0xFF, (byte)0xFF, (byte)0xFF, (byte)0xFF, 0x07, 0 };
+		receiver.onWrappedReceiveTournamentCustomMessage(message(forged));
+		assertEquals(2, receiver.getDecompressFailures());
+		assertEquals(1, received.messages.size());
+	}
+}
@@ -0,0 +1,190 @@
+//
+//  Nextpeer libGDX plugin
+//  http://www.nextpeer.com
+//
+//  Created by Nextpeer development team.
+//  Copyright (c) 2014 Innobell, Ltd. All rights reserved.
+//
+
+package com.nextpeer.libgdx;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Runs two players on a {@link SimulatedNetwork} with a manual clock, both using the fragmenting layer.
+ * The reassembly limits are checked by handing crafted fragments to the receiver.
+ */
+public class FragmentingTournamentsTest {
+
+	private static final int FRAGMENT_SIZE = 100;
+
+	/**
+	 * Records the reliable messages received by a player
+	 */
+	private static final class Received extends TournamentsCallback {
+		final List<byte[]> messages = new ArrayList<byte[]>();
+
+		@Override
+		public void onTournamentStart(long tournamentRandomSeed) {
+		}
+
+		@Override
+		public void onTournamentEnd() {
+		}
+
+		@Override
+		public void onReceiveTournamentCustomMessage(NextpeerTournamentCustomMessage message) {
+			messages.add(message.customMessage);
+		}
+	}
+
+	private final SimulatedNetwork _network = new SimulatedNetwork(true, 1);
+
+	private FragmentingTournaments addPlayer(String playerId, int maxQueuedBytes, int maxReassemblyBytes, Received received) {
+		final FragmentingTournaments tournaments = new FragmentingTournaments(_network.addPeer(playerId, playerId, false),
+				FRAGMENT_SIZE, maxQueuedBytes, maxReassemblyBytes);
+		tournaments.setTournamentsCallback(received);
+		return tournaments;
+	}
+
+	private static byte[] message(int length, int seed) {
+		final byte[] data = new byte[length];
+		for (int i = 0; i < length; i++) {
+			data[i] = (byte)(seed + i * 31);
+		}
+		return data;
+	}
+
+	/**
+	 * Builds the fragment of a message like the sender does
+	 */
+	private static NextpeerTournamentCustomMessage fragment(int messageId, byte[] data, int offset, int length) {
+		final byte[] fragment = new byte[FragmentingTournaments.HEADER_SIZE + length];
+		fragment[0] = FragmentingTournaments.FRAGMENT_HEADER;
+		fragment[1] = (byte)(messageId >>> 8);
+		fragment[2] = (byte)messageId;
+		for (int i = 0; i < 4; i++) {
+			fragment[3 + i] = (byte)(offset >>> (24 - i * 8));
+			fragment[7 + i] = (byte)(data.length >>> (24 - i * 8));
+		}
+		System.arraycopy(data, offset, fragment, FragmentingTournaments.HEADER_SIZE, length);
+		return new NextpeerTournamentCustomMessage("sender", "sender", null, fragment, false, 0);
+	}
+
+	@Test
+	public void largeMessagesAreSplitAndReassembled() {
+		final FragmentingTournaments sender = addPlayer("a", 10000, 10000, new Received());
+		final Received received = new Received();
+		final FragmentingTournaments receiver = addPlayer("b", 10000, 10000, received);
+		sender.setFragmentsPerTick(2);
+		_network.startTournament(1);
+
+		final byte[] large = message(450, 1);
+		final byte[] small = message(40, 2);
+		final byte[] lookalike = message(40, 3);
+		lookalike[0] = FragmentingTournaments.FRAGMENT_HEADER;
+		sender.pushDataToOtherPlayers(large);
+		sender.pushDataToOtherPlayers(small);
+		sender.pushDataToOtherPlayers(lookalike);
+		assertEquals(1, sender.getQueuedMessages());
+
+		int ticks = 0;
+		while (sender.getQueuedMessages() > 0) {
+			sender.update();
+			receiver.update();
+			_network.advance(10);
+			ticks++;
+		}
+		_network.advance(1000);
+
+		assertEquals(3, ticks);
+		assertEquals(1, sender.getMessagesFragmented());
+		assertEquals(6, sender.getFragmentsSent());
+		assertEquals(3, received.messages.size());
+		// The small messages overtake the queued large one
+		assertArrayEquals(small, received.messages.get(0));
+		assertArrayEquals(lookalike, received.messages.get(1));
+		assertArrayEquals(large, received.messages.get(2));
+		assertEquals(2, receiver.getMessagesReassembled());
+		assertEquals(0, receiver.getReassemblyBytes());
+	}
+
+	@Test
+	public void fullOutboundQueueIsReported() {
+		final FragmentingTournaments sender = addPlayer("a", 300, 10000, new Received());
+		_network.startTournament(1);
+
+		assertTrue(sender.offerDataToOtherPlayers(message(200, 1)));
+		assertTrue(sender.isBackpressured(200));
+		assertFalse(sender.isBackpressured(FRAGMENT_SIZE));
+		assertFalse(sender.offerDataToOtherPlayers(message(200, 2)));
+		try {
+			sender.pushDataToOtherPlayers(message(200, 3));
+			fail("a full queue should not drop the message silently");
+		}
+		catch (IllegalStateException e) {
+			// Expected
+		}
+
+		assertEquals(2, sender.getMessagesRejected());
+		assertEquals(1, sender.getQueuedMessages());
+		assertEquals(200, sender.getQueuedBytes());
+	}
+
+	@Test
+	public void oldestIncompleteMessageIsEvictedAtTheMemoryLimit() {
+		final Received received = new Received();
+		final FragmentingTournaments receiver = addPlayer("b", 10000, 500, received);
+
+		final byte[] first = message(300, 1);
+		final byte[] second = message(300, 2);
+		receiver.onWrappedReceiveTournamentCustomMessage(fragment(1, first, 0, FRAGMENT_SIZE));
+		assertEquals(300, receiver.getReassemblyBytes());
+		receiver.onWrappedReceiveTournamentCustomMessage(fragment(2, second, 0, FRAGMENT_SIZE));
+		assertEquals(1, receiver.getReassemblyDropped());
+		assertEquals(300, receiver.getReassemblyBytes());
+
+		receiver.onWrappedReceiveTournamentCustomMessage(fragment(2, second, 100, FRAGMENT_SIZE));
+		receiver.onWrappedReceiveTournamentCustomMessage(fragment(2, second, 200, FRAGMENT_SIZE));
+		assertEquals(1, received.messages.size());
+		assertArrayEquals(second, received.messages.get(0));
+		assertEquals(0, receiver.getReassemblyBytes());
+
+		// A message larger than the limit is never buffered
+		receiver.onWrappedReceiveTournamentCustomMessage(fragment(3, message(600, 3), 0, FRAGMENT_SIZE));
+		assertEquals(2, receiver.getReassemblyDropped());
+		assertEquals(0, receiver.getReassemblyBytes());
+	}
+
+	@Test
+	public void incompleteMessageIsDroppedOnTimeout() throws InterruptedException {
+		final Received received = new Received();
+		final FragmentingTournaments receiver = addPlayer("b", 10000, 10000, received);
+		final byte[] data = message(300, 1);
+
+		receiver.onWrappedReceiveTournamentCustomMessage(fragment(1, data, 0, FRAGMENT_SIZE));
+		receiver.update();
+		assertEquals(0, receiver.getReassemblyDropped());
+
+		receiver.setReassemblyTimeout(0);
+		Thread.sleep(2);
+		receiver.update();
+		assertEquals(1, receiver.getReassemblyDropped());
+		assertEquals(0, receiver.getReassemblyBytes());
+
+		// The late fragments start a new incomplete message instead of completing the dropped one
+		receiver.onWrappedReceiveTournamentCustomMessage(fragment(1, data, 100, FRAGMENT_SIZE));
+		receiver.onWrappedReceiveTournamentCustomMessage(fragment(1, data, 200, FRAGMENT_SIZE));
+		assertTrue(received.messages.isEmpty());
+		assertEquals(300, receiver.getReassemblyBytes());
+	}
+}
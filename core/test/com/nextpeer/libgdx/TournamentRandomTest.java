@@ -0,0 +1,137 @@
+//
+//  Nextpeer libGDX plugin
+//  http://www.nextpeer.com
+//
+//  Created by Nextpeer development team.
+//  Copyright (c) 2014 Innobell, Ltd. All rights reserved.
+//
+
+package com.nextpeer.libgdx;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Test;
+
+/**
+ * Pins the TournamentRandom output, so a change giving other values on a run or a platform fails here instead of desyncing a tournament.
+ * The raw generator is checked against the xoshiro256** and SplitMix64 reference implementations, the derived draws against
+ * literal values.
+ */
+public class TournamentRandomTest {
+
+	private static final long SEED = 0x5EED5EEDL;
+
+	/**
+	 * First outputs of the xoshiro256** reference implementation for the state {1, 2, 3, 4}
+	 */
+	private static final long[] XOSHIRO_1234 = {
+		0x0000000000002D00L, 0x0000000000000000L, 0x000000005A007080L, 0x10E0000000009D80L, 0x10E0B61CE1009D80L,
+		0x0870021CE143AD00L, 0xE071C3C2E143F089L, 0x75A1690EF7A20380L, 0x9309685B465C23F9L, 0x284F3CC2E13E3C88L,
+	};
+
+	/**
+	 * First outputs of the SplitMix64 reference implementation for the seed 1234567
+	 */
+	private static final long[] SPLITMIX_1234567 = {
+		0x599ED017FB08FC85L, 0x2C73F08458540FA5L, 0x883EBCE5A3F27C77L, 0x3FBEF740E9177B3FL,
+	};
+
+	/**
+	 * First outputs of the xoshiro256** reference implementation seeded with the SplitMix64 outputs above
+	 */
+	private static final long[] SEEDED_1234567 = {
+		0x30A3A1C363600467L, 0x19405F0F579929CAL, 0x115BEAAC046DDBD9L, 0xEB17CAF48F27D7F6L, 0xA0C94FE1CCE9D136L,
+	};
+
+	@Test
+	public void nextLongMatchesReference() {
+		final TournamentRandom random = new TournamentRandom(0);
+		random.setState(1, 2, 3, 4);
+		assertArrayEquals(XOSHIRO_1234, nextLongs(random, XOSHIRO_1234.length));
+	}
+
+	@Test
+	public void seedIsExpandedWithSplitMix64() {
+		final TournamentRandom reference = new TournamentRandom(0);
+		reference.setState(SPLITMIX_1234567[0], SPLITMIX_1234567[1], SPLITMIX_1234567[2], SPLITMIX_1234567[3]);
+		final long[] expected = nextLongs(reference, SEEDED_1234567.length);
+
+		assertArrayEquals(SEEDED_1234567, expected);
+		assertArrayEquals(SEEDED_1234567, nextLongs(new TournamentRandom(1234567), SEEDED_1234567.length));
+	}
+
+	@Test
+	public void resetRestartsTheSequence() {
+		final TournamentRandom random = new TournamentRandom(SEED);
+		final long[] first = nextLongs(random, 8);
+		random.nextGaussian();
+		random.reset();
+		assertArrayEquals(first, nextLongs(random, 8));
+	}
+
+	@Test
+	public void nextIntWithBoundIsPinned() {
+		final TournamentRandom random = new TournamentRandom(SEED);
+		final int[] expected = {18, 22, 93, 98, 3, 79, 28, 77, 5, 90};
+		final int[] actual = new int[expected.length];
+		for (int i = 0; i < actual.length; i++) {
+			actual[i] = random.nextInt(100);
+		}
+		assertArrayEquals(expected, actual);
+
+		random.reset();
+		final int[] dice = {1, 1, 5, 5, 0, 4, 1, 4, 0, 5};
+		for (int i = 0; i < dice.length; i++) {
+			assertEquals(dice[i], random.nextInt(6));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void nextIntRejectsNonPositiveBound() {
+		new TournamentRandom(SEED).nextInt(0);
+	}
+
+	@Test
+	public void nextFloatIsPinned() {
+		final TournamentRandom random = new TournamentRandom(SEED);
+		final float[] expected = {0.18370408f, 0.22873205f, 0.93792343f, 0.98954403f, 0.03649968f, 0.79978865f};
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(Float.floatToIntBits(expected[i]), Float.floatToIntBits(random.nextFloat()));
+		}
+	}
+
+	@Test
+	public void nextGaussianIsPinned() {
+		final TournamentRandom random = new TournamentRandom(SEED);
+		final long[] expected = {
+			0xBFE4BD8E618736E6L, 0xBFE1C9AFB7D70E4AL, 0xBFE7D0CACF9AF79FL, 0x3FEDBEB92B3F35E0L, 0xBFF87070E8B2C3D8L, 0xBFFC6703E2157B88L,
+		};
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], Double.doubleToLongBits(random.nextGaussian()));
+		}
+	}
+
+	@Test
+	public void streamsArePinnedAndIndependentOfDraws() {
+		final TournamentRandom random = new TournamentRandom(SEED);
+		final long[] level = {0xB07223B708FCD341L, 0x6A8DC748C10C61DBL, 0xA736DC4F76E0C17FL};
+		final long[] entity = {0xE1568A6521968F9BL, 0xC5361AD12883C580L, 0xCBE72341A58F1178L};
+
+		assertArrayEquals(level, nextLongs(random.stream("level"), level.length));
+		random.nextLong();
+		random.nextGaussian();
+		assertArrayEquals(level, nextLongs(random.stream("level"), level.length));
+		assertArrayEquals(entity, nextLongs(random.stream(42), entity.length));
+		assertFalse(random.stream("ai").nextLong() == level[0]);
+	}
+
+	private static long[] nextLongs(TournamentRandom random, int count) {
+		final long[] values = new long[count];
+		for (int i = 0; i < count; i++) {
+			values[i] = random.nextLong();
+		}
+		return values;
+	}
+}
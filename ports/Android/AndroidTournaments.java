@@ -2,22 +2,77 @@
 
 import com.nextpeer.android.Nextpeer;
 import com.nextpeer.android.NextpeerListener;
+import com.nextpeer.android.NextpeerSynchronizedEventFire;
+import com.nextpeer.android.NextpeerTournamentCustomMessage;
 import com.nextpeer.android.NextpeerTournamentEndData;
 import com.nextpeer.android.NextpeerTournamentStartData;
+import com.nextpeer.libgdx.DeferredInitialization;
 import com.nextpeer.libgdx.Tournaments;
 
+import java.util.concurrent.Executor;
+
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
 
 /**
  * Android implementation of the Tournaments class with Nextpeer Android SDK
  *
  */
 public final class AndroidTournaments extends Tournaments {
+
+	private final DeferredInitialization _initialization = new DeferredInitialization();
+
+	/**
+	 * Constructor for the AndroidTournaments class, Nextpeer is initialized right away on the calling thread and its failure is rethrown
+	 * @param context The application context
+	 */
 	public AndroidTournaments(Context context) {
+		this(context, DeferredInitialization.DIRECT_EXECUTOR);
+	}
+
+	/**
+	 * Constructor for the AndroidTournaments class, Nextpeer is initialized on the given executor so it does not add to the start time.
+	 * Until it is done there is no tournament, and {@code launch()} and {@code onStart()} are queued and then run on the UI thread.
+	 * @param context The application context
+	 * @param executor The executor running Nextpeer initialization, for example {@code Executors.newSingleThreadExecutor()}
+	 */
+	public AndroidTournaments(final Context context, Executor executor) {
 		
 		final String gameKey = ?; // TODO: Get your Game Key from https://developers.nextpeer.com
 		
-		Nextpeer.initialize(context, gameKey, _listener);
+		// The queued calls run on the UI thread, unless Nextpeer is initialized right away on the calling thread
+		Executor uiExecutor = null;
+		if (executor != DeferredInitialization.DIRECT_EXECUTOR) {
+			final Handler mainHandler = new Handler(Looper.getMainLooper());
+			uiExecutor = new Executor() {
+				@Override
+				public void execute(Runnable command) {
+					mainHandler.post(command);
+				}
+			};
+		}
+
+		_initialization.start(executor, new Runnable() {
+			@Override
+			public void run() {
+				Nextpeer.initialize(context, gameKey, _listener);
+			}
+		}, uiExecutor);
+
+		// Only on the calling thread, the background failures are read from getInitialization()
+		if (executor == DeferredInitialization.DIRECT_EXECUTOR) {
+			final Throwable failure = _initialization.getFailure();
+			if (failure instanceof Error) {
+				throw (Error)failure;
+			}
+			if (failure instanceof RuntimeException) {
+				throw (RuntimeException)failure;
+			}
+			if (failure != null) {
+				throw new RuntimeException(failure);
+			}
+		}
 	}
 
 	/***
@@ -31,10 +86,7 @@ public final class AndroidTournaments extends Tournaments {
 		 * @note Switch to the game scene
 		 */
 	    public void onTournamentStart(NextpeerTournamentStartData startData) {
-	    	
-	    	if (callback != null) {
-	    		callback.onTournamentStart(startData.tournamentRandomSeed);
-	    	}
+	    	fireTournamentStart(startData.tournamentRandomSeed);
 	    }
 
 	    /**
@@ -43,9 +95,36 @@ public final class AndroidTournaments extends Tournaments {
 		 * @note Switch to the main menu scene
 	     */
 	    public void onTournamentEnd(NextpeerTournamentEndData endData) {
-	    	if (callback != null) {
-	    		callback.onTournamentEnd();
-	    	}
+	    	fireTournamentEnd();
+	    }
+
+	    /**
+	     * This method will be called when Nextpeer has received a buffer from another player.
+	     * @param message The custom message container
+	     * @note Delivered as a pooled message when a message pool is set
+	     */
+	    public void onReceiveTournamentCustomMessage(NextpeerTournamentCustomMessage message) {
+	    	fireReceiveTournamentCustomMessage(message.playerId, message.playerName, message.playerImageUrl,
+	    			message.customMessage, message.playerIsBot);
+	    }
+
+	    /**
+	     * This method will be called when Nextpeer has received a buffer from another player through the unreliable channel.
+	     * @param message The custom message container
+	     * @note Delivered as a pooled message when a message pool is set
+	     */
+	    public void onReceiveUnreliableTournamentCustomMessage(NextpeerTournamentCustomMessage message) {
+	    	fireReceiveUnreliableTournamentCustomMessage(message.playerId, message.playerName, message.playerImageUrl,
+	    			message.customMessage, message.playerIsBot);
+	    }
+
+	    /**
+	     * This method will be called when a synchronized event was fired, all the players registered to it or it timed out.
+	     * @param name The synchronized event name
+	     * @param fireReason The reason the event was fired
+	     */
+	    public void onReceiveSynchronizedEvent(String name, NextpeerSynchronizedEventFire fireReason) {
+	    	fireReceiveSynchronizedEvent(name, fireReason == NextpeerSynchronizedEventFire.TIMEOUT);
 	    }
 	};
 
@@ -61,13 +140,37 @@ public final class AndroidTournaments extends Tournaments {
 	public boolean isSupported() {
 		return true;
 	}
+
+	/**
+	 * Is Nextpeer initialized
+	 * @return true if Nextpeer can be used, false while it is initialized in the background
+	 */
+	@Override
+	public boolean isReady() {
+		return _initialization.isReady();
+	}
+
+	/**
+	 * Gets Nextpeer initialization, to read the startup time
+	 * @return The initialization
+	 */
+	@Override
+	public DeferredInitialization getInitialization() {
+		return _initialization;
+	}
 	
 	/**
 	 * Launch Nextpeer UI
+	 * @note Queued until Nextpeer is initialized
 	 */
 	@Override
 	public void launch() {
-		Nextpeer.launch();
+		_initialization.runWhenReady(new Runnable() {
+			@Override
+			public void run() {
+				Nextpeer.launch();
+			}
+		});
 	}
 
     /**
@@ -76,6 +179,8 @@ public final class AndroidTournaments extends Tournaments {
      */
 	@Override
     public void reportScoreForCurrentTournament(int score) {
+    	if (!isReady()) return;
+
     	Nextpeer.reportScoreForCurrentTournament(score);
     }
 
@@ -87,6 +192,7 @@ public final class AndroidTournaments extends Tournaments {
      */
 	@Override
     public void reportControlledTournamentOverWithScore(int score) {
+    	if (!isReady()) return;
 
     	Nextpeer.reportControlledTournamentOverWithScore(score);
     }
@@ -96,6 +202,8 @@ public final class AndroidTournaments extends Tournaments {
      */
 	@Override
     public void reportForfeitForCurrentTournament() {
+    	if (!isReady()) return;
+
     	Nextpeer.reportForfeitForCurrentTournament();
     }
 
@@ -105,15 +213,20 @@ public final class AndroidTournaments extends Tournaments {
      */
 	@Override
     public boolean isCurrentlyInTournament() {
-    	return Nextpeer.isCurrentlyInTournament();
+    	return isReady() && Nextpeer.isCurrentlyInTournament();
     }
 
     /**
      * Call this method to report that the view is visible to the user.
-     * @note This method is specific for Android. Call this method from {@code Activity#onStart()}.
+     * @note This method is specific for Android. Call this method from {@code Activity#onStart()}. Queued until Nextpeer is initialized.
      */
     public void onStart() {
-    	Nextpeer.onStart();
+    	_initialization.runWhenReady(new Runnable() {
+    		@Override
+    		public void run() {
+    			Nextpeer.onStart();
+    		}
+    	});
     }
 
 	/**
@@ -128,6 +241,8 @@ public final class AndroidTournaments extends Tournaments {
 	 */
 	@Override
 	public void unreliablePushDataToOtherPlayers(byte[] data) {
+		if (!isReady()) return;
+
 		Nextpeer.unreliablePushDataToOtherPlayers(data);
 		
 	}
@@ -142,12 +257,14 @@ public final class AndroidTournaments extends Tournaments {
 	 */
 	@Override
 	public void pushDataToOtherPlayers(byte[] data) {
+		if (!isReady()) return;
+
 		Nextpeer.pushDataToOtherPlayers(data);
 	}
 
     /**
      * Register to a synchronized event which will be triggered once all connected players register to such event.
-     * Nextpeer will trigger a call to {@code TournamentsCallback#onReceiveSynchronizedEvent(String)}
+     * Nextpeer will trigger a call to {@code TournamentsCallback#onReceiveSynchronizedEvent(String, boolean)}
      * when the rest of the connected players will register to this synchronized event.
      * For example, you can register for a start game synchronized event.
      * This way, your can be sure that all players will start the game together, without taking into consideration different loading time per device.
@@ -158,6 +275,8 @@ public final class AndroidTournaments extends Tournaments {
      */
 	@Override
 	public void registerToSynchronizedEvent(String eventName, int timeoutInMilliseconds) {
+		if (!isReady()) return;
+
 		Nextpeer.registerToSynchronizedEvent(eventName, timeoutInMilliseconds);
 	}
 }